@@ -5,6 +5,7 @@ import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import org.insightcentre.nlp.saffron.DefaultSaffronListener;
 import org.insightcentre.nlp.saffron.SaffronListener;
@@ -20,10 +21,15 @@ public class AuthorSimilarity {
 
     private final double threshold;
     private final int top_n;
+    private final AuthorSimilarityConfiguration.Algorithm algorithm;
 
     public AuthorSimilarity(AuthorSimilarityConfiguration config) {
         this.threshold = config.threshold;
         this.top_n = config.topN;
+        if (config.algorithm == null) {
+            throw new IllegalArgumentException("No author similarity algorithm");
+        }
+        this.algorithm = config.algorithm;
     }
 
     public List<AuthorAuthor> authorSimilarity(Collection<AuthorTerm> ats, String saffronDatasetName) {
@@ -31,6 +37,9 @@ public class AuthorSimilarity {
     }
        
     public List<AuthorAuthor> authorSimilarity(Collection<AuthorTerm> ats, String saffronDatasetName, SaffronListener log) {
+        if (algorithm == AuthorSimilarityConfiguration.Algorithm.sparse) {
+            return SparseAuthorSimilarity.build(ats, top_n * 2).topN(threshold, top_n, saffronDatasetName, ForkJoinPool.commonPool());
+        }
         List<AuthorAuthor> termAuthors = new ArrayList<>();
         Map<String, Object2DoubleMap<String>> vectors = new HashMap<>();
         Object2DoubleMap<String> authorNorms = new Object2DoubleOpenHashMap<>();
@@ -0,0 +1,344 @@
+package org.insightcentre.nlp.saffron.authors.sim;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.insightcentre.nlp.saffron.data.connections.AuthorAuthor;
+import org.insightcentre.nlp.saffron.data.connections.AuthorTerm;
+
+/**
+ * Author similarity over a sparse author-term matrix.
+ *
+ * Authors and terms are mapped to dense ints (authors in lexicographic order,
+ * so that ids break ties as the string comparison does) and the author-term
+ * scores are stored as a compressed sparse row matrix with precomputed norms.
+ * Candidates are pruned in exactly the same way as in
+ * {@link AuthorSimilarity}, and then each author is scored in parallel with
+ * a top-N heap per worker.
+ *
+ * @author John McCrae &lt;john@mccr.ae&gt;
+ */
+public class SparseAuthorSimilarity {
+
+    /**
+     * The number of authors processed by a single task before splitting
+     */
+    private static final int LEAF_SIZE = 256;
+
+    private final String[] authors;
+    private final int nTerms;
+    // Author -> term (CSR, sorted by term)
+    private final int[] authorPtr;
+    private final int[] authorTerms;
+    private final double[] authorScores;
+    // Squared norms of the author vectors
+    private final double[] norms2;
+    // Term -> candidate authors
+    private final int[][] candidates;
+
+    private SparseAuthorSimilarity(String[] authors, int nTerms, int[] authorPtr,
+            int[] authorTerms, double[] authorScores, int[][] candidates) {
+        this.authors = authors;
+        this.nTerms = nTerms;
+        this.authorPtr = authorPtr;
+        this.authorTerms = authorTerms;
+        this.authorScores = authorScores;
+        this.candidates = candidates;
+        this.norms2 = new double[authors.length];
+        for (int a = 0; a < authors.length; a++) {
+            double aa = 0.0;
+            for (int j = authorPtr[a]; j < authorPtr[a + 1]; j++) {
+                aa += authorScores[j] * authorScores[j];
+            }
+            norms2[a] = aa;
+        }
+    }
+
+    /**
+     * Build the sparse author-term matrix. If an author-term pair occurs more
+     * than once, the last score is used.
+     *
+     * @param ats The author-term links
+     * @param candidatesPerTerm The number of authors to keep as candidates for
+     * each term
+     * @return The author similarity index
+     */
+    public static SparseAuthorSimilarity build(Collection<AuthorTerm> ats, int candidatesPerTerm) {
+        Object2IntMap<String> authorIds = new Object2IntOpenHashMap<>();
+        authorIds.defaultReturnValue(-1);
+        for (AuthorTerm at : ats) {
+            authorIds.put(at.getAuthorId(), 0);
+        }
+        String[] authors = authorIds.keySet().toArray(new String[authorIds.size()]);
+        Arrays.sort(authors);
+        for (int i = 0; i < authors.length; i++) {
+            authorIds.put(authors[i], i);
+        }
+        Object2IntMap<String> termIds = new Object2IntOpenHashMap<>();
+        termIds.defaultReturnValue(-1);
+
+        final int n = ats.size();
+        final int[] rowOf = new int[n];
+        final int[] colOf = new int[n];
+        final double[] valOf = new double[n];
+        final int[] counts = new int[authors.length + 1];
+        // The pruning norm counts every link, as AuthorSimilarity does
+        final double[] pruneNorms = new double[authors.length];
+        int i = 0;
+        for (AuthorTerm at : ats) {
+            int a = authorIds.getInt(at.getAuthorId());
+            int t = termIds.getInt(at.getTermId());
+            if (t < 0) {
+                t = termIds.size();
+                termIds.put(at.getTermId(), t);
+            }
+            rowOf[i] = a;
+            colOf[i] = t;
+            valOf[i] = at.getScore();
+            pruneNorms[a] += at.getScore() * at.getScore();
+            counts[a + 1]++;
+            i++;
+        }
+        for (int a = 0; a < authors.length; a++) {
+            counts[a + 1] += counts[a];
+            pruneNorms[a] = Math.sqrt(pruneNorms[a]);
+        }
+        final int nTerms = termIds.size();
+
+        // Candidate pruning: the top authors by normalized score for each term
+        final List<TopNList<Integer>> byTerm = new ArrayList<>(nTerms);
+        for (int t = 0; t < nTerms; t++) {
+            byTerm.add(new TopNList<Integer>(candidatesPerTerm));
+        }
+        for (i = 0; i < n; i++) {
+            byTerm.get(colOf[i]).offer(rowOf[i], Math.abs(valOf[i]) / pruneNorms[rowOf[i]]);
+        }
+        final int[][] candidates = new int[nTerms][];
+        for (int t = 0; t < nTerms; t++) {
+            final TopNList<Integer> l = byTerm.get(t);
+            candidates[t] = new int[l.size()];
+            int k = 0;
+            for (Integer a : l) {
+                candidates[t][k++] = a;
+            }
+        }
+
+        // Stable bucket sort by author, then sort each row by term dropping
+        // duplicates (last one wins)
+        final int[] order = new int[n];
+        final int[] fill = Arrays.copyOf(counts, authors.length);
+        for (i = 0; i < n; i++) {
+            order[fill[rowOf[i]]++] = i;
+        }
+        final int[] authorPtr = new int[authors.length + 1];
+        final int[] authorTerms = new int[n];
+        final double[] authorScores = new double[n];
+        int nnz = 0;
+        for (int a = 0; a < authors.length; a++) {
+            int from = counts[a], to = counts[a + 1];
+            long[] keys = new long[to - from];
+            for (int j = from; j < to; j++) {
+                keys[j - from] = ((long) colOf[order[j]] << 32) | order[j];
+            }
+            Arrays.sort(keys);
+            for (int j = 0; j < keys.length; j++) {
+                int t = (int) (keys[j] >>> 32);
+                if (j + 1 < keys.length && (int) (keys[j + 1] >>> 32) == t) {
+                    continue;
+                }
+                authorTerms[nnz] = t;
+                authorScores[nnz++] = valOf[(int) keys[j]];
+            }
+            authorPtr[a + 1] = nnz;
+        }
+        return new SparseAuthorSimilarity(authors, nTerms, authorPtr,
+                Arrays.copyOf(authorTerms, nnz), Arrays.copyOf(authorScores, nnz), candidates);
+    }
+
+    /**
+     * Calculate the most similar authors for each author
+     *
+     * @param threshold The minimum similarity (exclusive)
+     * @param topN The maximum number of similar authors per author
+     * @param saffronDatasetName The name of the run
+     * @param pool The pool to execute the computation on
+     * @return The list of similar authors, grouped by the first author and in
+     * ascending order of similarity within each group
+     */
+    public List<AuthorAuthor> topN(double threshold, int topN, String saffronDatasetName, ForkJoinPool pool) {
+        @SuppressWarnings("unchecked")
+        final List<AuthorAuthor>[] results = new List[authors.length];
+        pool.invoke(new TopNTask(0, authors.length, threshold, topN, saffronDatasetName, results));
+        final List<AuthorAuthor> authorAuthors = new ArrayList<>();
+        for (List<AuthorAuthor> r : results) {
+            authorAuthors.addAll(r);
+        }
+        return authorAuthors;
+    }
+
+    private class TopNTask extends RecursiveAction {
+
+        private final int from, to;
+        private final double threshold;
+        private final int topN;
+        private final String saffronDatasetName;
+        private final List<AuthorAuthor>[] results;
+
+        TopNTask(int from, int to, double threshold, int topN, String saffronDatasetName, List<AuthorAuthor>[] results) {
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.topN = topN;
+            this.saffronDatasetName = saffronDatasetName;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new TopNTask(from, mid, threshold, topN, saffronDatasetName, results),
+                        new TopNTask(mid, to, threshold, topN, saffronDatasetName, results));
+            } else {
+                final double[] dense = new double[nTerms];
+                final int[] seen = new int[authors.length];
+                final Heap heap = new Heap(topN);
+                for (int a1 = from; a1 < to; a1++) {
+                    results[a1] = similarTo(a1, dense, seen, heap, threshold, saffronDatasetName);
+                }
+            }
+        }
+    }
+
+    private List<AuthorAuthor> similarTo(int a1, double[] dense, int[] seen, Heap heap,
+            double threshold, String saffronDatasetName) {
+        heap.clear();
+        for (int j = authorPtr[a1]; j < authorPtr[a1 + 1]; j++) {
+            dense[authorTerms[j]] = authorScores[j];
+        }
+        // seen[a2] == a1 + 1 marks a2 as already scored against a1
+        seen[a1] = a1 + 1;
+        final double aa = norms2[a1];
+        for (int j = authorPtr[a1]; j < authorPtr[a1 + 1]; j++) {
+            for (int a2 : candidates[authorTerms[j]]) {
+                if (seen[a2] == a1 + 1) {
+                    continue;
+                }
+                seen[a2] = a1 + 1;
+                final double bb = norms2[a2];
+                final double s;
+                if (aa == 0 || bb == 0) {
+                    s = 0.0;
+                } else {
+                    double ab = 0.0;
+                    for (int k = authorPtr[a2]; k < authorPtr[a2 + 1]; k++) {
+                        ab += dense[authorTerms[k]] * authorScores[k];
+                    }
+                    s = ab / Math.sqrt(aa * bb);
+                }
+                if (s > threshold) {
+                    heap.offer(a2, s);
+                }
+            }
+        }
+        for (int j = authorPtr[a1]; j < authorPtr[a1 + 1]; j++) {
+            dense[authorTerms[j]] = 0.0;
+        }
+        return heap.drain(authors[a1], authors, saffronDatasetName);
+    }
+
+    /**
+     * A bounded min-heap of author ids ordered by score and then by id (which
+     * is the lexicographic order of the author ids).
+     */
+    private static class Heap {
+
+        private final int capacity;
+        private final int[] ids;
+        private final double[] scores;
+        private int size;
+
+        Heap(int capacity) {
+            this.capacity = capacity;
+            this.ids = new int[capacity];
+            this.scores = new double[capacity];
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        private boolean less(int i, int j) {
+            int c = Double.compare(scores[i], scores[j]);
+            return c < 0 || (c == 0 && ids[i] < ids[j]);
+        }
+
+        private void swap(int i, int j) {
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+            double s = scores[i];
+            scores[i] = scores[j];
+            scores[j] = s;
+        }
+
+        void offer(int id, double score) {
+            if (capacity == 0) {
+                return;
+            }
+            if (size < capacity) {
+                ids[size] = id;
+                scores[size] = score;
+                int i = size++;
+                while (i > 0 && less(i, (i - 1) / 2)) {
+                    swap(i, (i - 1) / 2);
+                    i = (i - 1) / 2;
+                }
+            } else {
+                int c = Double.compare(score, scores[0]);
+                if (c < 0 || (c == 0 && id < ids[0])) {
+                    return;
+                }
+                ids[0] = id;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int l = 2 * i + 1, r = l + 1, m = i;
+                if (l < size && less(l, m)) {
+                    m = l;
+                }
+                if (r < size && less(r, m)) {
+                    m = r;
+                }
+                if (m == i) {
+                    return;
+                }
+                swap(i, m);
+                i = m;
+            }
+        }
+
+        List<AuthorAuthor> drain(String a1, String[] authors, String saffronDatasetName) {
+            final AuthorAuthor[] out = new AuthorAuthor[size];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = new AuthorAuthor(a1, authors[ids[0]], scores[0], saffronDatasetName,
+                        new HashMap<String, String>(), saffronDatasetName);
+                ids[0] = ids[size - 1];
+                scores[0] = scores[size - 1];
+                size--;
+                siftDown(0);
+            }
+            return Arrays.asList(out);
+        }
+    }
+}
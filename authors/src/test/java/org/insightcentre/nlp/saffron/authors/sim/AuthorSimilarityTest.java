@@ -2,7 +2,10 @@ package org.insightcentre.nlp.saffron.authors.sim;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
 import org.insightcentre.nlp.saffron.SaffronListener;
 import org.insightcentre.nlp.saffron.config.AuthorSimilarityConfiguration;
 import org.insightcentre.nlp.saffron.data.connections.AuthorAuthor;
@@ -66,5 +69,48 @@ public class AuthorSimilarityTest {
         
     }
 
+    /**
+     * The sparse algorithm should give the same result as the simple one
+     */
+    @Test
+    public void testSparseMatchesSimple() {
+        System.out.println("sparseMatchesSimple");
+        Random r = new Random(42);
+        List<AuthorTerm> ats = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            ats.add(makeAuthorTerm("Author " + r.nextInt(200), "Term " + r.nextInt(100), r.nextDouble()));
+        }
+        AuthorSimilarityConfiguration config = new AuthorSimilarityConfiguration();
+        config.topN = 5;
+        config.algorithm = AuthorSimilarityConfiguration.Algorithm.simple;
+        List<AuthorAuthor> expected = new AuthorSimilarity(config).authorSimilarity(ats, "saffron");
+        config.algorithm = AuthorSimilarityConfiguration.Algorithm.sparse;
+        List<AuthorAuthor> result = new AuthorSimilarity(config).authorSimilarity(ats, "saffron");
+        Comparator<AuthorAuthor> order = new Comparator<AuthorAuthor>() {
+            @Override
+            public int compare(AuthorAuthor o1, AuthorAuthor o2) {
+                int i = o1.author1_id.compareTo(o2.author1_id);
+                return i == 0 ? o1.author2_id.compareTo(o2.author2_id) : i;
+            }
+        };
+        Collections.sort(expected, order);
+        Collections.sort(result, order);
+        assertEquals(expected.size(), result.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).author1_id, result.get(i).author1_id);
+            assertEquals(expected.get(i).author2_id, result.get(i).author2_id);
+            assertEquals(expected.get(i).similarity, result.get(i).similarity, 1e-9);
+        }
+    }
 
-}
\ No newline at end of file
+    /**
+     * Test that a configuration without an algorithm is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoAlgorithm() {
+        System.out.println("noAlgorithm");
+        AuthorSimilarityConfiguration config = new AuthorSimilarityConfiguration();
+        config.algorithm = null;
+        new AuthorSimilarity(config);
+    }
+}
@@ -14,4 +14,14 @@ public class AuthorSimilarityConfiguration {
      * The maximum number of similar authors (per author) to extract
      */
     public int topN = 50;
+    /**
+     * The implementation to use for calculating similarity
+     */
+    public Algorithm algorithm = Algorithm.sparse;
+
+    /**
+     * Enumeration of the author similarity implementations. Both give the same
+     * result, the sparse algorithm uses interned ids and runs in parallel.
+     */
+    public enum Algorithm { simple, sparse };
 }
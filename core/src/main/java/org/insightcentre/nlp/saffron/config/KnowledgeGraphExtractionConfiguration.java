@@ -28,4 +28,13 @@ public class KnowledgeGraphExtractionConfiguration {
 	public boolean enableSynonymyNormalisation = false;
 
 	public boolean returnRDF = false;
+
+	/** The number of term pairs evaluated together by the relation classifier */
+	public int batchSize = 256;
+
+	/** The maximum number of term embeddings kept in memory */
+	public int embeddingCacheSize = 10000;
+
+	/** If set, all term embeddings are computed up front and stored in this (memory-mapped) file */
+	public SaffronPath embeddingFile = null;
 }
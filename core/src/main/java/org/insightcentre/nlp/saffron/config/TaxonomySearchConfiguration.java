@@ -14,6 +14,16 @@ public class TaxonomySearchConfiguration {
      * (Beam search only) The size of the beam to use in the beam search
      */
     public int beamSize = 20;
+    /**
+     * (Beam search only) The number of threads to expand the beam with, or 0
+     * to use all cores
+     */
+    public int beamThreads = 1;
+    /**
+     * (MST only) The number of best candidate parents to keep for each term,
+     * or 0 to use all pairs of terms
+     */
+    public int mstTopK = 0;
     /**
      * The scoring function to optimize
      */
@@ -32,14 +42,14 @@ public class TaxonomySearchConfiguration {
     public double alpha = 0.01;
     
     /** Enumeration of the algorithms to use */
-    public enum Algorithm { greedy, beam, mst };
+    public enum Algorithm { greedy, lazyGreedy, beam, mst };
     
     /** Enumeration of the scoring methods */
     public enum Score { simple, transitive, bhattacharryaPoisson };
 
     @Override
     public String toString() {
-        return "TaxonomySearchConfiguration{" + "algorithm=" + algorithm + ", beamSize=" + beamSize + ", score=" + score + ", baseScore=" + baseScore + ", aveChildren=" + aveChildren + ", alpha=" + alpha + '}';
+        return "TaxonomySearchConfiguration{" + "algorithm=" + algorithm + ", beamSize=" + beamSize + ", beamThreads=" + beamThreads + ", mstTopK=" + mstTopK + ", score=" + score + ", baseScore=" + baseScore + ", aveChildren=" + aveChildren + ", alpha=" + alpha + '}';
     }
  
     
@@ -0,0 +1,209 @@
+package org.insightcentre.nlp.saffron.data.connections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.insightcentre.nlp.saffron.util.StringDictionary;
+
+/**
+ * A table of links between documents and terms, stored as columns of
+ * primitive values with the documents and terms given by their ids in a
+ * dictionary. This is much smaller than a list of {@link DocumentTerm}s and
+ * is used while processing a run, before converting back to
+ * {@link DocumentTerm}s for the output.
+ *
+ * @author John McCrae
+ */
+public class DocumentTermTable {
+
+    private final StringDictionary documents;
+    private final StringDictionary terms;
+    private int size = 0;
+    private int[] docIds = new int[16];
+    private int[] termIds = new int[16];
+    private int[] occurrences = new int[16];
+    private double[] tfidf = new double[16];
+    /* Only allocated if a row has a pattern or acronym, as these are rare */
+    private String[] patterns;
+    private String[] acronyms;
+
+    /**
+     * Create an empty table
+     *
+     * @param documents The dictionary of document ids
+     * @param terms The dictionary of terms
+     */
+    public DocumentTermTable(StringDictionary documents, StringDictionary terms) {
+        this.documents = documents;
+        this.terms = terms;
+    }
+
+    /**
+     * Create a table from a list of document-term links
+     *
+     * @param docTerms The links
+     * @return A table containing the same links in the same order
+     */
+    public static DocumentTermTable fromDocumentTerms(Iterable<DocumentTerm> docTerms) {
+        final DocumentTermTable table = new DocumentTermTable(new StringDictionary(), new StringDictionary());
+        for (DocumentTerm dt : docTerms) {
+            table.add(dt);
+        }
+        return table;
+    }
+
+    /**
+     * Add a link
+     *
+     * @param dt The link
+     */
+    public void add(DocumentTerm dt) {
+        add(documents.id(dt.getDocumentId()), terms.id(dt.getTermString()),
+                dt.getOccurrences(), dt.getPattern(), dt.getAcronym(), dt.getTfIdf());
+    }
+
+    /**
+     * Add a link
+     *
+     * @param docId The document's id in the document dictionary
+     * @param termId The term's id in the term dictionary
+     * @param occ The number of occurrences of the term in the document
+     * @param pattern The pattern (or null)
+     * @param acronym The acronym (or null)
+     * @param tfIdf The TF-IDF score (or null)
+     */
+    public void add(int docId, int termId, int occ, String pattern, String acronym, Double tfIdf) {
+        if (size == docIds.length) {
+            final int n = size * 2;
+            docIds = Arrays.copyOf(docIds, n);
+            termIds = Arrays.copyOf(termIds, n);
+            occurrences = Arrays.copyOf(occurrences, n);
+            tfidf = Arrays.copyOf(tfidf, n);
+            if (patterns != null) {
+                patterns = Arrays.copyOf(patterns, n);
+                acronyms = Arrays.copyOf(acronyms, n);
+            }
+        }
+        docIds[size] = docId;
+        termIds[size] = termId;
+        occurrences[size] = occ;
+        tfidf[size] = tfIdf == null ? Double.NaN : tfIdf;
+        if (pattern != null || acronym != null) {
+            if (patterns == null) {
+                patterns = new String[docIds.length];
+                acronyms = new String[docIds.length];
+            }
+            patterns[size] = pattern;
+            acronyms[size] = acronym;
+        }
+        size++;
+    }
+
+    /**
+     * The number of links in this table
+     *
+     * @return The number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    public StringDictionary getDocuments() {
+        return documents;
+    }
+
+    public StringDictionary getTerms() {
+        return terms;
+    }
+
+    public int docId(int row) {
+        return docIds[row];
+    }
+
+    public int termId(int row) {
+        return termIds[row];
+    }
+
+    public int occurrences(int row) {
+        return occurrences[row];
+    }
+
+    /**
+     * The TF-IDF score of a row
+     *
+     * @param row The row
+     * @return The score or NaN if there is no score
+     */
+    public double tfidf(int row) {
+        return tfidf[row];
+    }
+
+    /**
+     * Calculate the TF-IDF score of every row. This assumes that there are
+     * no duplicate links in the table.
+     */
+    public void addTfidf() {
+        final int[] df = new int[terms.size()];
+        final boolean[] seen = new boolean[documents.size()];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            df[termIds[i]]++;
+            if (!seen[docIds[i]]) {
+                seen[docIds[i]] = true;
+                n++;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            tfidf[i] = (double) occurrences[i] * Math.log((double) n / df[termIds[i]]);
+        }
+    }
+
+    /**
+     * The documents of each term, as rows of a compressed sparse matrix: the
+     * documents of term t are docs[offsets[t]] to docs[offsets[t + 1] - 1]
+     *
+     * @return An array of two elements, the offsets and the documents
+     */
+    public int[][] documentsByTerm() {
+        final int[] offsets = new int[terms.size() + 1];
+        for (int i = 0; i < size; i++) {
+            offsets[termIds[i] + 1]++;
+        }
+        for (int t = 0; t < terms.size(); t++) {
+            offsets[t + 1] += offsets[t];
+        }
+        final int[] fill = Arrays.copyOf(offsets, terms.size());
+        final int[] docs = new int[size];
+        for (int i = 0; i < size; i++) {
+            docs[fill[termIds[i]]++] = docIds[i];
+        }
+        return new int[][]{offsets, docs};
+    }
+
+    /**
+     * Convert a row to a document-term link. The strings are shared with the
+     * dictionaries.
+     *
+     * @param row The row
+     * @return The link
+     */
+    public DocumentTerm get(int row) {
+        return new DocumentTerm(documents.string(docIds[row]), terms.string(termIds[row]),
+                occurrences[row], patterns == null ? null : patterns[row],
+                acronyms == null ? null : acronyms[row],
+                Double.isNaN(tfidf[row]) ? null : tfidf[row]);
+    }
+
+    /**
+     * Convert this table to a list of document-term links
+     *
+     * @return The links in the order of the rows
+     */
+    public List<DocumentTerm> toDocumentTerms() {
+        final List<DocumentTerm> dts = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            dts.add(get(i));
+        }
+        return dts;
+    }
+}
@@ -0,0 +1,334 @@
+package org.insightcentre.nlp.saffron.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+/**
+ * A thread-safe, bounded LRU cache of embeddings (vectors of floats) keyed by
+ * a string, such as a term.
+ *
+ * Eviction is O(1), as the entries are kept in access order. If several
+ * threads ask for the same missing key at once, only one of them computes the
+ * embedding and the others wait for its result.
+ *
+ * The embeddings of a known set of keys can also be computed up front, in
+ * parallel batches, either into the cache or into a memory-mapped file that
+ * then serves these keys without counting towards the capacity.
+ *
+ * @author John McCrae
+ */
+public class EmbeddingCache {
+
+    private final int capacity;
+    private final LinkedHashMap<String, float[]> data;
+    private final ConcurrentHashMap<String, CompletableFuture<float[]>> pending = new ConcurrentHashMap<>();
+    private volatile MappedEmbeddings mapped;
+
+    /**
+     * Create a cache
+     *
+     * @param capacity The maximum number of embeddings held in memory
+     */
+    public EmbeddingCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative");
+        }
+        this.capacity = capacity;
+        this.data = new LinkedHashMap<String, float[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > EmbeddingCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Get the embedding for a key or use embed to compute it
+     *
+     * @param key The key
+     * @param embed The function that computes the embedding
+     * @return The result of embed.apply(key) possibly from the cache
+     */
+    public float[] get(String key, Function<String, float[]> embed) {
+        float[] v = lookup(key);
+        if (v != null) {
+            return v;
+        }
+        final CompletableFuture<float[]> f = new CompletableFuture<>();
+        final CompletableFuture<float[]> other = pending.putIfAbsent(key, f);
+        if (other != null) {
+            return join(other);
+        }
+        try {
+            // Another thread may have stored the key since the first lookup
+            v = lookup(key);
+            if (v == null) {
+                v = embed.apply(key);
+                synchronized (data) {
+                    data.put(key, v);
+                }
+            }
+            f.complete(v);
+            return v;
+        } catch (RuntimeException | Error x) {
+            f.completeExceptionally(x);
+            throw x;
+        } finally {
+            pending.remove(key, f);
+        }
+    }
+
+    private float[] lookup(String key) {
+        final MappedEmbeddings m = mapped;
+        if (m != null) {
+            float[] v = m.get(key);
+            if (v != null) {
+                return v;
+            }
+        }
+        synchronized (data) {
+            return data.get(key);
+        }
+    }
+
+    private static float[] join(CompletableFuture<float[]> f) {
+        try {
+            return f.join();
+        } catch (CompletionException x) {
+            if (x.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) x.getCause();
+            } else if (x.getCause() instanceof Error) {
+                throw (Error) x.getCause();
+            }
+            throw x;
+        }
+    }
+
+    /**
+     * Compute the embeddings of many keys in parallel and store them in this
+     * cache. Keys that are already cached are skipped and if there are more
+     * keys than the capacity of the cache only as many as fit are computed.
+     *
+     * @param keys The keys to embed
+     * @param embedBatch The function that embeds a batch of keys, returning
+     * the embeddings in the same order
+     * @param batchSize The number of keys in each batch
+     */
+    public void precompute(Iterable<String> keys, Function<List<String>, float[][]> embedBatch, int batchSize) {
+        checkBatchSize(batchSize);
+        final List<String> todo = missing(keys, capacity);
+        final float[][] vectors = new float[todo.size()][];
+        ForkJoinPool.commonPool().invoke(new EmbedTask(todo, 0, todo.size(), batchSize, embedBatch, (from, batch) -> {
+            System.arraycopy(batch, 0, vectors, from, batch.length);
+        }));
+        synchronized (data) {
+            for (int i = 0; i < vectors.length; i++) {
+                data.put(todo.get(i), vectors[i]);
+            }
+        }
+    }
+
+    /**
+     * Compute the embeddings of many keys in parallel and write them to a
+     * file, which is then memory-mapped and used to look up these keys. This
+     * replaces any embeddings mapped by a previous call, so every key is
+     * embedded again. All embeddings must have the same length.
+     *
+     * @param keys The keys to embed
+     * @param embedBatch The function that embeds a batch of keys, returning
+     * the embeddings in the same order
+     * @param batchSize The number of keys in each batch
+     * @param file The file to write the embeddings to (overwritten)
+     * @throws IOException If the file could not be written
+     */
+    public void precompute(Iterable<String> keys, Function<List<String>, float[][]> embedBatch, int batchSize,
+            File file) throws IOException {
+        checkBatchSize(batchSize);
+        final LinkedHashSet<String> distinct = new LinkedHashSet<>();
+        for (String key : keys) {
+            distinct.add(key);
+        }
+        final List<String> todo = new ArrayList<>(distinct);
+        if (todo.isEmpty()) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            final FileChannel channel = raf.getChannel();
+            // The first batch fixes the dimension of the file
+            final int first = Math.min(batchSize, todo.size());
+            final float[][] firstBatch = embedBatch.apply(todo.subList(0, first));
+            final int dim = firstBatch[0].length;
+            final MappedEmbeddings m = new MappedEmbeddings(dim);
+            m.write(channel, 0, firstBatch);
+            ForkJoinPool.commonPool().invoke(new EmbedTask(todo, first, todo.size(), batchSize, embedBatch, (from, batch) -> {
+                m.write(channel, from, batch);
+            }));
+            channel.force(false);
+            m.map(channel, todo);
+            mapped = m;
+        } catch (UncheckedIOException x) {
+            throw x.getCause();
+        }
+    }
+
+    private static void checkBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+    }
+
+    private List<String> missing(Iterable<String> keys, int limit) {
+        final LinkedHashSet<String> todo = new LinkedHashSet<>();
+        for (String key : keys) {
+            if (todo.size() >= limit) {
+                break;
+            }
+            if (lookup(key) == null) {
+                todo.add(key);
+            }
+        }
+        return new ArrayList<>(todo);
+    }
+
+    /**
+     * Invalidate the whole cache, including any memory-mapped embeddings
+     */
+    public void clear() {
+        synchronized (data) {
+            data.clear();
+        }
+        mapped = null;
+    }
+
+    /**
+     * The number of embeddings currently held in memory
+     *
+     * @return The number of cached values, not counting mapped embeddings
+     */
+    public int size() {
+        synchronized (data) {
+            return data.size();
+        }
+    }
+
+    private interface BatchSink {
+
+        void accept(int from, float[][] batch);
+    }
+
+    private static class EmbedTask extends RecursiveAction {
+
+        private final List<String> keys;
+        private final int from, to, batchSize;
+        private final Function<List<String>, float[][]> embedBatch;
+        private final BatchSink sink;
+
+        EmbedTask(List<String> keys, int from, int to, int batchSize,
+                Function<List<String>, float[][]> embedBatch, BatchSink sink) {
+            this.keys = keys;
+            this.from = from;
+            this.to = to;
+            this.batchSize = batchSize;
+            this.embedBatch = embedBatch;
+            this.sink = sink;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > batchSize) {
+                // Split on a batch boundary
+                final int batches = (to - from + batchSize - 1) / batchSize;
+                final int mid = from + batches / 2 * batchSize;
+                invokeAll(new EmbedTask(keys, from, mid, batchSize, embedBatch, sink),
+                        new EmbedTask(keys, mid, to, batchSize, embedBatch, sink));
+            } else if (to > from) {
+                final float[][] batch = embedBatch.apply(keys.subList(from, to));
+                if (batch.length != to - from) {
+                    throw new IllegalStateException("Embedding returned " + batch.length + " vectors for " + (to - from) + " keys");
+                }
+                sink.accept(from, batch);
+            }
+        }
+    }
+
+    /**
+     * Embeddings stored as rows of a float file. The file is mapped in chunks
+     * as a single mapping cannot exceed 2GB.
+     */
+    private static class MappedEmbeddings {
+
+        private final int dim;
+        private final int rowsPerChunk;
+        private final Map<String, Integer> rows = new HashMap<>();
+        private FloatBuffer[] chunks;
+
+        MappedEmbeddings(int dim) {
+            this.dim = dim;
+            this.rowsPerChunk = Math.max(1, Integer.MAX_VALUE / Math.max(1, dim * 4));
+        }
+
+        void write(FileChannel channel, int from, float[][] batch) {
+            final ByteBuffer bytes = ByteBuffer.allocate(batch.length * dim * 4).order(ByteOrder.nativeOrder());
+            final FloatBuffer floats = bytes.asFloatBuffer();
+            for (float[] v : batch) {
+                if (v.length != dim) {
+                    throw new IllegalArgumentException("Embeddings must all have length " + dim + " but got " + v.length);
+                }
+                floats.put(v);
+            }
+            long position = (long) from * dim * 4;
+            try {
+                while (bytes.hasRemaining()) {
+                    position += channel.write(bytes, position);
+                }
+            } catch (IOException x) {
+                throw new UncheckedIOException(x);
+            }
+        }
+
+        void map(FileChannel channel, List<String> keys) throws IOException {
+            final int n = keys.size();
+            chunks = new FloatBuffer[(n + rowsPerChunk - 1) / rowsPerChunk];
+            for (int c = 0; c < chunks.length; c++) {
+                final long start = (long) c * rowsPerChunk;
+                final long length = Math.min(rowsPerChunk, n - start) * dim * 4;
+                chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, start * dim * 4, length)
+                        .order(ByteOrder.nativeOrder()).asFloatBuffer();
+            }
+            for (int i = 0; i < n; i++) {
+                rows.put(keys.get(i), i);
+            }
+        }
+
+        float[] get(String key) {
+            final Integer row = rows.get(key);
+            if (row == null) {
+                return null;
+            }
+            final float[] v = new float[dim];
+            final FloatBuffer chunk = chunks[row / rowsPerChunk].duplicate();
+            chunk.position((row % rowsPerChunk) * dim);
+            chunk.get(v);
+            return v;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.insightcentre.nlp.saffron.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A mapping of strings (such as terms or document ids) to dense integer ids,
+ * from 0 to size() - 1 in the order the strings were added. Each string is
+ * stored once, so the strings returned by this dictionary can be shared
+ * instead of copied.
+ *
+ * This class is not thread-safe.
+ *
+ * @author John McCrae
+ */
+public class StringDictionary {
+
+    private final HashMap<String, Integer> ids = new HashMap<>();
+    private String[] strings = new String[16];
+
+    /**
+     * Get the id of a string, adding it to the dictionary if it is new
+     *
+     * @param s The string
+     * @return The id of the string
+     */
+    public int id(String s) {
+        final Integer i = ids.get(s);
+        if (i != null) {
+            return i;
+        }
+        final int n = ids.size();
+        if (n == strings.length) {
+            strings = Arrays.copyOf(strings, n * 2);
+        }
+        strings[n] = s;
+        ids.put(s, n);
+        return n;
+    }
+
+    /**
+     * Get the id of a string without adding it
+     *
+     * @param s The string
+     * @return The id or -1 if the string is not in the dictionary
+     */
+    public int get(String s) {
+        final Integer i = ids.get(s);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * Get the string with an id
+     *
+     * @param id The id
+     * @return The string
+     */
+    public String string(int id) {
+        if (id < 0 || id >= ids.size()) {
+            throw new IndexOutOfBoundsException("No string with id " + id);
+        }
+        return strings[id];
+    }
+
+    /**
+     * The number of strings in the dictionary
+     *
+     * @return The number of strings
+     */
+    public int size() {
+        return ids.size();
+    }
+}
@@ -0,0 +1,78 @@
+package org.insightcentre.nlp.saffron.data.connections;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class DocumentTermTableTest {
+
+    public DocumentTermTableTest() {
+    }
+
+    private static List<DocumentTerm> docTerms() {
+        return Arrays.asList(
+                new DocumentTerm("doc1", "term a", 3, null, null, null),
+                new DocumentTerm("doc1", "term b", 1, "pattern", "TB", null),
+                new DocumentTerm("doc2", "term a", 2, null, null, 0.5),
+                new DocumentTerm("doc3", "term c", 4, null, null, null));
+    }
+
+    /**
+     * Test that converting to and from a table gives the same links
+     */
+    @Test
+    public void testRoundTrip() {
+        System.out.println("roundTrip");
+        List<DocumentTerm> dts = docTerms();
+        DocumentTermTable table = DocumentTermTable.fromDocumentTerms(dts);
+        assertEquals(4, table.size());
+        assertEquals(3, table.getDocuments().size());
+        assertEquals(3, table.getTerms().size());
+        List<DocumentTerm> result = table.toDocumentTerms();
+        assertEquals(dts, result);
+        for (int i = 0; i < dts.size(); i++) {
+            assertEquals(dts.get(i).getOccurrences(), result.get(i).getOccurrences());
+            assertEquals(dts.get(i).getPattern(), result.get(i).getPattern());
+            assertEquals(dts.get(i).getAcronym(), result.get(i).getAcronym());
+            assertEquals(dts.get(i).getTfIdf(), result.get(i).getTfIdf());
+        }
+        // Strings are shared between rows
+        assertSame(result.get(0).getTermString(), result.get(2).getTermString());
+    }
+
+    /**
+     * Test of addTfidf method, of class DocumentTermTable.
+     */
+    @Test
+    public void testAddTfidf() {
+        System.out.println("addTfidf");
+        DocumentTermTable table = DocumentTermTable.fromDocumentTerms(docTerms());
+        table.addTfidf();
+        assertEquals(3 * Math.log(3.0 / 2), table.tfidf(0), 1e-9);
+        assertEquals(1 * Math.log(3.0), table.tfidf(1), 1e-9);
+        assertEquals(2 * Math.log(3.0 / 2), table.tfidf(2), 1e-9);
+        assertEquals(4 * Math.log(3.0), table.tfidf(3), 1e-9);
+    }
+
+    /**
+     * Test of documentsByTerm method, of class DocumentTermTable.
+     */
+    @Test
+    public void testDocumentsByTerm() {
+        System.out.println("documentsByTerm");
+        DocumentTermTable table = DocumentTermTable.fromDocumentTerms(docTerms());
+        int[][] csr = table.documentsByTerm();
+        int a = table.getTerms().get("term a");
+        assertArrayEquals(new int[]{table.getDocuments().get("doc1"), table.getDocuments().get("doc2")},
+                Arrays.copyOfRange(csr[1], csr[0][a], csr[0][a + 1]));
+        int c = table.getTerms().get("term c");
+        assertArrayEquals(new int[]{table.getDocuments().get("doc3")},
+                Arrays.copyOfRange(csr[1], csr[0][c], csr[0][c + 1]));
+        assertEquals(-1, table.getTerms().get("term d"));
+    }
+}
@@ -0,0 +1,148 @@
+package org.insightcentre.nlp.saffron.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class EmbeddingCacheTest {
+
+    public EmbeddingCacheTest() {
+    }
+
+    private static float[] embed(String s) {
+        return new float[]{s.length(), s.hashCode(), s.charAt(0)};
+    }
+
+    private static Function<List<String>, float[][]> embedAll(AtomicInteger count) {
+        return keys -> {
+            float[][] result = new float[keys.size()][];
+            for (int i = 0; i < result.length; i++) {
+                count.incrementAndGet();
+                result[i] = embed(keys.get(i));
+            }
+            return result;
+        };
+    }
+
+    private static List<String> keys(int n) {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            keys.add("term" + i);
+        }
+        return keys;
+    }
+
+    /**
+     * Test that the least recently used entries are evicted
+     */
+    @Test
+    public void testEviction() {
+        System.out.println("eviction");
+        AtomicInteger count = new AtomicInteger();
+        EmbeddingCache cache = new EmbeddingCache(2);
+        Function<String, float[]> f = s -> {
+            count.incrementAndGet();
+            return embed(s);
+        };
+        cache.get("a", f);
+        cache.get("b", f);
+        cache.get("a", f);
+        cache.get("c", f);
+        assertEquals(2, cache.size());
+        assertEquals(3, count.get());
+        cache.get("a", f);
+        assertEquals(3, count.get());
+        cache.get("b", f);
+        assertEquals(4, count.get());
+    }
+
+    /**
+     * Test that a key is only embedded once when many threads ask for it
+     */
+    @Test
+    public void testConcurrentGet() throws Exception {
+        System.out.println("concurrentGet");
+        AtomicInteger count = new AtomicInteger();
+        EmbeddingCache cache = new EmbeddingCache(100);
+        Function<String, float[]> f = s -> {
+            count.incrementAndGet();
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+            }
+            return embed(s);
+        };
+        ExecutorService service = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<float[]>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                final String key = "term" + (i % 4);
+                results.add(service.submit(() -> cache.get(key, f)));
+            }
+            for (int i = 0; i < 64; i++) {
+                assertArrayEquals(embed("term" + (i % 4)), results.get(i).get(), 0.0f);
+            }
+        } finally {
+            service.shutdown();
+        }
+        assertEquals(4, count.get());
+    }
+
+    /**
+     * Test of precompute method, of class EmbeddingCache.
+     */
+    @Test
+    public void testPrecompute() {
+        System.out.println("precompute");
+        AtomicInteger count = new AtomicInteger();
+        EmbeddingCache cache = new EmbeddingCache(1000);
+        List<String> keys = keys(500);
+        cache.precompute(keys, embedAll(count), 7);
+        assertEquals(500, cache.size());
+        assertEquals(500, count.get());
+        for (String key : keys) {
+            assertArrayEquals(embed(key), cache.get(key, s -> {
+                throw new AssertionError("Not precomputed: " + s);
+            }), 0.0f);
+        }
+    }
+
+    /**
+     * Test that precomputed embeddings can be served from a mapped file
+     */
+    @Test
+    public void testPrecomputeToFile() throws IOException {
+        System.out.println("precomputeToFile");
+        AtomicInteger count = new AtomicInteger();
+        EmbeddingCache cache = new EmbeddingCache(10);
+        List<String> keys = keys(500);
+        File file = File.createTempFile("embeddings", ".bin");
+        file.deleteOnExit();
+        cache.precompute(keys, embedAll(count), 16, file);
+        assertEquals(0, cache.size());
+        assertEquals(500, count.get());
+        assertEquals(500L * 3 * 4, file.length());
+        for (String key : keys) {
+            assertArrayEquals(embed(key), cache.get(key, s -> {
+                throw new AssertionError("Not precomputed: " + s);
+            }), 0.0f);
+        }
+        assertEquals(0, cache.size());
+    }
+}
@@ -2,10 +2,13 @@ package org.insightcentre.nlp.saffron.documentindex;
 
 import org.insightcentre.nlp.saffron.data.CollectionCorpus;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
@@ -17,6 +20,7 @@ import org.apache.commons.collections4.iterators.FilterIterator;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.utils.IOUtils;
 import org.insightcentre.nlp.saffron.data.Author;
 import org.insightcentre.nlp.saffron.data.Corpus;
 import org.insightcentre.nlp.saffron.data.Document;
@@ -45,6 +49,22 @@ public class CorpusTools {
      * @throws IllegalArgumentException If the file type was not recognized
      */
     public static Corpus readFile(File file) throws IOException {
+        return readFile(file, 1, true);
+    }
+
+    /**
+     * Read a file from disk, as {@link #readFile(java.io.File)}, parsing the
+     * documents of tarballs, ZIP files and directories in parallel
+     *
+     * @param file The file to read
+     * @param threads The number of threads used to parse documents
+     * @param preserveOrder Whether the documents are returned in the order of
+     * the file or as soon as they are parsed
+     * @return The corpus object
+     * @throws IOException If the file could not be read
+     * @throws IllegalArgumentException If the file type was not recognized
+     */
+    public static Corpus readFile(File file, int threads, boolean preserveOrder) throws IOException {
         if (file.getName().endsWith(".json")) {
             return fromJson(file);
         } else if (file.getName().endsWith(".json.gz")) {
@@ -52,15 +72,15 @@ public class CorpusTools {
                     new GZIPInputStream(new FileInputStream(file)),
                     CollectionCorpus.class);
         } else if (file.getName().endsWith(".tar.gz") || file.getName().endsWith(".tgz")) {
-            return fromTarball(file);
+            return fromTarball(file, null, threads, preserveOrder);
         } else if (file.getName().endsWith(".zip")) {
-            return fromZIP(file);
+            return fromZIP(file, threads, preserveOrder);
         } else if (file.isDirectory()) {
             File indexFile = new File(file, "segments.gen");
             if(indexFile.exists()) {
                 throw new RuntimeException("Since 4.0 we don't support Lucene indexes");
             } else {
-                return fromFolder(file);
+                return fromFolder(file, threads, preserveOrder);
             }
         } else {
             throw new IllegalArgumentException("Could not deduce corpus type for: " + file.getName());
@@ -90,10 +110,24 @@ public class CorpusTools {
      * @return A corpus object
      */
     public static Corpus fromFolder(File folder) {
+        return fromFolder(folder, 1, true);
+    }
+
+    /**
+     * Create a corpus from a folder, each file will be considered a single
+     * document
+     *
+     * @param folder The folder
+     * @param threads The number of threads used to parse documents
+     * @param preserveOrder Whether the documents are returned in the order of
+     * the folder or as soon as they are parsed
+     * @return A corpus object
+     */
+    public static Corpus fromFolder(File folder, int threads, boolean preserveOrder) {
         if (!folder.exists() && !folder.isDirectory()) {
             throw new IllegalArgumentException(folder.getName() + " does not exist or is not a folder");
         }
-        return new FolderCorpus(folder);
+        return new FolderCorpus(folder, threads, preserveOrder);
     }
 
     public static class FolderIterator implements Iterator<File> {
@@ -153,9 +187,13 @@ public class CorpusTools {
     private static class FolderCorpus implements Corpus {
 
         private final File folder;
+        private final int threads;
+        private final boolean preserveOrder;
 
-        public FolderCorpus(File folder) {
+        public FolderCorpus(File folder, int threads, boolean preserveOrder) {
             this.folder = folder;
+            this.threads = threads;
+            this.preserveOrder = preserveOrder;
         }
 
         @Override
@@ -164,6 +202,11 @@ public class CorpusTools {
                 @Override
                 public Iterator<Document> iterator() {
                     final FolderIterator iter = new FolderIterator(folder.listFiles());
+                    if (threads > 1) {
+                        return ParallelIngest.iterator(Iterators.transform(iter, f -> () -> {
+                            return DocumentAnalyzer.analyze(f, f.getName().replaceAll("/|\\\\", "_"));
+                        }), threads, preserveOrder);
+                    }
                     return new Iterator<Document>() {
                         @Override
                         public boolean hasNext() {
@@ -216,15 +259,32 @@ public class CorpusTools {
      * @return A corpus object
      */
     public static Corpus fromJsonFiles(File jsonFile) {
-        return new JSONCorpus(jsonFile);
+        return fromJsonFiles(jsonFile, 1, true);
+    }
+
+    /**
+     * Create a corpus from a json file which contains a reference to a file location
+     *
+     * @param jsonFile The json file
+     * @param threads The number of threads used to parse documents
+     * @param preserveOrder Whether the documents are returned in the order of
+     * the json file or as soon as they are parsed
+     * @return A corpus object
+     */
+    public static Corpus fromJsonFiles(File jsonFile, int threads, boolean preserveOrder) {
+        return new JSONCorpus(jsonFile, threads, preserveOrder);
     }
 
     private static class JSONCorpus implements Corpus {
 
         private final List<File> jsonFile;
+        private final int threads;
+        private final boolean preserveOrder;
         List<Author> authors;
 
-        public JSONCorpus(File jsonFile) {
+        public JSONCorpus(File jsonFile, int threads, boolean preserveOrder) {
+            this.threads = threads;
+            this.preserveOrder = preserveOrder;
             List<File> jsonFileList = new ArrayList<>();
             Corpus corpus = null;
             try {
@@ -244,6 +304,12 @@ public class CorpusTools {
         @Override
         public Iterable<Document> getDocuments() {
 
+            if (threads > 1) {
+                return () -> ParallelIngest.iterator(Iterators.transform(
+                        Iterators.filter(jsonFile.iterator(), f -> !f.isDirectory()), f -> () -> {
+                            return DocumentAnalyzer.analyze(f, f.getName().replaceAll("/|\\\\", "_"), authors);
+                        }), threads, preserveOrder);
+            }
             return () -> {
                 try {
                     final Enumeration<? extends File> zes = Collections.enumeration(jsonFile);
@@ -301,18 +367,36 @@ public class CorpusTools {
      * @return A corpus object
      */
     public static Corpus fromZIP(File zipFile) {
+        return fromZIP(zipFile, 1, true);
+    }
+
+    /**
+     * Create a corpus from a zip file, each file will be considered a single
+     * document
+     *
+     * @param zipFile The zip file
+     * @param threads The number of threads used to parse documents
+     * @param preserveOrder Whether the documents are returned in the order of
+     * the zip file or as soon as they are parsed
+     * @return A corpus object
+     */
+    public static Corpus fromZIP(File zipFile, int threads, boolean preserveOrder) {
         if (!zipFile.exists() && zipFile.isDirectory()) {
             throw new IllegalArgumentException(zipFile.getName() + " does not exist or is a folder");
         }
-        return new ZIPCorpus(zipFile);
+        return new ZIPCorpus(zipFile, threads, preserveOrder);
     }
 
     private static class ZIPCorpus implements Corpus {
 
         private final File zipFile;
+        private final int threads;
+        private final boolean preserveOrder;
 
-        public ZIPCorpus(File zipFile) {
+        public ZIPCorpus(File zipFile, int threads, boolean preserveOrder) {
             this.zipFile = zipFile;
+            this.threads = threads;
+            this.preserveOrder = preserveOrder;
         }
 
         @Override
@@ -324,6 +408,14 @@ public class CorpusTools {
                     try {
                         final ZipFile zip = new ZipFile(zipFile);
                         final Enumeration<? extends ZipEntry> zes = zip.entries();
+                        if (threads > 1) {
+                            return ParallelIngest.iterator(Iterators.transform(
+                                    Iterators.filter(Iterators.forEnumeration(zes), ze -> !ze.isDirectory()), ze -> () -> {
+                                        try (InputStream in = zip.getInputStream(ze)) {
+                                            return DocumentAnalyzer.analyze(in, ze.getName().replaceAll("/|\\\\", "_"));
+                                        }
+                                    }), threads, preserveOrder);
+                        }
                         return new FilterIterator<>(
                                 new Iterator<Document>() {
                             File file = null;
@@ -399,23 +491,43 @@ public class CorpusTools {
      * @return A corpus object
      */
     public static Corpus fromTarball(File zipFile, File targetDir) {
+        return fromTarball(zipFile, targetDir, 1, true);
+    }
+
+    /**
+     * Create a corpus from a tarball (.tar.gz) file, each file will be
+     * considered a single document. The tarball is read sequentially, but the
+     * documents are parsed in parallel
+     *
+     * @param zipFile The zip file
+     * @param targetDir The directory to unzip files to
+     * @param threads The number of threads used to parse documents
+     * @param preserveOrder Whether the documents are returned in the order of
+     * the tarball or as soon as they are parsed
+     * @return A corpus object
+     */
+    public static Corpus fromTarball(File zipFile, File targetDir, int threads, boolean preserveOrder) {
         if (!zipFile.exists() && zipFile.isDirectory()) {
             throw new IllegalArgumentException(zipFile.getName() + " does not exist or is a folder");
         }
         if (targetDir != null && !targetDir.mkdirs() && !targetDir.isDirectory()) {
             throw new IllegalArgumentException(targetDir.getName() + " could not be created as a file");
         }
-        return new TarballCorpus(zipFile, targetDir);
+        return new TarballCorpus(zipFile, targetDir, threads, preserveOrder);
     }
 
     private static class TarballCorpus implements Corpus {
 
         private final File zipFile;
         private final File targetDir;
+        private final int threads;
+        private final boolean preserveOrder;
 
-        public TarballCorpus(File zipFile, File targetDir) {
+        public TarballCorpus(File zipFile, File targetDir, int threads, boolean preserveOrder) {
             this.zipFile = zipFile;
             this.targetDir = targetDir;
+            this.threads = threads;
+            this.preserveOrder = preserveOrder;
         }
 
         @Override
@@ -426,6 +538,9 @@ public class CorpusTools {
                 public Iterator<Document> iterator() {
                     try {
                         final TarArchiveInputStream tais = new TarArchiveInputStream(new GzipCompressorInputStream(new FileInputStream(zipFile)));
+                        if (threads > 1) {
+                            return ParallelIngest.iterator(new TarballTasks(tais), threads, preserveOrder);
+                        }
 
                         return new Iterator<Document>() {
                             File file = null;
@@ -502,6 +617,69 @@ public class CorpusTools {
         
     }
 
+    /**
+     * Reads the entries of a tarball (sequentially, as it is a stream) into
+     * tasks that parse them
+     */
+    private static class TarballTasks implements Iterator<Callable<Document>> {
+
+        private final TarArchiveInputStream tais;
+        private TarArchiveEntry tae;
+
+        public TarballTasks(TarArchiveInputStream tais) {
+            this.tais = tais;
+        }
+
+        private void advance() {
+            try {
+                if (tae == null) {
+                    tae = tais.getNextTarEntry();
+                }
+                while (tae != null && !tae.isFile()) {
+                    tae = tais.getNextTarEntry();
+                }
+            } catch (IOException x) {
+                throw new RuntimeException(x);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            advance();
+            return tae != null;
+        }
+
+        @Override
+        public Callable<Document> next() {
+            advance();
+            if (tae == null) {
+                throw new NoSuchElementException();
+            }
+            try {
+                final String name = tae.getName().replace(File.separator, "_");
+                final byte[] data = IOUtils.toByteArray(tais);
+                tae = null;
+                return () -> DocumentAnalyzer.analyze(new ByteArrayInputStream(data), name);
+            } catch (IOException x) {
+                throw new RuntimeException(x);
+            }
+        }
+    }
+
+    /**
+     * Materialize a corpus, so that the documents are only extracted on the
+     * first pass and are then read from a segment file
+     *
+     * @param corpus The corpus to materialize
+     * @param segment The segment file to write (overwritten)
+     * @param compress Whether to compress the documents in the segment
+     * @return A corpus object that reads from the segment after the first pass
+     * @throws IOException If the segment file could not be created
+     */
+    public static MaterializedCorpus materialize(Corpus corpus, File segment, boolean compress) throws IOException {
+        return MaterializedCorpus.create(corpus, segment, compress);
+    }
+
     /**
      * Create a corpus from a collection
      * @param documents The document collection
@@ -0,0 +1,403 @@
+package org.insightcentre.nlp.saffron.documentindex;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.insightcentre.nlp.saffron.data.Corpus;
+import org.insightcentre.nlp.saffron.data.Document;
+
+/**
+ * A corpus whose documents have been extracted once (e.g., by Tika) and are
+ * then read back from a segment file, so that later passes over the corpus do
+ * not need to parse the original files again.
+ *
+ * The segment is built during the first complete pass over the source corpus.
+ * It starts with a short header and then contains one record per document,
+ * appended in the order of the source corpus:
+ * <pre>
+ * int    length of the rest of the record
+ * UTF    document id
+ * int    length of the JSON serialization of the document
+ * byte[] the JSON serialization, deflated if the segment is compressed
+ * </pre>
+ * The offset of each record is kept in an index, so documents can also be
+ * looked up by id. If the same id occurs more than once, the last record is
+ * returned.
+ *
+ * @author John McCrae
+ */
+public class MaterializedCorpus implements Corpus, Closeable {
+
+    private static final byte[] MAGIC = {'S', 'F', 'S', 'G'};
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = MAGIC.length + 2;
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /* Released once the segment is complete */
+    private volatile Corpus source;
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final boolean compressed;
+    private long[] offsets = new long[16];
+    private int n = 0;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private long length;
+    /* Incremented when a pass starts writing, so only one pass writes */
+    private int generation = 0;
+    private volatile boolean complete;
+
+    private MaterializedCorpus(Corpus source, File file, RandomAccessFile raf, boolean compressed) {
+        this.source = source;
+        this.file = file;
+        this.raf = raf;
+        this.channel = raf.getChannel();
+        this.compressed = compressed;
+    }
+
+    /**
+     * Create a materialized corpus, which will be written on the first pass
+     * over the source corpus
+     *
+     * @param source The corpus to materialize
+     * @param file The segment file (overwritten)
+     * @param compress Whether to deflate the documents in the segment
+     * @return The materialized corpus
+     * @throws IOException If the segment cannot be created
+     */
+    public static MaterializedCorpus create(Corpus source, File file, boolean compress) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        final MaterializedCorpus corpus = new MaterializedCorpus(source, file, raf, compress);
+        corpus.reset();
+        return corpus;
+    }
+
+    /**
+     * Open a segment that was written by a previous run
+     *
+     * @param file The segment file
+     * @return The materialized corpus
+     * @throws IOException If the file cannot be read or is not a segment
+     */
+    public static MaterializedCorpus open(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final byte[] header = new byte[HEADER_SIZE];
+            raf.readFully(header);
+            if (!Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC) || header[MAGIC.length] != VERSION) {
+                throw new IOException(file.getName() + " is not a corpus segment");
+            }
+            final MaterializedCorpus corpus = new MaterializedCorpus(null, file, raf, header[MAGIC.length + 1] != 0);
+            final long size = raf.length();
+            long offset = HEADER_SIZE;
+            while (offset < size) {
+                raf.seek(offset);
+                final int recordLength = raf.readInt();
+                corpus.index(raf.readUTF(), offset);
+                offset += 4 + recordLength;
+            }
+            if (offset != size) {
+                throw new EOFException("Truncated record in " + file.getName());
+            }
+            corpus.length = size;
+            corpus.complete = true;
+            return corpus;
+        } catch (IOException | RuntimeException x) {
+            raf.close();
+            throw x;
+        }
+    }
+
+    private void reset() throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC).put(VERSION).put((byte) (compressed ? 1 : 0)).flip();
+        raf.setLength(0);
+        write(header, 0);
+        length = HEADER_SIZE;
+        n = 0;
+        ids.clear();
+    }
+
+    private void write(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+    }
+
+    private void index(String id, long offset) {
+        if (n == offsets.length) {
+            offsets = Arrays.copyOf(offsets, n * 2);
+        }
+        offsets[n] = offset;
+        ids.put(id, n++);
+    }
+
+    private synchronized Iterator<Document> startPass() throws IOException {
+        if (complete) {
+            return new SegmentIterator(n);
+        }
+        reset();
+        return new WritingIterator(source.getDocuments().iterator(), ++generation);
+    }
+
+    private synchronized void append(int pass, Document doc) throws IOException {
+        if (pass != generation || complete) {
+            return;
+        }
+        byte[] json = mapper.writeValueAsBytes(doc);
+        final int rawLength = json.length;
+        if (compressed) {
+            json = deflate(json);
+        }
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(json.length + doc.id.length() + 16);
+        final DataOutputStream out = new DataOutputStream(baos);
+        out.writeInt(0);
+        out.writeUTF(doc.id);
+        out.writeInt(rawLength);
+        out.write(json);
+        out.flush();
+        final ByteBuffer buf = ByteBuffer.wrap(baos.toByteArray());
+        buf.putInt(0, buf.remaining() - 4);
+        final long offset = length;
+        write(buf, offset);
+        length = offset + buf.limit();
+        index(doc.id, offset);
+    }
+
+    private synchronized void finish(int pass) {
+        if (pass == generation) {
+            complete = true;
+            source = null;
+        }
+    }
+
+    private static byte[] deflate(byte[] data) {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+            final byte[] buf = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data, int rawLength) throws IOException {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            final byte[] result = new byte[rawLength];
+            int read = 0;
+            while (read < rawLength && !inflater.finished()) {
+                final int m = inflater.inflate(result, read, rawLength - read);
+                if (m == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += m;
+            }
+            if (read != rawLength) {
+                throw new IOException("Corrupt record in corpus segment");
+            }
+            return result;
+        } catch (DataFormatException x) {
+            throw new IOException(x);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private Document read(long offset) throws IOException {
+        final ByteBuffer len = ByteBuffer.allocate(4);
+        read(len, offset);
+        final ByteBuffer record = ByteBuffer.allocate(len.getInt(0));
+        read(record, offset + 4);
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.array()));
+        in.readUTF();
+        final int rawLength = in.readInt();
+        byte[] json = new byte[in.available()];
+        in.readFully(json);
+        if (compressed) {
+            json = inflate(json, rawLength);
+        }
+        return mapper.readValue(json, Document.class);
+    }
+
+    private void read(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            final int m = channel.read(buf, position);
+            if (m < 0) {
+                throw new EOFException("Truncated record in " + file.getName());
+            }
+            position += m;
+        }
+    }
+
+    /**
+     * Copy a document so that its text is held in memory. This loads the
+     * contents of the document, if they have not been loaded.
+     */
+    private static Document load(Document d) {
+        String contents;
+        try {
+            contents = d.contents();
+        } catch (IllegalArgumentException x) {
+            contents = null;
+        }
+        return new Document(d.file, d.id, d.url, d.name, d.mimeType, d.authors,
+                d.metadata, contents, d.date);
+    }
+
+    /**
+     * Check if the segment has been completely written, so that the documents
+     * are read from it
+     *
+     * @return True if the first pass over the corpus has finished
+     */
+    @JsonIgnore
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * The segment file
+     *
+     * @return The file backing this corpus
+     */
+    @JsonIgnore
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Look up a document in the segment
+     *
+     * @param id The document's identifier
+     * @return The document or null if there is no such document (or the
+     * segment is not complete yet)
+     */
+    public Document getDocument(String id) {
+        if (!complete) {
+            return null;
+        }
+        final Integer i = ids.get(id);
+        if (i == null) {
+            return null;
+        }
+        try {
+            return read(offsets[i]);
+        } catch (IOException x) {
+            throw new UncheckedIOException(x);
+        }
+    }
+
+    @Override
+    public Iterable<Document> getDocuments() {
+        return new Iterable<Document>() {
+            @Override
+            public Iterator<Document> iterator() {
+                if (complete) {
+                    return new SegmentIterator(n);
+                }
+                try {
+                    return startPass();
+                } catch (IOException x) {
+                    throw new UncheckedIOException(x);
+                }
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        final Corpus s = source;
+        return s == null ? n : s.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        raf.close();
+    }
+
+    private class SegmentIterator implements Iterator<Document> {
+
+        private final int size;
+        private int i = 0;
+
+        SegmentIterator(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return i < size;
+        }
+
+        @Override
+        public Document next() {
+            if (i >= size) {
+                throw new NoSuchElementException();
+            }
+            try {
+                return read(offsets[i++]);
+            } catch (IOException x) {
+                throw new UncheckedIOException(x);
+            }
+        }
+    }
+
+    private class WritingIterator implements Iterator<Document> {
+
+        private final Iterator<Document> iter;
+        private final int pass;
+
+        WritingIterator(Iterator<Document> iter, int pass) {
+            this.iter = iter;
+            this.pass = pass;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (iter.hasNext()) {
+                return true;
+            }
+            finish(pass);
+            return false;
+        }
+
+        @Override
+        public Document next() {
+            final Document d = load(iter.next());
+            try {
+                append(pass, d);
+            } catch (IOException x) {
+                throw new UncheckedIOException(x);
+            }
+            return d;
+        }
+    }
+}
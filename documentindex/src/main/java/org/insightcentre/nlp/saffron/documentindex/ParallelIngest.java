@@ -0,0 +1,134 @@
+package org.insightcentre.nlp.saffron.documentindex;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.insightcentre.nlp.saffron.data.Document;
+
+/**
+ * Parses documents on a pool of worker threads, while they are consumed by a
+ * single iterator.
+ *
+ * The iterator pulls parsing tasks from the source (so any sequential reading,
+ * e.g., of a tarball, happens on the consumer's thread) and keeps at most a
+ * fixed window of them in flight. Thus, the workers never get more than a
+ * window ahead of the consumer. The documents are returned either in the
+ * order of the source or in the order they are finished.
+ *
+ * @author John McCrae
+ */
+class ParallelIngest {
+
+    /* How many tasks per thread may be in flight */
+    private static final int WINDOW_PER_THREAD = 2;
+
+    private ParallelIngest() {
+    }
+
+    /**
+     * Parse documents in parallel
+     *
+     * @param tasks The tasks that parse each document
+     * @param threads The number of worker threads
+     * @param preserveOrder If true the documents are returned in the order of
+     * the tasks, otherwise as soon as they are ready
+     * @return An iterator over the parsed documents
+     */
+    static Iterator<Document> iterator(Iterator<Callable<Document>> tasks, int threads, boolean preserveOrder) {
+        return new ParallelIterator(tasks, threads, preserveOrder);
+    }
+
+    private static class ParallelIterator implements Iterator<Document> {
+
+        private final Iterator<Callable<Document>> tasks;
+        private final ThreadPoolExecutor pool;
+        private final int window;
+        private final boolean preserveOrder;
+        /* The tasks in submission order (if the order is preserved) */
+        private final ArrayDeque<Future<Document>> inFlight = new ArrayDeque<>();
+        /* The tasks in order of completion (otherwise) */
+        private final LinkedBlockingQueue<Future<Document>> done = new LinkedBlockingQueue<>();
+        private int pending = 0;
+
+        ParallelIterator(Iterator<Callable<Document>> tasks, int threads, boolean preserveOrder) {
+            this.tasks = tasks;
+            this.window = threads * WINDOW_PER_THREAD;
+            this.preserveOrder = preserveOrder;
+            this.pool = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(window), r -> {
+                        Thread t = new Thread(r, "saffron-ingest");
+                        t.setDaemon(true);
+                        return t;
+                    }, new ThreadPoolExecutor.CallerRunsPolicy());
+            // Idle workers exit, even if the iterator is not exhausted
+            this.pool.allowCoreThreadTimeOut(true);
+        }
+
+        private void fill() {
+            while (pending < window && tasks.hasNext()) {
+                final Callable<Document> task = tasks.next();
+                final FutureTask<Document> f = new FutureTask<Document>(task) {
+                    @Override
+                    protected void done() {
+                        if (!preserveOrder) {
+                            ParallelIterator.this.done.add(this);
+                        }
+                    }
+                };
+                if (preserveOrder) {
+                    inFlight.add(f);
+                }
+                pending++;
+                pool.execute(f);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            fill();
+            if (pending == 0) {
+                pool.shutdown();
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public Document next() {
+            fill();
+            if (pending == 0) {
+                throw new NoSuchElementException();
+            }
+            final Future<Document> f;
+            try {
+                if (preserveOrder) {
+                    f = inFlight.poll();
+                } else {
+                    f = done.take();
+                }
+                pending--;
+                return f.get();
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+                pool.shutdownNow();
+                throw new RuntimeException(x);
+            } catch (ExecutionException x) {
+                pool.shutdownNow();
+                if (x.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) x.getCause();
+                } else if (x.getCause() instanceof Error) {
+                    throw (Error) x.getCause();
+                }
+                throw new RuntimeException(x.getCause());
+            }
+        }
+    }
+}
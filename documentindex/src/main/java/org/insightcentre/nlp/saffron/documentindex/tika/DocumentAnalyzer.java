@@ -24,6 +24,9 @@ import org.xml.sax.SAXException;
  */
 public class DocumentAnalyzer {
 
+    /* Parsers are reused by each thread, as they are costly to set up */
+    private static final ThreadLocal<AutoDetectParser> PARSER = ThreadLocal.withInitial(AutoDetectParser::new);
+
     public static String removeLigatures(String s) {
         return s.replaceAll("\ufb00", "ff").
                 replaceAll("\ufb03", "ffi").
@@ -34,12 +37,10 @@ public class DocumentAnalyzer {
     }
 
     public static Document analyze(File f, String id) throws IOException {
-        AutoDetectParser parser = new AutoDetectParser();
+        AutoDetectParser parser = PARSER.get();
         BodyContentHandler handler = new BodyContentHandler(-1);
         Metadata metadata = new Metadata();
-        final InputStream stream;
-            stream = TikaInputStream.get(f.toPath());
-        try {
+        try (InputStream stream = TikaInputStream.get(f.toPath())) {
             parser.parse(stream, handler, metadata);
         } catch (SAXException | TikaException ex) {
             throw new IOException(ex);
@@ -68,12 +69,10 @@ public class DocumentAnalyzer {
     }
 
     public static Document analyze(File f, String id, List<Author> authorsList) throws IOException {
-        AutoDetectParser parser = new AutoDetectParser();
+        AutoDetectParser parser = PARSER.get();
         BodyContentHandler handler = new BodyContentHandler(-1);
         Metadata metadata = new Metadata();
-        final InputStream stream;
-        stream = TikaInputStream.get(f.toPath());
-        try {
+        try (InputStream stream = TikaInputStream.get(f.toPath())) {
             parser.parse(stream, handler, metadata);
         } catch (SAXException | TikaException ex) {
             throw new IOException(ex);
@@ -94,7 +93,7 @@ public class DocumentAnalyzer {
     }
     
     public static Document analyze(InputStream stream, String id) throws IOException {
-        AutoDetectParser parser = new AutoDetectParser();
+        AutoDetectParser parser = PARSER.get();
         BodyContentHandler handler = new BodyContentHandler(-1);
         Metadata metadata = new Metadata();
         try {
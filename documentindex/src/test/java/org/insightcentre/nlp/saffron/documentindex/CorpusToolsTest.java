@@ -3,6 +3,10 @@ package org.insightcentre.nlp.saffron.documentindex;
 import com.google.common.io.Files;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import org.insightcentre.nlp.saffron.data.Corpus;
 import org.insightcentre.nlp.saffron.data.Document;
 import org.insightcentre.nlp.saffron.documentindex.CorpusTools.FolderIterator;
@@ -117,5 +121,29 @@ public class CorpusToolsTest {
         assertEquals(8, files);
         assert(found);
     }
-    
+
+    private static List<String> documents(Corpus corpus) {
+        List<String> docs = new ArrayList<>();
+        for (Document d : corpus.getDocuments()) {
+            docs.add(d.id + ":" + d.contents());
+        }
+        return docs;
+    }
+
+    /**
+     * Test that parsing in parallel gives the same documents
+     */
+    @Test
+    public void testParallel() throws IOException {
+        System.out.println("parallel");
+        for (String name : Arrays.asList("corpus", "corpus.zip", "corpus.tar.gz")) {
+            File file = new File("src/test/resources/" + name);
+            List<String> expected = documents(CorpusTools.readFile(file));
+            assertEquals(expected, documents(CorpusTools.readFile(file, 4, true)));
+            List<String> unordered = documents(CorpusTools.readFile(file, 4, false));
+            Collections.sort(unordered);
+            Collections.sort(expected);
+            assertEquals(expected, unordered);
+        }
+    }
 }
@@ -0,0 +1,139 @@
+package org.insightcentre.nlp.saffron.documentindex;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.insightcentre.nlp.saffron.data.Author;
+import org.insightcentre.nlp.saffron.data.Corpus;
+import org.insightcentre.nlp.saffron.data.Document;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class MaterializedCorpusTest {
+
+    public MaterializedCorpusTest() {
+    }
+
+    /**
+     * A corpus that counts how many times its documents are extracted
+     */
+    private static class CountingCorpus implements Corpus {
+
+        final AtomicInteger extracted = new AtomicInteger();
+        final int size;
+
+        CountingCorpus(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public Iterable<Document> getDocuments() {
+            return () -> new Iterator<Document>() {
+                int i = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return i < size;
+                }
+
+                @Override
+                public Document next() {
+                    extracted.incrementAndGet();
+                    int j = i++;
+                    return new Document(null, "doc" + j, null, "Document " + j, "text/plain",
+                            Arrays.asList(new Author("Author " + (j % 3))), Collections.EMPTY_MAP,
+                            "The contents of document " + j, null);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private static List<String> contents(Corpus corpus) {
+        List<String> result = new ArrayList<>();
+        for (Document d : corpus.getDocuments()) {
+            result.add(d.id + ":" + d.name + ":" + d.authors.get(0).name + ":" + d.contents());
+        }
+        return result;
+    }
+
+    private void testPasses(boolean compress) throws IOException {
+        File file = File.createTempFile("corpus", ".seg");
+        file.deleteOnExit();
+        CountingCorpus source = new CountingCorpus(50);
+        try (MaterializedCorpus corpus = CorpusTools.materialize(source, file, compress)) {
+            assertFalse(corpus.isComplete());
+            List<String> expected = contents(source);
+            source.extracted.set(0);
+            assertEquals(expected, contents(corpus));
+            assertTrue(corpus.isComplete());
+            assertEquals(50, source.extracted.get());
+            assertEquals(expected, contents(corpus));
+            assertEquals(expected, contents(corpus));
+            assertEquals(50, source.extracted.get());
+            assertEquals(50, corpus.size());
+            assertEquals("The contents of document 17", corpus.getDocument("doc17").contents());
+            assertNull(corpus.getDocument("doc50"));
+        }
+        try (MaterializedCorpus corpus = MaterializedCorpus.open(file)) {
+            assertTrue(corpus.isComplete());
+            assertEquals(50, corpus.size());
+            assertEquals(contents(source), contents(corpus));
+            assertEquals("Author 1", corpus.getDocument("doc4").authors.get(0).name);
+        }
+    }
+
+    /**
+     * Test that the documents are only extracted on the first pass
+     */
+    @Test
+    public void testPasses() throws IOException {
+        System.out.println("passes");
+        testPasses(false);
+    }
+
+    /**
+     * Test the same with a compressed segment
+     */
+    @Test
+    public void testCompressed() throws IOException {
+        System.out.println("compressed");
+        testPasses(true);
+    }
+
+    /**
+     * An abandoned pass does not leave an incomplete segment
+     */
+    @Test
+    public void testAbandonedPass() throws IOException {
+        System.out.println("abandonedPass");
+        File file = File.createTempFile("corpus", ".seg");
+        file.deleteOnExit();
+        CountingCorpus source = new CountingCorpus(10);
+        try (MaterializedCorpus corpus = CorpusTools.materialize(source, file, true)) {
+            Iterator<Document> iter = corpus.getDocuments().iterator();
+            iter.next();
+            iter.next();
+            assertFalse(corpus.isComplete());
+            assertEquals(10, contents(corpus).size());
+            assertTrue(corpus.isComplete());
+            assertEquals(10, corpus.size());
+            // The old pass is not written to the segment
+            iter.next();
+            assertEquals(10, contents(corpus).size());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.insightcentre.nlp.saffron.perf;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A single benchmark, that is a piece of code and the values of the
+ * parameters it is run with. The data for the benchmark is created by
+ * {@link Setup#setUp()}, which is not timed.
+ *
+ * @author John McCrae
+ */
+public class Benchmark {
+
+    /**
+     * The timed code of a benchmark
+     */
+    public interface Invocation {
+
+        /**
+         * Run the benchmark once
+         *
+         * @param bh Consumes the results
+         * @return The number of operations that were performed, e.g., the
+         * number of documents processed
+         * @throws Exception If the benchmark fails
+         */
+        int run(Blackhole bh) throws Exception;
+    }
+
+    /**
+     * Creates the data for a benchmark
+     */
+    public interface Setup {
+
+        /**
+         * Create the data for the benchmark
+         *
+         * @return The timed code
+         * @throws Exception If the data could not be created
+         */
+        Invocation setUp() throws Exception;
+    }
+
+    /** The name of the benchmark */
+    public final String name;
+    /** The parameters of the benchmark */
+    public final Map<String, String> params;
+    private final Setup setup;
+
+    /**
+     * Create a benchmark
+     *
+     * @param name The name, by convention the class and method that are
+     * benchmarked
+     * @param params The values of the parameters, in pairs of name and value
+     * @param setup Creates the data and the timed code
+     */
+    public Benchmark(String name, Setup setup, String... params) {
+        if (params.length % 2 != 0) {
+            throw new IllegalArgumentException("Parameters must be given as name and value");
+        }
+        this.name = name;
+        final Map<String, String> p = new LinkedHashMap<>();
+        for (int i = 0; i < params.length; i += 2) {
+            p.put(params[i], params[i + 1]);
+        }
+        this.params = Collections.unmodifiableMap(p);
+        this.setup = setup;
+    }
+
+    /**
+     * Create the data for this benchmark
+     *
+     * @return The timed code
+     * @throws Exception If the data could not be created
+     */
+    public Invocation setUp() throws Exception {
+        return setup.setUp();
+    }
+
+    @Override
+    public String toString() {
+        return params.isEmpty() ? name : name + params;
+    }
+}
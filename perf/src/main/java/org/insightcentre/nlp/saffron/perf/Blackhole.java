@@ -0,0 +1,50 @@
+package org.insightcentre.nlp.saffron.perf;
+
+/**
+ * Consumes the results of a benchmark, so that the JIT compiler cannot remove
+ * the code that calculates them.
+ *
+ * @author John McCrae
+ */
+public final class Blackhole {
+
+    private volatile Object objectBait = new Object();
+    private volatile long longBait = System.nanoTime();
+    private volatile double doubleBait = Double.NaN;
+    private Object sink;
+
+    /**
+     * Consume an object
+     *
+     * @param o The object
+     */
+    public void consume(Object o) {
+        // Never true, but the compiler cannot prove that
+        if (o == objectBait) {
+            sink = o;
+        }
+    }
+
+    /**
+     * Consume an integer value
+     *
+     * @param l The value
+     */
+    public void consume(long l) {
+        if (l == longBait) {
+            sink = l;
+        }
+    }
+
+    /**
+     * Consume a floating point value
+     *
+     * @param d The value
+     */
+    public void consume(double d) {
+        // NaN is not equal to anything
+        if (d == doubleBait) {
+            sink = d;
+        }
+    }
+}
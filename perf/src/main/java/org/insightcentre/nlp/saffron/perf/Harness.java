@@ -0,0 +1,214 @@
+package org.insightcentre.nlp.saffron.perf;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs benchmarks and reports the average time per operation. Each benchmark
+ * is run for a number of warmup iterations, whose times are discarded, and
+ * then for a number of measured iterations. An iteration calls the benchmark
+ * repeatedly until the iteration time has passed (and at least once).
+ *
+ * The results are written in the JSON format of JMH, so that the same tools
+ * can be used to compare runs.
+ *
+ * @author John McCrae
+ */
+public class Harness {
+
+    /* Quantiles of the t-distribution for a 99.9% confidence interval */
+    private static final double[] T_999 = {
+        636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+        4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+        3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646
+    };
+    /* The time between reading the clock when the benchmark is very fast */
+    private static final long BATCH_NANOS = 100000;
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationMillis;
+    private final TimeUnit unit;
+
+    /**
+     * Create a harness
+     *
+     * @param warmupIterations The number of iterations before measuring
+     * @param measurementIterations The number of measured iterations
+     * @param iterationMillis The (minimum) length of each iteration
+     * @param unit The unit to report the time per operation in
+     */
+    public Harness(int warmupIterations, int measurementIterations, long iterationMillis, TimeUnit unit) {
+        if (measurementIterations < 1) {
+            throw new IllegalArgumentException("At least one iteration must be measured");
+        }
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationMillis = iterationMillis;
+        this.unit = unit;
+    }
+
+    /**
+     * The result of a single benchmark
+     */
+    public static class Result {
+
+        /** The benchmark */
+        public final Benchmark benchmark;
+        /** The mean time per operation */
+        public final double score;
+        /** The half-width of the 99.9% confidence interval of the score */
+        public final double scoreError;
+        /** The time per operation of each measured iteration */
+        public final double[] rawData;
+
+        public Result(Benchmark benchmark, double score, double scoreError, double[] rawData) {
+            this.benchmark = benchmark;
+            this.score = score;
+            this.scoreError = scoreError;
+            this.rawData = rawData;
+        }
+    }
+
+    /**
+     * Run a list of benchmarks
+     *
+     * @param benchmarks The benchmarks
+     * @param log The stream to report progress to (or null)
+     * @return The results, in the same order as the benchmarks
+     * @throws Exception If a benchmark fails
+     */
+    public List<Result> run(List<Benchmark> benchmarks, PrintStream log) throws Exception {
+        final List<Result> results = new ArrayList<>();
+        for (Benchmark b : benchmarks) {
+            final Result r = run(b);
+            if (log != null) {
+                log.println(String.format("%-80s %12.3f +/- %10.3f %s/op", b, r.score, r.scoreError, unitName()));
+            }
+            results.add(r);
+        }
+        return results;
+    }
+
+    /**
+     * Run a single benchmark
+     *
+     * @param benchmark The benchmark
+     * @return The result
+     * @throws Exception If the benchmark fails
+     */
+    public Result run(Benchmark benchmark) throws Exception {
+        final Benchmark.Invocation invocation = benchmark.setUp();
+        final Blackhole bh = new Blackhole();
+        // Do not count the garbage of the setup (or previous benchmarks)
+        System.gc();
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(invocation, bh);
+        }
+        final double[] raw = new double[measurementIterations];
+        for (int i = 0; i < measurementIterations; i++) {
+            raw[i] = iteration(invocation, bh);
+        }
+        double mean = 0.0;
+        for (double x : raw) {
+            mean += x;
+        }
+        mean /= raw.length;
+        double error = Double.NaN;
+        if (raw.length > 1) {
+            double var = 0.0;
+            for (double x : raw) {
+                var += (x - mean) * (x - mean);
+            }
+            var /= raw.length - 1;
+            final double t = raw.length - 1 <= T_999.length ? T_999[raw.length - 2] : 3.291;
+            error = t * Math.sqrt(var / raw.length);
+        }
+        return new Result(benchmark, mean, error, raw);
+    }
+
+    /**
+     * Run one iteration
+     *
+     * @return The time per operation in the unit of this harness
+     */
+    private double iteration(Benchmark.Invocation invocation, Blackhole bh) throws Exception {
+        final long iterationNanos = TimeUnit.MILLISECONDS.toNanos(iterationMillis);
+        long ops = 0;
+        int batch = 1;
+        final long start = System.nanoTime();
+        long now = start;
+        do {
+            for (int i = 0; i < batch; i++) {
+                ops += invocation.run(bh);
+            }
+            final long t = System.nanoTime();
+            // Read the clock less often for fast benchmarks
+            if (t - now < BATCH_NANOS && batch < (1 << 20)) {
+                batch *= 2;
+            }
+            now = t;
+        } while (now - start < iterationNanos);
+        return (double) (now - start) / Math.max(ops, 1) / unit.toNanos(1);
+    }
+
+    private String unitName() {
+        switch (unit) {
+            case NANOSECONDS:
+                return "ns";
+            case MICROSECONDS:
+                return "us";
+            case MILLISECONDS:
+                return "ms";
+            case SECONDS:
+                return "s";
+            default:
+                return unit.toString().toLowerCase();
+        }
+    }
+
+    /**
+     * Write results in the JSON format of JMH
+     *
+     * @param results The results
+     * @param file The file to write to
+     * @throws IOException If the file could not be written
+     */
+    public void write(List<Result> results, File file) throws IOException {
+        final List<Map<String, Object>> json = new ArrayList<>();
+        for (Result r : results) {
+            final Map<String, Object> m = new LinkedHashMap<>();
+            m.put("benchmark", r.benchmark.name);
+            m.put("mode", "avgt");
+            m.put("threads", 1);
+            m.put("forks", 0);
+            m.put("jvm", System.getProperty("java.home"));
+            m.put("jdkVersion", System.getProperty("java.version"));
+            m.put("warmupIterations", warmupIterations);
+            m.put("warmupTime", iterationMillis + " ms");
+            m.put("measurementIterations", measurementIterations);
+            m.put("measurementTime", iterationMillis + " ms");
+            if (!r.benchmark.params.isEmpty()) {
+                m.put("params", r.benchmark.params);
+            }
+            final Map<String, Object> metric = new LinkedHashMap<>();
+            metric.put("score", r.score);
+            metric.put("scoreError", Double.isNaN(r.scoreError) ? "NaN" : r.scoreError);
+            metric.put("scoreConfidence", Double.isNaN(r.scoreError)
+                    ? new Object[]{"NaN", "NaN"}
+                    : new double[]{r.score - r.scoreError, r.score + r.scoreError});
+            metric.put("scoreUnit", unitName() + "/op");
+            metric.put("rawData", new double[][]{r.rawData});
+            m.put("primaryMetric", metric);
+            json.add(m);
+        }
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, json);
+    }
+}
@@ -0,0 +1,397 @@
+package org.insightcentre.nlp.saffron.perf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import opennlp.tools.postag.POSTagger;
+import opennlp.tools.tokenize.SimpleTokenizer;
+import opennlp.tools.tokenize.Tokenizer;
+import org.insightcentre.nlp.saffron.DefaultSaffronListener;
+import org.insightcentre.nlp.saffron.authors.ConsolidateAuthors;
+import org.insightcentre.nlp.saffron.authors.sim.AuthorSimilarity;
+import org.insightcentre.nlp.saffron.config.AuthorSimilarityConfiguration;
+import org.insightcentre.nlp.saffron.config.TermExtractionConfiguration;
+import org.insightcentre.nlp.saffron.config.TermSimilarityConfiguration;
+import org.insightcentre.nlp.saffron.data.Author;
+import org.insightcentre.nlp.saffron.data.Document;
+import org.insightcentre.nlp.saffron.data.Taxonomy;
+import org.insightcentre.nlp.saffron.data.Term;
+import org.insightcentre.nlp.saffron.data.connections.AuthorTerm;
+import org.insightcentre.nlp.saffron.data.connections.DocumentTerm;
+import org.insightcentre.nlp.saffron.taxonomy.metrics.SumScore;
+import org.insightcentre.nlp.saffron.taxonomy.search.BeamSearch;
+import org.insightcentre.nlp.saffron.taxonomy.search.Greedy;
+import org.insightcentre.nlp.saffron.taxonomy.search.TaxonomySolution;
+import org.insightcentre.nlp.saffron.taxonomy.supervised.BinaryRelationClassifier;
+import org.insightcentre.nlp.saffron.taxonomy.supervised.MSTTaxoExtract;
+import org.insightcentre.nlp.saffron.term.CasingStats;
+import org.insightcentre.nlp.saffron.term.Features;
+import org.insightcentre.nlp.saffron.term.FrequencyStats;
+import org.insightcentre.nlp.saffron.term.InclusionStats;
+import org.insightcentre.nlp.saffron.term.Lazy;
+import org.insightcentre.nlp.saffron.term.TermExtractionTask;
+import org.insightcentre.nlp.saffron.topic.topicsim.TermSimilarity;
+
+/**
+ * Throughput benchmarks of the main steps of the pipeline, so that
+ * performance regressions between releases can be found. The results are
+ * written as JSON in the format of JMH.
+ *
+ * @author John McCrae
+ */
+public class SaffronBenchmarks {
+
+    /** The features that only depend on the frequency statistics */
+    private static final TermExtractionConfiguration.Feature[] FEATURES = {
+        TermExtractionConfiguration.Feature.weirdness,
+        TermExtractionConfiguration.Feature.avgTermFreq,
+        TermExtractionConfiguration.Feature.termFreq,
+        TermExtractionConfiguration.Feature.residualIdf,
+        TermExtractionConfiguration.Feature.totalTfIdf,
+        TermExtractionConfiguration.Feature.cValue,
+        TermExtractionConfiguration.Feature.basic,
+        TermExtractionConfiguration.Feature.comboBasic,
+        TermExtractionConfiguration.Feature.relevance
+    };
+
+    private final Workloads workloads;
+    private final File corpus;
+    private final int[] taxonomySizes;
+
+    /**
+     * Create the benchmarks
+     *
+     * @param seed The seed of the synthetic data
+     * @param corpus A text file or folder of text files to extract terms from,
+     * or null to use a synthetic corpus
+     * @param taxonomySizes The numbers of terms to run the taxonomy search with
+     */
+    public SaffronBenchmarks(long seed, File corpus, int[] taxonomySizes) {
+        this.workloads = new Workloads(seed);
+        this.corpus = corpus;
+        this.taxonomySizes = taxonomySizes;
+    }
+
+    /**
+     * Create all the benchmarks
+     *
+     * @return The benchmarks
+     */
+    public List<Benchmark> benchmarks() {
+        final List<Benchmark> benchmarks = new ArrayList<>();
+        final String corpusName = corpus == null ? "synthetic" : corpus.getName();
+        benchmarks.add(new Benchmark("TermExtractionTask.run", () -> termExtraction(),
+                "corpus", corpusName));
+        for (TermExtractionConfiguration.Feature feat : FEATURES) {
+            benchmarks.add(new Benchmark("Features.calcFeature", () -> calcFeature(feat),
+                    "feature", feat.toString()));
+        }
+        for (int docs : new int[]{1000, 10000}) {
+            benchmarks.add(new Benchmark("TermSimilarity.termSimilarity", () -> termSimilarity(docs),
+                    "documents", Integer.toString(docs)));
+        }
+        for (AuthorSimilarityConfiguration.Algorithm alg : AuthorSimilarityConfiguration.Algorithm.values()) {
+            benchmarks.add(new Benchmark("AuthorSimilarity.authorSimilarity", () -> authorSimilarity(alg, 1000),
+                    "algorithm", alg.toString(), "authors", "1000"));
+        }
+        for (int authors : new int[]{1000, 5000}) {
+            benchmarks.add(new Benchmark("ConsolidateAuthors.consolidate", () -> consolidateAuthors(authors),
+                    "authors", Integer.toString(authors)));
+        }
+        for (int n : taxonomySizes) {
+            benchmarks.add(new Benchmark("Greedy.extractTaxonomy", () -> greedy(n),
+                    "terms", Integer.toString(n)));
+        }
+        for (int n : taxonomySizes) {
+            benchmarks.add(new Benchmark("BeamSearch.extractTaxonomy", () -> beamSearch(n, 5, null),
+                    "terms", Integer.toString(n), "beamSize", "5", "threads", "1"));
+            benchmarks.add(new Benchmark("BeamSearch.extractTaxonomy", () -> beamSearch(n, 5, ForkJoinPool.commonPool()),
+                    "terms", Integer.toString(n), "beamSize", "5",
+                    "threads", Integer.toString(ForkJoinPool.commonPool().getParallelism())));
+        }
+        for (int n : taxonomySizes) {
+            benchmarks.add(new Benchmark("MSTTaxoExtract.extractTaxonomy", () -> mst(n, 0, null),
+                    "terms", Integer.toString(n), "topK", "0", "threads", "1"));
+            benchmarks.add(new Benchmark("MSTTaxoExtract.extractTaxonomy", () -> mst(n, 0, ForkJoinPool.commonPool()),
+                    "terms", Integer.toString(n), "topK", "0",
+                    "threads", Integer.toString(ForkJoinPool.commonPool().getParallelism())));
+            benchmarks.add(new Benchmark("MSTTaxoExtract.extractTaxonomy", () -> mst(n, 10, ForkJoinPool.commonPool()),
+                    "terms", Integer.toString(n), "topK", "10",
+                    "threads", Integer.toString(ForkJoinPool.commonPool().getParallelism())));
+        }
+        for (int n : taxonomySizes) {
+            benchmarks.add(new Benchmark("TaxonomySolution.add", () -> taxonomySolutionAdd(n),
+                    "terms", Integer.toString(n)));
+        }
+        for (int n : new int[]{100, 1000, 10000}) {
+            benchmarks.add(new Benchmark("Taxonomy.descendent", () -> descendent(n),
+                    "terms", Integer.toString(n)));
+        }
+        return benchmarks;
+    }
+
+    private List<Document> documents() throws IOException {
+        return corpus == null ? workloads.documents(500, 20, 2000) : Workloads.fixture(corpus);
+    }
+
+    private static <X> ThreadLocal<X> threadLocal(X x) {
+        return ThreadLocal.withInitial(() -> x);
+    }
+
+    private static TermExtractionTask termExtractionTask(Document doc,
+            FrequencyStats summary, ConcurrentLinkedQueue<DocumentTerm> docTerms,
+            CasingStats casing) {
+        final TermExtractionConfiguration config = new TermExtractionConfiguration();
+        return new TermExtractionTask(doc, threadLocal((POSTagger) new Workloads.SuffixTagger()),
+                null, threadLocal((Tokenizer) SimpleTokenizer.INSTANCE),
+                new HashSet<>(Arrays.asList(TermExtractionConfiguration.ENGLISH_STOPWORDS)),
+                config.ngramMin, config.ngramMax, config.preceedingTokens,
+                config.middleTokens, config.headTokens, config.headTokenFinal,
+                summary, docTerms, casing, new HashSet<String>(), null, (List<String>) null, null);
+    }
+
+    /* Term extraction of a single document */
+    private Benchmark.Invocation termExtraction() throws IOException {
+        final List<Document> docs = documents();
+        final FrequencyStats summary = new FrequencyStats();
+        final ConcurrentLinkedQueue<DocumentTerm> docTerms = new ConcurrentLinkedQueue<>();
+        final CasingStats casing = new CasingStats();
+        final int[] next = new int[1];
+        return bh -> {
+            termExtractionTask(docs.get(next[0]++ % docs.size()), summary, docTerms, casing).run();
+            // The frequencies are bounded by the vocabulary but the links are not
+            if (docTerms.size() > 100000) {
+                docTerms.clear();
+            }
+            bh.consume(summary);
+            return 1;
+        };
+    }
+
+    private static FrequencyStats extract(List<Document> docs) {
+        final FrequencyStats summary = new FrequencyStats();
+        final CasingStats casing = new CasingStats();
+        for (Document doc : docs) {
+            termExtractionTask(doc, summary, null, casing).run();
+        }
+        return summary;
+    }
+
+    /* A feature for each of (up to) 1000 terms */
+    private Benchmark.Invocation calcFeature(TermExtractionConfiguration.Feature feat) throws Exception {
+        final FrequencyStats stats = extract(documents());
+        final FrequencyStats refStats = extract(new Workloads(~0L).documents(500, 20, 2000));
+        final InclusionStats inclStats = new InclusionStats(stats.termFrequency);
+        final Lazy<FrequencyStats> ref = new Lazy<FrequencyStats>() {
+            @Override
+            protected FrequencyStats init() {
+                return refStats;
+            }
+        };
+        final Lazy<InclusionStats> incl = new Lazy<InclusionStats>() {
+            @Override
+            protected InclusionStats init() {
+                return inclStats;
+            }
+        };
+        final List<String> allTerms = new ArrayList<>(stats.termFrequency.keySet());
+        allTerms.sort(null);
+        Collections.shuffle(allTerms, new Random(0));
+        final String[] terms = allTerms.subList(0, Math.min(1000, allTerms.size())).toArray(new String[0]);
+        final DefaultSaffronListener log = new DefaultSaffronListener();
+        return bh -> {
+            for (String term : terms) {
+                bh.consume(Features.calcFeature(feat, term, stats, ref, incl, null, null, null, log));
+            }
+            return terms.length;
+        };
+    }
+
+    private Benchmark.Invocation termSimilarity(int docs) {
+        final List<DocumentTerm> dts = workloads.documentTerms(docs, 2000, 20);
+        final TermSimilarity termSim = new TermSimilarity(new TermSimilarityConfiguration());
+        final DefaultSaffronListener log = new DefaultSaffronListener();
+        return bh -> {
+            bh.consume(termSim.termSimilarity(dts, log));
+            return 1;
+        };
+    }
+
+    private Benchmark.Invocation authorSimilarity(AuthorSimilarityConfiguration.Algorithm alg, int authors) {
+        final Collection<AuthorTerm> ats = workloads.authorTerms(authors, 2000, 30);
+        final AuthorSimilarityConfiguration config = new AuthorSimilarityConfiguration();
+        config.algorithm = alg;
+        final AuthorSimilarity authorSim = new AuthorSimilarity(config);
+        final DefaultSaffronListener log = new DefaultSaffronListener();
+        return bh -> {
+            bh.consume(authorSim.authorSimilarity(ats, "benchmark", log));
+            return 1;
+        };
+    }
+
+    private Benchmark.Invocation consolidateAuthors(int n) throws IOException {
+        final List<Author> authors = workloads.authors(n);
+        final ConsolidateAuthors consolidate = new ConsolidateAuthors();
+        final DefaultSaffronListener log = new DefaultSaffronListener();
+        return bh -> {
+            bh.consume(consolidate.consolidate(authors, log));
+            return 1;
+        };
+    }
+
+    /**
+     * A classifier that prefers links where the bottom term ends with the top
+     * term (as in "tree" and "binary tree") and otherwise gives a fixed
+     * pseudo-random score
+     */
+    static final BinaryRelationClassifier<String> CLASSIFIER = (top, bottom) -> {
+        if (bottom.endsWith(" " + top)) {
+            return 0.9;
+        }
+        final int h = (top.hashCode() * 31 + bottom.hashCode()) * 0x9e3779b9;
+        return (double) (h >>> 8) / (1 << 24) * 0.5;
+    };
+
+    private Benchmark.Invocation greedy(int n) {
+        final Map<String, Term> terms = workloads.terms(n);
+        return bh -> {
+            // The score caches the predictions, so a new one is needed each time
+            bh.consume(new Greedy(new SumScore(CLASSIFIER)).extractTaxonomy(terms));
+            return 1;
+        };
+    }
+
+    private Benchmark.Invocation beamSearch(int n, int beamSize, ForkJoinPool pool) {
+        final Map<String, Term> terms = workloads.terms(n);
+        return bh -> {
+            bh.consume(new BeamSearch(new SumScore(CLASSIFIER), beamSize, pool).extractTaxonomy(terms));
+            return 1;
+        };
+    }
+
+    private Benchmark.Invocation mst(int n, int topK, ForkJoinPool pool) {
+        final Map<String, Term> terms = workloads.terms(n);
+        final MSTTaxoExtract mst = new MSTTaxoExtract(CLASSIFIER, topK, pool);
+        return bh -> {
+            bh.consume(mst.extractTaxonomy(terms));
+            return 1;
+        };
+    }
+
+    /* Building a solution by adding the links of a tree in a random order */
+    private Benchmark.Invocation taxonomySolutionAdd(int n) {
+        final Map<String, Term> terms = workloads.terms(n);
+        final List<Map.Entry<String, String>> links = new ArrayList<>(
+                workloads.tree(new ArrayList<>(terms.keySet())).entrySet());
+        Collections.shuffle(links, new Random(0));
+        final Set<String> termSet = terms.keySet();
+        return bh -> {
+            TaxonomySolution soln = TaxonomySolution.empty(termSet);
+            for (Map.Entry<String, String> link : links) {
+                soln = soln.add(link.getValue(), link.getKey(), 0.0, 0.0, 0.5, false);
+            }
+            bh.consume(soln);
+            return links.size();
+        };
+    }
+
+    /* Looking up a term in a taxonomy, where 10% of the terms are not found */
+    private Benchmark.Invocation descendent(int n) {
+        final Map<String, Term> terms = workloads.terms(n);
+        final List<String> termList = new ArrayList<>(terms.keySet());
+        final Taxonomy taxonomy = Workloads.taxonomy(termList.get(0),
+                workloads.tree(termList));
+        final Random r = new Random(0);
+        final String[] queries = new String[1024];
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = r.nextInt(10) == 0 ? "missing" + i : termList.get(r.nextInt(termList.size()));
+        }
+        final int[] next = new int[1];
+        return bh -> {
+            bh.consume(taxonomy.descendent(queries[next[0]++ & (queries.length - 1)]));
+            return 1;
+        };
+    }
+
+    private static int[] parseSizes(String s) {
+        final String[] parts = s.split(",");
+        final int[] sizes = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            sizes[i] = Integer.parseInt(parts[i].trim());
+        }
+        return sizes;
+    }
+
+    private static void badOptions(OptionParser p, String message) throws IOException {
+        System.err.println("Error: " + message);
+        p.printHelpOn(System.err);
+        System.exit(-1);
+    }
+
+    public static void main(String[] args) {
+        try {
+            final OptionParser p = new OptionParser() {
+                {
+                    accepts("o", "The file to write the results to (as JSON)").withRequiredArg().ofType(File.class);
+                    accepts("b", "Only run the benchmarks whose name matches this regular expression").withRequiredArg().ofType(String.class);
+                    accepts("corpus", "A text file or a folder of text files to extract terms from (default: a synthetic corpus)").withRequiredArg().ofType(File.class);
+                    accepts("sizes", "The numbers of terms for the taxonomy search benchmarks").withRequiredArg().ofType(String.class).defaultsTo("25,50,100");
+                    accepts("wi", "The number of warmup iterations").withRequiredArg().ofType(Integer.class).defaultsTo(3);
+                    accepts("i", "The number of measured iterations").withRequiredArg().ofType(Integer.class).defaultsTo(5);
+                    accepts("t", "The length of an iteration in milliseconds").withRequiredArg().ofType(Long.class).defaultsTo(1000L);
+                    accepts("unit", "The unit of the results").withRequiredArg().ofType(TimeUnit.class).defaultsTo(TimeUnit.MICROSECONDS);
+                    accepts("seed", "The seed of the synthetic data").withRequiredArg().ofType(Long.class).defaultsTo(1L);
+                }
+            };
+            final OptionSet os;
+            try {
+                os = p.parse(args);
+            } catch (Exception x) {
+                badOptions(p, x.getMessage());
+                return;
+            }
+            final File corpus = (File) os.valueOf("corpus");
+            if (corpus != null && !corpus.exists()) {
+                badOptions(p, "Corpus does not exist");
+                return;
+            }
+            final int[] sizes;
+            try {
+                sizes = parseSizes((String) os.valueOf("sizes"));
+            } catch (NumberFormatException x) {
+                badOptions(p, "Bad sizes: " + x.getMessage());
+                return;
+            }
+            final List<Benchmark> benchmarks = new ArrayList<>();
+            final Pattern filter = os.has("b") ? Pattern.compile((String) os.valueOf("b")) : null;
+            for (Benchmark b : new SaffronBenchmarks((Long) os.valueOf("seed"), corpus, sizes).benchmarks()) {
+                if (filter == null || filter.matcher(b.name).find()) {
+                    benchmarks.add(b);
+                }
+            }
+            final Harness harness = new Harness((Integer) os.valueOf("wi"), (Integer) os.valueOf("i"),
+                    (Long) os.valueOf("t"), (TimeUnit) os.valueOf("unit"));
+            final List<Harness.Result> results = harness.run(benchmarks, System.out);
+            if (os.has("o")) {
+                harness.write(results, (File) os.valueOf("o"));
+            }
+        } catch (Throwable t) {
+            t.printStackTrace();
+            System.exit(-1);
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package org.insightcentre.nlp.saffron.perf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import opennlp.tools.postag.POSTagger;
+import opennlp.tools.util.Sequence;
+import org.insightcentre.nlp.saffron.data.Author;
+import org.insightcentre.nlp.saffron.data.Document;
+import org.insightcentre.nlp.saffron.data.Status;
+import org.insightcentre.nlp.saffron.data.Taxonomy;
+import org.insightcentre.nlp.saffron.data.Term;
+import org.insightcentre.nlp.saffron.data.connections.AuthorTerm;
+import org.insightcentre.nlp.saffron.data.connections.DocumentTerm;
+
+/**
+ * The data the benchmarks are run on. Synthetic data is generated from a seed,
+ * so that it is the same in every run. Words are chosen with a Zipfian
+ * distribution, so that the frequencies are similar to those of a real corpus.
+ *
+ * @author John McCrae
+ */
+public class Workloads {
+
+    private static final String[] SYLLABLES = {
+        "ba", "ce", "di", "fo", "gu", "ha", "ke", "li", "mo", "nu", "pa", "re",
+        "si", "to", "vu", "wa", "xe", "yi", "zo", "an", "el", "in", "or", "un"
+    };
+    private static final String[] ADJECTIVE_SUFFIXES = {"al", "ic", "ous", "ive"};
+    private static final String[] DETERMINERS = {"the", "a", "this", "each"};
+    private static final String[] PREPOSITIONS = {"of", "in", "for", "with", "on"};
+    private static final String[] VERBS = {"is", "has", "uses", "shows", "describes"};
+    private static final String[] FIRST_NAMES = {
+        "John", "Mary", "James", "Anna", "Paul", "Maria", "David", "Laura",
+        "Michael", "Sarah", "Peter", "Emma", "Thomas", "Julia", "Daniel", "Clare"
+    };
+
+    private final long seed;
+
+    /**
+     * Create the workloads
+     *
+     * @param seed The seed for the synthetic data
+     */
+    public Workloads(long seed) {
+        this.seed = seed;
+    }
+
+    private Random random(String workload) {
+        return new Random(seed * 31 + workload.hashCode());
+    }
+
+    /**
+     * Chooses indexes with a Zipfian distribution
+     */
+    private static class Zipf {
+
+        private final double[] cumulative;
+
+        public Zipf(int n) {
+            cumulative = new double[n];
+            double sum = 0.0;
+            for (int i = 0; i < n; i++) {
+                sum += 1.0 / (i + 1);
+                cumulative[i] = sum;
+            }
+        }
+
+        public int next(Random r) {
+            final int i = Arrays.binarySearch(cumulative, r.nextDouble() * cumulative[cumulative.length - 1]);
+            return Math.min(i >= 0 ? i : -i - 1, cumulative.length - 1);
+        }
+    }
+
+    /**
+     * Create distinct pseudo-words
+     *
+     * @param n The number of words
+     * @param suffixes The suffixes to add to the words (or empty)
+     * @param r The random source
+     * @return The words
+     */
+    private static List<String> words(int n, String[] suffixes, Random r) {
+        final Set<String> words = new HashSet<>();
+        final List<String> result = new ArrayList<>(n);
+        while (result.size() < n) {
+            final StringBuilder sb = new StringBuilder();
+            final int len = 2 + r.nextInt(3);
+            for (int i = 0; i < len; i++) {
+                sb.append(SYLLABLES[r.nextInt(SYLLABLES.length)]);
+            }
+            if (suffixes.length > 0) {
+                sb.append(suffixes[r.nextInt(suffixes.length)]);
+            }
+            final String word = sb.toString();
+            // Avoid nouns that look like adjectives to the tagger
+            if (suffixes.length == 0 && !SuffixTagger.tagWord(word).equals("NN")) {
+                continue;
+            }
+            if (words.add(word)) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    private static String pick(String[] words, Random r) {
+        return words[r.nextInt(words.length)];
+    }
+
+    /**
+     * Generate documents made of simple sentences, such as "the adj noun noun
+     * is a noun of the noun"
+     *
+     * @param n The number of documents
+     * @param sentences The number of sentences (lines) per document
+     * @param vocabulary The number of distinct nouns
+     * @return The documents
+     */
+    public List<Document> documents(int n, int sentences, int vocabulary) {
+        final Random r = random("documents");
+        final List<String> nouns = words(vocabulary, new String[0], r);
+        final List<String> adjectives = words(vocabulary / 4 + 1, ADJECTIVE_SUFFIXES, r);
+        final Zipf nounDist = new Zipf(nouns.size());
+        final Zipf adjDist = new Zipf(adjectives.size());
+        final List<Document> docs = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            final StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < sentences; j++) {
+                sb.append(capitalize(pick(DETERMINERS, r))).append(' ');
+                if (r.nextInt(3) == 0) {
+                    sb.append(adjectives.get(adjDist.next(r))).append(' ');
+                }
+                sb.append(nouns.get(nounDist.next(r))).append(' ');
+                if (r.nextBoolean()) {
+                    sb.append(nouns.get(nounDist.next(r))).append(' ');
+                }
+                sb.append(pick(VERBS, r)).append(' ').append(pick(DETERMINERS, r)).append(' ');
+                if (r.nextBoolean()) {
+                    sb.append(adjectives.get(adjDist.next(r))).append(' ');
+                }
+                sb.append(nouns.get(nounDist.next(r)));
+                if (r.nextInt(3) == 0) {
+                    sb.append(' ').append(pick(PREPOSITIONS, r)).append(' ')
+                            .append(pick(DETERMINERS, r)).append(' ')
+                            .append(nouns.get(nounDist.next(r)));
+                }
+                sb.append(" .\n");
+            }
+            docs.add(document("doc" + i, sb.toString(), Collections.<Author>emptyList()));
+        }
+        return docs;
+    }
+
+    private static String capitalize(String s) {
+        return Character.toUpperCase(s.charAt(0)) + s.substring(1);
+    }
+
+    private static Document document(String id, String contents, List<Author> authors) {
+        return new Document(null, id, null, id, "text/plain", authors,
+                new HashMap<String, String>(), contents, null);
+    }
+
+    /**
+     * Read documents from a fixture, which is either a text file or a folder
+     * of text files
+     *
+     * @param fixture The file or folder
+     * @return The documents, one per file
+     * @throws IOException If the files could not be read
+     */
+    public static List<Document> fixture(File fixture) throws IOException {
+        final List<File> files = new ArrayList<>();
+        if (fixture.isDirectory()) {
+            final File[] children = fixture.listFiles();
+            if (children != null) {
+                files.addAll(Arrays.asList(children));
+                Collections.sort(files);
+            }
+        } else {
+            files.add(fixture);
+        }
+        final List<Document> docs = new ArrayList<>();
+        for (File f : files) {
+            if (f.isFile()) {
+                docs.add(document(f.getName(),
+                        new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8),
+                        Collections.<Author>emptyList()));
+            }
+        }
+        if (docs.isEmpty()) {
+            throw new IOException("No documents in " + fixture);
+        }
+        return docs;
+    }
+
+    /**
+     * Generate document-term links
+     *
+     * @param documents The number of documents
+     * @param terms The number of distinct terms
+     * @param termsPerDoc The number of terms in each document
+     * @return The links
+     */
+    public List<DocumentTerm> documentTerms(int documents, int terms, int termsPerDoc) {
+        final Random r = random("documentTerms");
+        final Zipf dist = new Zipf(terms);
+        final List<DocumentTerm> dts = new ArrayList<>(documents * termsPerDoc);
+        final Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < documents; i++) {
+            seen.clear();
+            for (int j = 0; j < termsPerDoc; j++) {
+                final int t = dist.next(r);
+                if (seen.add(t)) {
+                    dts.add(new DocumentTerm("doc" + i, "term" + t, 1 + r.nextInt(10), null, null, null));
+                }
+            }
+        }
+        return dts;
+    }
+
+    /**
+     * Generate author-term links
+     *
+     * @param authors The number of authors
+     * @param terms The number of distinct terms
+     * @param termsPerAuthor The number of terms of each author
+     * @return The links
+     */
+    public List<AuthorTerm> authorTerms(int authors, int terms, int termsPerAuthor) {
+        final Random r = random("authorTerms");
+        final Zipf dist = new Zipf(terms);
+        final List<AuthorTerm> ats = new ArrayList<>(authors * termsPerAuthor);
+        final Set<Integer> seen = new HashSet<>();
+        for (int i = 0; i < authors; i++) {
+            seen.clear();
+            for (int j = 0; j < termsPerAuthor; j++) {
+                final int t = dist.next(r);
+                if (seen.add(t)) {
+                    final AuthorTerm at = new AuthorTerm();
+                    at.setAuthorId("author" + i);
+                    at.setTermId("term" + t);
+                    at.setOccurrences(1 + r.nextInt(20));
+                    at.setMatches(1 + r.nextInt(5));
+                    at.setScore(r.nextDouble());
+                    ats.add(at);
+                }
+            }
+        }
+        return ats;
+    }
+
+    /**
+     * Generate authors, where some authors occur several times with variant
+     * forms of their names, e.g., "John Smith", "J. Smith" and "Smith, John"
+     *
+     * @param n The number of authors
+     * @return The authors
+     */
+    public List<Author> authors(int n) {
+        final Random r = random("authors");
+        final List<String> surnames = words(n / 4 + 1, new String[0], r);
+        final List<Author> authors = new ArrayList<>(n);
+        while (authors.size() < n) {
+            final String first = pick(FIRST_NAMES, r);
+            final String last = capitalize(surnames.get(r.nextInt(surnames.size())));
+            switch (r.nextInt(4)) {
+                case 0:
+                    authors.add(new Author(first.charAt(0) + ". " + last));
+                    break;
+                case 1:
+                    authors.add(new Author(last + ", " + first));
+                    break;
+                default:
+                    authors.add(new Author(first + " " + last));
+            }
+        }
+        return authors;
+    }
+
+    /**
+     * Generate terms, where the terms are made of a few words so that some
+     * terms are contained in others
+     *
+     * @param n The number of terms
+     * @return The terms by their string
+     */
+    public Map<String, Term> terms(int n) {
+        final Random r = random("terms");
+        final List<String> words = words(n / 2 + 1, new String[0], r);
+        final Map<String, Term> terms = new LinkedHashMap<>();
+        while (terms.size() < n) {
+            final String s = r.nextInt(3) == 0 || terms.isEmpty()
+                    ? words.get(r.nextInt(words.size()))
+                    : words.get(r.nextInt(words.size())) + " " + words.get(r.nextInt(words.size()));
+            if (!terms.containsKey(s)) {
+                terms.put(s, new Term(s, 1 + r.nextInt(100), 1 + r.nextInt(10),
+                        r.nextDouble(), Collections.<Term.MorphologicalVariation>emptyList(), Status.none.toString()));
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Generate the links of a random tree, where each term apart from the
+     * first has a randomly chosen parent that precedes it
+     *
+     * @param terms The terms
+     * @return The parent of each term apart from the first
+     */
+    public Map<String, String> tree(List<String> terms) {
+        final Random r = random("tree");
+        final Map<String, String> parents = new LinkedHashMap<>();
+        for (int i = 1; i < terms.size(); i++) {
+            parents.put(terms.get(i), terms.get(r.nextInt(i)));
+        }
+        return parents;
+    }
+
+    /**
+     * Create the taxonomy of a tree
+     *
+     * @param root The root
+     * @param parents The parent of each term apart from the root
+     * @return The taxonomy
+     */
+    public static Taxonomy taxonomy(String root, Map<String, String> parents) {
+        final Map<String, Taxonomy> nodes = new HashMap<>();
+        nodes.put(root, new Taxonomy(root, 0.0, Double.NaN, new ArrayList<Taxonomy>(), Status.none));
+        for (String term : parents.keySet()) {
+            nodes.put(term, new Taxonomy(term, 0.0, 0.0, new ArrayList<Taxonomy>(), Status.none));
+        }
+        for (Map.Entry<String, String> e : parents.entrySet()) {
+            nodes.get(e.getValue()).children.add(nodes.get(e.getKey()));
+        }
+        return nodes.get(root);
+    }
+
+    /**
+     * A part-of-speech tagger for English that guesses the tag of a word from
+     * its form. This is much faster than a statistical tagger, so the time of
+     * the term extraction is not dominated by tagging, and it needs no model.
+     */
+    public static class SuffixTagger implements POSTagger {
+
+        private static final Map<String, String> CLOSED = new HashMap<>();
+
+        static {
+            for (String w : DETERMINERS) {
+                CLOSED.put(w, "DT");
+            }
+            for (String w : new String[]{"an", "that", "these", "those", "some", "any", "no"}) {
+                CLOSED.put(w, "DT");
+            }
+            for (String w : PREPOSITIONS) {
+                CLOSED.put(w, "IN");
+            }
+            for (String w : new String[]{"at", "by", "from", "to", "as", "into", "about"}) {
+                CLOSED.put(w, "IN");
+            }
+            for (String w : VERBS) {
+                CLOSED.put(w, "VBZ");
+            }
+            for (String w : new String[]{"are", "was", "were", "be", "been", "have", "had", "will", "can", "would"}) {
+                CLOSED.put(w, "VB");
+            }
+            for (String w : new String[]{"and", "or", "but"}) {
+                CLOSED.put(w, "CC");
+            }
+            for (String w : new String[]{"i", "we", "you", "he", "she", "it", "they", "our", "their", "his", "her", "its"}) {
+                CLOSED.put(w, "PRP");
+            }
+        }
+
+        static String tagWord(String word) {
+            final String lc = word.toLowerCase();
+            final String tag = CLOSED.get(lc);
+            if (tag != null) {
+                return tag;
+            } else if (!Character.isLetterOrDigit(lc.charAt(0))) {
+                return ".";
+            } else if (Character.isDigit(lc.charAt(0))) {
+                return "CD";
+            } else if (lc.endsWith("ly")) {
+                return "RB";
+            } else if (lc.endsWith("al") || lc.endsWith("ic") || lc.endsWith("ous") || lc.endsWith("ive")) {
+                return "JJ";
+            } else if (lc.endsWith("ing") || lc.endsWith("ed")) {
+                return "VBG";
+            } else if (lc.endsWith("s") && !lc.endsWith("ss")) {
+                return "NNS";
+            } else {
+                return "NN";
+            }
+        }
+
+        @Override
+        public String[] tag(String[] sentence) {
+            final String[] tags = new String[sentence.length];
+            for (int i = 0; i < sentence.length; i++) {
+                tags[i] = tagWord(sentence[i]);
+            }
+            return tags;
+        }
+
+        @Override
+        public String[] tag(String[] sentence, Object[] additionalContext) {
+            return tag(sentence);
+        }
+
+        @Override
+        public Sequence[] topKSequences(String[] sentence) {
+            throw new UnsupportedOperationException("Not supported");
+        }
+
+        @Override
+        public Sequence[] topKSequences(String[] sentence, Object[] additionalContext) {
+            throw new UnsupportedOperationException("Not supported");
+        }
+    }
+}
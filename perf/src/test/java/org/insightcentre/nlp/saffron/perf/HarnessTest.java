@@ -0,0 +1,76 @@
+package org.insightcentre.nlp.saffron.perf;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class HarnessTest {
+
+    public HarnessTest() {
+    }
+
+    private static List<Harness.Result> run(Harness harness) throws Exception {
+        return harness.run(Arrays.asList(
+                new Benchmark("sum", () -> {
+                    final int[] data = new int[1000];
+                    return bh -> {
+                        long sum = 0;
+                        for (int x : data) {
+                            sum += x;
+                        }
+                        bh.consume(sum);
+                        return data.length;
+                    };
+                }, "size", "1000"),
+                new Benchmark("sleep", () -> bh -> {
+                    Thread.sleep(5);
+                    return 1;
+                })), null);
+    }
+
+    /**
+     * Test of run method, of class Harness.
+     */
+    @Test
+    public void testRun() throws Exception {
+        System.out.println("run");
+        final Harness harness = new Harness(1, 3, 20, TimeUnit.MILLISECONDS);
+        final List<Harness.Result> results = run(harness);
+        assertEquals(2, results.size());
+        assertEquals(3, results.get(0).rawData.length);
+        assertTrue(results.get(0).score > 0.0);
+        assertTrue(results.get(0).score < 1.0);
+        assertTrue(results.get(1).score >= 5.0);
+        assertFalse(Double.isNaN(results.get(1).scoreError));
+    }
+
+    /**
+     * Test of write method, of class Harness.
+     */
+    @Test
+    public void testWrite() throws Exception {
+        System.out.println("write");
+        final Harness harness = new Harness(0, 2, 10, TimeUnit.MICROSECONDS);
+        final List<Harness.Result> results = run(harness);
+        final File file = File.createTempFile("results", ".json");
+        file.deleteOnExit();
+        harness.write(results, file);
+        final JsonNode json = new ObjectMapper().readTree(file);
+        assertEquals(2, json.size());
+        assertEquals("sum", json.get(0).get("benchmark").asText());
+        assertEquals("avgt", json.get(0).get("mode").asText());
+        assertEquals("1000", json.get(0).get("params").get("size").asText());
+        assertEquals("us/op", json.get(0).get("primaryMetric").get("scoreUnit").asText());
+        assertEquals(2, json.get(0).get("primaryMetric").get("rawData").get(0).size());
+        assertFalse(json.get(1).has("params"));
+    }
+}
@@ -0,0 +1,158 @@
+package org.insightcentre.nlp.saffron.run;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Stores the outputs of the stages of a run, so that a run that is restarted
+ * can skip the stages whose inputs have not changed.
+ *
+ * Each stage has a key, which is a hash of its configuration, its inputs and
+ * the keys of the stages it depends on (see {@link #key(String, Object...)}).
+ * The output of a stage is stored in a file with a binary header (the format
+ * version and the key) followed by the output as deflated JSON. An output is
+ * only loaded if its key matches.
+ *
+ * @author John McCrae
+ */
+public class Checkpoints {
+
+    private static final int MAGIC = 0x53434b50; // "SCKP"
+    private static final int VERSION = 1;
+
+    private final File folder;
+    private final ObjectMapper mapper;
+
+    /**
+     * Create a checkpoint store
+     *
+     * @param folder The folder to write the checkpoints to
+     * @param mapper The mapper used to read and write the outputs
+     */
+    public Checkpoints(File folder, ObjectMapper mapper) {
+        this.folder = folder;
+        // Collections that only have a getter (such as the morphological
+        // variations of a term) are written but are set by the constructor
+        this.mapper = mapper.copy().disable(MapperFeature.USE_GETTERS_AS_SETTERS);
+    }
+
+    /**
+     * Calculate the key of a stage
+     *
+     * @param stage The name of the stage
+     * @param inputs The configuration and inputs of the stage, which are
+     * hashed as JSON, and the keys of the stages it depends on
+     * @return The key
+     * @throws IOException If an input could not be converted to JSON
+     */
+    public String key(String stage, Object... inputs) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException x) {
+            throw new RuntimeException(x);
+        }
+        digest.update(stage.getBytes(StandardCharsets.UTF_8));
+        for (Object input : inputs) {
+            digest.update((byte) 0);
+            digest.update(mapper.writeValueAsBytes(input));
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private File file(String stage) {
+        return new File(folder, stage + ".ckpt");
+    }
+
+    /**
+     * Load the output of a stage
+     *
+     * @param <T> The type of the output
+     * @param stage The name of the stage
+     * @param key The key of the stage
+     * @param type The type of the output
+     * @return The output or null if there is no checkpoint for this key
+     */
+    public <T> T load(String stage, String key, JavaType type) {
+        final File f = file(stage);
+        if (!f.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(key)) {
+                return null;
+            }
+            return mapper.readValue(new InflaterInputStream(in), type);
+        } catch (IOException x) {
+            // A checkpoint that cannot be read is recalculated
+            System.err.println("Could not read checkpoint " + f + ": " + x.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Load the output of a stage
+     *
+     * @param <T> The type of the output
+     * @param stage The name of the stage
+     * @param key The key of the stage
+     * @param type The type of the output
+     * @return The output or null if there is no checkpoint for this key
+     */
+    public <T> T load(String stage, String key, Class<T> type) {
+        return load(stage, key, mapper.getTypeFactory().constructType(type));
+    }
+
+    /**
+     * Save the output of a stage. The file is replaced only once it has been
+     * written completely.
+     *
+     * @param stage The name of the stage
+     * @param key The key of the stage
+     * @param output The output
+     * @throws IOException If the checkpoint could not be written
+     */
+    public void save(String stage, String key, Object output) throws IOException {
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Could not create " + folder);
+        }
+        final File tmp = new File(folder, stage + ".ckpt.tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(key);
+            final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                final DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, 1 << 16);
+                mapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(deflated, output);
+                deflated.finish();
+            } finally {
+                deflater.end();
+            }
+        }
+        final File f = file(stage);
+        if (f.exists() && !f.delete() || !tmp.renameTo(f)) {
+            throw new IOException("Could not write checkpoint " + f);
+        }
+    }
+}
@@ -110,6 +110,24 @@ public class RunConfiguration {
         CRAWL, INFER, JSON, ZIP, PROVIDED
     }
     
+    /**
+     * The stages of a run that are checkpointed, in the order they are run
+     */
+    public static enum Stage {
+        TERMS, AUTHORS, AUTHOR_TERMS, TERM_SIMILARITY, AUTHOR_SIMILARITY, KNOWLEDGE_GRAPH;
+
+        /**
+         * Check if this stage is rerun when the run starts from a stage
+         *
+         * @param fromStage The stage to rerun from (or null to use all
+         * checkpoints)
+         * @return True if this is the stage or a later stage
+         */
+        public boolean isRerunFrom(Stage fromStage) {
+            return fromStage != null && compareTo(fromStage) >= 0;
+        }
+    }
+
     /**
      * Which knowledge graph extraction method to use
      */
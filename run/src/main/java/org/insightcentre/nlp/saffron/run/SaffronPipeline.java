@@ -7,9 +7,13 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import org.deeplearning4j.nn.modelimport.keras.exceptions.InvalidKerasConfigurationException;
@@ -21,7 +25,9 @@ import org.insightcentre.nlp.saffron.authors.sim.AuthorSimilarity;
 import org.insightcentre.nlp.saffron.config.Configuration;
 import org.insightcentre.nlp.saffron.crawler.SaffronCrawler;
 import org.insightcentre.nlp.saffron.data.Author;
+import org.insightcentre.nlp.saffron.data.CollectionCorpus;
 import org.insightcentre.nlp.saffron.data.Corpus;
+import org.insightcentre.nlp.saffron.data.Document;
 import org.insightcentre.nlp.saffron.data.KnowledgeGraph;
 import org.insightcentre.nlp.saffron.data.Model;
 import org.insightcentre.nlp.saffron.data.SaffronPath;
@@ -32,11 +38,15 @@ import org.insightcentre.nlp.saffron.data.connections.AuthorTerm;
 import org.insightcentre.nlp.saffron.data.connections.DocumentTerm;
 import org.insightcentre.nlp.saffron.data.connections.TermTerm;
 import org.insightcentre.nlp.saffron.documentindex.CorpusTools;
+import org.insightcentre.nlp.saffron.documentindex.MaterializedCorpus;
+import org.insightcentre.nlp.saffron.run.RunConfiguration.Stage;
 import org.insightcentre.nlp.saffron.taxonomy.classifiers.BERTBasedRelationClassifier;
 import org.insightcentre.nlp.saffron.taxonomy.extract.ConvertKGToRDF;
 import org.insightcentre.nlp.saffron.taxonomy.search.KGSearch;
 import org.insightcentre.nlp.saffron.taxonomy.search.TaxonomySearch;
 import org.insightcentre.nlp.saffron.taxonomy.supervised.SupervisedTaxo;
+import org.insightcentre.nlp.saffron.term.AnnotatedCorpus;
+import org.insightcentre.nlp.saffron.term.RawTermStats;
 import org.insightcentre.nlp.saffron.term.TermExtraction;
 import org.insightcentre.nlp.saffron.term.TermExtraction.Result;
 import org.insightcentre.nlp.saffron.term.domain.DomainTermExtraction;
@@ -44,6 +54,7 @@ import org.insightcentre.nlp.saffron.topic.tfidf.TFIDF;
 import org.insightcentre.nlp.saffron.topic.topicsim.TermSimilarity;
 
 import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
@@ -78,6 +89,8 @@ public class SaffronPipeline {
                     accepts("name", "The name of the run").withRequiredArg().ofType(String.class);
                     accepts("d", "If a domain model should be extracted");
                     accepts("domain-model", "The domain model to be used for term extraction").withRequiredArg().ofType(File.class);
+                    accepts("from-stage", "Rerun this stage and the stages after it, even if they have been checkpointed. One of TERMS, AUTHORS, AUTHOR_TERMS, TERM_SIMILARITY, AUTHOR_SIMILARITY, KNOWLEDGE_GRAPH").withRequiredArg().ofType(Stage.class);
+                    accepts("incremental", "Add the documents of the corpus to the previous run in the output folder, only processing the new documents for term extraction (authors are only taken from the documents of this corpus)");
                     nonOptions("corpus[.json] output/ config.json \n    corpus     : The corpus file (or initial URL for crawling)\n    output     : The output folder\n    config.json: The configuration JSON file").ofType(String.class);
                 }
             };
@@ -118,6 +131,7 @@ public class SaffronPipeline {
             int maxpages = os.has("max-pages") ? (Integer) os.valueOf("i") : 100;
             boolean domain = os.has("domain");
 
+            boolean incremental = os.has("incremental");
             boolean extractDomainModel = os.has("d");
             File domainModelFile = (File) os.valueOf("domain-model");
 
@@ -143,12 +157,13 @@ public class SaffronPipeline {
             Configuration config = mapper.readValue(configurationFile, Configuration.class);
             final RunConfiguration runConfig;
             if (corpusMethod == RunConfiguration.CorpusMethod.CRAWL) {
-                runConfig = new RunConfiguration(corpusURL, inclusionList, true, kgMethod, maxpages, domain, extractDomainModel);
+                runConfig = new RunConfiguration(corpusURL, inclusionList, !incremental, kgMethod, maxpages, domain, extractDomainModel);
             } else {
-                runConfig = new RunConfiguration(corpusFile, corpusMethod, inclusionList, true, kgMethod, extractDomainModel, domainModelFile);
+                runConfig = new RunConfiguration(corpusFile, corpusMethod, inclusionList, !incremental, kgMethod, extractDomainModel, domainModelFile);
             }
 
-            execute(runConfig, outputFolder, config, saffronDatasetName, new CommandLineSaffronRunListener(outputFolder));
+            execute(runConfig, outputFolder, config, saffronDatasetName, new CommandLineSaffronRunListener(outputFolder),
+                    (Stage) os.valueOf("from-stage"));
         } catch (Throwable t) {
             t.printStackTrace();
             System.exit(-1);
@@ -158,8 +173,28 @@ public class SaffronPipeline {
     public static void execute(RunConfiguration run, File datasetFolder,
             Configuration config, String saffronDatasetName,
             SaffronRunListener listener) throws Exception {
+        execute(run, datasetFolder, config, saffronDatasetName, listener, null);
+    }
+
+    /**
+     * Execute a run. The output of each stage is checkpointed in the dataset
+     * folder and a stage is skipped if its configuration and inputs have not
+     * changed since it was checkpointed.
+     *
+     * @param run The run configuration
+     * @param datasetFolder The folder to write to
+     * @param config The configuration
+     * @param saffronDatasetName The name of the run
+     * @param listener The listener
+     * @param fromStage This stage and the stages after it are run even if they
+     * have been checkpointed (or null to use all checkpoints)
+     * @throws Exception If the run fails
+     */
+    public static void execute(RunConfiguration run, File datasetFolder,
+            Configuration config, String saffronDatasetName,
+            SaffronRunListener listener, Stage fromStage) throws Exception {
 
-        new SaffronPipeline(run, datasetFolder, config, saffronDatasetName, listener).executePipeline();
+        new SaffronPipeline(run, datasetFolder, config, saffronDatasetName, listener, fromStage).executePipeline();
 
     }
 
@@ -170,8 +205,15 @@ public class SaffronPipeline {
     private final ObjectMapper mapper;
     private final ObjectWriter ow;
     private final SaffronRunListener status;
-
-    private SaffronPipeline(RunConfiguration run, File datasetFolder, Configuration config, String runName, SaffronRunListener listener) {
+    private final Checkpoints checkpoints;
+    private final Stage fromStage;
+    /* The identity of the input of the run (or null if not known) */
+    private final Object input;
+    /* The corpus with consolidated authors, once it has been published */
+    private Corpus consolidated;
+
+    SaffronPipeline(RunConfiguration run, File datasetFolder, Configuration config, String runName,
+            SaffronRunListener listener, Stage fromStage) {
         this.run = run;
         this.datasetFolder = datasetFolder;
         this.config = config;
@@ -179,6 +221,9 @@ public class SaffronPipeline {
         this.mapper = new ObjectMapper();
         this.ow = mapper.writerWithDefaultPrettyPrinter();
         this.status = listener;
+        this.checkpoints = new Checkpoints(new File(datasetFolder, "checkpoints"), mapper);
+        this.fromStage = fromStage;
+        this.input = inputKey();
     }
 
     private void executePipeline() throws Exception {
@@ -191,33 +236,251 @@ public class SaffronPipeline {
         }
         ow.writeValue(new File(datasetFolder, "config.json"), config);
 
-        Corpus corpus = makeCorpus();
-        status.setStageComplete("Loading corpus", runName);
-        Corpus searcher = preprocessCorpus(corpus);
-        List<String> domainModelTerms = extractDomainModelTerms(corpus);
-        TermExtraction.Result r = extractTerms(searcher, domainModelTerms);
-        List<Term> terms = new ArrayList<>(r.terms);
-        extractAuthors(searcher);
-        Collection<AuthorTerm> authorTerms = connectAuthors(searcher, terms, r.docTerms);
-        connectTerms(r.docTerms);
-        authorSimilarity(authorTerms);
+        // The key of each stage depends on the keys of the stages it uses,
+        // so a change to an earlier stage reruns all the stages after it
+        final String termsKey = checkpoints.key(Stage.TERMS.name(), input, config.termExtraction,
+                run.extractDomainModel ? config.dmExtraction : null, fileKey(run.domainModelFile),
+                run.inclusionList, run.isInitialRun ? null : fileKey(rawStatsFile()));
+        TermsCheckpoint terms = restore(Stage.TERMS, termsKey, TermsCheckpoint.class);
+        Corpus searcher = null;
+        if (terms == null) {
+            searcher = loadCorpus();
+            // The domain model and term extraction share their tokens and tags if
+            // they use the same models
+            final boolean shareAnnotations = run.domainModelFile == null && run.extractDomainModel
+                    && Objects.equals(config.dmExtraction.seedTerms.posModel, config.termExtraction.posModel)
+                    && Objects.equals(config.dmExtraction.seedTerms.tokenizerModel, config.termExtraction.tokenizerModel);
+            terms = new TermsCheckpoint();
+            try (AnnotatedCorpus annotations = shareAnnotations ? AnnotatedCorpus.create() : null) {
+                Set<Term> domainModelTerms = extractDomainModelTerms(searcher, annotations);
+                terms.domainModelTerms = domainModelTerms == null ? null : new ArrayList<>(domainModelTerms);
+                TermExtraction.Result r = extractTerms(searcher, domainModelStrings(domainModelTerms), annotations);
+                terms.terms = new ArrayList<>(r.terms);
+                terms.docTerms = r.docTerms;
+            }
+            store(Stage.TERMS, termsKey, terms);
+        } else {
+            skipStage("Extracting Terms");
+            if (terms.domainModelTerms != null) {
+                status.setDomainModelTerms(runName, new LinkedHashSet<>(terms.domainModelTerms));
+            }
+            status.setTerms(runName, terms.terms);
+            status.setDocTerms(runName, terms.docTerms);
+        }
+        final List<DocumentTerm> docTerms = terms.docTerms;
+        TFIDF.addTfidf(docTerms);
+
+        final String authorsKey = checkpoints.key(Stage.AUTHORS.name(), input, consolidationKey());
+        final AuthorsCheckpoint authors = restore(Stage.AUTHORS, authorsKey, AuthorsCheckpoint.class);
+        if (authors != null && restoreCorpus(authors)) {
+            skipStage("Extracting authors from corpus");
+        } else {
+            if (searcher == null) {
+                searcher = loadCorpus();
+            }
+            extractAuthors(searcher);
+            if (consolidated instanceof MaterializedCorpus) {
+                final AuthorsCheckpoint checkpoint = new AuthorsCheckpoint();
+                checkpoint.corpus = ((MaterializedCorpus) consolidated).getFile().getName();
+                store(Stage.AUTHORS, authorsKey, checkpoint);
+            }
+        }
+
+        final String authorTermsKey = checkpoints.key(Stage.AUTHOR_TERMS.name(), termsKey, config.authorTerm);
+        List<AuthorTerm> authorTerms = restore(Stage.AUTHOR_TERMS, authorTermsKey,
+                mapper.getTypeFactory().constructCollectionType(List.class, AuthorTerm.class));
+        if (authorTerms == null) {
+            if (searcher == null) {
+                searcher = loadCorpus();
+            }
+            authorTerms = new ArrayList<>(connectAuthors(searcher, terms.terms, docTerms));
+            store(Stage.AUTHOR_TERMS, authorTermsKey, authorTerms);
+        } else {
+            skipStage("Connecting authors to terms");
+            status.setAuthorTerms(runName, authorTerms);
+        }
+        if (searcher instanceof MaterializedCorpus) {
+            // The consolidated corpus is kept for the web interface
+            ((MaterializedCorpus) searcher).close();
+            ((MaterializedCorpus) searcher).getFile().delete();
+        }
+
+        final String termSimKey = checkpoints.key(Stage.TERM_SIMILARITY.name(), termsKey, config.termSim);
+        List<TermTerm> termSim = restore(Stage.TERM_SIMILARITY, termSimKey,
+                mapper.getTypeFactory().constructCollectionType(List.class, TermTerm.class));
+        if (termSim == null) {
+            store(Stage.TERM_SIMILARITY, termSimKey, connectTerms(docTerms));
+        } else {
+            skipStage("Connecting terms");
+            status.setTermSim(runName, termSim);
+        }
+
+        final String authorSimKey = checkpoints.key(Stage.AUTHOR_SIMILARITY.name(), authorTermsKey, config.authorSim);
+        List<AuthorAuthor> authorSim = restore(Stage.AUTHOR_SIMILARITY, authorSimKey,
+                mapper.getTypeFactory().constructCollectionType(List.class, AuthorAuthor.class));
+        if (authorSim == null) {
+            store(Stage.AUTHOR_SIMILARITY, authorSimKey, authorSimilarity(authorTerms));
+        } else {
+            skipStage("Connecting authors to authors");
+            status.setAuthorSim(runName, authorSim);
+        }
+
+        final String kgKey = checkpoints.key(Stage.KNOWLEDGE_GRAPH.name(), termsKey, run.kgMethod,
+                config.taxonomy, run.kgMethod == RunConfiguration.KGMethod.KG ? config.kg : null,
+                run.inclusionList, config.baseURL);
         switch (run.kgMethod) {
             case TAXO:
-                Taxonomy taxo = buildTaxonomy(terms, r.docTerms);
+                Taxonomy taxo = restore(Stage.KNOWLEDGE_GRAPH, kgKey, Taxonomy.class);
+                if (taxo == null) {
+                    taxo = buildTaxonomy(terms.terms, docTerms);
+                    store(Stage.KNOWLEDGE_GRAPH, kgKey, taxo);
+                } else {
+                    skipStage("Building term map and taxonomy");
+                    status.setTaxonomy(runName, taxo);
+                }
                 KnowledgeGraph kgTaxo = new KnowledgeGraph();
                 kgTaxo.setTaxonomy(taxo);
                 exportKG(kgTaxo, new File(datasetFolder, "taxonomy.rdf"), config.baseURL);
                 break;
             case KG:
             default:
-                KnowledgeGraph kg = buildKG(terms);
+                KnowledgeGraph kg = restore(Stage.KNOWLEDGE_GRAPH, kgKey, KnowledgeGraph.class);
+                if (kg == null) {
+                    kg = buildKG(terms.terms);
+                    store(Stage.KNOWLEDGE_GRAPH, kgKey, kg);
+                } else {
+                    skipStage("Building knowledge graph");
+                    status.setKnowledgeGraph(runName, kg);
+                }
                 exportKG(kg, new File(datasetFolder, "kg.rdf"), config.baseURL);
         }
 
         status.end(runName);
     }
 
-	private List<String> extractDomainModelTerms(Corpus corpus)
+    /**
+     * The output of term extraction, as stored in a checkpoint
+     */
+    public static class TermsCheckpoint {
+        /** The domain model terms (or null if no domain model is used) */
+        public List<Term> domainModelTerms;
+        public List<Term> terms;
+        public List<DocumentTerm> docTerms;
+    }
+
+    /**
+     * The output of author extraction, as stored in a checkpoint
+     */
+    public static class AuthorsCheckpoint {
+        /** The segment file (in the dataset folder) of the corpus with
+         * consolidated authors */
+        public String corpus;
+    }
+
+    /* Open and publish the consolidated corpus of a checkpoint */
+    private boolean restoreCorpus(AuthorsCheckpoint authors) {
+        if (authors.corpus == null) {
+            return false;
+        }
+        final File segment = new File(datasetFolder, authors.corpus);
+        if (!segment.exists()) {
+            return false;
+        }
+        try {
+            consolidated = MaterializedCorpus.open(segment);
+        } catch (IOException x) {
+            System.err.println("Could not read corpus " + segment + ": " + x.getMessage());
+            return false;
+        }
+        status.setCorpus(runName, consolidated);
+        return true;
+    }
+
+    Corpus loadCorpus() throws Exception {
+        Corpus corpus = makeCorpus();
+        status.setStageComplete("Loading corpus", runName);
+        return preprocessCorpus(corpus);
+    }
+
+    /* The stages from fromStage onwards are always run */
+    <T> T restore(Stage stage, String key, Class<T> type) {
+        return restore(stage, key, mapper.getTypeFactory().constructType(type));
+    }
+
+    <T> T restore(Stage stage, String key, JavaType type) {
+        if (input == null || stage.isRerunFrom(fromStage)) {
+            return null;
+        }
+        return checkpoints.load(stage.name(), key, type);
+    }
+
+    void store(Stage stage, String key, Object output) throws IOException {
+        if (input != null) {
+            checkpoints.save(stage.name(), key, output);
+        }
+    }
+
+    private void skipStage(String statusMessage) {
+        status.log("Reusing the checkpoint of stage: " + statusMessage);
+        status.setStageComplete(statusMessage, runName);
+    }
+
+    /**
+     * Identify the input of the run, or null if it cannot be identified, in
+     * which case no checkpoints are used
+     */
+    private Object inputKey() {
+        switch (run.corpusMethod) {
+            case CRAWL:
+                return Arrays.asList(runName, run.crawlURL.toString(), run.maxPages, run.domain);
+            case PROVIDED:
+                return null;
+            default:
+                return Arrays.asList(runName, run.corpusMethod, fileKey(run.corpusFile));
+        }
+    }
+
+    /* Author consolidation has no configuration, but depends on the name
+       lists it is packaged with */
+    private static Object consolidationKey() {
+        return Arrays.asList(ConsolidateAuthors.class.getName(),
+                String.valueOf(ConsolidateAuthors.class.getResource("/asian-surnames.json")),
+                String.valueOf(ConsolidateAuthors.class.getResource("/namedb.json.gz")));
+    }
+
+    /* Files are identified by their path, size and modification time (and
+       those of the files they contain) rather than their contents */
+    static List<Object> fileKey(File file) {
+        if (file == null) {
+            return null;
+        }
+        final List<Object> key = new ArrayList<>();
+        key.add(file.getAbsolutePath());
+        final File[] children = file.listFiles();
+        if (children != null) {
+            Arrays.sort(children);
+            for (File child : children) {
+                key.add(fileKey(child));
+            }
+        } else {
+            key.add(file.length());
+            key.add(file.lastModified());
+        }
+        return key;
+    }
+
+    private static List<String> domainModelStrings(Set<Term> domainModelTerms) {
+        if (domainModelTerms == null) {
+            return null;
+        }
+        List<String> domainModelStrings = new ArrayList<String>();
+        for (Term term : domainModelTerms) {
+            domainModelStrings.add(term.getString());
+        }
+        return domainModelStrings;
+    }
+
+	private Set<Term> extractDomainModelTerms(Corpus corpus, AnnotatedCorpus annotations)
 			throws IOException, JsonParseException, JsonMappingException {
 
 		Set<Term> domainModelTerms = null;
@@ -229,36 +492,34 @@ public class SaffronPipeline {
     	if(run.extractDomainModel) {
           status.setStageStart("Extracting domain model terms", runName);
     	    final DomainTermExtraction extractor = new DomainTermExtraction(config.dmExtraction);
-          final Result dmResult = extractor.extractDomainModelTerms(corpus);
+          final Result dmResult = annotations == null ? extractor.extractDomainModelTerms(corpus)
+                  : extractor.extractDomainModelTerms(corpus, annotations);
           domainModelTerms = dmResult.terms;
           status.setStageComplete("Extracting domain model terms", runName);
     	}
     }
 
-		List<String> domainModelStrings = null;
 		if(domainModelTerms != null) {
 			status.setDomainModelTerms(runName,domainModelTerms);
-
-			domainModelStrings = new ArrayList<String>();
-    		for(Term term: domainModelTerms) {
-    			domainModelStrings.add(term.getString());
-    		}
 		}
-        return domainModelStrings;
+        return domainModelTerms;
 	}
 
     private Corpus makeCorpus() throws Exception {
         status.setStageStart("Loading corpus 1", runName);
+        // Documents are parsed on as many threads as are used to extract
+        // terms, but are kept in order so the output does not change
+        final int threads = config.termExtraction.numThreads;
         switch (run.corpusMethod) {
             case INFER:
-                CorpusTools.readFile(run.corpusFile);
+                return CorpusTools.readFile(run.corpusFile, threads, true);
             case JSON:
                 return CorpusTools.fromJson(run.corpusFile);
             case ZIP:
                 if (run.corpusFile.getName().endsWith(".tgz") || run.corpusFile.getName().endsWith(".tar.gz")) {
-                    return CorpusTools.fromTarball(run.corpusFile);
+                    return CorpusTools.fromTarball(run.corpusFile, null, threads, true);
                 } else {
-                    return CorpusTools.fromZIP(run.corpusFile);
+                    return CorpusTools.fromZIP(run.corpusFile, threads, true);
                 }
             case CRAWL:
                 final File f = Files.createTempDir();
@@ -275,19 +536,44 @@ public class SaffronPipeline {
 
     private Corpus preprocessCorpus(Corpus corpus) throws Exception {
         status.setStageStart("Indexing Corpus", runName);
-        status.setCorpus(runName, corpus);
+        // Documents that are extracted from files (or crawled) are only
+        // parsed on this first pass and are then read from a segment file
+        if (!(corpus instanceof CollectionCorpus)) {
+            corpus = CorpusTools.materialize(corpus, new File(datasetFolder, "documents.seg"), true);
+        }
+        // A restored consolidated corpus is not replaced by the original one
+        if (consolidated == null) {
+            status.setCorpus(runName, corpus);
+        }
         status.setStageComplete("Indexing Corpus", runName);
         return corpus;
     }
 
-    private TermExtraction.Result extractTerms(Corpus searcher, List<String> domainModelTerms) throws IOException {
+    private TermExtraction.Result extractTerms(Corpus searcher, List<String> domainModelTerms,
+            AnnotatedCorpus annotations) throws IOException {
         status.setStageStart("Extracting Terms", runName);
         final TermExtraction extractor;
         if (domainModelTerms == null || domainModelTerms.isEmpty())
         	extractor = new TermExtraction(config.termExtraction);
         else
         	extractor = new TermExtraction(config.termExtraction, domainModelTerms);
-        TermExtraction.Result res = extractor.extractTerms(searcher, run.inclusionList.getRequiredTerms(), run.inclusionList.getExcludedTerms(), status);
+        final Set<String> required = run.inclusionList.getRequiredTerms();
+        final Set<String> excluded = run.inclusionList.getExcludedTerms();
+        final TermExtraction.Result res;
+        if (run.isInitialRun) {
+            res = annotations == null
+                    ? extractor.extractTerms(searcher, required, excluded, status)
+                    : extractor.extractTerms(searcher, required, excluded, status, annotations);
+        } else {
+            // The unfiltered statistics are kept so that later runs only need
+            // to process the documents that they add
+            final File rawFile = rawStatsFile();
+            final RawTermStats raw = rawFile.exists() ? RawTermStats.read(rawFile) : new RawTermStats();
+            res = annotations == null
+                    ? extractor.extractTermsIncremental(searcher, required, excluded, status, raw)
+                    : extractor.extractTermsIncremental(searcher, required, excluded, status, raw, annotations);
+            raw.write(rawFile);
+        }
         List<Term> terms = new ArrayList<>(res.terms);
         status.setTerms(runName, terms);
         status.setDocTerms(runName, res.docTerms);
@@ -295,18 +581,34 @@ public class SaffronPipeline {
         return res;
     }
 
+    /* The unfiltered statistics of the term extraction of incremental runs */
+    private File rawStatsFile() {
+        return new File(datasetFolder, "term-stats.json.gz");
+    }
+
     private void extractAuthors(Corpus searcher) throws IOException {
         status.setStageStart("Extracting authors from corpus", runName);
         Set<Author> authors = Consolidate.extractAuthors(searcher, status);
         Map<Author, Set<Author>> consolidation = new ConsolidateAuthors().consolidate(authors, status);
+        final boolean materialized = searcher instanceof MaterializedCorpus;
         searcher = applyConsolidation(searcher, consolidation, status);
+        // The consolidated corpus is also kept for the checkpoint of this stage
+        if (materialized || input != null) {
+            final MaterializedCorpus segment = CorpusTools.materialize(searcher, new File(datasetFolder, "corpus.seg"), true);
+            // The segment is only written by the first full pass
+            final Iterator<Document> docs = segment.getDocuments().iterator();
+            while (!segment.isComplete() && docs.hasNext()) {
+                docs.next();
+            }
+            searcher = segment;
+        }
+        consolidated = searcher;
         status.setCorpus(runName, searcher);
         status.setStageComplete("Extracting authors from corpus", runName);
     }
 
     private Collection<AuthorTerm> connectAuthors(Corpus searcher, List<Term> terms, List<DocumentTerm> docTerms) throws IOException {
         status.setStageStart("Connecting authors to terms", runName);
-        TFIDF.addTfidf(docTerms);
         ConnectAuthorTerm cr = new ConnectAuthorTerm(config.authorTerm);
         Collection<AuthorTerm> authorTerms = cr.connectResearchers(terms, docTerms, searcher.getDocuments(), status);
         status.setAuthorTerms(runName, authorTerms);
@@ -315,20 +617,22 @@ public class SaffronPipeline {
 
     }
 
-    private void connectTerms(List<DocumentTerm> docTerms) throws IOException {
+    private List<TermTerm> connectTerms(List<DocumentTerm> docTerms) throws IOException {
         status.setStageStart("Connecting terms", runName);
         TermSimilarity ts = new TermSimilarity(config.termSim);
         final List<TermTerm> termSimilarity = ts.termSimilarity(docTerms, status);
         status.setTermSim(runName, termSimilarity);
         status.setStageComplete("Connecting terms", runName);
+        return termSimilarity;
     }
 
-    private void authorSimilarity(Collection<AuthorTerm> authorTerms) throws IOException {
+    private List<AuthorAuthor> authorSimilarity(Collection<AuthorTerm> authorTerms) throws IOException {
         status.setStageStart("Connecting authors to authors", runName);
         AuthorSimilarity as = new AuthorSimilarity(config.authorSim);
         final List<AuthorAuthor> authorSim = as.authorSimilarity(authorTerms, runName, status);
         status.setAuthorSim(runName, authorSim);
         status.setStageComplete("Connecting authors to authors", runName);
+        return authorSim;
     }
 
     private Taxonomy buildTaxonomy(List<Term> terms, List<DocumentTerm> docTerms) throws IOException {
@@ -352,8 +656,8 @@ public class SaffronPipeline {
         Map<String, Term> termMap = loadMap(terms, mapper, status);
         status.setStageComplete("Building term map and taxonomy", runName);
         status.setStageStart("Building knowledge graph", runName);
-        BERTBasedRelationClassifier relationClassifier = BERTBasedRelationClassifier.getInstance(
-        		config.kg.kerasModelFile.getResolvedPath(), config.kg.bertModelFile.getResolvedPath(), config.kg.numberOfRelations);
+        BERTBasedRelationClassifier relationClassifier = BERTBasedRelationClassifier.getInstance(config.kg);
+        relationClassifier.precomputeEmbeddings(termMap.keySet());
         KGSearch kgSearch = KGSearch.create(config.taxonomy.search, config.kg, relationClassifier, termMap.keySet());
         final KnowledgeGraph kGraph = kgSearch.extractKnowledgeGraphWithDenialAndAllowanceList(termMap,
                 run.inclusionList.getRequiredRelations(), run.inclusionList.getExcludedRelations(), relationClassifier.typeMap.keySet());
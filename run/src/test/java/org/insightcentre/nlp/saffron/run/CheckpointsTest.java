@@ -0,0 +1,173 @@
+package org.insightcentre.nlp.saffron.run;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import org.insightcentre.nlp.saffron.config.Configuration;
+import org.insightcentre.nlp.saffron.data.KnowledgeGraph;
+import org.insightcentre.nlp.saffron.data.Status;
+import org.insightcentre.nlp.saffron.data.Taxonomy;
+import org.insightcentre.nlp.saffron.data.Term;
+import org.insightcentre.nlp.saffron.data.connections.AuthorTerm;
+import org.insightcentre.nlp.saffron.data.connections.DocumentTerm;
+import org.insightcentre.nlp.saffron.data.connections.TermTerm;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class CheckpointsTest {
+
+    private File folder;
+    private ObjectMapper mapper;
+    private Checkpoints checkpoints;
+
+    public CheckpointsTest() {
+    }
+
+    @Before
+    public void setUp() {
+        folder = Files.createTempDir();
+        mapper = new ObjectMapper();
+        checkpoints = new Checkpoints(folder, mapper);
+    }
+
+    @After
+    public void tearDown() {
+        for (File f : folder.listFiles()) {
+            f.delete();
+        }
+        folder.delete();
+    }
+
+    /**
+     * Test of key method, of class Checkpoints.
+     */
+    @Test
+    public void testKey() throws Exception {
+        System.out.println("key");
+        Configuration config = new Configuration();
+        String key = checkpoints.key("TERMS", "input", config.termExtraction);
+        assertEquals(key, checkpoints.key("TERMS", "input", config.termExtraction));
+        assertNotEquals(key, checkpoints.key("AUTHORS", "input", config.termExtraction));
+        assertNotEquals(key, checkpoints.key("TERMS", "other input", config.termExtraction));
+        config.termExtraction.maxTerms++;
+        assertNotEquals(key, checkpoints.key("TERMS", "input", config.termExtraction));
+    }
+
+    /**
+     * Test of fileKey method, of class SaffronPipeline.
+     */
+    @Test
+    public void testFileKey() throws Exception {
+        System.out.println("fileKey");
+        File f = new File(folder, "corpus.json");
+        Files.write("{\"documents\":[]}".getBytes("UTF-8"), f);
+        String key = checkpoints.key("TERMS", SaffronPipeline.fileKey(f));
+        assertEquals(key, checkpoints.key("TERMS", SaffronPipeline.fileKey(f)));
+        Files.write("{\"documents\":[ ]}".getBytes("UTF-8"), f);
+        assertNotEquals(key, checkpoints.key("TERMS", SaffronPipeline.fileKey(f)));
+    }
+
+    /**
+     * Test of save and load methods, of class Checkpoints.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        System.out.println("roundTrip");
+        SaffronPipeline.TermsCheckpoint terms = new SaffronPipeline.TermsCheckpoint();
+        terms.terms = Arrays.asList(new Term.Builder("knowledge graph").occurrences(3).matches(2).score(0.5).build());
+        terms.docTerms = Arrays.asList(new DocumentTerm("doc1", "knowledge graph", 3, null, null, 0.25));
+        checkpoints.save("TERMS", "k1", terms);
+        SaffronPipeline.TermsCheckpoint terms2 = checkpoints.load("TERMS", "k1", SaffronPipeline.TermsCheckpoint.class);
+        assertEquals(terms.terms, terms2.terms);
+        assertEquals(terms.terms.get(0).getScore(), terms2.terms.get(0).getScore(), 0.0);
+        assertEquals(terms.docTerms, terms2.docTerms);
+        assertNull(terms2.domainModelTerms);
+
+        AuthorTerm at = new AuthorTerm();
+        at.setAuthorId("author1");
+        at.setTermId("knowledge graph");
+        at.setScore(0.75);
+        List<AuthorTerm> authorTerms = new ArrayList<>(Arrays.asList(at));
+        checkpoints.save("AUTHOR_TERMS", "k2", authorTerms);
+        assertEquals(authorTerms, checkpoints.load("AUTHOR_TERMS", "k2",
+                mapper.getTypeFactory().constructCollectionType(List.class, AuthorTerm.class)));
+
+        List<TermTerm> termSim = Arrays.asList(new TermTerm("knowledge graph", "taxonomy", 0.5));
+        checkpoints.save("TERM_SIMILARITY", "k3", termSim);
+        assertEquals(termSim, checkpoints.load("TERM_SIMILARITY", "k3",
+                mapper.getTypeFactory().constructCollectionType(List.class, TermTerm.class)));
+
+        Taxonomy taxo = new Taxonomy("root", 1.0, 0.0, new ArrayList<>(Arrays.asList(
+                new Taxonomy("knowledge graph", 0.5, 0.25, null, Status.accepted))), Status.none);
+        checkpoints.save("KNOWLEDGE_GRAPH", "k4", taxo);
+        assertEquals(taxo, checkpoints.load("KNOWLEDGE_GRAPH", "k4", Taxonomy.class));
+
+        KnowledgeGraph kg = new KnowledgeGraph();
+        kg.setTaxonomy(taxo);
+        kg.setSynonymyClusters(new ArrayList<>(Arrays.asList(new HashSet<>(Arrays.asList("kg", "knowledge graph")))));
+        checkpoints.save("KNOWLEDGE_GRAPH", "k5", kg);
+        KnowledgeGraph kg2 = checkpoints.load("KNOWLEDGE_GRAPH", "k5", KnowledgeGraph.class);
+        assertEquals(kg.getTaxonomy(), kg2.getTaxonomy());
+        assertEquals(new ArrayList<>(kg.getSynonymyClusters()), new ArrayList<>(kg2.getSynonymyClusters()));
+    }
+
+    /**
+     * Test of load method, of class Checkpoints, with a different key.
+     */
+    @Test
+    public void testLoadWrongKey() throws Exception {
+        System.out.println("loadWrongKey");
+        checkpoints.save("TERM_SIMILARITY", "k1", Arrays.asList(new TermTerm("a", "b", 0.5)));
+        assertNull(checkpoints.load("TERM_SIMILARITY", "k2",
+                mapper.getTypeFactory().constructCollectionType(List.class, TermTerm.class)));
+        assertNull(checkpoints.load("AUTHOR_SIMILARITY", "k1",
+                mapper.getTypeFactory().constructCollectionType(List.class, TermTerm.class)));
+    }
+
+    /**
+     * Test of load method, of class Checkpoints, with a truncated or
+     * corrupted checkpoint.
+     */
+    @Test
+    public void testLoadCorrupt() throws Exception {
+        System.out.println("loadCorrupt");
+        List<TermTerm> termSim = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            termSim.add(new TermTerm("term" + i, "term" + (i + 1), 1.0 / (i + 1)));
+        }
+        checkpoints.save("TERM_SIMILARITY", "k1", termSim);
+        File f = new File(folder, "TERM_SIMILARITY.ckpt");
+        truncate(f, (int) f.length() / 2);
+        assertNull(checkpoints.load("TERM_SIMILARITY", "k1",
+                mapper.getTypeFactory().constructCollectionType(List.class, TermTerm.class)));
+
+        try (FileOutputStream out = new FileOutputStream(f)) {
+            out.write(new byte[] { 0x53, 0x43, 0x4b, 0x50, 0, 0, 0, 1, 0, 2, 'k', '1', 1, 2, 3, 4 });
+        }
+        assertNull(checkpoints.load("TERM_SIMILARITY", "k1",
+                mapper.getTypeFactory().constructCollectionType(List.class, TermTerm.class)));
+
+        truncate(f, 3);
+        assertNull(checkpoints.load("TERM_SIMILARITY", "k1",
+                mapper.getTypeFactory().constructCollectionType(List.class, TermTerm.class)));
+    }
+
+    private static void truncate(File f, int length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.setLength(length);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.insightcentre.nlp.saffron.run;
+
+import com.google.common.io.Files;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.insightcentre.nlp.saffron.config.Configuration;
+import org.insightcentre.nlp.saffron.data.Corpus;
+import org.insightcentre.nlp.saffron.data.Document;
+import org.insightcentre.nlp.saffron.data.connections.TermTerm;
+import org.insightcentre.nlp.saffron.run.RunConfiguration.Stage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class SaffronPipelineTest {
+
+    private File folder;
+    private File corpus;
+
+    public SaffronPipelineTest() {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        folder = Files.createTempDir();
+        corpus = new File(folder, "corpus.json");
+        Files.write("{\"documents\":[]}".getBytes("UTF-8"), corpus);
+    }
+
+    @After
+    public void tearDown() {
+        delete(folder);
+    }
+
+    private static void delete(File file) {
+        if (file.isDirectory()) {
+            for (File f : file.listFiles()) {
+                delete(f);
+            }
+        }
+        file.delete();
+    }
+
+    private SaffronPipeline pipeline(String runName, Stage fromStage) {
+        RunConfiguration run = new RunConfiguration(corpus, RunConfiguration.CorpusMethod.JSON,
+                null, true, RunConfiguration.KGMethod.KG, false, null);
+        return new SaffronPipeline(run, folder, new Configuration(), runName, null, fromStage);
+    }
+
+    /**
+     * Test of restore method, of class SaffronPipeline, with a stage to
+     * rerun from.
+     */
+    @Test
+    public void testRestoreFromStage() throws Exception {
+        System.out.println("restoreFromStage");
+        List<TermTerm> output = Arrays.asList(new TermTerm("a", "b", 0.5));
+        SaffronPipeline pipeline = pipeline("test", null);
+        for (Stage stage : Stage.values()) {
+            pipeline.store(stage, "key", output);
+        }
+        for (Stage stage : Stage.values()) {
+            assertNotNull(pipeline.restore(stage, "key", List.class));
+        }
+        SaffronPipeline rerun = pipeline("test", Stage.AUTHOR_TERMS);
+        assertNotNull(rerun.restore(Stage.TERMS, "key", List.class));
+        assertNotNull(rerun.restore(Stage.AUTHORS, "key", List.class));
+        assertNull(rerun.restore(Stage.AUTHOR_TERMS, "key", List.class));
+        assertNull(rerun.restore(Stage.TERM_SIMILARITY, "key", List.class));
+        assertNull(rerun.restore(Stage.AUTHOR_SIMILARITY, "key", List.class));
+        assertNull(rerun.restore(Stage.KNOWLEDGE_GRAPH, "key", List.class));
+    }
+
+    /**
+     * Test of isRerunFrom method, of class Stage.
+     */
+    @Test
+    public void testIsRerunFrom() {
+        System.out.println("isRerunFrom");
+        assertFalse(Stage.TERMS.isRerunFrom(null));
+        assertFalse(Stage.TERMS.isRerunFrom(Stage.AUTHORS));
+        assertTrue(Stage.AUTHORS.isRerunFrom(Stage.AUTHORS));
+        assertTrue(Stage.KNOWLEDGE_GRAPH.isRerunFrom(Stage.TERMS));
+    }
+
+    /**
+     * Test of loadCorpus method, of class SaffronPipeline, inferring the
+     * type of a folder corpus.
+     */
+    @Test
+    public void testLoadCorpusInfer() throws Exception {
+        System.out.println("loadCorpusInfer");
+        File docs = new File(folder, "docs");
+        docs.mkdir();
+        Files.write("The first document".getBytes("UTF-8"), new File(docs, "doc1.txt"));
+        Files.write("The second document".getBytes("UTF-8"), new File(docs, "doc2.txt"));
+        File output = new File(folder, "output");
+        output.mkdir();
+        RunConfiguration run = new RunConfiguration(docs, RunConfiguration.CorpusMethod.INFER,
+                null, true, RunConfiguration.KGMethod.KG, false, null);
+        Configuration config = new Configuration();
+        config.termExtraction.numThreads = 2;
+        SaffronPipeline pipeline = new SaffronPipeline(run, output, config, "test",
+                new CommandLineSaffronRunListener(output), null);
+        Corpus result = pipeline.loadCorpus();
+        List<String> contents = new ArrayList<>();
+        for (Document d : result.getDocuments()) {
+            contents.add(d.contents().trim());
+        }
+        // The files of a folder are not listed in any fixed order
+        Collections.sort(contents);
+        assertEquals(Arrays.asList("The first document", "The second document"), contents);
+    }
+}
@@ -1,19 +1,24 @@
 package org.insightcentre.nlp.saffron.taxonomy.classifiers;
 
-import org.insightcentre.nlp.saffron.util.SimpleCache;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.modelimport.keras.KerasModelImport;
 import org.deeplearning4j.nn.modelimport.keras.exceptions.InvalidKerasConfigurationException;
 import org.deeplearning4j.nn.modelimport.keras.exceptions.UnsupportedKerasConfigurationException;
+import org.insightcentre.nlp.saffron.config.KnowledgeGraphExtractionConfiguration;
 import org.insightcentre.nlp.saffron.data.TypedLink;
 import org.insightcentre.nlp.saffron.data.TypedLink.Type;
 import org.insightcentre.nlp.saffron.exceptions.InvalidValueException;
 import org.insightcentre.nlp.saffron.taxonomy.supervised.MulticlassRelationClassifier;
+import org.insightcentre.nlp.saffron.util.EmbeddingCache;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
@@ -37,7 +42,21 @@ public abstract class BERTBasedRelationClassifier implements MulticlassRelationC
 	private Bert bert;
 	private final long sizeEmbeddings;
 
-	private SimpleCache<String, float[]> simpleCache = new SimpleCache<>(10000);
+	/** The default number of term embeddings kept in memory */
+	public static final int DEFAULT_CACHE_SIZE = 10000;
+
+	private EmbeddingCache embeddings = new EmbeddingCache(DEFAULT_CACHE_SIZE);
+
+	private File embeddingFile = null;
+
+	/** The width of the input for each term */
+	private static final long INPUT_SIZE = 1024;
+	/** The number of embedding values copied into the input for each term */
+	private static final int EMBEDDING_COPY = 767;
+	/** The default number of pairs evaluated together */
+	public static final int DEFAULT_BATCH_SIZE = 256;
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
 	
 	public final Map<TypedLink.Type,Integer> typeMap;
 
@@ -72,6 +91,71 @@ public abstract class BERTBasedRelationClassifier implements MulticlassRelationC
 	}
 
 
+	/**
+	 * Create a relation classifier as described by the knowledge graph configuration
+	 *
+	 * @param config - the knowledge graph configuration
+	 *
+	 * @return an instance of BERTBasedRelationClassifier according to the configuration provided
+	 * @throws IOException
+	 * @throws UnsupportedKerasConfigurationException
+	 * @throws InvalidKerasConfigurationException
+	 */
+	public static BERTBasedRelationClassifier getInstance(KnowledgeGraphExtractionConfiguration config)
+			throws IOException, UnsupportedKerasConfigurationException, InvalidKerasConfigurationException {
+		BERTBasedRelationClassifier classifier = getInstance(config.kerasModelFile.getResolvedPath(),
+				config.bertModelFile.getResolvedPath(), config.numberOfRelations);
+		classifier.setBatchSize(config.batchSize);
+		classifier.setEmbeddingCache(new EmbeddingCache(config.embeddingCacheSize));
+		if (config.embeddingFile != null) {
+			classifier.setEmbeddingFile(config.embeddingFile.toFile());
+		}
+		return classifier;
+	}
+
+	/**
+	 * Set the store used for the term embeddings. The same store may be shared
+	 * by several classifiers that use the same BERT model
+	 * @param embeddings - the embedding store
+	 */
+	public void setEmbeddingCache(EmbeddingCache embeddings) {
+		this.embeddings = embeddings;
+	}
+
+	/**
+	 * Set the file that precomputed embeddings are written to
+	 * @param embeddingFile - the file or null to keep the precomputed embeddings in memory
+	 */
+	public void setEmbeddingFile(File embeddingFile) {
+		this.embeddingFile = embeddingFile;
+	}
+
+	/**
+	 * Compute the embeddings of all terms up front, in parallel batches. If an
+	 * embedding file is set the embeddings are written to it and memory-mapped,
+	 * otherwise as many terms as fit in the cache are embedded.
+	 * @param terms - the terms to embed
+	 * @throws IOException if the embedding file could not be written
+	 */
+	public void precomputeEmbeddings(Collection<String> terms) throws IOException {
+		if (embeddingFile != null) {
+			embeddings.precompute(terms, bert::embedSequences, batchSize, embeddingFile);
+		} else {
+			embeddings.precompute(terms, bert::embedSequences, batchSize);
+		}
+	}
+
+	/**
+	 * Set the number of pairs that are evaluated by the network together
+	 * @param batchSize - the maximum size of a batch
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("Batch size must be positive");
+		}
+		this.batchSize = batchSize;
+	}
+
 	/**
 	 * Create a multi-relation classifier based on  BERT
 	 * 
@@ -101,34 +185,70 @@ public abstract class BERTBasedRelationClassifier implements MulticlassRelationC
 	 * @param source - the source term string
 	 * @param target - the target term string
 	 * @return an array of probabilities for a set of relations (the specific relations depend on the model used)
-	 * 
-	 * @throws IOException
-	 * @throws UnsupportedKerasConfigurationException
-	 * @throws InvalidKerasConfigurationException
 	 */
     public Map<Type, Double> predict(String source, String target) {
+        return toRelationMap(predictBatch(Collections.singletonList(source), Collections.singletonList(target))[0]);
+    }
 
+	/**
+	 * Predicts the probability of a set of relationships for many pairs of terms,
+	 * evaluating the model once for every batch of {@code batchSize} pairs
+	 * 
+	 * @param sources - the source term strings
+	 * @param targets - the target term strings (in the same order as the sources)
+	 * @return the probabilities of the relations for each pair
+	 */
+    @Override
+    public List<Map<Type, Double>> predict(List<String> sources, List<String> targets) {
+        List<Map<Type, Double>> result = new ArrayList<>(sources.size());
+        for (int i = 0; i < sources.size(); i += batchSize) {
+            int j = Math.min(sources.size(), i + batchSize);
+            for (double[] modelResults : predictBatch(sources.subList(i, j), targets.subList(i, j))) {
+                result.add(toRelationMap(modelResults));
+            }
+        }
+        return result;
+    }
 
-		float[] embedding_source = simpleCache.get(source, e -> this.bert.embedSequence(source));
-		float[] embedding_target = simpleCache.get(target, e -> this.bert.embedSequence(target));
-
-        INDArray features = Nd4j.zeros(1, 1, 2, 1024);
-
-        for(int i=0; i<767; i++)
-        {
-            features.putScalar(0, 0, 0, i, embedding_source[i]);
-            features.putScalar(0, 0, 1, i, embedding_target[i]);
+	/**
+	 * Predicts the raw model output for a batch of term pairs. All pairs are
+	 * copied into a single [B,1,2,1024] tensor and evaluated with one call to the
+	 * network.
+	 * 
+	 * @param sources - the source term strings
+	 * @param targets - the target term strings (in the same order as the sources)
+	 * @return a matrix with one row per pair, the columns of which are indexed by
+	 *   the values of {@code typeMap}
+	 */
+    public double[][] predictBatch(List<String> sources, List<String> targets) {
+        if (sources.size() != targets.size()) {
+            throw new IllegalArgumentException("Sources and targets must have the same length");
+        }
+        final int b = sources.size();
+        if (b == 0) {
+            return new double[0][];
+        }
+        final int width = (int) INPUT_SIZE;
+        float[] data = new float[b * 2 * width];
+        for (int i = 0; i < b; i++) {
+            final String source = sources.get(i), target = targets.get(i);
+            float[] embedding_source = embeddings.get(source, bert::embedSequence);
+            float[] embedding_target = embeddings.get(target, bert::embedSequence);
+            System.arraycopy(embedding_source, 0, data, (2 * i) * width, Math.min(EMBEDDING_COPY, embedding_source.length));
+            System.arraycopy(embedding_target, 0, data, (2 * i + 1) * width, Math.min(EMBEDDING_COPY, embedding_target.length));
         }
+        INDArray features = Nd4j.create(data, b, 1, 2, INPUT_SIZE);
 
         INDArray[] prediction = this.net.output(features);
 
-        double[] modelResults = prediction[0].toDoubleVector();
+        return prediction[0].reshape(b, prediction[0].length() / b).toDoubleMatrix();
+    }
+
+    private Map<Type, Double> toRelationMap(double[] modelResults) {
         Map<Type, Double> result = new HashMap<Type,Double>();
 		for(Type relationType: typeMap.keySet()) {
 			result.put(relationType, modelResults[typeMap.get(relationType)]);
 		}
-		
-
         return result;
     }
 }
\ No newline at end of file
@@ -0,0 +1,48 @@
+package org.insightcentre.nlp.saffron.taxonomy.metrics;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Describes which links may have a different delta score after a link has
+ * been added to a solution. A link is affected if its top is in
+ * {@code tops} or its bottom is in {@code bottoms}, or if {@code all} is set.
+ *
+ * @author John McCrae
+ */
+public class AffectedLinks {
+
+    /**
+     * No link is affected (e.g., the score of each link is independent)
+     */
+    public static final AffectedLinks NONE = new AffectedLinks(false, Collections.<String>emptySet(), Collections.<String>emptySet());
+    /**
+     * Any link may be affected
+     */
+    public static final AffectedLinks ALL = new AffectedLinks(true, Collections.<String>emptySet(), Collections.<String>emptySet());
+
+    public final boolean all;
+    public final Set<String> tops;
+    public final Set<String> bottoms;
+
+    private AffectedLinks(boolean all, Set<String> tops, Set<String> bottoms) {
+        this.all = all;
+        this.tops = tops;
+        this.bottoms = bottoms;
+    }
+
+    /**
+     * Create a set of affected links
+     *
+     * @param tops The links with these terms as the top may be affected
+     * @param bottoms The links with these terms as the bottom may be affected
+     */
+    public AffectedLinks(Set<String> tops, Set<String> bottoms) {
+        this(false, tops, bottoms);
+    }
+
+    @Override
+    public String toString() {
+        return all ? "AffectedLinks{all}" : "AffectedLinks{" + "tops=" + tops + ", bottoms=" + bottoms + '}';
+    }
+}
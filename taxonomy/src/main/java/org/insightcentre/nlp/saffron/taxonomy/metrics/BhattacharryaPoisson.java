@@ -6,14 +6,13 @@ import static java.lang.Math.exp;
 import static java.lang.Math.pow;
 import static java.lang.Math.sqrt;
 
-import java.util.Arrays;
 import java.util.Set;
 
 import org.insightcentre.nlp.saffron.data.TaxoLink;
 import org.insightcentre.nlp.saffron.taxonomy.search.Solution;
 
-import it.unimi.dsi.fastutil.objects.Object2IntArrayMap;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 
 /**
  * A metric this measures a taxonomy based on the expected number of children.
@@ -42,13 +41,25 @@ import it.unimi.dsi.fastutil.objects.Object2IntMap;
  * 
  *   sim2 = n * alpha * sim
  * 
+ * The counts are stored in chunks in persistent maps, so that the score for 
+ * the next solution only copies the changed chunks, and the sum over the 
+ * nodes with more than one child is kept up to date, so that both the delta
+ * score and the next score are computed in (nearly) constant time.
+ * 
  * @author John McCrae
  */
 public class BhattacharryaPoisson implements HierarchicalScore {
+    private static final int CHUNK_BITS = 5;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
     private final Score baseScore;
     private final Object2IntMap<String> term2index;
-    private final int[] f;
-    private final int[] c;
+    /* The number of nodes with each number of children */
+    private final PersistentIntMap<int[]> f;
+    /* The number of children of each node */
+    private final PersistentIntMap<int[]> c;
+    /* The sum of sqrt(p[i] * f[i]) for i >= 2 */
+    private final double tail;
     private final double[] p;
     private final int N;
     private final double lambda;
@@ -58,25 +69,29 @@ public class BhattacharryaPoisson implements HierarchicalScore {
     public BhattacharryaPoisson(Score baseScore, Set<String> terms, 
             double lambda, double alpha) {
         this.baseScore = baseScore;
-        this.term2index = new Object2IntArrayMap<>();
+        this.term2index = new Object2IntOpenHashMap<>();
+        this.term2index.defaultReturnValue(-1);
         int i = 0;
         for(String t : terms) {
             this.term2index.put(t, i++);
         }
-        this.f = new int[terms.size()];
         this.N = terms.size() - 1;
         this.p = dpois(lambda, N);
-        f[0] = N;
-        this.c = new int[terms.size()];
+        this.f = set(PersistentIntMap.<int[]>empty(), 0, N);
+        this.c = PersistentIntMap.empty();
+        this.tail = 0.0;
         this.lambda = lambda;
         this.r = alpha * N;
     }
 
-    private BhattacharryaPoisson(Score baseScore, Object2IntMap<String> term2index, int[] f, int[] c, double[] p, int N, double lambda, double r) {
+    private BhattacharryaPoisson(Score baseScore, Object2IntMap<String> term2index, 
+            PersistentIntMap<int[]> f, PersistentIntMap<int[]> c, double tail,
+            double[] p, int N, double lambda, double r) {
         this.baseScore = baseScore;
         this.term2index = term2index;
         this.f = f;
         this.c = c;
+        this.tail = tail;
         this.p = p;
         this.N = N;
         this.lambda = lambda;
@@ -91,23 +106,45 @@ public class BhattacharryaPoisson implements HierarchicalScore {
         }
         return d;
     }
+
+    private static int get(PersistentIntMap<int[]> counts, int i) {
+        final int[] chunk = counts.get(i >>> CHUNK_BITS);
+        return chunk == null ? 0 : chunk[i & CHUNK_MASK];
+    }
+
+    private static PersistentIntMap<int[]> set(PersistentIntMap<int[]> counts, int i, int value) {
+        final int[] chunk = counts.get(i >>> CHUNK_BITS);
+        final int[] chunk2 = chunk == null ? new int[1 << CHUNK_BITS] : chunk.clone();
+        chunk2[i & CHUNK_MASK] = value;
+        return counts.put(i >>> CHUNK_BITS, chunk2);
+    }
+
+    private int index(String term) {
+        final int i = term2index.getInt(term);
+        if(i < 0) {
+            throw new IllegalArgumentException("Not a term: " + term);
+        }
+        return i;
+    }
     
     @Override
     public double deltaScore(TaxoLink taxoLink) {
-        int t = term2index.get(taxoLink.getTop());
+        final int t = index(taxoLink.getTop());
+        final int ct = get(c, t);
         final double delta;
-        if(c[t] > 0) {
+        if(ct > 0) {
+            final int fct = get(f, ct), fct1 = get(f, ct + 1), f0 = get(f, 0);
             delta =
-                    (sqrt(f[c[t] + 1] + 1) - sqrt(f[c[t] + 1])) * sqrt(p[c[t] + 1] / (N - f[0])) +
-                    (sqrt(f[c[t]] - 1) - sqrt(f[c[t]])) * sqrt(p[c[t]]) / (N - f[0]);
+                    (sqrt(fct1 + 1) - sqrt(fct1)) * sqrt(p[ct + 1] / (N - f0)) +
+                    (sqrt(fct - 1) - sqrt(fct)) * sqrt(p[ct]) / (N - f0);
         } else /*if(f[c[t]] == 0)*/ {
+            final int f0 = get(f, 0), f1 = get(f, 1);
             double d = 0.0;
-            d += sqrt(p[1] * (f[1] + 1) / (N - f[0] + 1))
-                    - (N == f[0] ? 0.0 : sqrt(p[1] * (f[1]) / (N - f[0])));
-            for(int i = 2; i < p.length; i++) {
-                d += sqrt(p[i] * f[i] / (N - f[0] + 1)) 
-                        - (N == f[0] ? 0.0 : sqrt(p[i] * f[i] / (N - f[0])));
-            }
+            d += sqrt(p[1] * (f1 + 1) / (N - f0 + 1))
+                    - (N == f0 ? 0.0 : sqrt(p[1] * (f1) / (N - f0)));
+            // The nodes with more than one child are only rescaled
+            d += tail / sqrt(N - f0 + 1)
+                    - (N == f0 ? 0.0 : tail / sqrt(N - f0));
             delta = d;
         } 
         return delta * r + baseScore.deltaScore(taxoLink);
@@ -115,13 +152,19 @@ public class BhattacharryaPoisson implements HierarchicalScore {
 
     @Override
     public HierarchicalScore next(TaxoLink link, Solution soln) {
-        int t = term2index.get(link.getTop());
-        int[] newC = Arrays.copyOf(c, c.length);
-        newC[t]++;
-        int[] newF = Arrays.copyOf(f, f.length);
-        newF[c[t]]--;
-        newF[newC[t]]++;
-        return new BhattacharryaPoisson(baseScore, term2index, newF, newC, p, N, lambda, r);
+        final int t = index(link.getTop());
+        final int ct = get(c, t);
+        final int fct = get(f, ct), fct1 = get(f, ct + 1);
+        double newTail = tail;
+        if(ct >= 2) {
+            newTail += sqrt(p[ct] * (fct - 1)) - sqrt(p[ct] * fct);
+        }
+        if(ct + 1 >= 2 && ct + 1 < p.length) {
+            newTail += sqrt(p[ct + 1] * (fct1 + 1)) - sqrt(p[ct + 1] * fct1);
+        }
+        return new BhattacharryaPoisson(baseScore, term2index, 
+                set(set(f, ct, fct - 1), ct + 1, fct1 + 1),
+                set(c, t, ct + 1), newTail, p, N, lambda, r);
     }
     // Calculates y ** x / x! mostly by the Sterling approximation
     // =~ 1/sqrt(2*pi*x) (e * y / x) ** x 
@@ -21,4 +21,9 @@ public class NullScore implements Score<TypedLink> {
         return this;
     }
 
+    @Override
+    public AffectedLinks affectedBy(TypedLink link) {
+        return AffectedLinks.NONE;
+    }
+
 }
@@ -0,0 +1,97 @@
+package org.insightcentre.nlp.saffron.taxonomy.metrics;
+
+/**
+ * An immutable map from non-negative integers to values. The map is a trie
+ * with 32 branches at each level, so that updating a value only copies the
+ * nodes on the path to it (at most seven arrays of 32 elements) and the other
+ * nodes are shared with the previous version.
+ *
+ * @author John McCrae
+ * @param <V> The type of the values
+ */
+public final class PersistentIntMap<V> {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final PersistentIntMap<Object> EMPTY = new PersistentIntMap<>(new Object[WIDTH], 0);
+
+    private final Object[] root;
+    private final int shift;
+
+    private PersistentIntMap(Object[] root, int shift) {
+        this.root = root;
+        this.shift = shift;
+    }
+
+    /**
+     * The empty map
+     *
+     * @param <V> The type of the values
+     * @return The empty map
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentIntMap<V> empty() {
+        return (PersistentIntMap<V>) EMPTY;
+    }
+
+    /* Can the key be stored in a trie whose root has this shift */
+    private static boolean fits(int key, int shift) {
+        return shift + BITS >= Integer.SIZE || (key >>> (shift + BITS)) == 0;
+    }
+
+    /**
+     * Get a value
+     *
+     * @param key The key, which must not be negative
+     * @return The value or null if there is no value for the key
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (!fits(key, shift)) {
+            return null;
+        }
+        Object[] node = root;
+        for (int s = shift; s > 0; s -= BITS) {
+            node = (Object[]) node[(key >>> s) & MASK];
+            if (node == null) {
+                return null;
+            }
+        }
+        return (V) node[key & MASK];
+    }
+
+    /**
+     * Create a map with a value changed. This map is not changed.
+     *
+     * @param key The key, which must not be negative
+     * @param value The new value
+     * @return The new map
+     */
+    public PersistentIntMap<V> put(int key, V value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key");
+        }
+        Object[] r = root;
+        int s = shift;
+        while (!fits(key, s)) {
+            final Object[] r2 = new Object[WIDTH];
+            r2[0] = r;
+            r = r2;
+            s += BITS;
+        }
+        return new PersistentIntMap<>(put(r, s, key, value), s);
+    }
+
+    private static Object[] put(Object[] node, int shift, int key, Object value) {
+        final Object[] copy = node == null ? new Object[WIDTH] : node.clone();
+        final int i = (key >>> shift) & MASK;
+        if (shift == 0) {
+            copy[i] = value;
+        } else {
+            copy[i] = put((Object[]) copy[i], shift - BITS, key, value);
+        }
+        return copy;
+    }
+}
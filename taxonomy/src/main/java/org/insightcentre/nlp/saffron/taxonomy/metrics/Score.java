@@ -1,5 +1,7 @@
 package org.insightcentre.nlp.saffron.taxonomy.metrics;
 
+import java.util.Collection;
+
 import org.insightcentre.nlp.saffron.data.TypedLink;
 import org.insightcentre.nlp.saffron.taxonomy.search.Solution;
 
@@ -23,4 +25,26 @@ public interface Score<T extends TypedLink>{
      * @return An object that is updated for this case
      */
     Score<T> next(T link, Solution soln);
+
+    /**
+     * Find the links whose delta score may change when the link is added,
+     * that is the links for which the score returned by {@code next} may give
+     * a different delta score to this score. This must be called before
+     * {@code next}.
+     *
+     * @param link The link to be added
+     * @return The links that may be affected
+     */
+    default AffectedLinks affectedBy(T link) {
+        return AffectedLinks.ALL;
+    }
+
+    /**
+     * Indicate that the delta scores of these links are about to be requested,
+     * so that they may be computed together. This does not change any score.
+     *
+     * @param links The links that will be scored
+     */
+    default void prefetch(Collection<T> links) {
+    }
 }
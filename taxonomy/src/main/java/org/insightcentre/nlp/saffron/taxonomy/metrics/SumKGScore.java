@@ -1,7 +1,12 @@
 package org.insightcentre.nlp.saffron.taxonomy.metrics;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.insightcentre.nlp.saffron.config.KnowledgeGraphExtractionConfiguration;
 import org.insightcentre.nlp.saffron.data.TypedLink;
 import org.insightcentre.nlp.saffron.taxonomy.search.Solution;
@@ -11,6 +16,9 @@ import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
 import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
 
 public class SumKGScore implements Score<TypedLink>{
+
+	/** The number of (source, target) pairs sent to the classifier at once when prefetching */
+	private static final int PREFETCH_SIZE = 4096;
 	
 	private final MulticlassRelationClassifier<String> classifier;
 	public final Object2DoubleMap<TypedLink> scores = new Object2DoubleOpenHashMap<>();
@@ -24,32 +32,77 @@ public class SumKGScore implements Score<TypedLink>{
 	@Override
 	public double deltaScore(final TypedLink tl) {
 	    if (!scores.containsKey(tl)) {
-	    	Map<TypedLink.Type, Double> prediction = classifier.predict(tl.getSource(), tl.getTarget());
-
-	    	// If the classifier does not predict this type of relation, the relation should just be ignored
-	    	if (!prediction.containsKey(tl.getType())) {
-	    		scores.put(tl, -1.0);
-	    		return -1.0;
-	    	}
-
-	    	for(TypedLink.Type relationType : prediction.keySet()) {
-				TypedLink deepCopy;
-
-				if (this.enableSynonymyNormalisation &&
-						relationType.equals(TypedLink.Type.synonymy)) {
-					deepCopy = new TypedLink(tl.getSource(), tl.getTarget(), relationType);
-					double synonymyScore = normaliseSynonymyScores(deepCopy, prediction.get(TypedLink.Type.synonymy));
-					scores.put(deepCopy, synonymyScore);
-				} else {
-
-					deepCopy = new TypedLink(tl.getSource(), tl.getTarget(), relationType);
-					scores.put(deepCopy, prediction.get(relationType));
-				}
-	    	}
+	    	return store(tl, classifier.predict(tl.getSource(), tl.getTarget()));
 	    }
 	    return scores.getDouble(tl);
 	}
 
+	/**
+	 * Compute the scores of all links that have not yet been scored, by calling
+	 * the classifier on batches of (source, target) pairs
+	 * 
+	 * @param links The links to be scored
+	 */
+	@Override
+	public void prefetch(Collection<TypedLink> links) {
+		Map<Pair<String, String>, List<TypedLink>> pairs = new LinkedHashMap<>();
+		for (TypedLink tl : links) {
+			if (!scores.containsKey(tl)) {
+				pairs.computeIfAbsent(Pair.of(tl.getSource(), tl.getTarget()), p -> new ArrayList<>()).add(tl);
+			}
+		}
+		List<List<TypedLink>> batch = new ArrayList<>(PREFETCH_SIZE);
+		for (List<TypedLink> tls : pairs.values()) {
+			batch.add(tls);
+			if (batch.size() == PREFETCH_SIZE) {
+				prefetchBatch(batch);
+				batch.clear();
+			}
+		}
+		prefetchBatch(batch);
+	}
+
+	private void prefetchBatch(List<List<TypedLink>> batch) {
+		List<String> sources = new ArrayList<>(batch.size());
+		List<String> targets = new ArrayList<>(batch.size());
+		for (List<TypedLink> tls : batch) {
+			sources.add(tls.get(0).getSource());
+			targets.add(tls.get(0).getTarget());
+		}
+		List<Map<TypedLink.Type, Double>> predictions = classifier.predict(sources, targets);
+		for (int i = 0; i < batch.size(); i++) {
+			for (TypedLink tl : batch.get(i)) {
+				if (!scores.containsKey(tl)) {
+					store(tl, predictions.get(i));
+				}
+			}
+		}
+	}
+
+	private double store(final TypedLink tl, final Map<TypedLink.Type, Double> prediction) {
+    	// If the classifier does not predict this type of relation, the relation should just be ignored
+    	if (!prediction.containsKey(tl.getType())) {
+    		scores.put(tl, -1.0);
+    		return -1.0;
+    	}
+
+    	for(TypedLink.Type relationType : prediction.keySet()) {
+			TypedLink deepCopy;
+
+			if (this.enableSynonymyNormalisation &&
+					relationType.equals(TypedLink.Type.synonymy)) {
+				deepCopy = new TypedLink(tl.getSource(), tl.getTarget(), relationType);
+				double synonymyScore = normaliseSynonymyScores(deepCopy, prediction.get(TypedLink.Type.synonymy));
+				scores.put(deepCopy, synonymyScore);
+			} else {
+
+				deepCopy = new TypedLink(tl.getSource(), tl.getTarget(), relationType);
+				scores.put(deepCopy, prediction.get(relationType));
+			}
+    	}
+	    return scores.getDouble(tl);
+	}
+
 	protected double normaliseSynonymyScores(TypedLink tl, double currentSynonymyScore) {
 		
 		double normalisedScore;
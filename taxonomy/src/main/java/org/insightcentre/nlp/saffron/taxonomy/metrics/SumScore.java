@@ -1,20 +1,22 @@
 package org.insightcentre.nlp.saffron.taxonomy.metrics;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.insightcentre.nlp.saffron.data.TypedLink;
 import org.insightcentre.nlp.saffron.taxonomy.search.Solution;
 import org.insightcentre.nlp.saffron.taxonomy.supervised.BinaryRelationClassifier;
 
-import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
-import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
-
 /**
+ * Scores a taxonomy by the sum of the scores of its links. The scores are
+ * cached in a concurrent map, so this score may be used by several threads.
  *
  * @author John McCrae
  */
 public class SumScore implements Score<TypedLink> {
 
     private final BinaryRelationClassifier<String> classifier;
-    private final Object2DoubleMap<TypedLink> scores = new Object2DoubleOpenHashMap<>();
+    private final ConcurrentMap<TypedLink, Double> scores = new ConcurrentHashMap<>();
 
     public SumScore(BinaryRelationClassifier<String> classifier) {
         this.classifier = classifier;
@@ -22,14 +24,21 @@ public class SumScore implements Score<TypedLink> {
 
     @Override
     public double deltaScore(TypedLink tl) {
-        if (!scores.containsKey(tl)) {
-            scores.put(tl, classifier.predict(tl.getSource(), tl.getTarget()));
+        Double s = scores.get(tl);
+        if (s == null) {
+            s = classifier.predict(tl.getSource(), tl.getTarget());
+            scores.putIfAbsent(tl, s);
         }
-        return scores.getDouble(tl);
+        return s;
     }
 
     @Override
     public Score<TypedLink> next(TypedLink link, Solution soln) {
         return this;
     }
+
+    @Override
+    public AffectedLinks affectedBy(TypedLink link) {
+        return AffectedLinks.NONE;
+    }
 }
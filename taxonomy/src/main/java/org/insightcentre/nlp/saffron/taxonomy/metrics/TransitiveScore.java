@@ -1,118 +1,220 @@
 package org.insightcentre.nlp.saffron.taxonomy.metrics;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.insightcentre.nlp.saffron.data.TaxoLink;
 import org.insightcentre.nlp.saffron.taxonomy.search.Solution;
 import org.insightcentre.nlp.saffron.taxonomy.supervised.BinaryRelationClassifier;
 
-import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
-import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.Long2DoubleMap;
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
 
 /**
+ * Scores a taxonomy by the sum of the scores of all pairs of a term and one of
+ * its ancestors.
+ *
+ * The terms are numbered and the direct links of the taxonomy are stored in
+ * persistent maps, which are shared between all the scores derived from the
+ * same initial score. Adding a link only copies the paths to the top and the
+ * bottom in these maps, and the ancestors and descendants of a term are
+ * found by following the links.
  *
  * @author John McCrae
  */
 public class TransitiveScore implements HierarchicalScore {
 
-    private final BinaryRelationClassifier<String> classifier;
-    private final Object2DoubleMap<TaxoLink> scores;
-    final HashMap<String, Set<String>> parents;
-    final HashMap<String, Set<String>> children;
+    /**
+     * A (persistent) list of linked terms
+     */
+    private static final class Links {
 
-    public TransitiveScore(BinaryRelationClassifier<String> classifier) {
-        this.classifier = classifier;
-        this.parents = new HashMap<>();
-        this.children = new HashMap<>();
-        this.scores = new Object2DoubleOpenHashMap<>();
-    }
+        final int term;
+        final Links next;
 
-    public TransitiveScore(BinaryRelationClassifier<String> classifier, Object2DoubleMap<TaxoLink> scores, HashMap<String, Set<String>> parents, HashMap<String, Set<String>> children) {
-        this.classifier = classifier;
-        this.scores = scores;
-        this.parents = parents;
-        this.children = children;
+        Links(int term, Links next) {
+            this.term = term;
+            this.next = next;
+        }
     }
 
-    @Override
-    public double deltaScore(TaxoLink tl) {
-        if (!scores.containsKey(tl)) {
-            scores.put(tl, classifier.predict(tl.getTop(), tl.getBottom()) - 0.5);
+    /**
+     * The numbers of the terms and the cached classifier scores, which are
+     * shared by all scores derived from the same initial score. These may be
+     * used by several threads.
+     */
+    private static final class Terms {
+
+        /* The number of separately locked parts of the score cache */
+        private static final int STRIPES = 64;
+
+        final BinaryRelationClassifier<String> classifier;
+        final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+        /* Written only while holding the lock on this object */
+        volatile String[] names = new String[16];
+        final Long2DoubleMap[] scores = new Long2DoubleMap[STRIPES];
+
+        Terms(BinaryRelationClassifier<String> classifier) {
+            this.classifier = classifier;
+            for (int i = 0; i < STRIPES; i++) {
+                scores[i] = new Long2DoubleOpenHashMap();
+            }
         }
-        double s = scores.getDouble(tl);
-        if (parents.containsKey(tl.getTop())) {
-            for (String p : parents.get(tl.getTop())) {
-                TaxoLink tl2 = new TaxoLink(p, tl.getBottom());
-                if (!scores.containsKey(tl2)) {
-                    scores.put(tl2, classifier.predict(tl2.getTop(), tl2.getBottom()) - 0.5);
-                }
-                s += scores.getDouble(tl2);
-                if (children.containsKey(tl.getBottom())) {
-                    for (String c : children.get(tl.getBottom())) {
-                        TaxoLink tl3 = new TaxoLink(p, c);
-                        if (!scores.containsKey(tl3)) {
-                            scores.put(tl3, classifier.predict(tl3.getTop(), tl3.getBottom()) - 0.5);
-                        }
-                        s += scores.getDouble(tl3);
-
-                    }
-                }
+
+        int id(String term) {
+            final Integer i = ids.get(term);
+            return i != null ? i : intern(term);
+        }
+
+        private synchronized int intern(String term) {
+            final Integer i = ids.get(term);
+            if (i != null) {
+                return i;
             }
+            final int n = ids.size();
+            if (n == names.length) {
+                names = Arrays.copyOf(names, n * 2);
+            }
+            // The name is stored before the id is visible to other threads
+            names[n] = term;
+            ids.put(term, n);
+            return n;
+        }
+
+        String name(int id) {
+            return names[id];
         }
-        if (children.containsKey(tl.getBottom())) {
-            for (String c : children.get(tl.getBottom())) {
-                TaxoLink tl2 = new TaxoLink(tl.getTop(), c);
-                if (!scores.containsKey(tl2)) {
-                    scores.put(tl2, classifier.predict(tl2.getTop(), tl2.getBottom()) - 0.5);
+
+        double score(int top, int bottom) {
+            final long key = ((long) top << 32) | bottom;
+            final Long2DoubleMap stripe = scores[(top * 31 + bottom) & (STRIPES - 1)];
+            synchronized (stripe) {
+                if (stripe.containsKey(key)) {
+                    return stripe.get(key);
                 }
-                s += scores.getDouble(tl2);
             }
+            final double s = classifier.predict(name(top), name(bottom)) - 0.5;
+            synchronized (stripe) {
+                stripe.put(key, s);
+            }
+            return s;
         }
-        return s;
     }
 
-    @Override
-    public HierarchicalScore next(TaxoLink link, Solution soln) {
-        HashMap<String, Set<String>> newParents = new HashMap<>(parents);
-        // Shouldn't already be parents
-        Set<String> p = newParents.containsKey(link.getBottom()) ? newParents.get(link.getBottom()) : new HashSet<String>();
+    private final Terms terms;
+    /* The direct parents of each term */
+    private final PersistentIntMap<Links> parents;
+    /* The direct children of each term */
+    private final PersistentIntMap<Links> children;
+    /* If false, there is at most one path between any two terms */
+    private final boolean multiPath;
 
-        HashMap<String, Set<String>> newChildren = new HashMap<>(children);
-        Set<String> c = newChildren.containsKey(link.getTop()) ? newChildren.get(link.getTop()) : new HashSet<String>();
+    public TransitiveScore(BinaryRelationClassifier<String> classifier) {
+        this(new Terms(classifier), PersistentIntMap.<Links>empty(), PersistentIntMap.<Links>empty(), false);
+    }
 
-        if (newParents.containsKey(link.getTop())) {
-            p.addAll(newParents.get(link.getTop()));
-        }
+    private TransitiveScore(Terms terms, PersistentIntMap<Links> parents,
+            PersistentIntMap<Links> children, boolean multiPath) {
+        this.terms = terms;
+        this.parents = parents;
+        this.children = children;
+        this.multiPath = multiPath;
+    }
 
-        if (newChildren.containsKey(link.getBottom())) {
-            c.addAll(newChildren.get(link.getBottom()));
+    /**
+     * Add all terms reachable from a term to a list
+     *
+     * @param links The links to follow
+     * @param term The term (which is not added)
+     * @param out The list to add the reachable terms to
+     */
+    private void reachable(PersistentIntMap<Links> links, int term, IntArrayList out) {
+        final IntOpenHashSet seen = multiPath ? new IntOpenHashSet() : null;
+        if (seen != null) {
+            seen.add(term);
         }
-
-        for (String parent : p) {
-            if (!newChildren.containsKey(parent)) {
-                newChildren.put(parent, new HashSet<String>());
+        final int start = out.size();
+        int next = term;
+        for (int i = start - 1; i < out.size(); i++) {
+            if (i >= start) {
+                next = out.getInt(i);
+            }
+            for (Links l = links.get(next); l != null; l = l.next) {
+                if (seen == null || seen.add(l.term)) {
+                    out.add(l.term);
+                }
             }
-            newChildren.get(parent).addAll(c);
-            newChildren.get(parent).add(link.getBottom());
         }
+    }
 
-        for (String child : c) {
-            if (!newParents.containsKey(child)) {
-                newParents.put(child, new HashSet<String>());
+    @Override
+    public double deltaScore(TaxoLink tl) {
+        // Every ancestor of the top (and the top) becomes an ancestor of
+        // every descendant of the bottom (and the bottom)
+        final IntArrayList tops = new IntArrayList();
+        tops.add(terms.id(tl.getTop()));
+        reachable(parents, tops.getInt(0), tops);
+        final IntArrayList bottoms = new IntArrayList();
+        bottoms.add(terms.id(tl.getBottom()));
+        reachable(children, bottoms.getInt(0), bottoms);
+        final int[] t = tops.elements();
+        final int[] b = bottoms.elements();
+        double s = 0.0;
+        for (int i = 0; i < tops.size(); i++) {
+            for (int j = 0; j < bottoms.size(); j++) {
+                s += terms.score(t[i], b[j]);
             }
-            newParents.get(child).addAll(p);
-            newParents.get(child).add(link.getTop());
         }
+        return s;
+    }
 
-        p.add(link.getTop());
-        newParents.put(link.getBottom(), p);
+    private Set<String> names(IntArrayList ids) {
+        final Set<String> s = new HashSet<>();
+        for (int i = 0; i < ids.size(); i++) {
+            s.add(terms.name(ids.getInt(i)));
+        }
+        return s;
+    }
 
-        c.add(link.getBottom());
-        newChildren.put(link.getTop(), c);
+    @Override
+    public AffectedLinks affectedBy(TaxoLink link) {
+        // The bottom and its descendants gain parents and the top and its
+        // ancestors gain children (the bottom should not yet have parents,
+        // but they would also gain children)
+        final int top = terms.id(link.getTop());
+        final int bottom = terms.id(link.getBottom());
+        final IntArrayList tops = new IntArrayList();
+        tops.add(bottom);
+        reachable(children, bottom, tops);
+        final IntArrayList bottoms = new IntArrayList();
+        bottoms.add(top);
+        reachable(parents, top, bottoms);
+        reachable(parents, bottom, bottoms);
+        return new AffectedLinks(names(tops), names(bottoms));
+    }
 
-        return new TransitiveScore(classifier, scores, newParents, newChildren);
+    @Override
+    public HierarchicalScore next(TaxoLink link, Solution soln) {
+        final int top = terms.id(link.getTop());
+        final int bottom = terms.id(link.getBottom());
+        final Links p = parents.get(bottom);
+        boolean mp = multiPath || p != null || top == bottom;
+        if (!mp && children.get(bottom) != null) {
+            // A link that closes a cycle would make the search for ancestors
+            // loop, so check if the top is below the bottom
+            final IntArrayList ancestors = new IntArrayList();
+            reachable(parents, top, ancestors);
+            mp = ancestors.contains(bottom);
+        }
+        return new TransitiveScore(terms,
+                parents.put(bottom, new Links(top, p)),
+                children.put(top, new Links(bottom, children.get(top))),
+                mp);
     }
 
 }
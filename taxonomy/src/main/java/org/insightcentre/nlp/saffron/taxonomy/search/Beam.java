@@ -10,7 +10,10 @@ import java.util.NoSuchElementException;
 
 /**
  * A beam is a heap which will reject values when it is full. 
- * This beam is sorted in descending order
+ * This beam is sorted in descending order. When it is full a new value
+ * replaces the lowest value, if it is higher, and values with the same score
+ * are ordered by their natural order, so the contents of the beam do not
+ * depend on the order the values were pushed in.
  *
  * @author John McCrae
  * @param <K> The type of object stored in the beam
@@ -30,6 +33,8 @@ public class Beam<K extends Comparable<K>> implements Iterable<K> {
      */
     private final Comparator<? super K> c;
     private final Object2DoubleMap<K> scores;
+    /* The index of the lowest value in the heap, or -1 if not known */
+    private int lowest = -1;
 
     /**
      * Create a new beam
@@ -54,25 +59,44 @@ public class Beam<K extends Comparable<K>> implements Iterable<K> {
             scores.put(k, score);
             enqueue(k);
             return true;
-        } else if (score > scores.getDouble(last())) {
-            K k2 = heap[size - 1];
-            heap[size - 1] = k;
-            scores.put(k, score);
-            ObjectHeaps.upHeap(heap, size, size - 1, c);
+        }
+        final int i = lowest();
+        final K k2 = heap[i];
+        final int cmp = Double.compare(score, scores.getDouble(k2));
+        if (cmp > 0 || cmp == 0 && k.compareTo(k2) < 0) {
+            // The lowest value is a leaf, so the new value can only move up
             scores.remove(k2);
+            scores.put(k, score);
+            heap[i] = k;
+            ObjectHeaps.upHeap(heap, size, i, c);
+            lowest = -1;
             return true;
         } else {
             return false;
         }
     }
 
+    /**
+     * Push all the elements of another beam into this beam, in the order they
+     * are stored in the other beam
+     *
+     * @param other The other beam
+     */
+    public void merge(Beam<K> other) {
+        for (int i = 0; i < other.size; i++) {
+            push(other.heap[i], other.scores.getDouble(other.heap[i]));
+        }
+    }
+
     /**
      * Returns the same value as push() without changing the heap
      * @param score The score to test
      * @return True if a value with this score would be added to the heap
      */
     public boolean canPush(double score) {
-        return size < maxSize || score > scores.getDouble(last());
+        // A value with the same score as the lowest may still be higher in
+        // the natural order
+        return size < maxSize || score >= scores.getDouble(heap[lowest()]);
     }
     
     /**
@@ -97,6 +121,7 @@ public class Beam<K extends Comparable<K>> implements Iterable<K> {
         final K result = heap[0];
         heap[0] = heap[--size];
         heap[size] = null;
+        lowest = -1;
         if (size != 0) {
             ObjectHeaps.downHeap(heap, size, 0, c);
         }
@@ -118,11 +143,20 @@ public class Beam<K extends Comparable<K>> implements Iterable<K> {
 
     }
 
-    private K last() {
+    /* The lowest value is one of the leaves of the heap */
+    private int lowest() {
         if (size == 0) {
             throw new NoSuchElementException();
         }
-        return heap[size - 1];
+        if (lowest < 0) {
+            lowest = size - 1;
+            for (int i = size >> 1; i < size - 1; i++) {
+                if (c.compare(heap[i], heap[lowest]) > 0) {
+                    lowest = i;
+                }
+            }
+        }
+        return lowest;
     }
 
     private void enqueue(K x) {
@@ -131,6 +165,7 @@ public class Beam<K extends Comparable<K>> implements Iterable<K> {
         }
         heap[size++] = x;
         ObjectHeaps.upHeap(heap, size, size - 1, c);
+        lowest = -1;
     }
     
     private class BeamIterator implements Iterator<K> {
@@ -1,9 +1,12 @@
 package org.insightcentre.nlp.saffron.taxonomy.search;
 
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import org.insightcentre.nlp.saffron.data.TaxoLink;
 import org.insightcentre.nlp.saffron.data.Taxonomy;
@@ -11,28 +14,92 @@ import org.insightcentre.nlp.saffron.data.Term;
 import org.insightcentre.nlp.saffron.taxonomy.metrics.Score;
 
 /**
+ * Searches for the best taxonomy by finding the parent of each term in turn
+ * and keeping a beam of the best partial solutions.
+ *
+ * On a fork-join pool, the candidate parents of a term are expanded in
+ * blocks in parallel. Each block prunes its candidates against its own beam,
+ * which is never fuller than the beam of the whole search, and records the
+ * solutions it keeps in order. These are then pushed into the beam in the
+ * order of the candidates, so the result is the same as the search on a
+ * single thread.
  *
  * @author John McCrae
  */
 public class BeamSearch implements TaxonomySearch {
 
+    /* The number of candidate parents expanded by a single task */
+    private static final int LEAF_SIZE = 16;
+
     private final Score emptyScore;
     private final int beamSize;
+    private final ForkJoinPool pool;
+    /* The number of threads to create a pool with for each search, if no
+     * pool is given */
+    private final int threads;
 
     public BeamSearch(Score emptyScore, int beamSize) {
+        this(emptyScore, beamSize, null);
+    }
+
+    /**
+     * Create a beam search
+     *
+     * @param emptyScore The score of the empty solution, which must be safe
+     * to use from several threads if there is more than one thread
+     * @param beamSize The size of the beam
+     * @param threads The number of threads to expand the beam with, or 0 to
+     * use the common pool. A pool with more than one thread is created for
+     * each search and shut down when it is finished
+     */
+    public BeamSearch(Score emptyScore, int beamSize, int threads) {
+        this(emptyScore, beamSize, threads <= 0 ? ForkJoinPool.commonPool() : null, threads);
+    }
+
+    /**
+     * Create a beam search
+     *
+     * @param emptyScore The score of the empty solution, which must be safe
+     * to use from several threads if a pool is given
+     * @param beamSize The size of the beam
+     * @param pool The pool to expand the beam on, or null to expand it on the
+     * calling thread
+     */
+    public BeamSearch(Score emptyScore, int beamSize, ForkJoinPool pool) {
+        this(emptyScore, beamSize, pool, 1);
+    }
+
+    private BeamSearch(Score emptyScore, int beamSize, ForkJoinPool pool, int threads) {
         this.emptyScore = emptyScore;
         this.beamSize = beamSize;
+        this.pool = pool;
+        this.threads = threads;
         assert (beamSize > 0);
     }
 
     @Override
     public Taxonomy extractTaxonomyWithBlackWhiteList(Map<String, Term> termMap,
             Set<TaxoLink> whiteList, Set<TaxoLink> blackList) {
+        if (pool == null && threads > 1) {
+            final ForkJoinPool p = new ForkJoinPool(threads);
+            try {
+                return search(termMap, whiteList, blackList, p);
+            } finally {
+                p.shutdown();
+            }
+        } else {
+            return search(termMap, whiteList, blackList, pool);
+        }
+    }
+
+    private Taxonomy search(Map<String, Term> termMap,
+            Set<TaxoLink> whiteList, Set<TaxoLink> blackList, ForkJoinPool pool) {
         Beam<Soln> previous = new Beam<>(beamSize);
         Beam<Soln> complete = new Beam<>(beamSize);
         Score score = emptyScore;
         TaxonomySolution soln = TaxonomySolution.empty(termMap.keySet());
         double s2 = 0.0;
+        long hash = 0;
         Set<String> whiteHeads = new HashSet<>();
 
         for (TaxoLink sp : whiteList) {
@@ -42,54 +109,163 @@ public class BeamSearch implements TaxonomySearch {
                     score.deltaScore(sp), true);
             s2 += score.deltaScore(sp);
             score = score.next(sp, soln);
+            hash += linkHash(sp.getTop(), sp.getBottom());
             whiteHeads.add(sp.getBottom());
         }
-        previous.push(new Soln(soln, score, s2, false), s2);
+        previous.push(new Soln(soln, score, s2, false, hash), s2);
         for (String t1 : termMap.keySet()) {
             if(whiteHeads.contains(t1))
                 continue;
-            Beam<Soln> next = new Beam<>(beamSize);
             // We are looking for t1's parent
+            final List<String> parents = new ArrayList<>();
             for (String t2 : termMap.keySet()) {
-                if (!t1.equals(t2)) {
-                    final TaxoLink taxoLink = new TaxoLink(t2, t1);
-                    if (blackList.contains(taxoLink)) {
-                        continue;
-                    }
-                    for (Soln prevSoln : previous) {
-                        final double linkScore = prevSoln.score.deltaScore(taxoLink);
-                        double totalScore = prevSoln.totalScore
-                                + linkScore;
-                        if (next.canPush(totalScore)) {
-                            TaxonomySolution s = prevSoln.soln.add(t2, t1,
-                                    termMap.get(t2).getScore(),
-                                    termMap.get(t1).getScore(), linkScore, false);
-                            if (s != null) {
-                                Soln candidate = new Soln(s,
-                                        prevSoln.score.next(new TaxoLink(t2, t1), s),
-                                        totalScore,
-                                        prevSoln.rooted);
-                                next.push(candidate, totalScore);
-                                if (candidate.soln.isComplete()) {
-                                    complete.push(candidate, totalScore);
-                                }
-                            }
+                if (!t1.equals(t2) && !blackList.contains(new TaxoLink(t2, t1))) {
+                    parents.add(t2);
+                }
+            }
+            final Beam<Soln> next = new Beam<>(beamSize);
+            if (pool == null) {
+                expand(termMap, previous, t1, parents, 0, parents.size(), next, complete, null);
+            } else {
+                final List<Push> pushes = pool.invoke(new ExpandTask(termMap, previous, t1, parents, 0, parents.size()));
+                for (Push push : pushes) {
+                    push(push.soln, push.link, next, complete);
+                }
+            }
+            previous = next;
+        }
+        return complete.pop().soln.toTaxonomy();
+    }
+
+    /**
+     * Add the links from some candidate parents to a term to each solution in
+     * the previous beam
+     *
+     * @param complete The beam of complete solutions, or null if there is none
+     * @param pushes The list to record the solutions pushed into the beam in,
+     * or null if they are not recorded
+     */
+    private void expand(Map<String, Term> termMap, Beam<Soln> previous, String t1,
+            List<String> parents, int from, int to, Beam<Soln> next,
+            Beam<Soln> complete, List<Push> pushes) {
+        for (int i = from; i < to; i++) {
+            final String t2 = parents.get(i);
+            final TaxoLink taxoLink = new TaxoLink(t2, t1);
+            final long hash = linkHash(t2, t1);
+            for (Soln prevSoln : previous) {
+                final double linkScore = prevSoln.score.deltaScore(taxoLink);
+                double totalScore = prevSoln.totalScore
+                        + linkScore;
+                if (next.canPush(totalScore)) {
+                    TaxonomySolution s = prevSoln.soln.add(t2, t1,
+                            termMap.get(t2).getScore(),
+                            termMap.get(t1).getScore(), linkScore, false);
+                    if (s != null) {
+                        Soln candidate = new Soln(s,
+                                prevSoln.score.next(taxoLink, s),
+                                totalScore,
+                                prevSoln.rooted,
+                                prevSoln.hash + hash);
+                        push(candidate, true, next, complete);
+                        if (pushes != null) {
+                            pushes.add(new Push(candidate, true));
                         }
                     }
-                    // We may once in a search have a node with no parents, this
-                    // is the root element and a flag is set to decide this
-                    for (Soln prevSoln : previous) {
-                        if (!prevSoln.rooted) {
-                            next.push(new Soln(prevSoln.soln, prevSoln.score,
-                                    prevSoln.totalScore, true),
-                                    prevSoln.totalScore);
-                        }
+                }
+            }
+            // We may once in a search have a node with no parents, this
+            // is the root element and a flag is set to decide this
+            for (Soln prevSoln : previous) {
+                if (!prevSoln.rooted) {
+                    final Soln root = new Soln(prevSoln.soln, prevSoln.score,
+                            prevSoln.totalScore, true, prevSoln.hash);
+                    push(root, false, next, complete);
+                    if (pushes != null) {
+                        pushes.add(new Push(root, false));
                     }
                 }
             }
-            previous = next;
         }
-        return complete.pop().soln.toTaxonomy();
+    }
+
+    /**
+     * Push a solution into the beam
+     *
+     * @param link If the solution adds a link, in which case it is only
+     * pushed if it could be in the beam and is kept if it is complete
+     */
+    private static void push(Soln soln, boolean link, Beam<Soln> next, Beam<Soln> complete) {
+        if (!link) {
+            next.push(soln, soln.totalScore);
+        } else if (next.canPush(soln.totalScore)) {
+            next.push(soln, soln.totalScore);
+            if (complete != null && soln.soln.isComplete()) {
+                complete.push(soln, soln.totalScore);
+            }
+        }
+    }
+
+    /**
+     * A hash of a link. The hash of a solution is the sum of the hashes of
+     * its links, so that it does not depend on the order they were added in.
+     */
+    private static long linkHash(String top, String bottom) {
+        long h = top.hashCode() * 0x9E3779B97F4A7C15L + bottom.hashCode();
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * A solution pushed into the beam by a block of candidates
+     */
+    private static class Push {
+
+        final Soln soln;
+        final boolean link;
+
+        Push(Soln soln, boolean link) {
+            this.soln = soln;
+            this.link = link;
+        }
+    }
+
+    private class ExpandTask extends RecursiveTask<List<Push>> {
+
+        private final Map<String, Term> termMap;
+        private final Beam<Soln> previous;
+        private final String t1;
+        private final List<String> parents;
+        private final int from, to;
+
+        ExpandTask(Map<String, Term> termMap, Beam<Soln> previous, String t1,
+                List<String> parents, int from, int to) {
+            this.termMap = termMap;
+            this.previous = previous;
+            this.t1 = t1;
+            this.parents = parents;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Push> compute() {
+            if (to - from > LEAF_SIZE) {
+                final int mid = (from + to) >>> 1;
+                final ExpandTask left = new ExpandTask(termMap, previous, t1, parents, from, mid);
+                final ExpandTask right = new ExpandTask(termMap, previous, t1, parents, mid, to);
+                right.fork();
+                final List<Push> pushes = left.compute();
+                pushes.addAll(right.join());
+                return pushes;
+            } else {
+                // A block keeps at least every solution the whole search
+                // keeps, as its beam has only seen some of the candidates
+                final List<Push> pushes = new ArrayList<>();
+                expand(termMap, previous, t1, parents, from, to, new Beam<>(beamSize), null, pushes);
+                return pushes;
+            }
+        }
     }
 
     private static class Soln implements Comparable<Soln> {
@@ -98,52 +274,29 @@ public class BeamSearch implements TaxonomySearch {
         public final Score score;
         public final double totalScore;
         public final boolean rooted;
+        /* The sum of the hashes of the links in the solution */
+        public final long hash;
 
-        public Soln(TaxonomySolution soln, Score score, double totalScore, boolean rooted) {
+        public Soln(TaxonomySolution soln, Score score, double totalScore, boolean rooted, long hash) {
             this.soln = soln;
             this.score = score;
             this.totalScore = totalScore;
             this.rooted = rooted;
+            this.hash = hash;
         }
 
         @Override
         public int compareTo(Soln o) {
             int c = Double.compare(totalScore, o.totalScore);
             if(c != 0) { return -c; }
+            // At the same score, choosing a root is preferred to adding a
+            // link that does not add to the score
             c = Boolean.compare(rooted, o.rooted);
-            if(c != 0) { return c; }
+            if(c != 0) { return -c; }
             c = Integer.compare(soln.size, o.soln.size);
             if(c != 0) { return -c; }
-            Iterator<String> i1 = soln.heads.keySet().iterator();
-            Iterator<String> i2 = o.soln.heads.keySet().iterator();
-            while(i1.hasNext() && i2.hasNext()) {
-                c = i1.next().compareTo(i2.next());
-                if(c != 0) { return c; }
-            }
-            if(i1.hasNext()) {
-                return -1;
-            } else if(i2.hasNext()) {
-                return +1;
-            }
-            c = Integer.compare(this.hashCode(), o.hashCode());
-            if (c != 0) {
-                return c;
-            }
-            c = Integer.compare(this.soln.hashCode(), o.soln.hashCode());
-            if (c != 0) {
-                return c;
-            }
-            c = Integer.compare(this.score.hashCode(), o.score.hashCode());
-            if (c != 0) {
-                return c;
-            }
-            c = Double.compare(totalScore, o.totalScore);
-            if (c != 0) {
-                return c;
-            }
-            c = Boolean.compare(rooted, o.rooted);
-            // This means there is a chance that some solutions may be lost
-            return c;
+            // Solutions with the same links are equal
+            return Long.compare(hash, o.hash);
         }
     }
 }
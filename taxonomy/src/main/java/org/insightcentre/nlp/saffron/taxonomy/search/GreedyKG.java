@@ -48,6 +48,9 @@ public class GreedyKG implements KGSearch{
         //3 - Create solution based on links on allowance list
         Pair<KnowledgeGraphSolution, Score<TypedLink>> result = generateInitialSolution(termMap, allowanceList);
         
+        log.log(LocalDateTime.now().toString() + " - GreedyKG  - Scoring candidates");
+        result.getValue().prefetch(candidates);
+
         log.log(LocalDateTime.now().toString() + " - GreedyKG  - Starting Search");
         //4 - Greedy Search for the final solution 
         SOLN_LOOP:
@@ -63,8 +63,8 @@ public class KnowledgeGraphSolution extends Solution{
     
     private Partonomy getPartonomy(){
     	List<Taxonomy> components = null;
-    	if (this.partonomy.heads != null && !this.partonomy.heads.isEmpty())
-    		components = new ArrayList<Taxonomy>(this.partonomy.heads.values());
+    	if (!this.partonomy.heads().isEmpty())
+    		components = new ArrayList<Taxonomy>(this.partonomy.heads().values());
     	else
     		components = new ArrayList<Taxonomy>();
 		return new Partonomy(components); 
@@ -104,12 +104,12 @@ public class KnowledgeGraphSolution extends Solution{
     public KnowledgeGraphSolution clone() {
     	KnowledgeGraphSolution copy = new KnowledgeGraphSolution(new HashSet<String>(this.terms), this.synonymyThreshold, this.meronomyThreshold, this.genericThreshold);
     	if (this.taxonomy != null) 
-    		copy.taxonomy = new TaxonomySolution(new HashMap<String, Taxonomy>(this.taxonomy.heads), new HashSet<String>(this.terms));
+    		copy.taxonomy = this.taxonomy.withTerms(new HashSet<String>(this.terms));
     	else
     		copy.taxonomy = null;
     	
     	if (this.partonomy != null)
-    		copy.partonomy = new TaxonomySolution(new HashMap<String, Taxonomy>(this.partonomy.heads), new HashSet<String>(this.terms));
+    		copy.partonomy = this.partonomy.withTerms(new HashSet<String>(this.terms));
     	else
     		copy.partonomy = null;
     	
@@ -0,0 +1,309 @@
+package org.insightcentre.nlp.saffron.taxonomy.search;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import org.insightcentre.nlp.saffron.data.Status;
+import org.insightcentre.nlp.saffron.data.TaxoLink;
+import org.insightcentre.nlp.saffron.data.Taxonomy;
+import org.insightcentre.nlp.saffron.data.Term;
+import org.insightcentre.nlp.saffron.taxonomy.metrics.AffectedLinks;
+import org.insightcentre.nlp.saffron.taxonomy.metrics.Score;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * A greedy search for the best taxonomy, which gives the same result as
+ * {@link Greedy} but keeps the candidate links in a lazily updated max-heap.
+ *
+ * After each link is accepted only the candidates reported by
+ * {@link Score#affectedBy} are rescored and pushed again. Older entries for
+ * these candidates are stale and are discarded when they are popped, as are
+ * candidates that are no longer valid.
+ *
+ * @author John McCrae
+ */
+public class LazyGreedy implements TaxonomySearch {
+
+    private final Score emptyScore;
+
+    public LazyGreedy(Score score) {
+        this.emptyScore = score;
+    }
+
+    @Override
+    public Taxonomy extractTaxonomyWithBlackWhiteList(Map<String, Term> termMap,
+            Set<TaxoLink> whiteList, Set<TaxoLink> blackList) {
+        Score score = this.emptyScore;
+        if (termMap.size() == 0) {
+            return new Taxonomy("NO TERMS", 0, 0, Collections.EMPTY_LIST, Status.none);
+        } else if (termMap.size() == 1) {
+            // It is not possible to construct a taxonomy from 1 term
+            return new Taxonomy(termMap.keySet().iterator().next(), 0, 0, Collections.EMPTY_LIST, Status.none);
+        }
+        // Ids are in lexicographic order so that ties are broken as in Greedy
+        final String[] terms = termMap.keySet().toArray(new String[termMap.size()]);
+        Arrays.sort(terms);
+        final Object2IntMap<String> ids = new Object2IntOpenHashMap<>();
+        ids.defaultReturnValue(-1);
+        for (int i = 0; i < terms.length; i++) {
+            ids.put(terms[i], i);
+        }
+        final int n = terms.length;
+        final Candidates candidates = new Candidates(n);
+        for (int i = 0; i < n; i++) {
+            candidates.kill(i, i);
+        }
+        for (TaxoLink tl : blackList) {
+            candidates.kill(ids.getInt(tl.getTop()), ids.getInt(tl.getBottom()));
+        }
+        for (TaxoLink tl : whiteList) {
+            candidates.kill(ids.getInt(tl.getTop()), ids.getInt(tl.getBottom()));
+        }
+
+        TaxonomySolution soln = TaxonomySolution.empty(termMap.keySet());
+        final boolean[] hasParent = new boolean[n];
+        for (TaxoLink sp : whiteList) {
+            if (termMap.get(sp.getTop()) != null && termMap.get(sp.getBottom()) != null) {
+                soln = soln.add(sp.getTop(), sp.getBottom(),
+                        termMap.get(sp.getTop()).getScore(),
+                        termMap.get(sp.getBottom()).getScore(),
+                        score.deltaScore(sp), true);
+                score = score.next(sp, soln);
+                hasParent[ids.getInt(sp.getBottom())] = true;
+            }
+        }
+
+        final LinkHeap heap = new LinkHeap((long) n * (n - 1));
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (!hasParent[j] && candidates.alive(i, j)) {
+                    heap.push(i, j, score.deltaScore(new TaxoLink(terms[i], terms[j])), 0);
+                }
+            }
+        }
+
+        // The step at which links with a given top/bottom were last rescored
+        final int[] topStamp = new int[n];
+        final int[] bottomStamp = new int[n];
+        final boolean[] isTop = new boolean[n];
+        int allStamp = 0;
+        int step = 0;
+        while (!soln.isComplete()) {
+            if (heap.isEmpty()) {
+                throw new RuntimeException("Failed to find solution");
+            }
+            final int i = heap.topI(), j = heap.topJ(), stamp = heap.topStamp();
+            final double linkScore = heap.topScore();
+            heap.pop();
+            if (!candidates.alive(i, j) || hasParent[j]
+                    || stamp < allStamp || stamp < topStamp[i] || stamp < bottomStamp[j]) {
+                continue;
+            }
+            final TaxoLink candidate = new TaxoLink(terms[i], terms[j]);
+            TaxonomySolution soln2 = soln.add(candidate.getTop(), candidate.getBottom(),
+                    termMap.get(candidate.getTop()).getScore(),
+                    termMap.get(candidate.getBottom()).getScore(),
+                    linkScore, false);
+            // Once a link is invalid (or accepted) it can never be added again
+            candidates.kill(i, j);
+            // soln2 = null means adding this link would create an invalid taxonomy
+            if (soln2 == null) {
+                continue;
+            }
+            soln = soln2;
+            hasParent[j] = true;
+            final AffectedLinks affected = score.affectedBy(candidate);
+            score = score.next(candidate, soln);
+            step++;
+            if (affected.all) {
+                allStamp = step;
+                // Every entry is now stale
+                heap.clear();
+                for (int i2 = 0; i2 < n; i2++) {
+                    for (int j2 = 0; j2 < n; j2++) {
+                        if (!hasParent[j2] && candidates.alive(i2, j2)) {
+                            heap.push(i2, j2, score.deltaScore(new TaxoLink(terms[i2], terms[j2])), step);
+                        }
+                    }
+                }
+            } else {
+                for (String top : affected.tops) {
+                    final int i2 = ids.getInt(top);
+                    if (i2 >= 0) {
+                        topStamp[i2] = step;
+                        isTop[i2] = true;
+                    }
+                }
+                for (String bottom : affected.bottoms) {
+                    final int j2 = ids.getInt(bottom);
+                    if (j2 >= 0) {
+                        bottomStamp[j2] = step;
+                    }
+                }
+                for (String top : affected.tops) {
+                    final int i2 = ids.getInt(top);
+                    if (i2 >= 0) {
+                        for (int j2 = 0; j2 < n; j2++) {
+                            if (!hasParent[j2] && candidates.alive(i2, j2)) {
+                                heap.push(i2, j2, score.deltaScore(new TaxoLink(terms[i2], terms[j2])), step);
+                            }
+                        }
+                    }
+                }
+                for (String bottom : affected.bottoms) {
+                    final int j2 = ids.getInt(bottom);
+                    if (j2 >= 0 && !hasParent[j2]) {
+                        for (int i2 = 0; i2 < n; i2++) {
+                            // Links with an affected top were already pushed
+                            if (!isTop[i2] && candidates.alive(i2, j2)) {
+                                heap.push(i2, j2, score.deltaScore(new TaxoLink(terms[i2], terms[j2])), step);
+                            }
+                        }
+                    }
+                }
+                for (String top : affected.tops) {
+                    final int i2 = ids.getInt(top);
+                    if (i2 >= 0) {
+                        isTop[i2] = false;
+                    }
+                }
+            }
+        }
+        return soln.toTaxonomy();
+    }
+
+    /**
+     * The set of candidate links that may still be added, as a bit matrix
+     */
+    private static class Candidates {
+
+        private final int n;
+        private final long[] dead;
+
+        Candidates(int n) {
+            this.n = n;
+            this.dead = new long[(int) (((long) n * n + 63) / 64)];
+        }
+
+        void kill(int i, int j) {
+            if (i >= 0 && j >= 0) {
+                long k = (long) i * n + j;
+                dead[(int) (k >>> 6)] |= 1L << (k & 63);
+            }
+        }
+
+        boolean alive(int i, int j) {
+            long k = (long) i * n + j;
+            return (dead[(int) (k >>> 6)] & (1L << (k & 63))) == 0;
+        }
+    }
+
+    /**
+     * A binary max-heap of links, stored in primitive arrays. Links are
+     * ordered by score (descending) and then by top and bottom id.
+     */
+    private static class LinkHeap {
+
+        /* The largest array that can be allocated */
+        private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+        private long[] links;
+        private double[] scores;
+        private int[] stamps;
+        private int size;
+
+        LinkHeap(long expected) {
+            final int capacity = (int) Math.min(Math.max(expected, 16), MAX_CAPACITY);
+            this.links = new long[capacity];
+            this.scores = new double[capacity];
+            this.stamps = new int[capacity];
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int topI() {
+            return (int) (links[0] >>> 32);
+        }
+
+        int topJ() {
+            return (int) links[0];
+        }
+
+        double topScore() {
+            return scores[0];
+        }
+
+        int topStamp() {
+            return stamps[0];
+        }
+
+        private boolean before(int a, int b) {
+            int c = Double.compare(scores[a], scores[b]);
+            return c > 0 || (c == 0 && links[a] < links[b]);
+        }
+
+        private void swap(int a, int b) {
+            long l = links[a];
+            links[a] = links[b];
+            links[b] = l;
+            double s = scores[a];
+            scores[a] = scores[b];
+            scores[b] = s;
+            int t = stamps[a];
+            stamps[a] = stamps[b];
+            stamps[b] = t;
+        }
+
+        void push(int i, int j, double score, int stamp) {
+            if (size == links.length) {
+                if (size == MAX_CAPACITY) {
+                    throw new IllegalStateException("Too many candidate links");
+                }
+                final int capacity = (int) Math.min((long) size + (size >> 1), MAX_CAPACITY);
+                links = Arrays.copyOf(links, capacity);
+                scores = Arrays.copyOf(scores, capacity);
+                stamps = Arrays.copyOf(stamps, capacity);
+            }
+            links[size] = ((long) i << 32) | j;
+            scores[size] = score;
+            stamps[size] = stamp;
+            int k = size++;
+            while (k > 0 && before(k, (k - 1) / 2)) {
+                swap(k, (k - 1) / 2);
+                k = (k - 1) / 2;
+            }
+        }
+
+        void pop() {
+            size--;
+            links[0] = links[size];
+            scores[0] = scores[size];
+            stamps[0] = stamps[size];
+            int k = 0;
+            while (true) {
+                int l = 2 * k + 1, r = l + 1, m = k;
+                if (l < size && before(l, m)) {
+                    m = l;
+                }
+                if (r < size && before(r, m)) {
+                    m = r;
+                }
+                if (m == k) {
+                    return;
+                }
+                swap(k, m);
+                k = m;
+            }
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.insightcentre.nlp.saffron.taxonomy.search;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.insightcentre.nlp.saffron.DefaultSaffronListener;
 import org.insightcentre.nlp.saffron.SaffronListener;
@@ -40,10 +41,12 @@ public interface TaxonomySearch {
         switch(config.algorithm) {
             case greedy:
                 return new Greedy(score);
+            case lazyGreedy:
+                return new LazyGreedy(score);
             case beam:
-                return new BeamSearch(score, config.beamSize);
+                return new BeamSearch(score, config.beamSize, config.beamThreads);
             case mst:
-                return new MSTTaxoExtract(classifier);
+                return new MSTTaxoExtract(classifier, config.mstTopK, ForkJoinPool.commonPool());
         }
         throw new IllegalArgumentException("Unknown algorithm");
     }
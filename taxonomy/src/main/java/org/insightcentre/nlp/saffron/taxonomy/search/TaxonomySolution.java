@@ -2,28 +2,139 @@ package org.insightcentre.nlp.saffron.taxonomy.search;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-
 import org.insightcentre.nlp.saffron.data.Status;
 import org.insightcentre.nlp.saffron.data.Taxonomy;
 import org.insightcentre.nlp.saffron.data.VirtualRootTaxonomy;
+import org.insightcentre.nlp.saffron.taxonomy.metrics.PersistentIntMap;
 
-import com.fasterxml.jackson.annotation.JsonProperty;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 
 /**
  * A (partial) solution to the taxonomy search problem
  *
+ * The solution stores the parent of each term and a union-find forest of the
+ * taxonomy fragments in a persistent map, so that checking if a link can be
+ * added and adding it do not walk the fragments. The fragments are only built
+ * as taxonomies when they are requested.
+ *
  * @author John McCrae
  */
 public class TaxonomySolution extends Solution{
 
+    /**
+     * A term in the solution
+     */
+    private static final class Node {
+
+        /* The parent in the taxonomy or -1 if this is the head of a fragment */
+        final int parent;
+        /* The parent in the union-find forest (itself for the representative) */
+        final int set;
+        final int rank;
+        /* The number of the link that attached this term to its parent */
+        final int order;
+        final double score;
+        final double linkScore;
+        final Status status;
+
+        Node(int parent, int set, int rank, int order, double score, double linkScore, Status status) {
+            this.parent = parent;
+            this.set = set;
+            this.rank = rank;
+            this.order = order;
+            this.score = score;
+            this.linkScore = linkScore;
+            this.status = status;
+        }
+
+        Node withParent(int parent, int order, double linkScore) {
+            return new Node(parent, set, rank, order, score, linkScore, status);
+        }
+
+        Node withSet(int set, int rank) {
+            return new Node(parent, set, rank, order, score, linkScore, status);
+        }
+    }
+
+    /**
+     * The numbers of the terms, which are shared by all solutions derived from
+     * the same solution. The terms of the solution are numbered when it is
+     * created and are read without locking, only other terms are numbered
+     * later under a lock.
+     */
+    private static final class Ids {
+
+        private final Object2IntMap<String> ids;
+        private final String[] names;
+        private final Object2IntMap<String> moreIds = new Object2IntOpenHashMap<>();
+        private final List<String> moreNames = new ArrayList<>();
+
+        Ids(Set<String> terms) {
+            ids = new Object2IntOpenHashMap<>(terms.size());
+            ids.defaultReturnValue(-1);
+            names = new String[terms.size()];
+            for (String term : terms) {
+                names[ids.size()] = term;
+                ids.put(term, ids.size());
+            }
+            moreIds.defaultReturnValue(-1);
+        }
+
+        int id(String term) {
+            final int i = ids.getInt(term);
+            if (i >= 0) {
+                return i;
+            }
+            synchronized (moreIds) {
+                int j = moreIds.getInt(term);
+                if (j < 0) {
+                    j = names.length + moreNames.size();
+                    moreIds.put(term, j);
+                    moreNames.add(term);
+                }
+                return j;
+            }
+        }
+
+        int get(String term) {
+            final int i = ids.getInt(term);
+            if (i >= 0) {
+                return i;
+            }
+            synchronized (moreIds) {
+                return moreIds.getInt(term);
+            }
+        }
+
+        String name(int id) {
+            if (id < names.length) {
+                return names[id];
+            }
+            synchronized (moreIds) {
+                return moreNames.get(id - names.length);
+            }
+        }
 
+        int size() {
+            synchronized (moreIds) {
+                return names.length + moreNames.size();
+            }
+        }
+    }
 
-    public final Map<String, Taxonomy> heads;
+    private final Ids ids;
+    private final PersistentIntMap<Node> nodes;
+    /* The number of links in the solution */
+    private final int links;
+    private volatile Map<String, Taxonomy> heads;
     public final Set<String> terms;
     public final int size;
 
@@ -34,13 +145,39 @@ public class TaxonomySolution extends Solution{
      * @param terms The set of terms required to be in the solution
      */
     public TaxonomySolution(Map<String, Taxonomy> heads, Set<String> terms) {
-        this.heads = heads;
+        this.ids = new Ids(terms);
+        PersistentIntMap<Node> n = PersistentIntMap.empty();
+        // The number of terms and links
+        final int[] counts = new int[2];
+        for (Taxonomy t : heads.values()) {
+            final int head = ids.id(t.root);
+            n = n.put(head, new Node(-1, head, 1, -1, t.score, t.linkScore, t.status));
+            counts[0]++;
+            for (Taxonomy c : t.children) {
+                n = addAll(ids, n, counts, c, head, head);
+            }
+        }
+        this.nodes = n;
+        this.size = counts[0];
+        this.links = counts[1];
         this.terms = terms;
-        this.size = calcSize();
     }
 
-    private TaxonomySolution(Map<String, Taxonomy> heads, Set<String> terms, int size) {
-        this.heads = heads;
+    private static PersistentIntMap<Node> addAll(Ids ids, PersistentIntMap<Node> n, int[] counts,
+            Taxonomy t, int parent, int head) {
+        final int id = ids.id(t.root);
+        n = n.put(id, new Node(parent, head, 0, counts[1]++, t.score, t.linkScore, t.status));
+        counts[0]++;
+        for (Taxonomy c : t.children) {
+            n = addAll(ids, n, counts, c, id, head);
+        }
+        return n;
+    }
+
+    private TaxonomySolution(Ids ids, PersistentIntMap<Node> nodes, int links, Set<String> terms, int size) {
+        this.ids = ids;
+        this.nodes = nodes;
+        this.links = links;
         this.terms = terms;
         this.size = size;
     }
@@ -52,7 +189,41 @@ public class TaxonomySolution extends Solution{
      * @return An empty solution
      */
     public static TaxonomySolution empty(Set<String> terms) {
-        return new TaxonomySolution(new HashMap<String, Taxonomy>(), terms);
+        return new TaxonomySolution(new Ids(terms), PersistentIntMap.<Node>empty(), 0, terms, 0);
+    }
+
+    /**
+     * Create a solution with the same links but a different set of terms
+     *
+     * @param terms The terms included in the complete solution
+     * @return A solution that differs from this only in its terms
+     */
+    public TaxonomySolution withTerms(Set<String> terms) {
+        return new TaxonomySolution(ids, nodes, links, terms, size);
+    }
+
+    /* Find the representative of the fragment containing a term */
+    private static int find(PersistentIntMap<Node> nodes, int term) {
+        int s = term;
+        Node n;
+        while ((n = nodes.get(s)).set != s) {
+            s = n.set;
+        }
+        return s;
+    }
+
+    /* Join two fragments given by their representatives */
+    private static PersistentIntMap<Node> union(PersistentIntMap<Node> nodes, int s1, int s2) {
+        final Node n1 = nodes.get(s1);
+        final Node n2 = nodes.get(s2);
+        if (n1.rank < n2.rank) {
+            return nodes.put(s1, n1.withSet(s2, n1.rank));
+        } else if (n1.rank > n2.rank) {
+            return nodes.put(s2, n2.withSet(s1, n2.rank));
+        } else {
+            return nodes.put(s2, n2.withSet(s1, n2.rank))
+                    .put(s1, n1.withSet(s1, n1.rank + 1));
+        }
     }
 
     /**
@@ -64,61 +235,124 @@ public class TaxonomySolution extends Solution{
      * @param bottomScore The score of the bottom term
      * @param linkScore The link score
      * @param accepted Is this an accepted (whitelisted) term
-     * @return
+     * @return The new solution or null if the link would not give a taxonomy
      */
     public TaxonomySolution add(final String top, final String bottom,
                                 final double topScore, final double bottomScore,
                                 final double linkScore,
                                 final boolean accepted) {
+        if (top.equals(bottom)) {
+            return null;
+        }
+        final int t = ids.id(top);
+        final int b = ids.id(bottom);
+        final Node topNode = nodes.get(t);
+        final Node bottomNode = nodes.get(b);
+        final Status status = accepted ? Status.accepted : Status.none;
 
-        if (heads.containsKey(bottom)) {
-
-            for (Map.Entry<String, Taxonomy> e : heads.entrySet()) {
-                if (e.getValue().hasDescendent(top)) {
-                    if (e.getKey().equals(bottom)) {
-                        return null;
-                    }
-                    // Connecting bottom to an existing top
-                    Map<String, Taxonomy> newHeads = new HashMap<>(heads);
-                    newHeads.remove(bottom);
-                    newHeads.put(e.getKey(),
-                            insertIntoTaxo(newHeads.get(e.getKey()), top, heads.get(bottom).withLinkScore(linkScore).deepCopy()));
-                    return new TaxonomySolution(newHeads, terms, size);
-                }
+        if (bottomNode != null) {
+            if (bottomNode.parent >= 0) {
+                // bottom already has a parent
+                return null;
             }
-            // top is not yet in taxonomy
-            Map<String, Taxonomy> newHeads = new HashMap<>(heads);
-            Taxonomy t2 = new Taxonomy(top, topScore, Double.NaN, new ArrayList<>(Arrays.asList(newHeads.get(bottom).withLinkScore(linkScore))), accepted ? Status.accepted : Status.none);
-            newHeads.remove(bottom);
-            newHeads.put(top, t2);
-            return new TaxonomySolution(newHeads, terms, size + 1);
-        } else {
-            for (Map.Entry<String, Taxonomy> e : heads.entrySet()) {
-                if (e.getValue().hasDescendent(bottom)) {
+            final PersistentIntMap<Node> n = nodes.put(b, bottomNode.withParent(t, links, linkScore));
+            if (topNode != null) {
+                final int topSet = find(nodes, t);
+                final int bottomSet = find(nodes, b);
+                if (topSet == bottomSet) {
+                    // top is under bottom
                     return null;
                 }
+                // Connecting bottom to an existing top
+                return new TaxonomySolution(ids, union(n, topSet, bottomSet), links + 1, terms, size);
+            } else {
+                // top is not yet in taxonomy
+                final PersistentIntMap<Node> n2 = n.put(t, new Node(-1, t, 0, -1, topScore, Double.NaN, status));
+                return new TaxonomySolution(ids, union(n2, t, find(nodes, b)), links + 1, terms, size + 1);
             }
-            // bottom is not yet in taxonomy
-            for (Map.Entry<String, Taxonomy> e : heads.entrySet()) {
-                if (e.getValue().hasDescendent(top)) {
-                    // But top is
-                    Map<String, Taxonomy> newHeads = new HashMap<>(heads);
-                    newHeads.put(e.getKey(),
-                            insertIntoTaxo(newHeads.get(e.getKey()), top,
-                                    new Taxonomy(bottom, bottomScore, linkScore, new ArrayList<Taxonomy>(), accepted ? Status.accepted : Status.none)));
-                    return new TaxonomySolution(newHeads, terms, size + 1);
+        } else if (topNode != null) {
+            // bottom is not yet in taxonomy, but top is
+            final int topSet = find(nodes, t);
+            final PersistentIntMap<Node> n = nodes.put(b, new Node(t, topSet, 0, links, bottomScore, linkScore, status));
+            return new TaxonomySolution(ids, n, links + 1, terms, size + 1);
+        } else {
+            // top and bottom are not in the taxonomy
+            final PersistentIntMap<Node> n = nodes
+                    .put(t, new Node(-1, t, 1, -1, topScore, Double.NaN, Status.none))
+                    .put(b, new Node(t, t, 0, links, bottomScore, linkScore, status));
+            return new TaxonomySolution(ids, n, links + 1, terms, size + 2);
+        }
+    }
+
+    /**
+     * Is a term in this solution
+     *
+     * @param term The term
+     * @return True if the term has been linked
+     */
+    public boolean contains(String term) {
+        final int i = ids.get(term);
+        return i >= 0 && nodes.get(i) != null;
+    }
+
+    /**
+     * Get the heads of the taxonomy fragments. This builds the fragments the
+     * first time it is called.
+     *
+     * @return The fragments of the taxonomy by their head term
+     */
+    public Map<String, Taxonomy> heads() {
+        Map<String, Taxonomy> h = heads;
+        if (h == null) {
+            h = Collections.unmodifiableMap(buildHeads());
+            heads = h;
+        }
+        return h;
+    }
+
+    private Map<String, Taxonomy> buildHeads() {
+        final int n = ids.size();
+        final IntArrayList[] children = new IntArrayList[n];
+        final int[] byLink = new int[links];
+        Arrays.fill(byLink, -1);
+        final IntArrayList roots = new IntArrayList();
+        for (int i = 0; i < n; i++) {
+            final Node node = nodes.get(i);
+            if (node != null) {
+                if (node.parent < 0) {
+                    roots.add(i);
+                } else {
+                    byLink[node.order] = i;
                 }
             }
-            // top and bottom are not in the taxonomy
-            Map<String, Taxonomy> newHeads = new HashMap<>(heads);
-            Taxonomy t = new Taxonomy(top, topScore, Double.NaN, new ArrayList<Taxonomy>() {
-                {
-                    add(new Taxonomy(bottom, bottomScore, linkScore, new ArrayList<Taxonomy>(), accepted ? Status.accepted : Status.none));
+        }
+        // Children are listed in the order they were added
+        for (int i : byLink) {
+            if (i >= 0) {
+                final int p = nodes.get(i).parent;
+                if (children[p] == null) {
+                    children[p] = new IntArrayList();
                 }
-            }, Status.none);
-            newHeads.put(top, t);
-            return new TaxonomySolution(newHeads, terms, size + 2);
+                children[p].add(i);
+            }
+        }
+        final Map<String, Taxonomy> h = new HashMap<>();
+        for (int i = 0; i < roots.size(); i++) {
+            final Taxonomy t = toTaxonomy(roots.getInt(i), children);
+            h.put(t.root, t);
+        }
+        return h;
+    }
+
+    private Taxonomy toTaxonomy(int term, IntArrayList[] children) {
+        final Node node = nodes.get(term);
+        final ArrayList<Taxonomy> c = new ArrayList<>();
+        if (children[term] != null) {
+            for (int i = 0; i < children[term].size(); i++) {
+                c.add(toTaxonomy(children[term].getInt(i), children));
+            }
         }
+        return new Taxonomy(ids.name(term), node.score, node.linkScore, c, node.status);
     }
 
     /**
@@ -139,30 +373,16 @@ public class TaxonomySolution extends Solution{
      */
     public Taxonomy toTaxonomy() {
         if (isComplete()) {
-            if (heads.size() > 1)
-                return new VirtualRootTaxonomy(heads.values());
+            final Map<String, Taxonomy> h = heads();
+            if (h.size() > 1)
+                return new VirtualRootTaxonomy(h.values());
             else
-                return heads.values().iterator().next();
+                return h.values().iterator().next();
         } else {
             throw new IllegalStateException("Cannot convert to a taxonomy until this taxonomy is complete");
         }
     }
 
-    private Taxonomy insertIntoTaxo(Taxonomy taxo, String top, Taxonomy bottom) {
-        ArrayList<Taxonomy> newChildren = new ArrayList<>();
-        if (taxo.root.equals(top)) {
-            for (Taxonomy t : taxo.children) {
-                newChildren.add(t);
-            }
-            newChildren.add(bottom);
-        } else {
-            for (Taxonomy t : taxo.children) {
-                newChildren.add(insertIntoTaxo(t, top, bottom));
-            }
-        }
-        return new Taxonomy(taxo.root, taxo.score, taxo.linkScore, newChildren, taxo.status);
-    }
-
     /**
      * Return an indicator of the completeness of the solution
      *
@@ -172,16 +392,8 @@ public class TaxonomySolution extends Solution{
         return size;
     }
 
-    private int calcSize() {
-        int size = 0;
-        for (Taxonomy t : heads.values()) {
-            size += t.size();
-        }
-        return size;
-    }
-
     @Override
     public String toString() {
-        return "Solution{" + "heads=" + heads + ", terms=" + terms + ", size=" + size + '}';
+        return "Solution{" + "heads=" + heads() + ", terms=" + terms + ", size=" + size + '}';
     }
 }
@@ -1,16 +1,13 @@
 package org.insightcentre.nlp.saffron.taxonomy.supervised;
 
-import com.google.common.collect.ImmutableMap;
-import edu.cmu.cs.ark.cle.Arborescence;
-import edu.cmu.cs.ark.cle.ChuLiuEdmonds;
-import edu.cmu.cs.ark.cle.graph.DenseWeightedGraph;
-import edu.cmu.cs.ark.cle.graph.WeightedGraph;
-import edu.cmu.cs.ark.cle.util.Weighted;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 
 import org.insightcentre.nlp.saffron.data.Status;
 import org.insightcentre.nlp.saffron.data.TaxoLink;
@@ -19,46 +16,196 @@ import org.insightcentre.nlp.saffron.data.Term;
 import org.insightcentre.nlp.saffron.taxonomy.search.TaxonomySearch;
 /**
  * Extract a taxonomy by using a MST
+ * 
+ * By default the classifier is applied to every pair of terms and the
+ * arborescence is found over the complete graph in O(N^2 log N). For large term
+ * sets only the best k candidate parents of each term may be kept, so that the
+ * graph has O(N k) edges and the arborescence is found in O(N k log N).
+ * 
  * @author John McCrae &lt;john@mccr.ae&gt;
  */
 public class MSTTaxoExtract implements TaxonomySearch {
     
+    /* The number of terms scored by a single task */
+    private static final int LEAF_SIZE = 8;
     
-    private final SupervisedTaxo classifier;
+    private final BinaryRelationClassifier<String> classifier;
+    private final int topK;
+    private final ForkJoinPool pool;
 
     public MSTTaxoExtract(SupervisedTaxo classifier) {
+        this(classifier, 0, null);
+    }
+
+    /**
+     * Create an MST taxonomy extractor
+     * 
+     * @param classifier The classifier, which must be safe to use from several
+     * threads if a pool is given
+     * @param topK The number of best candidate parents to keep for each term,
+     * or 0 to keep all pairs
+     * @param pool The pool to score the terms on, or null to score them on the
+     * calling thread
+     */
+    public MSTTaxoExtract(BinaryRelationClassifier<String> classifier, int topK, ForkJoinPool pool) {
         this.classifier = classifier;
+        this.topK = topK;
+        this.pool = pool;
     }
 
     @Override
     public Taxonomy extractTaxonomy(Map<String, Term> termMap) {
         final ArrayList<String> terms = new ArrayList<>(termMap.keySet());
-        final double[][] matrix = new double[terms.size()][terms.size()];
-        String topNode = null;
+        final int n = terms.size();
+        int topNode = -1;
                 
         double bestScore = Double.NEGATIVE_INFINITY;
         int bestOcc = Integer.MIN_VALUE;
-        for(int i = 0; i < terms.size(); i++) {
+        for(int i = 0; i < n; i++) {
             Term t1 = termMap.get(terms.get(i));
-            for(int j = 0; j < terms.size(); j++) {
-                matrix[i][j] = i == j ? 0 : classifier.predict(terms.get(i), terms.get(j));
-            }
             if(t1.getScore() > bestScore || (t1.getScore() == bestScore && t1.getOccurrences() > bestOcc)) {
                 bestScore = t1.getScore();
                 bestOcc = t1.getOccurrences();
-                topNode = t1.getString();
+                topNode = i;
             }
         }
-        System.err.println("Built graph");
-        WeightedGraph<String> graph = DenseWeightedGraph.from(terms, matrix);
-        
-        if(topNode == null) {
+        if(topNode < 0) {
             throw new IllegalArgumentException("No terms for taxonomy construction");
         }
-        System.err.println("Starting Chu-Liu Edmonds");
-        final Weighted<Arborescence<String>> arbor = ChuLiuEdmonds.getMaxArborescence(graph, topNode);
+        final double[] linkScore = new double[n];
+        final int[] parent = arborescence(terms, topNode, linkScore);
         System.err.println("Finished... building taxonomy");
-        return buildTaxo(topNode, arbor, termMap, null, terms, matrix);        
+        return buildTaxo(topNode, parent, linkScore, terms, termMap);
+    }
+
+    /**
+     * Find the arborescence over all pairs of terms, or over the best k parents
+     * of each term. An edge from the root is always kept, so that every term
+     * can be reached.
+     */
+    private int[] arborescence(List<String> terms, int root, double[] linkScore) {
+        final int n = terms.size();
+        final boolean dense = topK <= 0 || topK >= n - 1;
+        // The candidate parents of each term and their scores
+        final int[][] candidates = new int[n][];
+        final double[][] scores = new double[n][];
+        forEach(n, j -> {
+            if(dense) {
+                final int[] c = new int[n - 1];
+                final double[] s = new double[n - 1];
+                for(int i = 0, k = 0; i < n; i++) {
+                    if(i != j) {
+                        c[k] = i;
+                        s[k++] = classifier.predict(terms.get(i), terms.get(j));
+                    }
+                }
+                candidates[j] = c;
+                scores[j] = s;
+                return;
+            }
+            // The best candidates first, with space for the root
+            final int[] c = new int[topK + 1];
+            final double[] s = new double[topK + 1];
+            int size = 0;
+            for(int i = 0; i < n; i++) {
+                if(i == j) {
+                    continue;
+                }
+                final double p = classifier.predict(terms.get(i), terms.get(j));
+                if(size == topK && !(p > s[size - 1])) {
+                    continue;
+                }
+                // Insert into the sorted candidates, dropping the worst
+                int k = size < topK ? size++ : size - 1;
+                while(k > 0 && p > s[k - 1]) {
+                    c[k] = c[k - 1];
+                    s[k] = s[k - 1];
+                    k--;
+                }
+                c[k] = i;
+                s[k] = p;
+            }
+            if(j != root) {
+                boolean hasRoot = false;
+                for(int k = 0; k < size; k++) {
+                    hasRoot |= c[k] == root;
+                }
+                if(!hasRoot) {
+                    c[size] = root;
+                    s[size++] = classifier.predict(terms.get(root), terms.get(j));
+                }
+            }
+            candidates[j] = Arrays.copyOf(c, size);
+            scores[j] = Arrays.copyOf(s, size);
+        });
+        int edges = 0;
+        for(int j = 0; j < n; j++) {
+            edges += candidates[j].length;
+        }
+        final int[] src = new int[edges];
+        final int[] dst = new int[edges];
+        final double[] weight = new double[edges];
+        int e = 0;
+        for(int j = 0; j < n; j++) {
+            for(int k = 0; k < candidates[j].length; k++, e++) {
+                src[e] = candidates[j][k];
+                dst[e] = j;
+                weight[e] = scores[j][k];
+            }
+            // The scores are now in the edge arrays
+            candidates[j] = null;
+            scores[j] = null;
+        }
+        System.err.println("Built graph with " + edges + " edges");
+        System.err.println("Starting Chu-Liu Edmonds");
+        final int[] parent = MaxArborescence.parents(n, root, src, dst, weight);
+        // The edges of each term are contiguous, so find the chosen one
+        for(int j = 0, start = 0; j < n; j++) {
+            int end = start;
+            while(end < edges && dst[end] == j) {
+                if(src[end] == parent[j]) {
+                    linkScore[j] = weight[end];
+                }
+                end++;
+            }
+            start = end;
+        }
+        return parent;
+    }
+
+    /* Apply a function to 0..n-1, on the pool if there is one */
+    private void forEach(int n, IntConsumer f) {
+        if(pool == null) {
+            for(int i = 0; i < n; i++) {
+                f.accept(i);
+            }
+        } else {
+            pool.invoke(new ForEachTask(f, 0, n));
+        }
+    }
+
+    private static class ForEachTask extends RecursiveAction {
+
+        private final IntConsumer f;
+        private final int from, to;
+
+        ForEachTask(IntConsumer f, int from, int to) {
+            this.f = f;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from > LEAF_SIZE) {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new ForEachTask(f, from, mid), new ForEachTask(f, mid, to));
+            } else {
+                for(int i = from; i < to; i++) {
+                    f.accept(i);
+                }
+            }
+        }
     }
 
     @Override
@@ -66,34 +213,52 @@ public class MSTTaxoExtract implements TaxonomySearch {
         throw new UnsupportedOperationException("Not supported yet.");
     }
 
-    
-    
-    private Taxonomy buildTaxo(String node, Weighted<Arborescence<String>> arbor,
-            Map<String, Term> termMap, String parent,
-            ArrayList<String> term, double[][] matrix) {
-        Map<String,List<String>> invertedArbor = new HashMap<>();
-        for(ImmutableMap.Entry<String,String> e : arbor.val.parents.entrySet()) {
-            if(!invertedArbor.containsKey(e.getValue())) {
-                invertedArbor.put(e.getValue(), new ArrayList<String>());
+    /**
+     * Build the taxonomy from the parent of each term. The children of a term
+     * are in the order of the terms.
+     */
+    private Taxonomy buildTaxo(int root, int[] parent, double[] linkScore,
+            List<String> terms, Map<String, Term> termMap) {
+        final int n = parent.length;
+        // The children of i are child[offset[i]] .. child[offset[i+1]-1]
+        final int[] offset = new int[n + 1];
+        for(int j = 0; j < n; j++) {
+            if(parent[j] >= 0) {
+                offset[parent[j] + 1]++;
             }
-            invertedArbor.get(e.getValue()).add(e.getKey());
         }
-        
-        return buildTaxo(node, invertedArbor, termMap, parent, term, matrix);
-    }
-    
-    private Taxonomy buildTaxo(String node, Map<String, List<String>> tree,
-            Map<String, Term> termMap, String parent,
-            ArrayList<String> term, double[][] matrix) {
-        List<Taxonomy> children = new ArrayList<>();
-        List<String> edges = tree.get(node);
-        if(edges != null) {
-            for(String s : edges) {
-                children.add(buildTaxo(s, tree, termMap, parent, term, matrix));
+        for(int i = 0; i < n; i++) {
+            offset[i + 1] += offset[i];
+        }
+        final int[] child = new int[offset[n]];
+        final int[] fill = Arrays.copyOf(offset, n);
+        for(int j = 0; j < n; j++) {
+            if(parent[j] >= 0) {
+                child[fill[parent[j]]++] = j;
+            }
+        }
+        // Order the terms breadth first, then build them from the bottom up
+        // so deep taxonomies do not overflow the stack
+        final int[] order = new int[n];
+        int size = 0;
+        order[size++] = root;
+        for(int k = 0; k < size; k++) {
+            for(int c = offset[order[k]]; c < offset[order[k] + 1]; c++) {
+                order[size++] = child[c];
+            }
+        }
+        final Taxonomy[] taxos = new Taxonomy[n];
+        for(int k = size - 1; k >= 0; k--) {
+            final int i = order[k];
+            final List<Taxonomy> children = new ArrayList<>(offset[i + 1] - offset[i]);
+            for(int c = offset[i]; c < offset[i + 1]; c++) {
+                children.add(taxos[child[c]]);
             }
+            final String t = terms.get(i);
+            taxos[i] = new Taxonomy(t, termMap.get(t).getScore(),
+                    i == root ? Double.NaN : linkScore[i], children, Status.none);
         }
-        double linkScore = parent == null ? Double.NaN : matrix[term.indexOf(parent)][term.indexOf(node)];
-        return new Taxonomy(node, termMap.get(node).getScore(), linkScore, children, Status.none);
+        return taxos[root];
     }
     
     /*public Taxonomy extractTaxonomy(List<DocumentTopic> docTopics, Map<String, Topic> topicMap) {
@@ -85,8 +85,8 @@ public class MainKG {
 
             Map<String, Term> termMap = loadMap(terms, mapper, new DefaultSaffronListener());
             
-            BERTBasedRelationClassifier relationClassifier = BERTBasedRelationClassifier.getInstance(
-            		config.kg.kerasModelFile.getResolvedPath(), config.kg.bertModelFile.getResolvedPath(), config.kg.numberOfRelations);
+            BERTBasedRelationClassifier relationClassifier = BERTBasedRelationClassifier.getInstance(config.kg);
+            relationClassifier.precomputeEmbeddings(termMap.keySet());
 
             KGSearch search = KGSearch.create(config.taxonomy.search, config.kg, relationClassifier, termMap.keySet());
             final KnowledgeGraph graph = search.extractKnowledgeGraph(termMap, relationClassifier.typeMap.keySet());
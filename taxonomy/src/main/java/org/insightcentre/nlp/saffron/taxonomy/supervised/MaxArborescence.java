@@ -0,0 +1,210 @@
+package org.insightcentre.nlp.saffron.taxonomy.supervised;
+
+import com.google.common.base.Optional;
+import edu.cmu.cs.ark.cle.ds.FibonacciHeap;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Chu-Liu-Edmonds' algorithm for the maximum spanning arborescence of a sparse
+ * graph whose nodes and edges are given by number, in O(E log V) time.
+ *
+ * This follows Tarjan's "Finding Optimum Branchings": each strongly connected
+ * component keeps a Fibonacci heap of its incoming edges, and the heaps of a
+ * cycle are melded when it is contracted. Rather than changing the weight of
+ * every edge entering a contracted cycle, the adjustment is stored on the
+ * union-find forest of the components, so that the weight of an edge is its
+ * original weight plus the sum of the adjustments on the path from its
+ * destination to the root of the forest.
+ *
+ * @author John McCrae &lt;john@mccr.ae&gt;
+ */
+final class MaxArborescence {
+
+    private final int[] src, dst;
+    private final double[] weight;
+    /* The union-find forest of the strongly connected components, where the
+     * components created by contracting a cycle are numbered from n */
+    private final int[] scc;
+    private final double[] adjustment;
+    private final int[] path;
+    private final int[] cycle;
+    /* The union-find forest of the weakly connected components (nodes only) */
+    private final int[] wcc;
+    /* The component that a component was contracted into, or -1 */
+    private final int[] contractedInto;
+    /* The edge chosen to enter each component, or -1 */
+    private final int[] in;
+    /* The weight of that edge when it was chosen */
+    private final double[] inWeight;
+    private final FibonacciHeap<Integer, Integer>[] heaps;
+    private int components;
+
+    @SuppressWarnings("unchecked")
+    private MaxArborescence(int n, int[] src, int[] dst, double[] weight) {
+        this.src = src;
+        this.dst = dst;
+        this.weight = weight;
+        this.scc = new int[2 * n];
+        this.adjustment = new double[2 * n];
+        this.path = new int[2 * n];
+        this.cycle = new int[2 * n];
+        this.wcc = new int[n];
+        this.contractedInto = new int[2 * n];
+        this.in = new int[2 * n];
+        this.inWeight = new double[2 * n];
+        this.heaps = new FibonacciHeap[2 * n];
+        for (int i = 0; i < 2 * n; i++) {
+            scc[i] = i;
+        }
+        for (int i = 0; i < n; i++) {
+            wcc[i] = i;
+        }
+        Arrays.fill(contractedInto, -1);
+        Arrays.fill(in, -1);
+        this.components = n;
+    }
+
+    /**
+     * Find the maximum spanning arborescence
+     *
+     * @param n The number of nodes
+     * @param root The root node
+     * @param src The source (parent) of each edge
+     * @param dst The destination (child) of each edge
+     * @param weight The weight of each edge
+     * @return The parent of each node in the arborescence, or -1 for the root
+     * and the heads of any parts that cannot be reached from the root
+     */
+    static int[] parents(int n, int root, int[] src, int[] dst, double[] weight) {
+        if (src.length != dst.length || src.length != weight.length) {
+            throw new IllegalArgumentException("Edge arrays have different lengths");
+        }
+        return new MaxArborescence(n, src, dst, weight).solve(n, root);
+    }
+
+    /* Find the representative of a component. After this the adjustment of
+     * the component is the sum of the adjustments up to its representative */
+    private int find(int c) {
+        int r = c;
+        int len = 0;
+        while (scc[r] != r) {
+            path[len++] = r;
+            r = scc[r];
+        }
+        // Compress the path from the top, so that the parent of each
+        // component is already relative to the representative
+        for (int i = len - 2; i >= 0; i--) {
+            final int x = path[i];
+            adjustment[x] += adjustment[scc[x]];
+            scc[x] = r;
+        }
+        return r;
+    }
+
+    /* The current weight of an edge */
+    private double weightOf(int e) {
+        find(dst[e]);
+        return weight[e] + adjustment[dst[e]];
+    }
+
+    private int findWeak(int v) {
+        while (wcc[v] != v) {
+            wcc[v] = wcc[wcc[v]];
+            v = wcc[v];
+        }
+        return v;
+    }
+
+    private int[] solve(int n, int root) {
+        // Highest current weight first, then lowest edge number for ties
+        final Comparator<Integer> byWeight = (e1, e2) -> {
+            final int c = Double.compare(weightOf(e2), weightOf(e1));
+            return c != 0 ? c : Integer.compare(e1, e2);
+        };
+        for (int i = 0; i < n; i++) {
+            heaps[i] = FibonacciHeap.create(byWeight);
+        }
+        for (int e = 0; e < src.length; e++) {
+            if (dst[e] != root && src[e] != dst[e] && weight[e] != Double.NEGATIVE_INFINITY) {
+                heaps[dst[e]].add(e, e);
+            }
+        }
+        final ArrayDeque<Integer> todo = new ArrayDeque<>();
+        for (int i = 0; i < n; i++) {
+            if (i != root) {
+                todo.add(i);
+            }
+        }
+        while (!todo.isEmpty()) {
+            final int c = todo.poll();
+            // Find the best edge entering c from outside c
+            int e = -1;
+            for (Optional<Integer> o = heaps[c].pollOption(); o.isPresent(); o = heaps[c].pollOption()) {
+                if (find(src[o.get()]) != c) {
+                    e = o.get();
+                    break;
+                }
+            }
+            if (e < 0) {
+                continue;
+            }
+            in[c] = e;
+            inWeight[c] = weightOf(e);
+            final int ws = findWeak(src[e]), wd = findWeak(dst[e]);
+            if (ws != wd) {
+                wcc[ws] = wd;
+            } else {
+                todo.add(contract(c));
+            }
+        }
+        return recover(n);
+    }
+
+    /* Contract the cycle closed by the edge entering c into a new component */
+    private int contract(int c) {
+        final int k = components++;
+        // The adjustments must all be set before the heaps are melded, as
+        // melding compares the least entries of the heaps
+        int len = 0;
+        for (int x = c; x != k; x = find(src[in[x]])) {
+            cycle[len++] = x;
+            contractedInto[x] = k;
+            scc[x] = k;
+            adjustment[x] = -inWeight[x];
+        }
+        FibonacciHeap<Integer, Integer> heap = heaps[c];
+        heaps[c] = null;
+        for (int i = 1; i < len; i++) {
+            heap = FibonacciHeap.merge(heap, heaps[cycle[i]]);
+            heaps[cycle[i]] = null;
+        }
+        heaps[k] = heap;
+        return k;
+    }
+
+    /* Expand the contracted components, latest first */
+    private int[] recover(int n) {
+        final int[] parent = new int[n];
+        Arrays.fill(parent, -1);
+        final boolean[] replaced = new boolean[components];
+        // Components that no edge enters (the root and any parts that cannot
+        // be reached from it) keep none of the edges inside them
+        final boolean[] dropped = new boolean[components];
+        for (int c = components - 1; c >= 0; c--) {
+            dropped[c] = in[c] < 0 || (contractedInto[c] >= 0 && dropped[contractedInto[c]]);
+            if (replaced[c] || dropped[c]) {
+                continue;
+            }
+            final int e = in[c];
+            parent[dst[e]] = src[e];
+            // The edge enters every component between its destination and c,
+            // so it replaces the edges chosen for them
+            for (int x = dst[e]; x != c; x = contractedInto[x]) {
+                replaced[x] = true;
+            }
+        }
+        return parent;
+    }
+}
@@ -1,5 +1,7 @@
 package org.insightcentre.nlp.saffron.taxonomy.supervised;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import org.insightcentre.nlp.saffron.data.TypedLink;
@@ -25,5 +27,22 @@ public interface MulticlassRelationClassifier<T> {
 	 * key: relation label, value: probability
 	 */
 	public Map<TypedLink.Type, Double> predict(T source, T target);
+
+	/**
+	 * Predict the relationship between many pairs of nodes. Classifiers that
+	 * can evaluate several pairs at once should override this method
+	 * 
+	 * @param sources The source nodes
+	 * @param targets The target nodes, in the same order as the sources
+	 * 
+	 * @return the probability of each type of relationship for each pair
+	 */
+	public default List<Map<TypedLink.Type, Double>> predict(List<T> sources, List<T> targets) {
+		List<Map<TypedLink.Type, Double>> result = new ArrayList<>(sources.size());
+		for (int i = 0; i < sources.size(); i++) {
+			result.add(predict(sources.get(i), targets.get(i)));
+		}
+		return result;
+	}
 	
 }
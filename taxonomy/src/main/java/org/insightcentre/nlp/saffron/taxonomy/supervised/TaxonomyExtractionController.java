@@ -100,8 +100,8 @@ public class TaxonomyExtractionController {
             List<Term> terms = input.getInput().termsMapping;
 
             Map<String, Term> termMap = loadMap(terms, mapper, new DefaultSaffronListener());
-            BERTBasedRelationClassifier relationClassifier = BERTBasedRelationClassifier.getInstance(
-                    kgConfig.kerasModelFile.getResolvedPath(), kgConfig.bertModelFile.getResolvedPath(), kgConfig.numberOfRelations);
+            BERTBasedRelationClassifier relationClassifier = BERTBasedRelationClassifier.getInstance(kgConfig);
+            relationClassifier.precomputeEmbeddings(termMap.keySet());
 
             KGSearch search = KGSearch.create(taxonomyExtractionConfiguration.search, kgConfig, relationClassifier, termMap.keySet());
             final KnowledgeGraph graph = search.extractKnowledgeGraph(termMap, relationClassifier.typeMap.keySet());
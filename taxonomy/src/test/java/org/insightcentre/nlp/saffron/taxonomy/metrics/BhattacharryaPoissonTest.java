@@ -2,8 +2,11 @@ package org.insightcentre.nlp.saffron.taxonomy.metrics;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
 
 import org.insightcentre.nlp.saffron.data.TaxoLink;
 import org.junit.After;
@@ -59,4 +62,58 @@ public class BhattacharryaPoissonTest {
         assertEquals(0.973, instance.deltaScore(new TaxoLink("b", "d")), 0.001);
     }
 
+    /**
+     * Test that the delta scores are the same as summing over all counts
+     */
+    @Test
+    public void testManyChildren() {
+        System.out.println("manyChildren");
+        final int n = 200;
+        final double lambda = 3.0;
+        final List<String> terms = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            terms.add("t" + i);
+        }
+        HierarchicalScore instance = new BhattacharryaPoisson(new NullScore(),
+                new HashSet<>(terms), lambda, 0.5);
+        final int N = n - 1;
+        final double[] p = new double[N + 1];
+        for (int i = 0; i <= N; i++) {
+            double fact = 1.0;
+            for (int j = 2; j <= i; j++) {
+                fact *= j;
+            }
+            p[i] = i < 10 ? Math.exp(-lambda) * Math.pow(lambda, i) / fact
+                    : Math.exp(-lambda) * Math.pow(Math.E * lambda / i, i) / Math.sqrt(2 * Math.PI * i);
+        }
+        final int[] f = new int[n + 1];
+        f[0] = N;
+        final int[] c = new int[n];
+        final Random r = new Random(1);
+        for (int step = 0; step < N; step++) {
+            // Favour a few terms so that some have many children
+            final int t = r.nextInt(r.nextBoolean() ? 5 : n);
+            final TaxoLink link = new TaxoLink(terms.get(t), terms.get((t + step + 1) % n));
+            double expected = 0.0;
+            if (c[t] == 0) {
+                expected += Math.sqrt(p[1] * (f[1] + 1) / (N - f[0] + 1))
+                        - (N == f[0] ? 0.0 : Math.sqrt(p[1] * f[1] / (N - f[0])));
+                for (int i = 2; i < p.length; i++) {
+                    expected += Math.sqrt(p[i] * f[i] / (N - f[0] + 1))
+                            - (N == f[0] ? 0.0 : Math.sqrt(p[i] * f[i] / (N - f[0])));
+                }
+                expected *= 0.5 * N;
+                assertEquals(expected, instance.deltaScore(link), 1e-9);
+            }
+            final HierarchicalScore previous = instance;
+            final double before = previous.deltaScore(link);
+            instance = instance.next(link, null);
+            // The previous score is not changed
+            assertEquals(before, previous.deltaScore(link), 0.0);
+            f[c[t]]--;
+            c[t]++;
+            f[c[t]]++;
+        }
+    }
+
 }
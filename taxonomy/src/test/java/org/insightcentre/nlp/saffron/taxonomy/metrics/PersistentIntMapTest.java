@@ -0,0 +1,53 @@
+package org.insightcentre.nlp.saffron.taxonomy.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class PersistentIntMapTest {
+
+    public PersistentIntMapTest() {
+    }
+
+    /**
+     * Test of get and put methods, of class PersistentIntMap.
+     */
+    @Test
+    public void testPutGet() {
+        System.out.println("putGet");
+        final Random r = new Random(1);
+        final Map<Integer, Integer> expected = new HashMap<>();
+        PersistentIntMap<Integer> map = PersistentIntMap.empty();
+        for (int i = 0; i < 5000; i++) {
+            final int key = r.nextInt(i % 2 == 0 ? 100 : Integer.MAX_VALUE);
+            map = map.put(key, i);
+            expected.put(key, i);
+        }
+        for (Map.Entry<Integer, Integer> e : expected.entrySet()) {
+            assertEquals(e.getValue(), map.get(e.getKey()));
+        }
+        assertNull(map.get(100));
+        assertNull(map.get(Integer.MAX_VALUE));
+    }
+
+    /**
+     * Test that put does not change the old map
+     */
+    @Test
+    public void testPersistent() {
+        System.out.println("persistent");
+        final PersistentIntMap<String> map1 = PersistentIntMap.<String>empty().put(3, "a");
+        final PersistentIntMap<String> map2 = map1.put(3, "b").put(1 << 20, "c");
+        assertEquals("a", map1.get(3));
+        assertNull(map1.get(1 << 20));
+        assertEquals("b", map2.get(3));
+        assertEquals("c", map2.get(1 << 20));
+        assertNull(PersistentIntMap.<String>empty().get(3));
+    }
+}
@@ -3,9 +3,11 @@ package org.insightcentre.nlp.saffron.taxonomy.metrics;
 import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -422,4 +424,30 @@ public class SumKGTest {
 
 
 	}
+
+	/**
+	 * Prefetching the scores should give the same scores as computing them one
+	 * at a time
+	 */
+	@Test
+	public void testPrefetch() throws Exception {
+		String[] terms = new String[] { "automobile", "bus", "coach", "car", "wheel" };
+		List<TypedLink> links = new ArrayList<>();
+		for (String t1 : terms) {
+			for (String t2 : terms) {
+				if (!t1.equals(t2)) {
+					for (TypedLink.Type type : TypedLink.Type.values()) {
+						links.add(new TypedLink(t1, t2, type));
+					}
+				}
+			}
+		}
+		SumKGScore expected = new SumKGScore(new TestMultiRelationClassifier(), false);
+		SumKGScore prefetched = new SumKGScore(new TestMultiRelationClassifier(), false);
+		prefetched.prefetch(links);
+		assertEquals(links.size(), prefetched.scores.size());
+		for (TypedLink tl : links) {
+			assertEquals(expected.deltaScore(tl), prefetched.deltaScore(tl), 0.0);
+		}
+	}
 }
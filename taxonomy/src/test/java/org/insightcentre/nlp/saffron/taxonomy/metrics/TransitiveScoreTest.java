@@ -108,6 +108,49 @@ public class TransitiveScoreTest {
         }
     }
 
+    /**
+     * Test that adding a link does not change the previous scores
+     */
+    @Test
+    public void testNextIsPersistent() throws IOException {
+        System.out.println("nextIsPersistent");
+        TaxonomySolution soln = TaxonomySolution.empty(new HashSet<String>());
+        HierarchicalScore base = new TransitiveScore(new TestSupervisedTaxo());
+        base = base.next(new TaxoLink("", "a"), soln);
+        TaxoLink tl = new TaxoLink("a", "ab");
+        double before = base.deltaScore(tl);
+        HierarchicalScore left = base.next(new TaxoLink("ab", "abc"), soln);
+        HierarchicalScore right = base.next(new TaxoLink("a", "ac"), soln);
+        assertEquals(before, base.deltaScore(tl), 0.000001);
+        assertEquals(before, right.deltaScore(tl), 0.000001);
+        assertEquals(before + 2.0 / 4.0 + 1.0 / 4.0 - 0.5 * 2, left.deltaScore(tl), 0.000001);
+        AffectedLinks affected = right.affectedBy(new TaxoLink("ac", "acd"));
+        assertEquals(new HashSet<>(Arrays.asList("acd")), affected.tops);
+        assertEquals(new HashSet<>(Arrays.asList("ac", "a", "")), affected.bottoms);
+    }
+
+    /**
+     * Test a taxonomy that is a single long chain
+     */
+    @Test
+    public void testDeepChain() throws IOException {
+        System.out.println("deepChain");
+        TaxonomySolution soln = TaxonomySolution.empty(new HashSet<String>());
+        HierarchicalScore instance = new TransitiveScore(new TestSupervisedTaxo());
+        final int n = 2000;
+        String term = "";
+        for (int i = 0; i < n; i++) {
+            instance = instance.next(new TaxoLink(term, term + "a"), soln);
+            term = term + "a";
+        }
+        // Every term in the chain is an ancestor of the new term
+        double expResult = 0.0;
+        for (int i = 0; i <= n; i++) {
+            expResult += (i + 1.0) / (n + 2.0) - 0.5;
+        }
+        assertEquals(expResult, instance.deltaScore(new TaxoLink(term, term + "a")), 0.000001);
+    }
+
     // Implementing Fisher–Yates shuffle
     static void shuffleArray(TaxoLink[] ar) {
         // If running on Java 6 or older, use `new Random()` on RHS here
@@ -7,6 +7,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import org.insightcentre.nlp.saffron.data.Status;
 import org.insightcentre.nlp.saffron.data.TaxoLink;
 import org.insightcentre.nlp.saffron.data.Taxonomy;
@@ -151,4 +152,49 @@ public class BeamSearchTest {
         }
 
     }
+
+    /**
+     * Test that the parallel search gives the same result on any number of
+     * threads
+     */
+    @Test
+    public void testParallel() throws Exception {
+        System.out.println("parallel");
+        final int n = 60;
+        final HashMap<String, Term> terms = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            addTerm(terms, "" + i, 0.0);
+        }
+        for (int seed = 0; seed < 30; seed++) {
+            final Random r = new Random(seed);
+            final double[][] scores = new double[n][n];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    // Round the scores so that there are many ties
+                    scores[i][j] = Math.round(r.nextDouble() * 4) / 4.0;
+                }
+            }
+            final SupervisedTaxo classifier = new SupervisedTaxo((Features) null, null, null) {
+                @Override
+                public double predict(String top, String bottom) {
+                    return scores[Integer.parseInt(top)][Integer.parseInt(bottom)];
+                }
+            };
+            // The serial search is the same as the search on a pool
+            final Taxonomy expected = new BeamSearch(new SumScore(classifier), 5).extractTaxonomy(terms);
+            assert (expected.verifyTree());
+            assertEquals(n, expected.size());
+            for (int threads : new int[]{1, 2, 4}) {
+                final ForkJoinPool pool = new ForkJoinPool(threads);
+                try {
+                    final Taxonomy result = new BeamSearch(new SumScore(classifier), 5, pool).extractTaxonomy(terms);
+                    assertEquals(expected.toString(), result.toString());
+                } finally {
+                    pool.shutdown();
+                }
+                final Taxonomy result = new BeamSearch(new SumScore(classifier), 5, threads).extractTaxonomy(terms);
+                assertEquals(expected.toString(), result.toString());
+            }
+        }
+    }
 }
@@ -2,7 +2,11 @@ package org.insightcentre.nlp.saffron.taxonomy.search;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -110,4 +114,61 @@ public class BeamTest {
         assertEquals(false, iter.hasNext());
         
     }
+
+    /**
+     * Test of merge method, of class Beam.
+     */
+    @Test
+    public void testMerge() {
+        System.out.println("merge");
+        Beam<String> instance = new Beam<>(2);
+        instance.push("a", 1);
+        instance.push("c", 0);
+        Beam<String> other = new Beam<>(2);
+        other.push("b", 2);
+        other.push("d", -1);
+        instance.merge(other);
+        assertEquals("b", instance.pop());
+        assertEquals("a", instance.pop());
+        assertEquals(true, instance.isEmpty());
+    }
+
+    /**
+     * Test of push method, of class Beam, replacing the lowest value.
+     */
+    @Test
+    public void testPushLowest() {
+        System.out.println("pushLowest");
+        Beam<String> instance = new Beam<>(3);
+        instance.push("a", 5);
+        instance.push("b", 1);
+        instance.push("c", 4);
+        // The lowest value is not the last in the heap
+        assertEquals(true, instance.push("d", 3));
+        assertEquals(false, instance.canPush(2));
+        assertEquals("a", instance.pop());
+        assertEquals("c", instance.pop());
+        assertEquals("d", instance.pop());
+        assertEquals(true, instance.isEmpty());
+    }
+
+    /**
+     * Test of push method, of class Beam, with values with the same score
+     * pushed in any order.
+     */
+    @Test
+    public void testPushTies() {
+        System.out.println("pushTies");
+        List<String> k = Arrays.asList("a", "b", "c", "d", "e", "f");
+        for (int seed = 0; seed < 10; seed++) {
+            Collections.shuffle(k, new Random(seed));
+            Beam<String> instance = new Beam<>(3);
+            for (String s : k) {
+                instance.push(s, s.equals("f") ? 1 : 0);
+            }
+            assertEquals("f", instance.pop());
+            assertEquals("a", instance.pop());
+            assertEquals("b", instance.pop());
+        }
+    }
 }
@@ -36,8 +36,8 @@ public class KnowledgeGraphSolutionTest {
 		assertFalse(kgs.synonymyPairs.containsKey("bus"));
 		assertEquals("bus",kgs.synonymyPairs.get("coach"));
 		assertEquals("bus",kgs.synonymyPairs.get("autobus"));
-		assertTrue(kgs.taxonomy.heads.containsKey("automobile"));
-		assertEquals("bus",kgs.taxonomy.heads.get("automobile").children.get(0).root);
+		assertTrue(kgs.taxonomy.heads().containsKey("automobile"));
+		assertEquals("bus",kgs.taxonomy.heads().get("automobile").children.get(0).root);
 	}
 
 }
@@ -0,0 +1,124 @@
+package org.insightcentre.nlp.saffron.taxonomy.search;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import org.insightcentre.nlp.saffron.data.Status;
+import org.insightcentre.nlp.saffron.data.TaxoLink;
+import org.insightcentre.nlp.saffron.data.Taxonomy;
+import org.insightcentre.nlp.saffron.data.Term;
+import org.insightcentre.nlp.saffron.taxonomy.metrics.BhattacharryaPoisson;
+import org.insightcentre.nlp.saffron.taxonomy.metrics.Score;
+import org.insightcentre.nlp.saffron.taxonomy.metrics.SumScore;
+import org.insightcentre.nlp.saffron.taxonomy.metrics.TransitiveScore;
+import org.insightcentre.nlp.saffron.taxonomy.supervised.Features;
+import org.insightcentre.nlp.saffron.taxonomy.supervised.SupervisedTaxo;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class LazyGreedyTest {
+
+    public LazyGreedyTest() {
+    }
+
+    private static class TestSupervisedTaxo extends SupervisedTaxo {
+
+        public TestSupervisedTaxo() throws IOException {
+            super((Features) null, null, null);
+        }
+
+        @Override
+        public double predict(String top, String bottom) {
+            // A deterministic pseudo-random score
+            int h = (top + "->" + bottom).hashCode() * 0x9E3779B1;
+            return (double) ((h >>> 8) & 0xffff) / 0xffff;
+        }
+    }
+
+    private HashMap<String, Term> makeTerms(int n) {
+        HashMap<String, Term> terms = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            String t = "term" + i;
+            terms.put(t, new Term(t, 0, 0, 0.0, Collections.EMPTY_LIST, Status.none.toString()));
+        }
+        return terms;
+    }
+
+    private static void collectLinks(Taxonomy t, Set<String> links) {
+        for (Taxonomy c : t.children) {
+            links.add(t.root + " -> " + c.root + " " + c.linkScore);
+            collectLinks(c, links);
+        }
+    }
+
+    private void assertSameResult(Score score1, Score score2, HashMap<String, Term> terms,
+            Set<TaxoLink> whiteList, Set<TaxoLink> blackList) {
+        Taxonomy expected = new Greedy(score1).extractTaxonomyWithBlackWhiteList(terms, whiteList, blackList);
+        Taxonomy result = new LazyGreedy(score2).extractTaxonomyWithBlackWhiteList(terms, whiteList, blackList);
+        Set<String> expectedLinks = new TreeSet<>();
+        collectLinks(expected, expectedLinks);
+        Set<String> resultLinks = new TreeSet<>();
+        collectLinks(result, resultLinks);
+        assertEquals(expectedLinks, resultLinks);
+    }
+
+    /**
+     * Test that the lazy search matches greedy search with the simple score
+     */
+    @Test
+    public void testSumScore() throws Exception {
+        System.out.println("sumScore");
+        HashMap<String, Term> terms = makeTerms(30);
+        assertSameResult(new SumScore(new TestSupervisedTaxo()), new SumScore(new TestSupervisedTaxo()),
+                terms, Collections.EMPTY_SET, Collections.EMPTY_SET);
+    }
+
+    /**
+     * Test that the lazy search matches greedy search with the transitive
+     * score
+     */
+    @Test
+    public void testTransitiveScore() throws Exception {
+        System.out.println("transitiveScore");
+        HashMap<String, Term> terms = makeTerms(30);
+        assertSameResult(new TransitiveScore(new TestSupervisedTaxo()), new TransitiveScore(new TestSupervisedTaxo()),
+                terms, Collections.EMPTY_SET, Collections.EMPTY_SET);
+    }
+
+    /**
+     * Test that the lazy search matches greedy search with the
+     * Bhattacharrya-Poisson score, which affects all links
+     */
+    @Test
+    public void testBhattacharryaPoisson() throws Exception {
+        System.out.println("bhattacharryaPoisson");
+        HashMap<String, Term> terms = makeTerms(20);
+        assertSameResult(new BhattacharryaPoisson(new SumScore(new TestSupervisedTaxo()), terms.keySet(), 3, 0.01),
+                new BhattacharryaPoisson(new SumScore(new TestSupervisedTaxo()), terms.keySet(), 3, 0.01),
+                terms, Collections.EMPTY_SET, Collections.EMPTY_SET);
+    }
+
+    /**
+     * Test the lazy search with black and white lists
+     */
+    @Test
+    public void testBlackWhiteList() throws Exception {
+        System.out.println("blackWhiteList");
+        HashMap<String, Term> terms = makeTerms(20);
+        Set<TaxoLink> whiteList = new HashSet<>();
+        Set<TaxoLink> blackList = new HashSet<>();
+        whiteList.add(new TaxoLink("term1", "term2"));
+        whiteList.add(new TaxoLink("term3", "term4"));
+        blackList.add(new TaxoLink("term5", "term6"));
+        blackList.add(new TaxoLink("term6", "term5"));
+        assertSameResult(new TransitiveScore(new TestSupervisedTaxo()), new TransitiveScore(new TestSupervisedTaxo()),
+                terms, whiteList, blackList);
+    }
+}
@@ -0,0 +1,122 @@
+package org.insightcentre.nlp.saffron.taxonomy.search;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.insightcentre.nlp.saffron.data.Status;
+import org.insightcentre.nlp.saffron.data.Taxonomy;
+import org.insightcentre.nlp.saffron.data.VirtualRootTaxonomy;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class TaxonomySolutionTest {
+
+    private final Set<String> terms = new HashSet<>(Arrays.asList("a", "b", "c", "d", "e"));
+
+    public TaxonomySolutionTest() {
+    }
+
+    /**
+     * Test of add method, of class TaxonomySolution.
+     */
+    @Test
+    public void testAdd() {
+        System.out.println("add");
+        TaxonomySolution soln = TaxonomySolution.empty(terms);
+        soln = soln.add("b", "d", 2.0, 4.0, 0.5, false);
+        assertEquals(2, soln.size());
+        // Top is new, bottom is a head
+        soln = soln.add("a", "b", 1.0, 2.0, 0.6, true);
+        assertEquals(3, soln.size());
+        // Bottom is new, top exists
+        soln = soln.add("a", "c", 1.0, 3.0, 0.7, false);
+        assertEquals(4, soln.size());
+        // d already has a parent
+        assertNull(soln.add("c", "d", 3.0, 4.0, 0.1, false));
+        // a is above d
+        assertNull(soln.add("d", "a", 4.0, 1.0, 0.1, false));
+        assertNull(soln.add("e", "e", 5.0, 5.0, 0.1, false));
+        assertFalse(soln.isComplete());
+        assertFalse(soln.contains("e"));
+        soln = soln.add("d", "e", 4.0, 5.0, 0.8, false);
+        assertTrue(soln.contains("e"));
+        assertTrue(soln.isComplete());
+
+        final Taxonomy t = soln.heads().get("a");
+        assertEquals("a", t.root);
+        assertEquals(Status.accepted, t.status);
+        assertTrue(Double.isNaN(t.linkScore));
+        assertEquals(2, t.children.size());
+        assertEquals("b", t.children.get(0).root);
+        assertEquals(0.6, t.children.get(0).linkScore, 0.0);
+        assertEquals("c", t.children.get(1).root);
+        assertEquals(3.0, t.children.get(1).score, 0.0);
+        assertEquals("e", t.children.get(0).children.get(0).children.get(0).root);
+        assertEquals(5, t.size());
+    }
+
+    /**
+     * Test that joining fragments keeps them apart until they are joined
+     */
+    @Test
+    public void testFragments() {
+        System.out.println("fragments");
+        TaxonomySolution soln = TaxonomySolution.empty(terms);
+        soln = soln.add("a", "b", 0.0, 0.0, 0.0, false);
+        soln = soln.add("c", "d", 0.0, 0.0, 0.0, false);
+        final TaxonomySolution before = soln;
+        assertEquals(2, soln.heads().size());
+        // Joining the fragments of a and c
+        soln = soln.add("b", "c", 0.0, 0.0, 0.0, false);
+        assertEquals(1, soln.heads().size());
+        assertNull(soln.add("d", "a", 0.0, 0.0, 0.0, false));
+        // The previous solution is not changed
+        assertEquals(2, before.heads().size());
+        assertNotNull(before.add("d", "a", 0.0, 0.0, 0.0, false));
+        soln = soln.add("d", "e", 0.0, 0.0, 0.0, false);
+        assertEquals("a", soln.toTaxonomy().root);
+        final TaxonomySolution two = before.add("b", "e", 0.0, 0.0, 0.0, false);
+        assertTrue(two.toTaxonomy() instanceof VirtualRootTaxonomy);
+    }
+
+    /**
+     * Test of the constructor from the heads
+     */
+    @Test
+    public void testFromHeads() {
+        System.out.println("fromHeads");
+        TaxonomySolution soln = TaxonomySolution.empty(terms);
+        soln = soln.add("a", "b", 0.0, 0.0, 0.0, false);
+        soln = soln.add("a", "c", 0.0, 0.0, 0.0, false);
+        soln = soln.add("d", "e", 0.0, 0.0, 0.0, false);
+        final TaxonomySolution copy = new TaxonomySolution(soln.heads(), terms);
+        assertEquals(soln.size(), copy.size());
+        assertEquals(soln.heads(), copy.heads());
+        assertNull(copy.add("c", "a", 0.0, 0.0, 0.0, false));
+        assertEquals(1, copy.add("c", "d", 0.0, 0.0, 0.0, false).heads().size());
+    }
+
+    /**
+     * Test of add method, of class TaxonomySolution, with terms that are not
+     * in the terms of the solution
+     */
+    @Test
+    public void testAddOtherTerms() {
+        System.out.println("addOtherTerms");
+        TaxonomySolution soln = TaxonomySolution.empty(terms);
+        soln = soln.add("a", "x", 0.0, 0.0, 0.0, false);
+        soln = soln.add("x", "y", 0.0, 0.0, 0.0, false);
+        assertTrue(soln.contains("x"));
+        assertTrue(soln.contains("y"));
+        assertFalse(soln.contains("z"));
+        assertNull(soln.add("y", "a", 0.0, 0.0, 0.0, false));
+        final Taxonomy t = soln.heads().get("a");
+        assertEquals("a", t.root);
+        assertEquals("x", t.children.get(0).root);
+        assertEquals("y", t.children.get(0).children.get(0).root);
+    }
+}
@@ -0,0 +1,76 @@
+package org.insightcentre.nlp.saffron.taxonomy.supervised;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import org.insightcentre.nlp.saffron.data.Taxonomy;
+import org.insightcentre.nlp.saffron.data.Term;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class MSTTaxoExtractTest {
+
+    public MSTTaxoExtractTest() {
+    }
+
+    /* A term is best placed under its longest prefix */
+    private static final BinaryRelationClassifier<String> PREFIX = (top, bottom) -> {
+        if (bottom.startsWith(top)) {
+            return (top.length() + 1.0) / (bottom.length() + 1.0);
+        } else {
+            return 0.0;
+        }
+    };
+
+    private static Map<String, Term> terms(String... terms) {
+        final Map<String, Term> termMap = new HashMap<>();
+        for (String t : terms) {
+            // Shorter terms have higher scores, so the empty term is the root
+            termMap.put(t, new Term(t, 1, 1, 1.0 / (t.length() + 1), null, null));
+        }
+        return termMap;
+    }
+
+    /**
+     * Test of extractTaxonomy method, of class MSTTaxoExtract.
+     */
+    @Test
+    public void testExtractTaxonomy() {
+        System.out.println("extractTaxonomy");
+        final Map<String, Term> termMap = terms("", "a", "b", "c", "ab", "ac", "abc", "ba", "bd");
+        final Taxonomy result = new MSTTaxoExtract(PREFIX, 0, null).extractTaxonomy(termMap);
+        assertEquals("", result.root);
+        assertTrue(Double.isNaN(result.linkScore));
+        assertEquals(3, result.children.size());
+        assertEquals(9, result.size());
+        final Taxonomy ab = result.descendent("ab");
+        assertEquals(1, ab.children.size());
+        assertEquals("abc", ab.children.get(0).root);
+        assertEquals(0.75, ab.children.get(0).linkScore, 0.0);
+    }
+
+    /**
+     * Test that the sparse graph gives the same taxonomy if it keeps the best
+     * parent of each term
+     */
+    @Test
+    public void testSparse() {
+        System.out.println("sparse");
+        final Map<String, Term> termMap = terms("", "a", "b", "c", "ab", "ac", "abc", "ba", "bd",
+                "abcd", "abd", "bdc", "cab", "ca", "cb", "cba");
+        final Taxonomy dense = new MSTTaxoExtract(PREFIX, 0, null).extractTaxonomy(termMap);
+        final Taxonomy sparse = new MSTTaxoExtract(PREFIX, 2, null).extractTaxonomy(termMap);
+        final Taxonomy parallel = new MSTTaxoExtract(PREFIX, 2, new ForkJoinPool(4)).extractTaxonomy(termMap);
+        assertEquals(dense, sparse);
+        assertEquals(dense, parallel);
+        assertEquals(0.75, sparse.descendent("abc").linkScore, 0.0);
+        // Only the root is a candidate parent of a term, so it is still reached
+        final Taxonomy single = new MSTTaxoExtract((top, bottom) -> top.length() > bottom.length() ? 1.0 : 0.0,
+                1, null).extractTaxonomy(termMap);
+        assertEquals(termMap.size(), single.size());
+    }
+}
@@ -0,0 +1,100 @@
+package org.insightcentre.nlp.saffron.taxonomy.supervised;
+
+import edu.cmu.cs.ark.cle.ChuLiuEdmonds;
+import edu.cmu.cs.ark.cle.graph.DenseWeightedGraph;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class MaxArborescenceTest {
+
+    public MaxArborescenceTest() {
+    }
+
+    /**
+     * Test of parents method, of class MaxArborescence.
+     */
+    @Test
+    public void testParents() {
+        System.out.println("parents");
+        // 0 -> 1 is cheap, but 1 and 2 prefer each other
+        final int[] src = {0, 0, 1, 2, 2};
+        final int[] dst = {1, 2, 2, 1, 3};
+        final double[] weight = {1.0, 0.5, 5.0, 6.0, 1.0};
+        final int[] parent = MaxArborescence.parents(4, 0, src, dst, weight);
+        assertArrayEquals(new int[]{-1, 2, 0, 2}, parent);
+    }
+
+    /**
+     * Test that the arborescence has the same weight as the dense algorithm
+     */
+    @Test
+    public void testDense() {
+        System.out.println("dense");
+        final Random random = new Random(42);
+        for (int trial = 0; trial < 20; trial++) {
+            final int n = 2 + random.nextInt(30);
+            final List<Integer> nodes = new ArrayList<>();
+            final double[][] matrix = new double[n][n];
+            final int[] src = new int[n * (n - 1)];
+            final int[] dst = new int[n * (n - 1)];
+            final double[] weight = new double[n * (n - 1)];
+            int e = 0;
+            for (int i = 0; i < n; i++) {
+                nodes.add(i);
+                for (int j = 0; j < n; j++) {
+                    if (i != j) {
+                        matrix[i][j] = random.nextDouble();
+                        src[e] = i;
+                        dst[e] = j;
+                        weight[e++] = matrix[i][j];
+                    }
+                }
+            }
+            final int root = random.nextInt(n);
+            final double expected = ChuLiuEdmonds.getMaxArborescence(
+                    DenseWeightedGraph.from(nodes, matrix), root).weight;
+            final int[] parent = MaxArborescence.parents(n, root, src, dst, weight);
+            double total = 0.0;
+            for (int j = 0; j < n; j++) {
+                if (j == root) {
+                    assertEquals(-1, parent[j]);
+                } else {
+                    assertTrue(parent[j] >= 0);
+                    total += matrix[parent[j]][j];
+                }
+            }
+            assertEquals(expected, total, 1e-9);
+            // Every node is reached from the root
+            for (int j = 0; j < n; j++) {
+                int k = j, steps = 0;
+                while (k != root) {
+                    k = parent[k];
+                    assertTrue(++steps <= n);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that a cycle with no path from the root is not kept
+     */
+    @Test
+    public void testUnreachable() {
+        System.out.println("unreachable");
+        final int[] src = {0, 2, 3};
+        final int[] dst = {1, 3, 2};
+        final double[] weight = {1.0, 1.0, 1.0};
+        final int[] parent = MaxArborescence.parents(4, 0, src, dst, weight);
+        assertEquals(-1, parent[0]);
+        assertEquals(0, parent[1]);
+        assertEquals(-1, parent[2]);
+        assertEquals(-1, parent[3]);
+    }
+}
@@ -0,0 +1,327 @@
+package org.insightcentre.nlp.saffron.term;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import opennlp.tools.postag.POSTagger;
+import opennlp.tools.tokenize.Tokenizer;
+
+/**
+ * A corpus that has been tokenized and part-of-speech tagged, so that later
+ * passes over the same corpus do not need to run OpenNLP again.
+ *
+ * The store is used in two phases. First, the documents are annotated (in
+ * any order and from any number of threads) and appended to a file as token
+ * and tag ids per sentence. Then the store is sealed, the file is
+ * memory-mapped and each document can be streamed back sentence by sentence.
+ *
+ * The tokens are stored as they were returned by the tokenizer (i.e., not
+ * lower-cased) and the tags are those of these tokens. A store should only be
+ * shared by components that use the same tokenizer and tagger models.
+ *
+ * @author John McCrae
+ */
+public class AnnotatedCorpus implements Closeable {
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final Vocabulary tokens = new Vocabulary();
+    private final Vocabulary tags = new Vocabulary();
+    private final ConcurrentHashMap<String, Long> offsets = new ConcurrentHashMap<>();
+    /* Documents that were annotated twice (possibly with different text) */
+    private final ConcurrentHashMap<String, Boolean> duplicates = new ConcurrentHashMap<>();
+    private final AtomicLong length = new AtomicLong();
+    private volatile int maxRecord = 0;
+    private volatile ByteBuffer[] chunks = null;
+    private long stride;
+    private String[] tokenStrings, tagStrings;
+
+    /**
+     * Create an annotated corpus
+     *
+     * @param file The file to store the annotations in (overwritten)
+     * @throws IOException If the file cannot be created
+     */
+    public AnnotatedCorpus(File file) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.raf.setLength(0);
+        this.channel = raf.getChannel();
+    }
+
+    /**
+     * Create an annotated corpus backed by a temporary file, which is deleted
+     * when the corpus is closed
+     *
+     * @return The annotated corpus
+     * @throws IOException If the file cannot be created
+     */
+    public static AnnotatedCorpus create() throws IOException {
+        final File tmpFile = File.createTempFile("annotations", ".bin");
+        tmpFile.deleteOnExit();
+        return new AnnotatedCorpus(tmpFile);
+    }
+
+    /**
+     * Tokenize and tag every (line-separated) sentence of a text
+     *
+     * @param contents The text
+     * @param tokenizer The tokenizer
+     * @param tagger The tagger
+     * @return The list of annotated sentences
+     */
+    public static List<Sentence> annotate(String contents, Tokenizer tokenizer, POSTagger tagger) {
+        final List<Sentence> sentences = new ArrayList<>();
+        for (String sentence : contents.split("\n")) {
+            String[] tokens;
+            try {
+                tokens = tokenizer.tokenize(sentence);
+            } catch (Exception x) {
+                System.err.println(sentence);
+                throw x;
+            }
+            String[] tags = new String[0];
+            if (tokens.length > 0) {
+                tags = tagger.tag(tokens);
+                if (tags.length != tokens.length) {
+                    throw new RuntimeException("Tagger did not return same number of tokens as tokenizer");
+                }
+            }
+            sentences.add(new Sentence(tokens, tags));
+        }
+        return sentences;
+    }
+
+    /**
+     * Add the annotations of a document. This is thread-safe, but may only be
+     * called before the corpus is sealed.
+     *
+     * @param docId The document's identifier
+     * @param sentences The annotated sentences of the document
+     */
+    public void put(String docId, List<Sentence> sentences) {
+        if (chunks != null) {
+            throw new IllegalStateException("Cannot add to a sealed corpus");
+        }
+        if (docId == null) {
+            return;
+        }
+        int size = 1;
+        for (Sentence s : sentences) {
+            size += 1 + 2 * s.tokens.length;
+        }
+        final ByteBuffer buf = ByteBuffer.allocate(size * 4);
+        buf.putInt(sentences.size());
+        for (Sentence s : sentences) {
+            buf.putInt(s.tokens.length);
+            for (String token : s.tokens) {
+                buf.putInt(tokens.id(token));
+            }
+            for (String tag : s.tags) {
+                buf.putInt(tags.id(tag));
+            }
+        }
+        buf.flip();
+        final long offset = length.getAndAdd(buf.remaining());
+        synchronized (this) {
+            maxRecord = Math.max(maxRecord, buf.remaining());
+        }
+        try {
+            long position = offset;
+            while (buf.hasRemaining()) {
+                position += channel.write(buf, position);
+            }
+        } catch (IOException x) {
+            throw new UncheckedIOException(x);
+        }
+        if (offsets.putIfAbsent(docId, offset) != null) {
+            duplicates.put(docId, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Finish writing and memory-map the annotations. After this no more
+     * documents can be added.
+     *
+     * @throws IOException If the file cannot be mapped
+     */
+    public synchronized void seal() throws IOException {
+        if (chunks != null) {
+            return;
+        }
+        for (String docId : duplicates.keySet()) {
+            offsets.remove(docId);
+        }
+        tokenStrings = tokens.toArray();
+        tagStrings = tags.toArray();
+        // Chunks overlap by the longest record, so no record crosses the end
+        // of the chunk it starts in
+        final long size = length.get();
+        stride = Math.max(1, (long) Integer.MAX_VALUE - maxRecord);
+        final int n = (int) Math.max(1, (size + stride - 1) / stride);
+        final ByteBuffer[] c = new ByteBuffer[n];
+        for (int i = 0; i < n; i++) {
+            final long start = i * stride;
+            c[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                    Math.max(0, Math.min(size - start, stride + maxRecord)));
+        }
+        chunks = c;
+    }
+
+    /**
+     * Check if the corpus has been sealed and can be read
+     *
+     * @return True if the corpus is sealed
+     */
+    public boolean isSealed() {
+        return chunks != null;
+    }
+
+    /**
+     * Get the annotations of a document. The sentences are decoded as they
+     * are iterated.
+     *
+     * @param docId The document's identifier
+     * @return The sentences of the document or null if the document was not
+     * annotated (or the corpus is not sealed yet)
+     */
+    public Iterable<Sentence> get(String docId) {
+        final ByteBuffer[] c = chunks;
+        if (c == null || docId == null) {
+            return null;
+        }
+        final Long offset = offsets.get(docId);
+        if (offset == null) {
+            return null;
+        }
+        final ByteBuffer chunk = c[(int) (offset / stride)];
+        final int start = (int) (offset % stride);
+        return new Iterable<Sentence>() {
+            @Override
+            public Iterator<Sentence> iterator() {
+                return new SentenceIterator(chunk.duplicate(), start);
+            }
+        };
+    }
+
+    /**
+     * The number of documents that can be read from this corpus
+     *
+     * @return The number of documents
+     */
+    public int size() {
+        return offsets.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        chunks = null;
+        channel.close();
+        raf.close();
+        file.delete();
+    }
+
+    /**
+     * A tokenized and tagged sentence
+     */
+    public static class Sentence {
+
+        public final String[] tokens;
+        public final String[] tags;
+
+        public Sentence(String[] tokens, String[] tags) {
+            this.tokens = tokens;
+            this.tags = tags;
+        }
+
+        /**
+         * Get the tokens of this sentence in lower case
+         *
+         * @return A new array of lower-cased tokens
+         */
+        public String[] lowerCaseTokens() {
+            final String[] ltoks = new String[tokens.length];
+            for (int i = 0; i < tokens.length; i++) {
+                ltoks[i] = tokens[i].toLowerCase();
+            }
+            return ltoks;
+        }
+    }
+
+    private class SentenceIterator implements Iterator<Sentence> {
+
+        private final ByteBuffer buf;
+        private int remaining;
+
+        SentenceIterator(ByteBuffer buf, int start) {
+            this.buf = buf;
+            buf.position(start);
+            this.remaining = buf.getInt();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public Sentence next() {
+            if (remaining <= 0) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+            final int n = buf.getInt();
+            final String[] toks = new String[n];
+            for (int i = 0; i < n; i++) {
+                toks[i] = tokenStrings[buf.getInt()];
+            }
+            final String[] tgs = new String[n];
+            for (int i = 0; i < n; i++) {
+                tgs[i] = tagStrings[buf.getInt()];
+            }
+            return new Sentence(toks, tgs);
+        }
+    }
+
+    /**
+     * A thread-safe mapping of strings to dense ids
+     */
+    private static class Vocabulary {
+
+        private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        int id(String s) {
+            final Integer i = ids.get(s);
+            if (i != null) {
+                return i;
+            }
+            synchronized (strings) {
+                final Integer j = ids.get(s);
+                if (j != null) {
+                    return j;
+                }
+                strings.add(s);
+                ids.put(s, strings.size() - 1);
+                return strings.size() - 1;
+            }
+        }
+
+        String[] toArray() {
+            synchronized (strings) {
+                return strings.toArray(new String[strings.size()]);
+            }
+        }
+    }
+}
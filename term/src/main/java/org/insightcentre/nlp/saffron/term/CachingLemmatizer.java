@@ -0,0 +1,76 @@
+package org.insightcentre.nlp.saffron.term;
+
+import java.util.HashMap;
+import java.util.List;
+import opennlp.tools.lemmatizer.DictionaryLemmatizer;
+import opennlp.tools.lemmatizer.Lemmatizer;
+
+/**
+ * A dictionary lemmatizer that remembers the lemma of each (token, tag) pair
+ * it has looked up. As a dictionary lemmatizer does not use the context of a
+ * token, this gives the same lemmas as the dictionary.
+ *
+ * This class is not thread-safe, so each thread should have its own instance
+ * (which may share the same dictionary).
+ *
+ * @author John McCrae
+ */
+public class CachingLemmatizer implements Lemmatizer {
+
+    /* The cache is emptied if it grows beyond this many entries */
+    private static final int MAX_SIZE = 1 << 20;
+
+    private final DictionaryLemmatizer dictionary;
+    /* The lemmas by tag and then token */
+    private final HashMap<String, HashMap<String, String>> cache = new HashMap<>();
+    private int size = 0;
+
+    public CachingLemmatizer(DictionaryLemmatizer dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Get the lemma of a single token
+     *
+     * @param token The token
+     * @param tag The part-of-speech tag of the token
+     * @return The lemma or "O" if the token is not in the dictionary
+     */
+    public String lemmatize(String token, String tag) {
+        HashMap<String, String> byToken = cache.get(tag);
+        if (byToken == null) {
+            byToken = new HashMap<>();
+            cache.put(tag, byToken);
+        }
+        String lemma = byToken.get(token);
+        if (lemma == null) {
+            lemma = dictionary.lemmatize(new String[]{token}, new String[]{tag})[0];
+            if (size >= MAX_SIZE) {
+                cache.clear();
+                size = 0;
+                byToken = new HashMap<>();
+                cache.put(tag, byToken);
+            }
+            byToken.put(token, lemma);
+            size++;
+        }
+        return lemma;
+    }
+
+    @Override
+    public String[] lemmatize(String[] toks, String[] tags) {
+        final String[] lemmas = new String[toks.length];
+        for (int i = 0; i < toks.length; i++) {
+            lemmas[i] = lemmatize(toks[i], tags[i]);
+        }
+        return lemmas;
+    }
+
+    /**
+     * Get all the lemmas of each token. These are not cached.
+     */
+    @Override
+    public List<List<String>> lemmatize(List<String> toks, List<String> tags) {
+        return dictionary.lemmatize(toks, tags);
+    }
+}
@@ -14,7 +14,7 @@ public class Features {
 
     public static double calcFeature(
             TermExtractionConfiguration.Feature feat,
-            String term, FrequencyStats stats, Lazy<FrequencyStats> ref,
+            String term, FrequencyStats stats, Lazy<? extends ReferenceStats> ref,
             Lazy<InclusionStats> incl, Lazy<NovelTopicModel> topicModel,
             Lazy<DomainStats> domain, TemporalFrequencyStats tempStats,
             SaffronListener log) throws IntervalTooLong {
@@ -58,10 +58,10 @@ public class Features {
 
     private static double EPS = 0.1;
 
-    public static double weirdness(String term, FrequencyStats stats, FrequencyStats ref) {
+    public static double weirdness(String term, FrequencyStats stats, ReferenceStats ref) {
         int i = stats.termFrequency.getInt(term);
-        int j = ref.termFrequency.getInt(term);
-        return ((double) i + EPS) * (ref.tokens + EPS) / ((double) j + EPS) / (stats.tokens + EPS);
+        int j = ref.termFrequency(term);
+        return ((double) i + EPS) * (ref.tokenCount() + EPS) / ((double) j + EPS) / (stats.tokens + EPS);
     }
 
     public static double termFreq(String term, FrequencyStats stats) {
@@ -140,10 +140,10 @@ public class Features {
     }
 
     
-    public static double relevance(String term, FrequencyStats freq, FrequencyStats ref) {
+    public static double relevance(String term, FrequencyStats freq, ReferenceStats ref) {
         double ntf1 = ((double) freq.termFrequency.getInt(term) + EPS) / (freq.tokens + EPS);
         double df = (double) freq.docFrequency.getInt(term) / freq.documents;
-        double ntf2 = ((double) ref.termFrequency.getInt(term) + EPS) / (ref.tokens + EPS);
+        double ntf2 = ((double) ref.termFrequency(term) + EPS) / (ref.tokenCount() + EPS);
 
         return 1.0 - 1.0 / (log2(2.0 + ntf1 * df / ntf2));
     }
@@ -11,7 +11,7 @@ import java.util.Objects;
  * documents
  * @author John McCrae &lt;john@mccr.ae&gt;
  */
-public class FrequencyStats {
+public class FrequencyStats implements ReferenceStats {
     public Object2IntOpenHashMap<String> termFrequency = new Object2IntOpenHashMap<>();
     public Object2IntOpenHashMap<String> docFrequency = new Object2IntOpenHashMap<>();
     public long tokens = 0;
@@ -23,10 +23,10 @@ public class FrequencyStats {
      */
     public void add(FrequencyStats other) {
         for(Object2IntMap.Entry<String> tf2 : other.termFrequency.object2IntEntrySet()) {
-            termFrequency.put(tf2.getKey(), termFrequency.getInt(tf2.getKey()) + tf2.getIntValue());
+            termFrequency.addTo(tf2.getKey(), tf2.getIntValue());
         }
         for(Object2IntMap.Entry<String> tf2 : other.docFrequency.object2IntEntrySet()) {
-            docFrequency.put(tf2.getKey(), docFrequency.getInt(tf2.getKey()) + tf2.getIntValue());
+            docFrequency.addTo(tf2.getKey(), tf2.getIntValue());
         }
         tokens += other.tokens;
         documents += other.documents;
@@ -64,6 +64,26 @@ public class FrequencyStats {
         }
     }
 
+    @Override
+    public int termFrequency(String term) {
+        return termFrequency.getInt(term);
+    }
+
+    @Override
+    public int docFrequency(String term) {
+        return docFrequency.getInt(term);
+    }
+
+    @Override
+    public long tokenCount() {
+        return tokens;
+    }
+
+    @Override
+    public long documentCount() {
+        return documents;
+    }
+
     @Override
     public int hashCode() {
         int hash = 3;
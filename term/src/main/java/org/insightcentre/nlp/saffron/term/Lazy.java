@@ -1,18 +1,26 @@
 package org.insightcentre.nlp.saffron.term;
 
 /**
- * A lazy loaded variable 
+ * A lazy loaded variable. The value is initialized at most once (unless it
+ * is initialized to null), even if it is requested by several threads.
  * @author John McCrae
  */
 public abstract class Lazy<X> {
 
-    private X x;
+    private volatile X x;
 
     public X get() {
-        if (x == null) {
-            x = init();
+        X value = x;
+        if (value == null) {
+            synchronized (this) {
+                value = x;
+                if (value == null) {
+                    value = init();
+                    x = value;
+                }
+            }
         }
-        return x;
+        return value;
     }
 
     protected abstract X init();
@@ -0,0 +1,303 @@
+package org.insightcentre.nlp.saffron.term;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A reference corpus in a compact binary format, which is memory mapped so
+ * that opening it takes constant time and the frequencies are read off-heap.
+ *
+ * The file consists of a header (magic number, version, number of tokens and
+ * documents, number of terms, size of the hash table and size of the string
+ * data), an open-addressed hash table of term indexes, the hash code, term
+ * frequency and document frequency of each term, the offsets of the terms in
+ * the string data and finally the terms in UTF-8. All values are big-endian.
+ * As the file is mapped as a single buffer it may not be larger than 2GB.
+ *
+ * A file is created from a {@link FrequencyStats} with
+ * {@link #write(FrequencyStats, File)}. Instances are thread-safe.
+ *
+ * @author John McCrae
+ */
+public class MappedReferenceStats implements ReferenceStats {
+
+    private static final int MAGIC = 0x53465246; // "SFRF"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 36;
+
+    private final long tokens;
+    private final long documents;
+    private final int size;
+    private final int mask;
+    private final IntBuffer table;
+    private final IntBuffer hashes;
+    private final IntBuffer termFrequencies;
+    private final IntBuffer docFrequencies;
+    private final IntBuffer offsets;
+    private final ByteBuffer strings;
+
+    private MappedReferenceStats(ByteBuffer buf) throws IOException {
+        if (buf.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary reference corpus");
+        }
+        if (buf.getInt(4) != VERSION) {
+            throw new IOException("Unsupported reference corpus version " + buf.getInt(4));
+        }
+        this.tokens = buf.getLong(8);
+        this.documents = buf.getLong(16);
+        this.size = buf.getInt(24);
+        final int tableSize = buf.getInt(28);
+        final int stringBytes = buf.getInt(32);
+        this.mask = tableSize - 1;
+        int pos = HEADER_SIZE;
+        this.table = slice(buf, pos, tableSize * 4).asIntBuffer();
+        pos += tableSize * 4;
+        this.hashes = slice(buf, pos, size * 4).asIntBuffer();
+        pos += size * 4;
+        this.termFrequencies = slice(buf, pos, size * 4).asIntBuffer();
+        pos += size * 4;
+        this.docFrequencies = slice(buf, pos, size * 4).asIntBuffer();
+        pos += size * 4;
+        this.offsets = slice(buf, pos, (size + 1) * 4).asIntBuffer();
+        pos += (size + 1) * 4;
+        this.strings = slice(buf, pos, stringBytes);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buf, int pos, int length) {
+        final ByteBuffer b = buf.duplicate();
+        b.position(pos);
+        b.limit(pos + length);
+        return b.slice();
+    }
+
+    /**
+     * Open a binary reference corpus. The file is mapped and not read.
+     *
+     * @param file The file written by {@link #write(FrequencyStats, File)}
+     * @return The reference statistics
+     * @throws IOException If the file could not be mapped or is not in the
+     * right format
+     */
+    public static MappedReferenceStats open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            // The mapping remains valid after the channel is closed
+            final MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedReferenceStats(buf);
+        }
+    }
+
+    /* Spread the bits of the hash code as strings often differ only at the end */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Write frequency statistics as a binary reference corpus
+     *
+     * @param stats The statistics
+     * @param file The file to write to
+     * @throws IOException If the file could not be written or the statistics
+     * are too large
+     */
+    public static void write(FrequencyStats stats, File file) throws IOException {
+        final List<String> terms = new ArrayList<>(stats.termFrequency.keySet());
+        for (String term : stats.docFrequency.keySet()) {
+            if (!stats.termFrequency.containsKey(term)) {
+                terms.add(term);
+            }
+        }
+        final int n = terms.size();
+        int tableSize = 2;
+        while (tableSize < 2 * n) {
+            tableSize *= 2;
+        }
+        final int[] table = new int[tableSize];
+        Arrays.fill(table, -1);
+        final byte[][] bytes = new byte[n][];
+        long stringBytes = 0;
+        for (int i = 0; i < n; i++) {
+            final String term = terms.get(i);
+            int slot = mix(term.hashCode()) & (tableSize - 1);
+            while (table[slot] >= 0) {
+                slot = (slot + 1) & (tableSize - 1);
+            }
+            table[slot] = i;
+            bytes[i] = term.getBytes(StandardCharsets.UTF_8);
+            stringBytes += bytes[i].length;
+        }
+        final long total = HEADER_SIZE + 4L * tableSize + 4L * (4L * n + 1) + stringBytes;
+        if (total > Integer.MAX_VALUE) {
+            throw new IOException("Reference corpus is too large for the binary format");
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(stats.tokens);
+            out.writeLong(stats.documents);
+            out.writeInt(n);
+            out.writeInt(tableSize);
+            out.writeInt((int) stringBytes);
+            for (int slot : table) {
+                out.writeInt(slot);
+            }
+            for (String term : terms) {
+                out.writeInt(term.hashCode());
+            }
+            for (String term : terms) {
+                out.writeInt(stats.termFrequency.getInt(term));
+            }
+            for (String term : terms) {
+                out.writeInt(stats.docFrequency.getInt(term));
+            }
+            int offset = 0;
+            for (int i = 0; i < n; i++) {
+                out.writeInt(offset);
+                offset += bytes[i].length;
+            }
+            out.writeInt(offset);
+            for (byte[] b : bytes) {
+                out.write(b);
+            }
+        }
+    }
+
+    /**
+     * Find the index of a term
+     *
+     * @param term The term
+     * @return The index or -1 if the term is not in the corpus
+     */
+    private int indexOf(String term) {
+        final int h = term.hashCode();
+        int slot = mix(h) & mask;
+        while (true) {
+            final int i = table.get(slot);
+            if (i < 0) {
+                return -1;
+            }
+            if (hashes.get(i) == h && matches(term, offsets.get(i), offsets.get(i + 1))) {
+                return i;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Compare a string with the UTF-8 bytes of a term without decoding them
+     */
+    private boolean matches(String term, int start, int end) {
+        int p = start;
+        final int n = term.length();
+        for (int i = 0; i < n; i++) {
+            int c = term.charAt(i);
+            if (Character.isHighSurrogate((char) c) && i + 1 < n
+                    && Character.isLowSurrogate(term.charAt(i + 1))) {
+                c = Character.toCodePoint((char) c, term.charAt(++i));
+            } else if (Character.isSurrogate((char) c)) {
+                // Unpaired surrogates are encoded as '?'
+                c = '?';
+            }
+            if (c < 0x80) {
+                if (p + 1 > end || strings.get(p++) != (byte) c) {
+                    return false;
+                }
+            } else if (c < 0x800) {
+                if (p + 2 > end
+                        || strings.get(p++) != (byte) (0xc0 | (c >> 6))
+                        || strings.get(p++) != (byte) (0x80 | (c & 0x3f))) {
+                    return false;
+                }
+            } else if (c < 0x10000) {
+                if (p + 3 > end
+                        || strings.get(p++) != (byte) (0xe0 | (c >> 12))
+                        || strings.get(p++) != (byte) (0x80 | ((c >> 6) & 0x3f))
+                        || strings.get(p++) != (byte) (0x80 | (c & 0x3f))) {
+                    return false;
+                }
+            } else {
+                if (p + 4 > end
+                        || strings.get(p++) != (byte) (0xf0 | (c >> 18))
+                        || strings.get(p++) != (byte) (0x80 | ((c >> 12) & 0x3f))
+                        || strings.get(p++) != (byte) (0x80 | ((c >> 6) & 0x3f))
+                        || strings.get(p++) != (byte) (0x80 | (c & 0x3f))) {
+                    return false;
+                }
+            }
+        }
+        return p == end;
+    }
+
+    @Override
+    public int termFrequency(String term) {
+        final int i = indexOf(term);
+        return i < 0 ? 0 : termFrequencies.get(i);
+    }
+
+    @Override
+    public int docFrequency(String term) {
+        final int i = indexOf(term);
+        return i < 0 ? 0 : docFrequencies.get(i);
+    }
+
+    @Override
+    public long tokenCount() {
+        return tokens;
+    }
+
+    @Override
+    public long documentCount() {
+        return documents;
+    }
+
+    /**
+     * The number of terms in the reference corpus
+     *
+     * @return The number of terms
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Read all the statistics into memory
+     *
+     * @return The frequency statistics
+     */
+    public FrequencyStats toFrequencyStats() {
+        final FrequencyStats stats = new FrequencyStats();
+        final byte[] b = new byte[strings.capacity()];
+        final ByteBuffer s = strings.duplicate();
+        s.get(b);
+        for (int i = 0; i < size; i++) {
+            final int start = offsets.get(i);
+            final String term = new String(b, start, offsets.get(i + 1) - start, StandardCharsets.UTF_8);
+            if (termFrequencies.get(i) != 0) {
+                stats.termFrequency.put(term, termFrequencies.get(i));
+            }
+            if (docFrequencies.get(i) != 0) {
+                stats.docFrequency.put(term, docFrequencies.get(i));
+            }
+        }
+        stats.tokens = tokens;
+        stats.documents = documents;
+        return stats;
+    }
+}
@@ -0,0 +1,78 @@
+package org.insightcentre.nlp.saffron.term;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.insightcentre.nlp.saffron.data.connections.DocumentTerm;
+
+/**
+ * The statistics of the documents of a run before they are filtered. These
+ * are all additive, so they are saved at the end of a run and the documents
+ * added in a later run are processed and merged into them, without processing
+ * the documents that have been seen already.
+ *
+ * @author John McCrae
+ */
+public class RawTermStats {
+
+    /** The unfiltered term and document frequencies */
+    public FrequencyStats frequencyStats = new FrequencyStats();
+    /** The casing counts */
+    public CasingStats casing = new CasingStats();
+    /** The unfiltered document-term links */
+    public ConcurrentLinkedQueue<DocumentTerm> docTerms = new ConcurrentLinkedQueue<>();
+    /** The co-occurrences of domain model terms and terms */
+    public RelationshipStats relationshipStats = new RelationshipStats();
+    /** The frequencies by period (or null if not used) */
+    public TemporalFrequencyStats temporalFrequencyStats;
+    /** The identifiers of the documents that have been processed */
+    public Set<String> documents = new HashSet<>();
+
+    /**
+     * Read the statistics from a file, which is unzipped if it ends in .gz
+     *
+     * @param file The file
+     * @return The statistics
+     * @throws IOException If the file could not be read
+     */
+    public static RawTermStats read(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        if (file.getName().endsWith(".gz")) {
+            in = new GZIPInputStream(in);
+        }
+        try {
+            return new ObjectMapper().readValue(in, RawTermStats.class);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write the statistics to a file, which is zipped if it ends in .gz
+     *
+     * @param file The file
+     * @throws IOException If the file could not be written
+     */
+    public void write(File file) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        if (file.getName().endsWith(".gz")) {
+            out = new GZIPOutputStream(out);
+        }
+        try {
+            new ObjectMapper().writeValue(out, this);
+        } finally {
+            out.close();
+        }
+    }
+}
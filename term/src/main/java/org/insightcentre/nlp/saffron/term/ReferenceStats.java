@@ -0,0 +1,40 @@
+package org.insightcentre.nlp.saffron.term;
+
+/**
+ * The frequencies of terms in a reference (background) corpus, as used by the
+ * weirdness and relevance features.
+ *
+ * @author John McCrae
+ */
+public interface ReferenceStats {
+
+    /**
+     * The number of times a term occurs in the reference corpus
+     *
+     * @param term The term
+     * @return The frequency (or 0 if the term does not occur)
+     */
+    int termFrequency(String term);
+
+    /**
+     * The number of documents a term occurs in
+     *
+     * @param term The term
+     * @return The document frequency (or 0 if the term does not occur)
+     */
+    int docFrequency(String term);
+
+    /**
+     * The total number of tokens in the reference corpus
+     *
+     * @return The number of tokens
+     */
+    long tokenCount();
+
+    /**
+     * The number of documents in the reference corpus
+     *
+     * @return The number of documents
+     */
+    long documentCount();
+}
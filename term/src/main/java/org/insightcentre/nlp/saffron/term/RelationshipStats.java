@@ -8,6 +8,9 @@ import java.util.Map.Entry;
 
 import org.insightcentre.nlp.saffron.term.domain.DomainModelTermRelation;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 
 /**
@@ -18,6 +21,7 @@ import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
  */
 public class RelationshipStats {
 
+	@JsonProperty("counts")
 	private Map<String, Object2IntOpenHashMap<String>> relations;
 	
 	public RelationshipStats() {
@@ -48,6 +52,7 @@ public class RelationshipStats {
 		this.relations.put(source, targets);
 	}
 	
+	@JsonIgnore
 	public List<DomainModelTermRelation> getRelations() {
 		List<DomainModelTermRelation> dmTermPairs = new ArrayList<DomainModelTermRelation>();
 		for(String source: this.relations.keySet()) {
@@ -79,6 +84,7 @@ public class RelationshipStats {
 		return dmTermPairs;
 	}
 
+	@JsonIgnore
 	public boolean isEmpty() {
 		return this.relations.isEmpty();
 	}
@@ -0,0 +1,101 @@
+package org.insightcentre.nlp.saffron.term;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Statistics that are collected separately by each worker thread, so that the
+ * threads do not contend for a lock on a shared summary. At the end, the
+ * shards are combined pairwise in parallel.
+ *
+ * @author John McCrae
+ */
+public class ShardedStats {
+
+    private final ConcurrentHashMap<Thread, Shard> shards = new ConcurrentHashMap<>();
+
+    /**
+     * The statistics collected by one thread
+     */
+    public static class Shard {
+
+        public final FrequencyStats frequency = new FrequencyStats();
+        public final CasingStats casing = new CasingStats();
+        public final RelationshipStats relations = new RelationshipStats();
+
+        void add(Shard other) {
+            frequency.add(other.frequency);
+            casing.add(other.casing);
+            relations.add(other.relations);
+        }
+    }
+
+    /**
+     * Get the shard of the current thread. The shard must only be used by
+     * this thread until the shards are combined.
+     *
+     * @return The shard
+     */
+    public Shard local() {
+        return shards.computeIfAbsent(Thread.currentThread(), t -> new Shard());
+    }
+
+    /**
+     * Combine all the shards and add them to the summary statistics. This
+     * should only be called after all the workers have finished.
+     *
+     * @param summary The frequency statistics to add to
+     * @param casing The casing statistics to add to (or null)
+     * @param relations The relationship statistics to add to (or null)
+     */
+    public void addTo(FrequencyStats summary, CasingStats casing, RelationshipStats relations) {
+        final List<Shard> s = new ArrayList<>(shards.values());
+        shards.clear();
+        if (s.isEmpty()) {
+            return;
+        }
+        final Shard total = ForkJoinPool.commonPool().invoke(new Reduce(s, 0, s.size()));
+        summary.add(total.frequency);
+        if (casing != null) {
+            casing.add(total.casing);
+        }
+        if (relations != null) {
+            relations.add(total.relations);
+        }
+    }
+
+    private static class Reduce extends RecursiveTask<Shard> {
+
+        private final List<Shard> shards;
+        private final int from, to;
+
+        Reduce(List<Shard> shards, int from, int to) {
+            this.shards = shards;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Shard compute() {
+            if (to - from == 1) {
+                return shards.get(from);
+            }
+            final int mid = (from + to) / 2;
+            final Reduce left = new Reduce(shards, from, mid);
+            left.fork();
+            final Shard right = new Reduce(shards, mid, to).compute();
+            final Shard l = left.join();
+            // Add the smaller shard to the larger
+            if (l.frequency.termFrequency.size() >= right.frequency.termFrequency.size()) {
+                l.add(right);
+                return l;
+            } else {
+                right.add(l);
+                return right;
+            }
+        }
+    }
+}
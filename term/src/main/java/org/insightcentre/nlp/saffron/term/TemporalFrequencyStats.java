@@ -3,9 +3,12 @@ package org.insightcentre.nlp.saffron.term;
 
 import static java.lang.Math.max;
 import static java.lang.Math.min;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Date;
@@ -30,6 +33,33 @@ public class TemporalFrequencyStats {
     public TemporalFrequencyStats(Duration interval) {
         this.interval = interval;
     }
+
+    /**
+     * Create the statistics from their serialized form
+     *
+     * @param interval The length of each period in seconds
+     * @param start The start of the first period in seconds since the epoch
+     * (UTC) or null if there are no periods
+     * @param freqs The statistics of each period
+     */
+    @JsonCreator
+    public TemporalFrequencyStats(@JsonProperty("interval") long interval,
+            @JsonProperty("start") Long start,
+            @JsonProperty("freqs") List<FrequencyStats> freqs) {
+        this.interval = Duration.ofSeconds(interval);
+        this.start = start == null ? null : LocalDateTime.ofEpochSecond(start, 0, ZoneOffset.UTC);
+        this.freqs = freqs == null ? new ArrayList<FrequencyStats>() : freqs;
+    }
+
+    @JsonProperty("interval")
+    private long intervalSeconds() {
+        return interval.getSeconds();
+    }
+
+    @JsonProperty("start")
+    private Long startSeconds() {
+        return start == null ? null : start.toEpochSecond(ZoneOffset.UTC);
+    }
     
     private long divCeil(long x, long y) {
         if(x % y == 0) {
@@ -62,6 +92,23 @@ public class TemporalFrequencyStats {
         }
     }
     
+    /**
+     * Combine a second set of temporal statistics into this one. The periods
+     * of the other statistics are added by their start time.
+     *
+     * @param other The other statistics
+     */
+    public void add(TemporalFrequencyStats other) {
+        if (other.start == null) {
+            return;
+        }
+        for (int i = 0; i < other.freqs.size(); i++) {
+            final FrequencyStats copy = new FrequencyStats();
+            copy.add(other.freqs.get(i));
+            add(copy, other.start.plusSeconds(i * other.interval.getSeconds()));
+        }
+    }
+
     /**
      * Predict the corpus probability for a future term frequency
      * @param word The word to predict for
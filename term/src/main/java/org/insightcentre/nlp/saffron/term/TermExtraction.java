@@ -9,7 +9,6 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -19,8 +18,11 @@ import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.GZIPInputStream;
 
 import org.insightcentre.nlp.saffron.DefaultSaffronListener;
@@ -35,12 +37,17 @@ import org.insightcentre.nlp.saffron.data.SaffronPath;
 import org.insightcentre.nlp.saffron.data.Status;
 import org.insightcentre.nlp.saffron.data.Term;
 import org.insightcentre.nlp.saffron.data.connections.DocumentTerm;
+import org.insightcentre.nlp.saffron.data.connections.DocumentTermTable;
 import org.insightcentre.nlp.saffron.term.domain.DomainModelTermRelation;
 import org.insightcentre.nlp.saffron.term.domain.DomainStats;
 import org.insightcentre.nlp.saffron.term.lda.NovelTopicModel;
+import org.insightcentre.nlp.saffron.util.StringDictionary;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
 import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
 import joptsimple.OptionParser;
@@ -186,7 +193,7 @@ public class TermExtraction {
             this.lemmatizer = new ThreadLocal<Lemmatizer>() {
                 @Override
                 protected Lemmatizer initialValue() {
-                    return dictLemmatizer;
+                    return new CachingLemmatizer(dictLemmatizer);
                 }
             };
         }
@@ -242,6 +249,44 @@ public class TermExtraction {
             ConcurrentLinkedQueue<DocumentTerm> docTerms,
             CasingStats casing, Set<String> blackList)
             throws InterruptedException, ExecutionException {
+        return extractStats(searcher, docTerms, casing, blackList, null);
+    }
+
+    /**
+     * Extract the frequency statistics of a corpus
+     *
+     * @param searcher The corpus
+     * @param docTerms The queue to add the document-term links to (or null)
+     * @param casing The casing statistics to update (or null)
+     * @param blackList The terms to exclude
+     * @param annotations If not null, the tokens and tags are read from this
+     * corpus if it is sealed, otherwise they are written to it and it is
+     * sealed at the end
+     * @return The statistics
+     * @throws InterruptedException
+     * @throws ExecutionException
+     */
+    public ExtractStatsResult extractStats(Corpus searcher,
+            ConcurrentLinkedQueue<DocumentTerm> docTerms,
+            CasingStats casing, Set<String> blackList, AnnotatedCorpus annotations)
+            throws InterruptedException, ExecutionException {
+        final ExtractStatsResult esr = extractRawStats(searcher, docTerms, casing, blackList, annotations, null);
+        esr.frequencyStats.filterByTermFrequency(minTermFreq);
+        esr.frequencyStats.filterByDocFrequency(minDocFreq);
+        return esr;
+    }
+
+    /**
+     * Extract the frequency statistics of a corpus without filtering them
+     *
+     * @param seen The identifiers of the documents that are not processed. If
+     * not null, the identifiers of the processed documents are added to it.
+     */
+    private ExtractStatsResult extractRawStats(Corpus searcher,
+            ConcurrentLinkedQueue<DocumentTerm> docTerms,
+            CasingStats casing, Set<String> blackList, AnnotatedCorpus annotations,
+            Set<String> seen)
+            throws InterruptedException, ExecutionException {
         ExecutorService service = new ThreadPoolExecutor(nThreads, nThreads, 0,
                 TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(1000),
                 new ThreadPoolExecutor.CallerRunsPolicy());
@@ -253,13 +298,24 @@ public class TermExtraction {
             temporalFrequencyStats = null;
         }
         final RelationshipStats relationshipStats = new RelationshipStats();
+        // Each worker counts into its own shard and these are combined at the end
+        final ShardedStats shards = new ShardedStats();
+
+        final Set<String> blackListLc = lowercaseAll(blackList);
+        // The domain model is matched by a single automaton shared by all documents
+        final TokenAutomaton dmAutomaton = domainModel.isEmpty() ? null
+                : TokenAutomaton.fromTerms(domainModel, tokenizer.get());
 
         int docCount = 0;
         for (Document doc : searcher.getDocuments()) {
+            if (seen != null && !seen.add(doc.id)) {
+                continue;
+            }
             service.submit(new TermExtractionTask(doc, tagger, lemmatizer, tokenizer,
                     stopWords, ngramMin, ngramMax, preceedingsTokens, middleTokens, endTokens,
                     headTokenFinal,
-                    summary, docTerms, casing, lowercaseAll(blackList), temporalFrequencyStats, this.domainModel, relationshipStats));
+                    summary, docTerms, casing, blackListLc, temporalFrequencyStats, dmAutomaton, relationshipStats,
+                    annotations, shards));
             if (docCount++ > maxDocs) {
                 break;
             }
@@ -267,60 +323,225 @@ public class TermExtraction {
 
         service.shutdown();
         service.awaitTermination(2, TimeUnit.DAYS);
-        summary.filterByTermFrequency(minTermFreq);
-       	summary.filterByDocFrequency(minDocFreq);
+        shards.addTo(summary, casing, relationshipStats);
+        if (annotations != null) {
+            try {
+                annotations.seal();
+            } catch (IOException x) {
+                throw new ExecutionException(x);
+            }
+        }
         return new ExtractStatsResult(summary, temporalFrequencyStats, relationshipStats);
     }
 
-    private Object2DoubleMap<String> scoreByFeat(List<String> terms, final TermExtractionConfiguration.Feature feature,
-            final FrequencyStats stats, final Lazy<FrequencyStats> ref,
+    /**
+     * Calculate the score of every term for several features in a single
+     * sweep. The score of a term depends only on the term, so the terms are
+     * divided between nThreads threads.
+     *
+     * @return The scores, such that scores[f][i] is the score of feature f
+     * for the i-th term
+     */
+    double[][] scoreByFeats(List<String> terms, final List<Feature> feats,
+            final FrequencyStats stats, final Lazy<ReferenceStats> ref,
             final Lazy<InclusionStats> incl, final Lazy<NovelTopicModel> ntm,
             final Lazy<DomainStats> domain, final Set<String> whiteList,
             final TemporalFrequencyStats tempStats,
-            SaffronListener log) throws IntervalTooLong {
-        final Object2DoubleMap<String> scores = new Object2DoubleOpenHashMap<>();
-        for (String term : terms) {
-            if (whiteList.contains(term)) {
-                scores.put(term, Double.POSITIVE_INFINITY);
-            } else {
-                scores.put(term,
-                        Features.calcFeature(feature, term, stats, ref, incl, ntm, domain, tempStats, log));
+            final SaffronListener log) throws IntervalTooLong {
+        final String[] ts = terms.toArray(new String[terms.size()]);
+        final Feature[] fs = feats.toArray(new Feature[feats.size()]);
+        final double[][] scores = new double[fs.length][ts.length];
+        final AtomicReference<IntervalTooLong> failure = new AtomicReference<>();
+        class ScoreTask extends RecursiveAction {
+
+            private final int from, to;
+
+            ScoreTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > 512) {
+                    final int mid = (from + to) >>> 1;
+                    invokeAll(new ScoreTask(from, mid), new ScoreTask(mid, to));
+                    return;
+                }
+                for (int i = from; i < to && failure.get() == null; i++) {
+                    final boolean white = whiteList.contains(ts[i]);
+                    for (int f = 0; f < fs.length; f++) {
+                        if (white) {
+                            scores[f][i] = Double.POSITIVE_INFINITY;
+                        } else {
+                            try {
+                                scores[f][i] = Features.calcFeature(fs[f], ts[i], stats, ref, incl, ntm, domain, tempStats, log);
+                            } catch (IntervalTooLong x) {
+                                failure.compareAndSet(null, x);
+                                return;
+                            }
+                        }
+                    }
+                }
             }
         }
+        final ForkJoinPool pool = new ForkJoinPool(Math.max(1, nThreads));
+        try {
+            pool.invoke(new ScoreTask(0, ts.length));
+        } finally {
+            pool.shutdown();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
         return scores;
+    }
 
+    /**
+     * The group of each term in the ranking: white-listed terms come first,
+     * then the proper terms and then the rest. This is calculated once per
+     * term as checking if a term is proper is expensive.
+     *
+     * @param terms The terms
+     * @param whiteList The white-listed terms
+     * @return The group (0, 1 or 2) of each term
+     */
+    private byte[] rankGroups(List<String> terms, Set<String> whiteList) {
+        final byte[] group = new byte[terms.size()];
+        for (int i = 0; i < group.length; i++) {
+            final String term = terms.get(i);
+            group[i] = whiteList.contains(term) ? (byte) 0
+                    : isProperTerm(term, stopWords) ? (byte) 1 : (byte) 2;
+        }
+        return group;
     }
 
-    private void rankTermsByFeat(List<String> terms, final Object2DoubleMap<String> scores,
-            Set<String> whiteList, Set<String> blackList) {
-        terms.removeIf((String t) -> blackList.contains(t));
+    /**
+     * Combine the rankings by several features by voting: each term gets
+     * 1/r votes for each feature by which it is ranked r-th. The ranking by
+     * each feature is a stable sort of the ranking by the previous feature.
+     *
+     * @param group The rank group of each term
+     * @param scores The score columns of each feature
+     * @param order The initial order of the terms, which is replaced by the
+     * ranking by the last feature
+     * @return The votes of each term
+     */
+    static double[] vote(final byte[] group, double[][] scores, int[] order) {
+        final int n = group.length;
+        final double[] votes = new double[n];
+        for (final double[] column : scores) {
+            IntArrays.mergeSort(order, new AbstractIntComparator() {
+                @Override
+                public int compare(int i, int j) {
+                    if (group[i] != group[j]) {
+                        return group[i] < group[j] ? -1 : +1;
+                    }
+                    return -Double.compare(column[i], column[j]);
+                }
+            });
+            for (int r = 0; r < n; r++) {
+                votes[order[r]] += 1.0 / (r + 1);
+            }
+        }
+        return votes;
+    }
 
-        terms.sort(new Comparator<String>() {
+    /**
+     * Rank the terms by their group and then by descending score, keeping
+     * only the top k. This gives the same terms in the same order as a stable
+     * sort of the initial order followed by taking the first k, but only the
+     * top k are sorted.
+     *
+     * @param group The rank group of each term
+     * @param scores The score of each term
+     * @param order The initial order of the terms
+     * @param k The number of terms to return
+     * @return The indexes of the top k terms in rank order
+     */
+    static int[] rankTop(final byte[] group, final double[] scores, int[] order, int k) {
+        final int n = order.length;
+        // Ties are broken by the position in the initial order
+        final int[] pos = new int[n];
+        for (int r = 0; r < n; r++) {
+            pos[order[r]] = r;
+        }
+        final AbstractIntComparator comparator = new AbstractIntComparator() {
             @Override
-            public int compare(String o1, String o2) {
-                if (whiteList.contains(o1)) {
-                    if (whiteList.contains(o2)) {
-                        return -Double.compare(scores.getDouble(o1), scores.getDouble(o2));
-                    } else {
-                        return -1;
+            public int compare(int i, int j) {
+                if (group[i] != group[j]) {
+                    return group[i] < group[j] ? -1 : +1;
+                }
+                final int c = Double.compare(scores[j], scores[i]);
+                return c != 0 ? c : Integer.compare(pos[i], pos[j]);
+            }
+        };
+        if (k >= n) {
+            final int[] ranked = Arrays.copyOf(order, n);
+            IntArrays.quickSort(ranked, comparator);
+            return ranked;
+        }
+        // A heap of the best k terms seen so far, with the worst at the top
+        final int[] heap = new int[k];
+        int size = 0;
+        for (int r = 0; r < n && k > 0; r++) {
+            final int i = order[r];
+            if (size < k) {
+                int c = size++;
+                while (c > 0 && comparator.compare(heap[(c - 1) / 2], i) < 0) {
+                    heap[c] = heap[(c - 1) / 2];
+                    c = (c - 1) / 2;
+                }
+                heap[c] = i;
+            } else if (comparator.compare(i, heap[0]) < 0) {
+                int c = 0;
+                while (true) {
+                    int child = 2 * c + 1;
+                    if (child >= k) {
+                        break;
                     }
-                } else {
-                    if (whiteList.contains(o2)) {
-                        return +1;
-                    } else {
-                        boolean proper1 = isProperTerm(o1, stopWords);
-                        boolean proper2 = isProperTerm(o2, stopWords);
-                        if (proper1 == proper2) {
-                            return -Double.compare(scores.getDouble(o1), scores.getDouble(o2));
-                        } else if (proper1) {
-                            return -1;
-                        } else {
-                            return +1;
-                        }
+                    if (child + 1 < k && comparator.compare(heap[child + 1], heap[child]) > 0) {
+                        child++;
+                    }
+                    if (comparator.compare(heap[child], i) <= 0) {
+                        break;
                     }
+                    heap[c] = heap[child];
+                    c = child;
                 }
+                heap[c] = i;
             }
-        });
+        }
+        IntArrays.quickSort(heap, 0, size, comparator);
+        return size == k ? heap : Arrays.copyOf(heap, size);
+    }
+
+    /**
+     * Select the terms to output from the ranked scores
+     *
+     * @param terms The (non-blacklisted) candidate terms
+     * @param group The rank group of each term
+     * @param scores The final score of each term
+     * @param order The initial order of the terms
+     * @param dts The document-term links (used for one term per document)
+     * @param selectedScores Filled with the scores of the selected terms
+     * @return The selected terms in rank order
+     */
+    private List<String> selectTerms(List<String> terms, byte[] group, double[] scores,
+            int[] order, ConcurrentLinkedQueue<DocumentTerm> dts,
+            Object2DoubleMap<String> selectedScores) {
+        // One term per document needs the ranking of all the terms
+        final int k = oneTermPerDoc ? terms.size() : maxTerms;
+        final int[] top = rankTop(group, scores, order, k);
+        List<String> ranked = new ArrayList<>(top.length);
+        for (int i : top) {
+            ranked.add(terms.get(i));
+            selectedScores.put(terms.get(i), scores[i]);
+        }
+        if (oneTermPerDoc && ranked.size() > maxTerms) {
+            ranked = getTopTerms(ranked, maxTerms, dts);
+        }
+        return ranked;
     }
 
     public Result extractTerms(final Corpus searcher) {
@@ -333,20 +554,137 @@ public class TermExtraction {
     }
 
     public Result extractTerms(final Corpus searcher, final Set<String> whiteList, final Set<String> blackList, SaffronListener log) {
+        if (!usesCorpusFeatures()) {
+            return extractTerms(searcher, whiteList, blackList, log, null);
+        }
+        // The topic model and domain statistics take another pass over the
+        // corpus, so keep the annotations of the first pass
+        try (AnnotatedCorpus annotations = AnnotatedCorpus.create()) {
+            return extractTerms(searcher, whiteList, blackList, log, annotations);
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    private boolean usesCorpusFeatures() {
+        final List<Feature> feats = method == TermExtractionConfiguration.WeightingMethod.one
+                ? Collections.singletonList(keyFeature) : features;
+        return feats.contains(Feature.novelTopicModel) || feats.contains(Feature.postRankDC);
+    }
+
+    /**
+     * Extract terms from a corpus
+     *
+     * @param searcher The corpus
+     * @param whiteList The terms that must be included
+     * @param blackList The terms that must be excluded
+     * @param log The listener
+     * @param annotations The tokenized and tagged corpus, which is shared by
+     * all passes over the corpus. If it is not sealed, it is written by the
+     * first pass. May be null, in which case every pass runs the tokenizer
+     * and tagger.
+     * @return The extracted terms
+     */
+    public Result extractTerms(final Corpus searcher, final Set<String> whiteList, final Set<String> blackList, SaffronListener log,
+            final AnnotatedCorpus annotations) {
         blackList.addAll(configBlacklist);
         try {
             final ConcurrentLinkedQueue<DocumentTerm> dts = new ConcurrentLinkedQueue<>();
             final CasingStats casing = new CasingStats();
-            final ExtractStatsResult esr = extractStats(searcher, dts, casing, blackList);
-            final FrequencyStats freqs = esr.frequencyStats;
-            final TemporalFrequencyStats tfs = esr.temporalFrequencyStats;
-            final RelationshipStats relStats = esr.relationshipStats;
-            Lazy<FrequencyStats> ref = new Lazy<FrequencyStats>() {
+            final ExtractStatsResult esr = extractStats(searcher, dts, casing, blackList, annotations);
+            return scoreTerms(searcher, whiteList, blackList, log, annotations, esr.frequencyStats,
+                    esr.temporalFrequencyStats, esr.relationshipStats, casing, dts);
+        } catch (ExecutionException | InterruptedException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    /**
+     * Extract terms from the documents of a corpus that have not been
+     * processed yet, combined with the statistics of the documents that have.
+     * Only the new documents are tokenized and tagged, and the statistics are
+     * then filtered and the terms scored as for a whole corpus. Features that
+     * need another pass over the corpus (such as the topic model) still read
+     * all the documents of the corpus.
+     *
+     * @param searcher The corpus, which may contain only the new documents
+     * @param whiteList The terms that must be included
+     * @param blackList The terms that must be excluded
+     * @param log The listener
+     * @param raw The statistics of the processed documents, which are updated
+     * with the new documents
+     * @return The extracted terms
+     */
+    public Result extractTermsIncremental(final Corpus searcher, final Set<String> whiteList,
+            final Set<String> blackList, SaffronListener log, final RawTermStats raw) {
+        if (!usesCorpusFeatures()) {
+            return extractTermsIncremental(searcher, whiteList, blackList, log, raw, null);
+        }
+        try (AnnotatedCorpus annotations = AnnotatedCorpus.create()) {
+            return extractTermsIncremental(searcher, whiteList, blackList, log, raw, annotations);
+        } catch (IOException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    /**
+     * Extract terms from the documents of a corpus that have not been
+     * processed yet
+     *
+     * @param searcher The corpus, which may contain only the new documents
+     * @param whiteList The terms that must be included
+     * @param blackList The terms that must be excluded
+     * @param log The listener
+     * @param raw The statistics of the processed documents, which are updated
+     * with the new documents
+     * @param annotations The tokenized and tagged corpus (may be null)
+     * @return The extracted terms
+     * @see #extractTermsIncremental(Corpus, Set, Set, SaffronListener, RawTermStats)
+     */
+    public Result extractTermsIncremental(final Corpus searcher, final Set<String> whiteList,
+            final Set<String> blackList, SaffronListener log, final RawTermStats raw,
+            final AnnotatedCorpus annotations) {
+        blackList.addAll(configBlacklist);
+        try {
+            final ExtractStatsResult delta = extractRawStats(searcher, raw.docTerms, raw.casing, blackList,
+                    annotations, raw.documents);
+            raw.frequencyStats.add(delta.frequencyStats);
+            raw.relationshipStats.add(delta.relationshipStats);
+            if (delta.temporalFrequencyStats != null) {
+                if (raw.temporalFrequencyStats == null) {
+                    raw.temporalFrequencyStats = delta.temporalFrequencyStats;
+                } else {
+                    raw.temporalFrequencyStats.add(delta.temporalFrequencyStats);
+                }
+            }
+            // The raw statistics are kept for the next run, so a copy is filtered
+            final FrequencyStats freqs = new FrequencyStats();
+            freqs.add(raw.frequencyStats);
+            freqs.filterByTermFrequency(minTermFreq);
+            freqs.filterByDocFrequency(minDocFreq);
+            return scoreTerms(searcher, whiteList, blackList, log, annotations, freqs,
+                    raw.temporalFrequencyStats, raw.relationshipStats, raw.casing, raw.docTerms);
+        } catch (ExecutionException | InterruptedException x) {
+            throw new RuntimeException(x);
+        }
+    }
+
+    /**
+     * Score and select the terms given the statistics of a corpus
+     */
+    private Result scoreTerms(final Corpus searcher, final Set<String> whiteList, final Set<String> blackList,
+            SaffronListener log, final AnnotatedCorpus annotations, final FrequencyStats freqs,
+            final TemporalFrequencyStats tfs, final RelationshipStats relStats, final CasingStats casing,
+            final ConcurrentLinkedQueue<DocumentTerm> dts) {
+        try {
+            Lazy<ReferenceStats> ref = new Lazy<ReferenceStats>() {
                 @Override
-                protected FrequencyStats init() {
+                protected ReferenceStats init() {
                     ObjectMapper mapper = new ObjectMapper();
                     try {
-                        if (refFile.getName().endsWith("json.gz")) {
+                        if (refFile.getName().endsWith(".bin")) {
+                            return MappedReferenceStats.open(refFile);
+                        } else if (refFile.getName().endsWith("json.gz")) {
                             return mapper.readValue(
                                     new GZIPInputStream(new FileInputStream(refFile)),
                                     FrequencyStats.class);
@@ -376,7 +714,8 @@ public class TermExtraction {
                 @Override
                 protected NovelTopicModel init() {
                     try {
-                        return NovelTopicModel.initialize(searcher, tokenizer);
+                        return NovelTopicModel.initialize(searcher, tokenizer, annotations,
+                                NovelTopicModel.Sampler.auto, nThreads);
                     } catch (IOException x) {
                         x.printStackTrace();
                         return null;
@@ -387,7 +726,7 @@ public class TermExtraction {
 
                 @Override
                 protected DomainStats init() {
-                    return DomainStats.initialize(searcher, nThreads, tokenizer, ngramMax, maxDocs, freqs, incl.get(), stopWords, tagger, preceedingsTokens, middleTokens, endTokens, headTokenFinal);
+                    return DomainStats.initialize(searcher, nThreads, tokenizer, ngramMax, maxDocs, freqs, incl.get(), stopWords, tagger, preceedingsTokens, middleTokens, endTokens, headTokenFinal, annotations);
                 }
             };
             List<String> terms = new ArrayList<>(freqs.docFrequency.keySet());
@@ -397,76 +736,66 @@ public class TermExtraction {
                 }
             }
             switch (method) {
-                case one:
-                    Object2DoubleMap<String> scores = scoreByFeat(terms, keyFeature,
-                            freqs, ref, incl, ntm, domain, whiteList, tfs, log);
-                    rankTermsByFeat(terms, scores, whiteList, blackList);
-                    if (terms.size() > maxTerms) {
-                        if (oneTermPerDoc) {
-                            terms = getTopTerms(terms, maxTerms, dts);
-                        } else {
-                            terms = terms.subList(0, maxTerms);
-                        }
-                    }
-                    return new Result(convertToTerms(terms, freqs, scores, casing, whiteList, stopWords),
+                case one: {
+                    terms.removeIf((String t) -> blackList.contains(t));
+                    final double[] scores = scoreByFeats(terms, Collections.singletonList(keyFeature),
+                            freqs, ref, incl, ntm, domain, whiteList, tfs, log)[0];
+                    final Object2DoubleMap<String> selectedScores = new Object2DoubleOpenHashMap<>();
+                    terms = selectTerms(terms, rankGroups(terms, whiteList), scores,
+                            identity(terms.size()), dts, selectedScores);
+                    return new Result(convertToTerms(terms, freqs, selectedScores, casing, whiteList, stopWords),
                             addTfIdf(filterTerms(terms, dts, casing, stopWords)), filterToTerms(relStats, terms));
-                case voting:
-                    Object2DoubleMap<String> voting = new Object2DoubleOpenHashMap<>();
-                    for (Feature feat : features) {
-                        Object2DoubleMap<String> scores2 = scoreByFeat(terms, feat,
-                                freqs, ref, incl, ntm, domain, whiteList, tfs, log);
-                        rankTermsByFeat(terms, scores2, whiteList, blackList);
-                        int i = 1;
-                        for (String term : terms) {
-                            voting.put(term, voting.getDouble(term) + 1.0 / i++);
-                        }
-                    }
-                    rankTermsByFeat(terms, voting, whiteList, blackList);
-                    if (terms.size() > maxTerms) {
-                        if (oneTermPerDoc) {
-                            terms = getTopTerms(terms, maxTerms, dts);
-                        } else {
-                            terms = terms.subList(0, maxTerms);
-                        }
-                    }
-                    return new Result(convertToTerms(terms, freqs, voting, casing, whiteList, stopWords),
+                }
+                case voting: {
+                    terms.removeIf((String t) -> blackList.contains(t));
+                    final byte[] group = rankGroups(terms, whiteList);
+                    final int[] order = identity(terms.size());
+                    final double[] votes = vote(group, scoreByFeats(terms, features,
+                            freqs, ref, incl, ntm, domain, whiteList, tfs, log), order);
+                    final Object2DoubleMap<String> selectedScores = new Object2DoubleOpenHashMap<>();
+                    terms = selectTerms(terms, group, votes, order, dts, selectedScores);
+                    return new Result(convertToTerms(terms, freqs, selectedScores, casing, whiteList, stopWords),
                             addTfIdf(filterTerms(terms, dts, casing, stopWords)), filterToTerms(relStats, terms));
+                }
                 default:
                     throw new UnsupportedOperationException("TODO");
             }
         } catch (IntervalTooLong x) {
             throw new RuntimeException("The intervalDays parameter is too big, please reduce it to allow future term frequency predictions.", x);
-        } catch (ExecutionException | InterruptedException x) {
-            throw new RuntimeException(x);
         }
     }
 
-	private static List<DocumentTerm> filterTerms(List<String> ts,
+	private static DocumentTermTable filterTerms(List<String> ts,
             ConcurrentLinkedQueue<DocumentTerm> dts,
             CasingStats casing, Set<String> stopWords) {
-        Set<String> ts2 = new HashSet<>(ts);
-        Set<DocumentTerm> rval = new HashSet<>();
+        final StringDictionary accepted = new StringDictionary();
+        for (String t : ts) {
+            accepted.id(t);
+        }
+        // The output uses the true-cased terms, so these are found once per term
+        final StringDictionary trueCased = new StringDictionary();
+        final int[] trueCaseIds = new int[accepted.size()];
+        for (int t = 0; t < trueCaseIds.length; t++) {
+            trueCaseIds[t] = trueCased.id(casing.trueCase(accepted.string(t)));
+        }
+        final DocumentTermTable table = new DocumentTermTable(new StringDictionary(), trueCased);
+        final LongOpenHashSet seen = new LongOpenHashSet();
         for (DocumentTerm dt : dts) {
-            if (ts2.contains(dt.getTermString())) { // && isProperTerm(dt.term_string, stopWords)) {
-                rval.add(new DocumentTerm(dt.getDocumentId(),
-                        casing.trueCase(dt.getTermString()),
-                        dt.getOccurrences(), dt.getPattern(), dt.getAcronym(), dt.getTfIdf()));
+            final int t = accepted.get(dt.getTermString());
+            if (t >= 0) { // && isProperTerm(dt.term_string, stopWords)) {
+                final int d = table.getDocuments().id(dt.getDocumentId());
+                if (seen.add((long) d << 32 | trueCaseIds[t])) {
+                    table.add(d, trueCaseIds[t], dt.getOccurrences(), dt.getPattern(),
+                            dt.getAcronym(), dt.getTfIdf());
+                }
             }
         }
-        return new ArrayList<DocumentTerm>(rval);
+        return table;
     }
 
-    private static List<DocumentTerm> addTfIdf(List<DocumentTerm> dts) {
-        Object2DoubleMap<String> df = new Object2DoubleOpenHashMap<>();
-        Set<String> docs = new HashSet<>();
-        for(DocumentTerm dt : dts) {
-            docs.add(dt.getDocumentId());
-            df.put(dt.getTermString(), df.getDouble(dt.getTermString()) + 1);
-        }
-        for(DocumentTerm dt : dts) {
-            dt.setTfIdf((double)dt.getOccurrences() * Math.log((double)docs.size() / df.getDouble(dt.getTermString())));
-        }
-        return dts;
+    private static List<DocumentTerm> addTfIdf(DocumentTermTable dts) {
+        dts.addTfidf();
+        return dts.toDocumentTerms();
     }
 
     private static boolean isProperTerm(String rootSequence, Set<String> stopWords) {
@@ -582,39 +911,53 @@ public class TermExtraction {
         return ss;
     }
 
-    private List<String> getTopTerms(List<String> terms, int maxTerms, ConcurrentLinkedQueue<DocumentTerm> dts) {
-        Set<String> docs = new HashSet<>();
-        Map<String, Set<String>> term2doc = new HashMap<>();
-        for (DocumentTerm dt : dts) {
-            docs.add(dt.getDocumentId());
-            if (!term2doc.containsKey(dt.getTermString())) {
-                term2doc.put(dt.getTermString(), new HashSet<>());
-            }
-            term2doc.get(dt.getTermString()).add(dt.getDocumentId());
+    private static int[] identity(int n) {
+        final int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
         }
+        return order;
+    }
+
+    private List<String> getTopTerms(List<String> terms, int maxTerms, ConcurrentLinkedQueue<DocumentTerm> dts) {
+        final DocumentTermTable table = DocumentTermTable.fromDocumentTerms(dts);
+        final int[][] term2doc = table.documentsByTerm();
+        final int[] offsets = term2doc[0], docs = term2doc[1];
+        // The documents that do not yet have an accepted term
+        final boolean[] covered = new boolean[table.getDocuments().size()];
+        int uncovered = covered.length;
         List<String> acceptedTerms = new ArrayList<>();
         for (String term : terms) {
-            Set<String> d = term2doc.get(term);
+            final int t = table.getTerms().get(term);
             if (acceptedTerms.size() < maxTerms) {
-                if (d != null) {
-                    docs.removeAll(d);
+                if (t >= 0) {
+                    uncovered -= cover(docs, offsets[t], offsets[t + 1], covered);
                 }
                 acceptedTerms.add(term);
-            } else if (docs.isEmpty()) {
+            } else if (uncovered == 0) {
                 return acceptedTerms;
-            } else {
-                if (d != null) {
-                    d.retainAll(docs);
-                    if (!d.isEmpty()) {
-                        docs.removeAll(d);
-                        acceptedTerms.add(term);
-                    }
+            } else if (t >= 0) {
+                final int c = cover(docs, offsets[t], offsets[t + 1], covered);
+                if (c > 0) {
+                    uncovered -= c;
+                    acceptedTerms.add(term);
                 }
             }
         }
         return acceptedTerms;
     }
 
+    private static int cover(int[] docs, int from, int to, boolean[] covered) {
+        int c = 0;
+        for (int i = from; i < to; i++) {
+            if (!covered[docs[i]]) {
+                covered[docs[i]] = true;
+                c++;
+            }
+        }
+        return c;
+    }
+
     private void loadBlacklistFromFile(Set<String> configBlacklist, SaffronPath blacklistFile) {
         try(BufferedReader r = new BufferedReader(new FileReader(blacklistFile.toFile()))) {
             String line;
@@ -715,6 +1058,7 @@ public class TermExtraction {
                     accepts("o", "The doc-term corespondences to write").withRequiredArg().ofType(File.class);
                     accepts("d", "The domain model terms to use").withRequiredArg().ofType(File.class);
                     accepts("domain-correspondence", "The domain model-term correspondence to write").withRequiredArg().ofType(File.class);
+                    accepts("raw-stats", "The unfiltered statistics of earlier runs. Only documents not in these are processed and the statistics are then updated").withRequiredArg().ofType(File.class);
                 }
             };
             final OptionSet os;
@@ -774,7 +1118,16 @@ public class TermExtraction {
 
             final TermExtraction te = new TermExtraction(c.termExtraction, domainModel);
 
-            final Result r = te.extractTerms(searcher);
+            final Result r;
+            if (os.valueOf("raw-stats") != null) {
+                final File rawFile = (File) os.valueOf("raw-stats");
+                final RawTermStats raw = rawFile.exists() ? RawTermStats.read(rawFile) : new RawTermStats();
+                r = te.extractTermsIncremental(searcher, new HashSet<>(), new HashSet<>(),
+                        new DefaultSaffronListener(), raw);
+                raw.write(rawFile);
+            } else {
+                r = te.extractTerms(searcher);
+            }
             r.normalize();
 
             mapper.writerWithDefaultPrettyPrinter().writeValue((File) os.valueOf("t"), r.terms);
@@ -11,7 +11,6 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.insightcentre.nlp.saffron.data.Document;
 import org.insightcentre.nlp.saffron.data.connections.DocumentTerm;
-import org.insightcentre.nlp.saffron.term.enrich.EnrichTerms.WordTrie;
 
 import opennlp.tools.lemmatizer.Lemmatizer;
 import opennlp.tools.postag.POSTagger;
@@ -35,8 +34,18 @@ public class TermExtractionTask implements Runnable {
     private final Set<String> middleTokens;
     private final Set<String> endTokens;
     private final boolean headTokenFinal;
-    private final Set<String> blacklist;
-    private final WordTrie domainModel;
+    private final TokenAutomaton domainModel;
+    private final AnnotatedCorpus annotations;
+    private final ShardedStats shards;
+    private final TokenValidator validator;
+    /* The lemmas of the current sentence, computed when first needed */
+    private String[] lemmaSentence, sentenceLemmas;
+    /* The lower-cased tokens of the current sentence */
+    private String[] lowerTokens;
+    /* Whether each token of the current sentence is valid: 0 if not yet
+     * checked, 1 if valid and -1 if not */
+    private byte[] tokenValid = new byte[64];
+    private final StringBuilder termBuilder = new StringBuilder();
 
     //Outputs to be calculated
     private final FrequencyStats summary;
@@ -58,6 +67,63 @@ public class TermExtractionTask implements Runnable {
             Set<String> blacklist,
             TemporalFrequencyStats temporalFrequency,
             List<String> domainModel, RelationshipStats relStats) {
+        this(doc, tagger, lemmatizer, tokenizer, stopWords, ngramMin, ngramMax,
+                preceedingTokens, middleTokens, endTokens, headTokenFinal, summary,
+                docTerms, casing, blacklist, temporalFrequency, domainModel, relStats, null);
+    }
+
+    /**
+     * Create a task that extracts term statistics from a single document
+     *
+     * @param annotations If not null, the tokens and tags of the document are
+     * read from this corpus (if it is sealed) or added to it (if it is not)
+     */
+    public TermExtractionTask(Document doc, ThreadLocal<POSTagger> tagger,
+            ThreadLocal<Lemmatizer> lemmatizer,
+            ThreadLocal<Tokenizer> tokenizer,
+            Set<String> stopWords, int ngramMin, int ngramMax,
+            Set<String> preceedingTokens, Set<String> middleTokens,
+            Set<String> endTokens,
+            boolean headTokenFinal,
+            FrequencyStats summary,
+            ConcurrentLinkedQueue<DocumentTerm> docTerms,
+            CasingStats casing,
+            Set<String> blacklist,
+            TemporalFrequencyStats temporalFrequency,
+            List<String> domainModel, RelationshipStats relStats,
+            AnnotatedCorpus annotations) {
+        this(doc, tagger, lemmatizer, tokenizer, stopWords, ngramMin, ngramMax,
+                preceedingTokens, middleTokens, endTokens, headTokenFinal, summary,
+                docTerms, casing, blacklist, temporalFrequency,
+                domainModel == null ? null : TokenAutomaton.fromTerms(domainModel, tokenizer.get()),
+                relStats, annotations, null);
+    }
+
+    /**
+     * Create a task that extracts term statistics from a single document
+     *
+     * @param annotations If not null, the tokens and tags of the document are
+     * read from this corpus (if it is sealed) or added to it (if it is not)
+     * @param domainModel The automaton matching the (lower-cased and
+     * tokenized) domain model terms or null for no domain model
+     * @param shards If not null, the frequency, casing and relationship
+     * statistics are added to the current thread's shard, instead of to
+     * summary, casing and relStats
+     */
+    public TermExtractionTask(Document doc, ThreadLocal<POSTagger> tagger,
+            ThreadLocal<Lemmatizer> lemmatizer,
+            ThreadLocal<Tokenizer> tokenizer,
+            Set<String> stopWords, int ngramMin, int ngramMax,
+            Set<String> preceedingTokens, Set<String> middleTokens,
+            Set<String> endTokens,
+            boolean headTokenFinal,
+            FrequencyStats summary,
+            ConcurrentLinkedQueue<DocumentTerm> docTerms,
+            CasingStats casing,
+            Set<String> blacklist,
+            TemporalFrequencyStats temporalFrequency,
+            TokenAutomaton domainModel, RelationshipStats relStats,
+            AnnotatedCorpus annotations, ShardedStats shards) {
         this.doc = doc;
         this.tagger = tagger;
         this.lemmatizer = lemmatizer;
@@ -72,19 +138,12 @@ public class TermExtractionTask implements Runnable {
         this.headTokenFinal = headTokenFinal;
         this.docTerms = docTerms;
         this.casing = casing;
-        this.blacklist = blacklist;
+        this.validator = new TokenValidator(blacklist);
         this.temporalFrequency = temporalFrequency;
-        if (domainModel == null || domainModel.size() == 0) {
-        	this.domainModel =  null;
-        } else {
-        	Tokenizer tok = tokenizer.get();
-            WordTrie trie = new WordTrie("");
-            for (String domainModelTerm : domainModel) {
-                trie.addTokenized(tok.tokenize(domainModelTerm.toLowerCase()));
-            }
-            this.domainModel = trie;
-        }
+        this.domainModel = domainModel == null || domainModel.size() == 0 ? null : domainModel;
         this.relStats = relStats;
+        this.annotations = annotations;
+        this.shards = shards;
     }
 
     @Override
@@ -93,74 +152,42 @@ public class TermExtractionTask implements Runnable {
             final HashMap<String, DocumentTerm> docTermMap = docTerms != null
                     ? new HashMap<String, DocumentTerm>()
                     : null;
-            String contents = doc.contents();
             CasingStats localCasing = new CasingStats();
             RelationshipStats localRelStats = new RelationshipStats();
-            for (String sentence : contents.split("\n")) {
-                String[] tokens;
-                try {
-                    tokens = tokenizer.get().tokenize(sentence);
-                } catch (Exception x) {
-                    System.err.println(sentence);
-                    throw x;
+            Iterable<AnnotatedCorpus.Sentence> sentences = annotations == null ? null : annotations.get(doc.id);
+            if (sentences == null) {
+                List<AnnotatedCorpus.Sentence> annotated = AnnotatedCorpus.annotate(doc.contents(), tokenizer.get(), tagger.get());
+                if (annotations != null && !annotations.isSealed()) {
+                    annotations.put(doc.id, annotated);
                 }
+                sentences = annotated;
+            }
+            for (AnnotatedCorpus.Sentence sentence : sentences) {
+                final String[] tokens = sentence.tokens;
                 if (tokens.length > 0) {
-                    String[] tags = new String[0];
-                    tags = tagger.get().tag(tokens);
-
-                    if (tags.length != tokens.length) {
-                        throw new RuntimeException("Tagger did not return same number of tokens as tokenizer");
+                    final String[] tags = sentence.tags;
+                    lowerTokens = new String[tokens.length];
+                    for (int n = 0; n < tokens.length; n++) {
+                        lowerTokens[n] = tokens[n].toLowerCase();
+                    }
+                    if (tokenValid.length < tokens.length) {
+                        tokenValid = new byte[Math.max(tokens.length, tokenValid.length * 2)];
+                    } else {
+                        Arrays.fill(tokenValid, 0, tokens.length, (byte) 0);
                     }
 
-                    List<WordTrie> dmPartials = new ArrayList<WordTrie>();
+                    int dmState = domainModel == null ? 0 : domainModel.root();
                     for (int i = 0; i < tokens.length; i++) {
                         boolean nonStop = false;
-
-
                         //Loop here until matching a domain model word, when it does, then let it into the next loop with j = i+1
-                        List<String> activatedDMTerms = null;
+                        int activatedDMTerms = -1;
                         if (domainModel != null) {
-                        	/*
-                        	 * 1 - For each dmPartial:
-                        	 *  1.1 - if the current token makes it a domain model term, then change the flag
-                        	 *  1.2 - if the current token makes it not a prefix to any domain model term, then discard the partial
-                        	 * 2 - If the current token alone is a prefix, then add it to the partials
-                        	 * 3 - If the current token alone is a domain model term, then change the flag
-                        	 *
-                        	 * 4 - if flag is false, then do not perform term extraction
-                        	 */
-
-                        	activatedDMTerms = new ArrayList<String>();
-
-                        	List<WordTrie> updatedPartials = new ArrayList<WordTrie>();
-                        	for(WordTrie dmPartial: dmPartials) {
-                        		WordTrie partial = dmPartial.get(tokens[i]);
-                        		if(partial != null) {
-                        			if (partial.isPresent()) {
-                        				activatedDMTerms.add(partial.getWord());
-                        			}
-
-                        			if(partial.isPrefix()) {
-                        				updatedPartials.add(partial);
-                        			}
-                        		}
-                        	}
-                        	WordTrie partial = this.domainModel.get(tokens[i]);
-                        	if(partial != null) {
-                        		if (partial.isPresent()) {
-                        			activatedDMTerms.add(tokens[i]);
-                    			}
-
-                    			if(partial.isPrefix()) {
-                    				updatedPartials.add(partial);
-                    			}
-                        	}
-
-                        	dmPartials = updatedPartials;
-
-                        	if(activatedDMTerms.size() == 0) {
-                        		continue;
-                        	}
+                            // The domain model terms that end at this token
+                            dmState = domainModel.next(dmState, tokens[i]);
+                            activatedDMTerms = domainModel.match(dmState);
+                            if (activatedDMTerms < 0) {
+                                continue;
+                            }
                         }
 
                         int startIndex = 0;
@@ -170,7 +197,7 @@ public class TermExtractionTask implements Runnable {
                         	startIndex = i+1;
 
                         for (int j = startIndex; j < min(startIndex + ngramMax, tokens.length); j++) {
-                            if (!stopWords.contains(tokens[j].toLowerCase()) && !stopWords.contains(tokens[j])) {
+                            if (!stopWords.contains(lowerTokens[j]) && !stopWords.contains(tokens[j])) {
                                 nonStop = true;
                             }
 
@@ -204,34 +231,52 @@ public class TermExtractionTask implements Runnable {
 
             stats.documents = 1;
 
-            synchronized (summary) {
-                summary.add(stats);
-                if(doc.date != null && temporalFrequency != null)
-                    temporalFrequency.add(stats, doc.date);
-            }
-            if (casing != null) {
-                synchronized (casing) {
-                    casing.add(localCasing);
+            if (shards != null) {
+                final ShardedStats.Shard shard = shards.local();
+                shard.frequency.add(stats);
+                if (casing != null) {
+                    shard.casing.add(localCasing);
+                }
+                if (relStats != null) {
+                    shard.relations.add(localRelStats);
+                }
+                if (doc.date != null && temporalFrequency != null) {
+                    // The periods depend on the first date seen, so these
+                    // are still collected in one place
+                    synchronized (temporalFrequency) {
+                        temporalFrequency.add(stats, doc.date);
+                    }
+                }
+            } else {
+                synchronized (summary) {
+                    summary.add(stats);
+                    if(doc.date != null && temporalFrequency != null)
+                        temporalFrequency.add(stats, doc.date);
+                }
+                if (casing != null) {
+                    synchronized (casing) {
+                        casing.add(localCasing);
+                    }
+                }
+                if (relStats!= null && !localRelStats.isEmpty()) {
+                    synchronized (relStats) {
+                        relStats.add(localRelStats);
+                    }
                 }
             }
             if (docTermMap != null) {
                 docTerms.addAll(docTermMap.values());
             }
-            if (relStats!= null && !localRelStats.isEmpty()) {
-            	synchronized (relStats) {
-					relStats.add(localRelStats);
-				}
-            }
         } catch (Exception x) {
             x.printStackTrace();
         }
     }
 
-	private void connectDomainModelAndTerm(RelationshipStats localRelStats, List<String> activatedDMTerms,
+	private void connectDomainModelAndTerm(RelationshipStats localRelStats, int activatedDMTerms,
 			String term) {
-		if (activatedDMTerms != null && term!=null) {
-		    for(String dmTerm: activatedDMTerms) {
-		    	localRelStats.addRelation(dmTerm, term);
+		if (term != null) {
+		    for (int m = activatedDMTerms; m >= 0; m = domainModel.nextMatch(m)) {
+		    	localRelStats.addRelation(domainModel.term(m), term);
 		    }
 		}
 	}
@@ -240,27 +285,22 @@ public class TermExtractionTask implements Runnable {
             final HashMap<String, DocumentTerm> docTermMap, CasingStats localCasing,
             boolean headTokenFinal) {
         if (lemmatizer != null && lemmatizer.get() != null && j - i + 1 >= ngramMin) {
-            String[] ltoks = Arrays.copyOf(tokens, tokens.length);
-            for (int n = 0; n < ltoks.length; n++) {
-                ltoks[n] = ltoks[n].toLowerCase();
+            if (tokens != lemmaSentence) {
+                sentenceLemmas = lemmatizer.get().lemmatize(lowerTokens, tags);
+                lemmaSentence = tokens;
             }
-            String[] lemmas = lemmatizer.get().lemmatize(ltoks, tags);
-            String[] tokens2 = Arrays.copyOfRange(tokens, i, j + 1);
+            String[] lemmas = sentenceLemmas;
             if (headTokenFinal) {
                 if (!lemmas[j].equals("O") && !lemmas[j].equalsIgnoreCase("datum")) {
-                    tokens2[tokens2.length - 1] = lemmas[j];
+                    return processTerm(tokens, i, j, j, lemmas[j], docTermMap, localCasing);
                 }
             } else {
                 if (!lemmas[i].equals("O")) {
-                    tokens2[0] = lemmas[i];
+                    return processTerm(tokens, i, j, i, lemmas[i], docTermMap, localCasing);
                 }
             }
-            return processTerm(tokens2, 0, j - i, docTermMap,
-                    localCasing);
-        } else {
-            return processTerm(tokens, i, j, docTermMap,
-                    localCasing);
         }
+        return processTerm(tokens, i, j, -1, null, docTermMap, localCasing);
     }
 
     public static String join(String[] tokens, int i, int j) {
@@ -275,24 +315,45 @@ public class TermExtractionTask implements Runnable {
 
     }
 
-    private boolean isValidTerm(String term) {
-        return !blacklist.contains(term.toLowerCase()) && term.matches(".*\\p{Alpha}.*")
-                && (term.matches("\\p{Alpha}.*") || term.matches(".*\\p{Alpha}"))
-                && term.length() > 1
-                && !term.startsWith("http://") && !term.startsWith("https://");
+    private boolean isValidToken(String[] tokens, int k) {
+        if (tokenValid[k] == 0) {
+            tokenValid[k] = validator.isValid(tokens[k], lowerTokens[k]) ? (byte) 1 : (byte) -1;
+        }
+        return tokenValid[k] > 0;
     }
 
-    private String  processTerm(String[] tokens, int i, int j,
+    /**
+     * Count a candidate term. The term is the tokens from i to j (inclusive),
+     * where the token at index r (if not -1) is replaced by another string,
+     * e.g., its lemma. The string of the term is only created if all its
+     * tokens are valid.
+     *
+     * @return The term string or null if the candidate is not a term
+     */
+    private String processTerm(String[] tokens, int i, int j, int r, String replacement,
             HashMap<String, DocumentTerm> dts,
             CasingStats localCasing) {
         if (j - i >= this.ngramMin - 1) {
-            boolean allValid = true;
             for (int k = i; k <= j; k++) {
-                allValid = allValid && isValidTerm(tokens[k]);
+                if (k == r ? !validator.isValid(replacement) : !isValidToken(tokens, k)) {
+                    return null;
+                }
+            }
+            final String termStrOrig;
+            if (i == j) {
+                termStrOrig = i == r ? replacement : tokens[i];
+            } else {
+                termBuilder.setLength(0);
+                for (int k = i; k <= j; k++) {
+                    if (k != i) {
+                        termBuilder.append(' ');
+                    }
+                    termBuilder.append(k == r ? replacement : tokens[k]);
+                }
+                termStrOrig = termBuilder.toString();
             }
-            String termStrOrig = join(tokens, i, j);
             String termStr = termStrOrig.toLowerCase();
-            if (allValid && termStr.length() > 2) {
+            if (termStr.length() > 2) {
                 stats.docFrequency.put(termStr, 1);
                 stats.termFrequency.put(termStr, 1 + stats.termFrequency.getInt(termStr));
                 if (dts != null) {
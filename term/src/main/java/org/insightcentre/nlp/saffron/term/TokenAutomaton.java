@@ -0,0 +1,264 @@
+package org.insightcentre.nlp.saffron.term;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import opennlp.tools.tokenize.Tokenizer;
+
+/**
+ * An Aho-Corasick automaton over tokens, which finds all occurrences of a set
+ * of multi-word terms in a sequence of tokens in a single pass.
+ *
+ * The automaton is used as follows:
+ * <pre>
+ * int state = automaton.root();
+ * for (String token : tokens) {
+ *     state = automaton.next(state, token);
+ *     for (int m = automaton.match(state); m &gt;= 0; m = automaton.nextMatch(m)) {
+ *         // automaton.term(m) ends at this token
+ *     }
+ * }
+ * </pre>
+ * No objects are created while matching. The automaton is immutable, so a
+ * single automaton may be shared by all the threads of a run.
+ *
+ * @author John McCrae
+ */
+public class TokenAutomaton {
+
+    private static final int ROOT = 0;
+
+    /* The id of each token that occurs in a term */
+    private final Object2IntOpenHashMap<String> symbols = new Object2IntOpenHashMap<>();
+    /* The transitions, keyed by state and symbol */
+    private final Long2IntOpenHashMap transitions = new Long2IntOpenHashMap();
+    private int[] fail;
+    /* The next state on the failure path that completes a term (or -1) */
+    private int[] output;
+    /* The term completed at each state (or null) */
+    private String[] terms;
+    private int[] depth;
+    private int states = 1;
+    private int size = 0;
+    private int maxLength = 0;
+
+    /**
+     * Create an automaton
+     *
+     * @param terms The terms as sequences of tokens. The string of each term
+     * is its tokens separated by spaces.
+     */
+    public TokenAutomaton(Iterable<String[]> terms) {
+        symbols.defaultReturnValue(-1);
+        transitions.defaultReturnValue(-1);
+        int[] parent = new int[16];
+        this.depth = new int[16];
+        this.terms = new String[16];
+        for (String[] tokens : terms) {
+            if (tokens.length == 0) {
+                continue;
+            }
+            int s = ROOT;
+            for (String token : tokens) {
+                int symbol = symbols.getInt(token);
+                if (symbol < 0) {
+                    symbol = symbols.size();
+                    symbols.put(token, symbol);
+                }
+                int t = transitions.get(key(s, symbol));
+                if (t < 0) {
+                    t = states++;
+                    if (t == parent.length) {
+                        parent = Arrays.copyOf(parent, t * 2);
+                        depth = Arrays.copyOf(depth, t * 2);
+                        this.terms = Arrays.copyOf(this.terms, t * 2);
+                    }
+                    parent[t] = s;
+                    depth[t] = depth[s] + 1;
+                    transitions.put(key(s, symbol), t);
+                }
+                s = t;
+            }
+            if (this.terms[s] == null) {
+                this.terms[s] = String.join(" ", tokens);
+                size++;
+                maxLength = Math.max(maxLength, tokens.length);
+            }
+        }
+        depth = Arrays.copyOf(depth, states);
+        this.terms = Arrays.copyOf(this.terms, states);
+        buildFailures(parent);
+    }
+
+    /**
+     * Create an automaton for a set of terms, which are lower-cased and split
+     * into tokens by a tokenizer
+     *
+     * @param terms The terms
+     * @param tokenizer The tokenizer
+     * @return The automaton
+     */
+    public static TokenAutomaton fromTerms(Iterable<String> terms, Tokenizer tokenizer) {
+        List<String[]> tokenized = new ArrayList<>();
+        for (String term : terms) {
+            tokenized.add(tokenizer.tokenize(term.toLowerCase()));
+        }
+        return new TokenAutomaton(tokenized);
+    }
+
+    private static long key(int state, int symbol) {
+        return ((long) state << 32) | symbol;
+    }
+
+    /* Compute the failure links in order of depth (i.e., breadth-first) */
+    private void buildFailures(int[] parent) {
+        final int[] symbolOf = new int[states];
+        for (Long2IntOpenHashMap.Entry e : transitions.long2IntEntrySet()) {
+            symbolOf[e.getIntValue()] = (int) e.getLongKey();
+        }
+        final Integer[] order = new Integer[states];
+        for (int s = 0; s < states; s++) {
+            order[s] = s;
+        }
+        Arrays.sort(order, (s, t) -> Integer.compare(depth[s], depth[t]));
+        fail = new int[states];
+        output = new int[states];
+        output[ROOT] = -1;
+        for (Integer boxed : order) {
+            final int s = boxed;
+            if (s == ROOT) {
+                continue;
+            }
+            if (parent[s] == ROOT) {
+                fail[s] = ROOT;
+            } else {
+                fail[s] = next(fail[parent[s]], symbolOf[s]);
+            }
+            output[s] = terms[fail[s]] != null ? fail[s] : output[fail[s]];
+        }
+    }
+
+    /**
+     * The initial state, before any tokens have been read
+     *
+     * @return The initial state
+     */
+    public int root() {
+        return ROOT;
+    }
+
+    /**
+     * Get the symbol of a token
+     *
+     * @param token The token
+     * @return The symbol or -1 if the token does not occur in any term
+     */
+    public int symbol(String token) {
+        return symbols.getInt(token);
+    }
+
+    /**
+     * Read a token
+     *
+     * @param state The current state
+     * @param token The token
+     * @return The next state
+     */
+    public int next(int state, String token) {
+        return next(state, symbols.getInt(token));
+    }
+
+    /**
+     * Read a token by its symbol
+     *
+     * @param state The current state
+     * @param symbol The symbol of the token (or -1 if the token is not in the
+     * automaton)
+     * @return The next state
+     */
+    public int next(int state, int symbol) {
+        if (symbol < 0) {
+            return ROOT;
+        }
+        while (true) {
+            final int t = transitions.get(key(state, symbol));
+            if (t >= 0) {
+                return t;
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = fail[state];
+        }
+    }
+
+    /**
+     * Get the longest term that ends at a state.
+     *
+     * @param state The state
+     * @return A match, i.e., a state that completes a term, or -1 if no term
+     * ends at this state
+     */
+    public int match(int state) {
+        return terms[state] != null ? state : output[state];
+    }
+
+    /**
+     * Get the next longest term that ends at the same token as a match
+     *
+     * @param match The match
+     * @return The next match or -1 if there are no more
+     */
+    public int nextMatch(int match) {
+        return output[match];
+    }
+
+    /**
+     * The term of a match
+     *
+     * @param match The match
+     * @return The tokens of the term separated by spaces
+     */
+    public String term(int match) {
+        return terms[match];
+    }
+
+    /**
+     * The number of tokens in the term of a match
+     *
+     * @param match The match
+     * @return The length of the term
+     */
+    public int length(int match) {
+        return depth[match];
+    }
+
+    /**
+     * The number of terms in this automaton
+     *
+     * @return The number of distinct terms
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The number of states of this automaton
+     *
+     * @return The number of states
+     */
+    public int states() {
+        return states;
+    }
+
+    /**
+     * The number of tokens in the longest term
+     *
+     * @return The maximum term length
+     */
+    public int maxLength() {
+        return maxLength;
+    }
+}
@@ -0,0 +1,84 @@
+package org.insightcentre.nlp.saffron.term;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Checks whether a token may be part of a term. A token is valid if it has at
+ * least two characters, starts or ends with a letter, is not a URL and is not
+ * in the blacklist.
+ *
+ * The checks scan the characters of the token and do not create any objects,
+ * as they are called for every token of every candidate term. They give the
+ * same results as the regular expressions {@code .*\p{Alpha}.*} and
+ * {@code \p{Alpha}.*|.*\p{Alpha}}, so in particular a token containing a line
+ * break is never valid.
+ *
+ * @author John McCrae
+ */
+public class TokenValidator {
+
+    private final Set<String> blacklist;
+
+    /**
+     * Create a validator
+     *
+     * @param blacklist The lower-cased tokens that are not valid (may be null)
+     */
+    public TokenValidator(Set<String> blacklist) {
+        this.blacklist = blacklist == null ? Collections.<String>emptySet() : blacklist;
+    }
+
+    /**
+     * Check if a token is valid
+     *
+     * @param token The token
+     * @param lowerToken The token in lower case, i.e., {@code token.toLowerCase()}
+     * @return True if the token may be part of a term
+     */
+    public boolean isValid(String token, String lowerToken) {
+        return isWellFormed(token)
+                && (blacklist.isEmpty() || !blacklist.contains(lowerToken));
+    }
+
+    /**
+     * Check if a token is valid
+     *
+     * @param token The token
+     * @return True if the token may be part of a term
+     */
+    public boolean isValid(String token) {
+        return isWellFormed(token)
+                && (blacklist.isEmpty() || !blacklist.contains(token.toLowerCase()));
+    }
+
+    /**
+     * Check the form of a token, without the blacklist
+     *
+     * @param token The token
+     * @return True if the token has at least two characters, starts or ends
+     * with a letter and is not a URL
+     */
+    public static boolean isWellFormed(String token) {
+        final int n = token.length();
+        if (n <= 1 || !(isAlpha(token.charAt(0)) || isAlpha(token.charAt(n - 1)))) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            if (isLineTerminator(token.charAt(i))) {
+                return false;
+            }
+        }
+        return !token.startsWith("http://") && !token.startsWith("https://");
+    }
+
+    /* The characters matched by \p{Alpha} */
+    private static boolean isAlpha(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /* The characters not matched by . */
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == 0x85 || c == 0x2028 || c == 0x2029;
+    }
+}
@@ -22,6 +22,7 @@ import opennlp.tools.postag.POSTagger;
 import opennlp.tools.tokenize.Tokenizer;
 import org.insightcentre.nlp.saffron.data.Corpus;
 import org.insightcentre.nlp.saffron.data.Document;
+import org.insightcentre.nlp.saffron.term.AnnotatedCorpus;
 import org.insightcentre.nlp.saffron.term.Features;
 import org.insightcentre.nlp.saffron.term.FrequencyStats;
 import org.insightcentre.nlp.saffron.term.InclusionStats;
@@ -53,7 +54,21 @@ public class DomainStats {
             ThreadLocal<Tokenizer> tokenizer, int maxLength, int maxDocs,
             FrequencyStats stats, InclusionStats incl, Set<String> stopWords,
             ThreadLocal<POSTagger> tagger, Set<String> preceedingTokens, Set<String> middleTokens, Set<String> endTokens, boolean headTokenFinal) {
-        Map<String, Object2IntMap<String>> totalFreqs = totalFreqs(searcher, nThreads, tokenizer, maxLength, maxDocs, stats, incl, tagger, preceedingTokens, middleTokens, endTokens, headTokenFinal);
+        return initialize(searcher, nThreads, tokenizer, maxLength, maxDocs, stats, incl, stopWords, tagger,
+                preceedingTokens, middleTokens, endTokens, headTokenFinal, null);
+    }
+
+    /**
+     * Calculate the domain statistics. If annotations is not null, the tokens
+     * and tags of the documents are read from it where possible, instead of
+     * running the tokenizer and tagger again.
+     */
+    public static DomainStats initialize(Corpus searcher, int nThreads,
+            ThreadLocal<Tokenizer> tokenizer, int maxLength, int maxDocs,
+            FrequencyStats stats, InclusionStats incl, Set<String> stopWords,
+            ThreadLocal<POSTagger> tagger, Set<String> preceedingTokens, Set<String> middleTokens, Set<String> endTokens, boolean headTokenFinal,
+            AnnotatedCorpus annotations) {
+        Map<String, Object2IntMap<String>> totalFreqs = totalFreqs(searcher, nThreads, tokenizer, maxLength, maxDocs, stats, incl, tagger, preceedingTokens, middleTokens, endTokens, headTokenFinal, annotations);
         Set<String> words = topWords(stats, totalFreqs, stopWords);
         filterByWords(words, totalFreqs);
         Object2IntMap<String> wordFreq = new Object2IntLinkedOpenHashMap<>();
@@ -87,7 +102,8 @@ public class DomainStats {
     private static Map<String, Object2IntMap<String>> totalFreqs(Corpus searcher, int nThreads,
             ThreadLocal<Tokenizer> tokenizer, int maxLength, int maxDocs,
             FrequencyStats stats, InclusionStats incl, 
-            ThreadLocal<POSTagger> tagger, Set<String> preceedingTokens, Set<String> middleTokens, Set<String> endTokens, boolean headTokenFinal) {
+            ThreadLocal<POSTagger> tagger, Set<String> preceedingTokens, Set<String> middleTokens, Set<String> endTokens, boolean headTokenFinal,
+            AnnotatedCorpus annotations) {
         ExecutorService service = new ThreadPoolExecutor(nThreads, nThreads, 0,
                 TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(1000),
                 new ThreadPoolExecutor.CallerRunsPolicy());
@@ -97,7 +113,7 @@ public class DomainStats {
 
         int docCount = 0;
         for (Document doc : searcher.getDocuments()) {
-            service.submit(new TopWordsTask(doc, tokenizer, maxLength, topTerms, totalFreqs, tagger, preceedingTokens, middleTokens, endTokens, headTokenFinal));
+            service.submit(new TopWordsTask(doc, tokenizer, maxLength, topTerms, totalFreqs, tagger, preceedingTokens, middleTokens, endTokens, headTokenFinal, annotations));
             if (docCount++ > maxDocs) {
                 break;
             }
@@ -214,8 +230,10 @@ public class DomainStats {
         private final Set<String> middleTokens;
         private final Set<String> endTokens;
         private final boolean headTokenFinal;
+        private final AnnotatedCorpus annotations;
 
-        public TopWordsTask(Document doc, ThreadLocal<Tokenizer> tokenizer, int maxLength, Set<String> topTerms, Map<String, Object2IntMap<String>> totalFreqs, ThreadLocal<POSTagger> tagger, Set<String> preceedingTokens, Set<String> middleTokens, Set<String> endTokens, boolean headTokenFinal) {
+        public TopWordsTask(Document doc, ThreadLocal<Tokenizer> tokenizer, int maxLength, Set<String> topTerms, Map<String, Object2IntMap<String>> totalFreqs, ThreadLocal<POSTagger> tagger, Set<String> preceedingTokens, Set<String> middleTokens, Set<String> endTokens, boolean headTokenFinal,
+                AnnotatedCorpus annotations) {
             this.doc = doc;
             this.tokenizer = tokenizer;
             this.maxLength = maxLength;
@@ -226,15 +244,19 @@ public class DomainStats {
             this.middleTokens = middleTokens;
             this.endTokens = endTokens;
             this.headTokenFinal = headTokenFinal;
+            this.annotations = annotations;
         }
 
         @Override
         public void run() {
             final Map<String, Object2IntMap<String>> freq = new HashMap<>();
-            String contents = doc.contents();
-            for (String sentence : contents.split("\n")) {
-                String[] tokens = tokenizer.get().tokenize(sentence.toLowerCase());
-                String[] tags = tagger.get().tag(tokens);
+            final Iterable<AnnotatedCorpus.Sentence> annotated = annotations == null ? null : annotations.get(doc.id);
+            final Iterable<AnnotatedCorpus.Sentence> sentences = annotated != null ? annotated
+                    : AnnotatedCorpus.annotate(doc.contents().toLowerCase(), tokenizer.get(), tagger.get());
+            for (AnnotatedCorpus.Sentence sentence : sentences) {
+                // The annotated corpus keeps the original case
+                String[] tokens = annotated != null ? sentence.lowerCaseTokens() : sentence.tokens;
+                String[] tags = sentence.tags;
                 if (tokens.length > 0) {
                     for (int i = 0; i <= tokens.length - maxLength; i++) {
                         for (int j = i + 1; j <= i + maxLength; j++) {
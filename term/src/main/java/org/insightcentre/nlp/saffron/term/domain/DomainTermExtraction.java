@@ -17,8 +17,8 @@ import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.IntStream;
 
+import org.insightcentre.nlp.saffron.DefaultSaffronListener;
 import org.insightcentre.nlp.saffron.config.Configuration;
 import org.insightcentre.nlp.saffron.config.DomainModelExtractionConfiguration;
 import org.insightcentre.nlp.saffron.config.TermExtractionConfiguration;
@@ -29,8 +29,10 @@ import org.insightcentre.nlp.saffron.data.Corpus;
 import org.insightcentre.nlp.saffron.data.Document;
 import org.insightcentre.nlp.saffron.data.Status;
 import org.insightcentre.nlp.saffron.data.Term;
+import org.insightcentre.nlp.saffron.term.AnnotatedCorpus;
 import org.insightcentre.nlp.saffron.term.TermExtraction;
 import org.insightcentre.nlp.saffron.term.TermExtraction.Result;
+import org.insightcentre.nlp.saffron.term.TokenAutomaton;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -134,11 +136,28 @@ public class DomainTermExtraction {
 	}
 	
 	public Result extractDomainModelTerms(Corpus corpus) {
+		try (AnnotatedCorpus annotations = AnnotatedCorpus.create()) {
+			return extractDomainModelTerms(corpus, annotations);
+		} catch (IOException x) {
+			throw new RuntimeException(x);
+		}
+	}
+
+	/**
+	 * Extract the domain model terms from a corpus
+	 * 
+	 * @param corpus - the corpus
+	 * @param annotations - the tokenized and tagged corpus, shared by all passes over the
+	 *   corpus. It must have been created with the same tokenizer and tagger models. If it
+	 *   is not sealed it is written by the first pass.
+	 * @return the domain model terms
+	 */
+	public Result extractDomainModelTerms(Corpus corpus, AnnotatedCorpus annotations) {
 
 		//1 - Extract seed terms and domain model candidates
-		Result seedTerms = this.te.extractTerms(corpus);
+		Result seedTerms = this.te.extractTerms(corpus, new HashSet<>(), new HashSet<>(), new DefaultSaffronListener(), annotations);
 		
-		Result domainTermCandidates = this.dmCandidateExtraction.extractTerms(corpus);		
+		Result domainTermCandidates = this.dmCandidateExtraction.extractTerms(corpus, new HashSet<>(), new HashSet<>(), new DefaultSaffronListener(), annotations);
                        
         //2 - Extract cooccurrence stats between seed terms and domain model candidates
         Set<String> seedTermStrings = new HashSet<String> ();
@@ -158,7 +177,7 @@ public class DomainTermExtraction {
         		this.dmExtractionConfig.preceedingTokens, this.dmExtractionConfig.middleTokens, this.dmExtractionConfig.headTokens, this.dmExtractionConfig.headTokenFinal,
         		this.seedTermExtractionConfig.preceedingTokens, this.seedTermExtractionConfig.middleTokens, 
         		this.seedTermExtractionConfig.headTokens, this.seedTermExtractionConfig.headTokenFinal,
-        		seedTermStrings, domainCandidateStrings, domainFreqs);
+        		seedTermStrings, domainCandidateStrings, domainFreqs, annotations);
                 
         //3 - Score each domain model term according to their stats (calculate PMI between seed terms and domain model terms)
         Object2DoubleMap<String> scores = calculateScores(seedTerms.terms, domainTermCandidates.terms, domainFreqs);
@@ -372,18 +391,28 @@ public class DomainTermExtraction {
             Set<String> preceedingTokens, Set<String> middleTokens, Set<String> endTokens, boolean headTokenFinal, 
             Set<String> preceedingDMTokens, Set<String> middleDMTokens, Set<String> endDMTokens, boolean headDMTokenFinal, 
             Set<String> seedTerms, Set<String> dmCandidateTerms,
-            Map<String, Object2IntMap<String>> domainFreqs) {
+            Map<String, Object2IntMap<String>> domainFreqs, AnnotatedCorpus annotations) {
 		
         ExecutorService service = new ThreadPoolExecutor(nThreads, nThreads, 0,
                 TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(1000),
                 new ThreadPoolExecutor.CallerRunsPolicy());
 
+        // The candidates are matched by a single automaton shared by all documents
+        final Set<String> excludedTerms = new HashSet<>(Arrays.asList(TermExtractionConfiguration.ENGLISH_STOPWORDS));
+        final List<String[]> candidates = new ArrayList<>();
+        for (String dmCandidateTerm : dmCandidateTerms) {
+            if (!excludedTerms.contains(dmCandidateTerm)) {
+                candidates.add(dmCandidateTerm.split(" "));
+            }
+        }
+        final TokenAutomaton dmCandidateAutomaton = new TokenAutomaton(candidates);
+
         int docCount = 0;
         for (Document doc : corpus.getDocuments()) {
-            service.submit(new TopWordsTask(doc, tokenizer, minLength, maxLength, seedTerms, dmCandidateTerms,
-            		new HashSet<>(Arrays.asList(TermExtractionConfiguration.ENGLISH_STOPWORDS)), tagger, lemmatizer, 
+            service.submit(new TopWordsTask(doc, tokenizer, minLength, maxLength, seedTerms, dmCandidateAutomaton,
+            		tagger, lemmatizer, 
             		preceedingTokens, middleTokens, endTokens, headTokenFinal,
-            		domainFreqs));
+            		domainFreqs, annotations));
             if (docCount++ > maxDocs) {
                 break;
             }
@@ -405,7 +434,7 @@ public class DomainTermExtraction {
         private final int minLength;
         private final int maxLength;
         private final Set<String> seedTerms;
-        private final Set<String> candidateDomainModelTerms;
+        private final TokenAutomaton candidateDomainModelTerms;
         private final ThreadLocal<POSTagger> tagger;
         private final ThreadLocal<Lemmatizer> lemmatizer;
         private final Set<String> preceedingTokens;
@@ -413,25 +442,32 @@ public class DomainTermExtraction {
         private final Set<String> endTokens;
         private final boolean headTokenFinal;
 
-        private final Set<String> excludedTerms;
         private final int maxLengthSeedTerm;
         private final Set<String> stopWords;
         
         private final Map<String, Object2IntMap<String>> totalFreqs;
+        private final AnnotatedCorpus annotations;
+        /* The candidate domain model terms in the current sentence, grouped
+         * by their first token: the matches starting at token i are
+         * matches[matchOffsets[i]] to matches[matchOffsets[i + 1] - 1] */
+        private String[] matchSentence;
+        private int[] matchOffsets = new int[64];
+        private int[] matches = new int[64];
+        private int[] found = new int[64];
+        private int[] foundStarts = new int[64];
         
 
         public TopWordsTask(Document doc, ThreadLocal<Tokenizer> tokenizer, int minLength, int maxLength,
-        		Set<String> seedTerms, Set<String> candidateDomainModelTerms, Set<String> excludedTerms,
+        		Set<String> seedTerms, TokenAutomaton candidateDomainModelTerms,
         		ThreadLocal<POSTagger> tagger, ThreadLocal<Lemmatizer> lemmatizer,
         		Set<String> preceedingTokens, Set<String> middleTokens, Set<String> endTokens, boolean headTokenFinal,
-        		Map<String, Object2IntMap<String>> totalFreqs) {
+        		Map<String, Object2IntMap<String>> totalFreqs, AnnotatedCorpus annotations) {
             this.doc = doc;
             this.tokenizer = tokenizer;
             this.minLength = minLength <=0 ? 1 : minLength;
             this.maxLength = maxLength;
             this.seedTerms = seedTerms;
             this.candidateDomainModelTerms = candidateDomainModelTerms;
-            this.excludedTerms = excludedTerms;
             this.tagger = tagger;
             this.lemmatizer = lemmatizer;
             this.preceedingTokens = preceedingTokens;
@@ -440,6 +476,7 @@ public class DomainTermExtraction {
             this.headTokenFinal = headTokenFinal;
             
             this.totalFreqs = totalFreqs;
+            this.annotations = annotations;
             
             int maxLengthSeedTerm = 0;
     		for(String seedTerm: seedTerms) { 
@@ -454,22 +491,15 @@ public class DomainTermExtraction {
         @Override
         public void run() {
         	try {
-	            String contents = doc.contents();
 	            final Map<String, Object2IntMap<String>> jointFreq = new HashMap<>();
-	            for (String sentence : contents.split("\n")) {
-	                String[] tokens;
-	                try {
-	                    tokens = tokenizer.get().tokenize(sentence);
-	                } catch (Exception x) {
-	                    System.err.println(sentence);
-	                    throw x;
-	                }
+	            Iterable<AnnotatedCorpus.Sentence> sentences = annotations == null ? null : annotations.get(doc.id);
+	            if (sentences == null) {
+	                sentences = AnnotatedCorpus.annotate(doc.contents(), tokenizer.get(), tagger.get());
+	            }
+	            for (AnnotatedCorpus.Sentence sentence : sentences) {
+	                final String[] tokens = sentence.tokens;
 	                if (tokens.length > 0) {
-	                    final String[] tags = tagger.get().tag(tokens);
-
-	                    if (tags.length != tokens.length) {
-	                        throw new RuntimeException("Tagger did not return same number of tokens as tokenizer");
-	                    }
+	                    final String[] tags = sentence.tags;
 
 	                    for (int i = 0; i < tokens.length; i++) {
 	                        boolean nonStop = false;
@@ -529,14 +559,19 @@ public class DomainTermExtraction {
 			    }
 			    Object2IntMap<String> freq2 = jointFreq.get(seedTerm);
 			    
-				List<String> dmCandidates = extractDomainModelTermsFromContextWindow(
-						IntStream.range(Math.max(0, i-this.maxLength),i).mapToObj(e -> tokens[e]).toArray(String[]::new),
-						IntStream.range(Math.max(0, i-this.maxLength),i).mapToObj(e -> tags[e]).toArray(String[]::new)
-				);
-
-			    for(String dmCandidate: dmCandidates) {
-			    	freq2.put(dmCandidate, freq2.getInt(dmCandidate) +1);
-			    }
+				// The candidates in the context window of maxLength tokens
+				// before the seed term that start at the start of the window
+				final int windowStart = i - this.maxLength;
+				if (windowStart >= 0) {
+				    findCandidates(tokens);
+				    for (int k = matchOffsets[windowStart]; k < matchOffsets[windowStart + 1]; k++) {
+				        final int length = candidateDomainModelTerms.length(matches[k]);
+				        if (length >= this.minLength && length <= this.maxLength) {
+				            final String dmCandidate = candidateDomainModelTerms.term(matches[k]);
+				            freq2.put(dmCandidate, freq2.getInt(dmCandidate) + 1);
+				        }
+				    }
+				}
 			}
 		}
         
@@ -576,26 +611,51 @@ public class DomainTermExtraction {
 	    }
         
         /**
-         * Extract a set of valid domain model terms from a context window.
-         * 
-         * @param tokens - the tokens in the context window
-         * @param tags - the part-of-speech tags in the context window
+         * Find all the candidate domain model terms in a sentence (if this
+         * is not the sentence of the last call) in a single pass
          * 
-         * @return A list of valid terms appearing in the context window (allows term overlapping)
+         * @param tokens - the tokens of the sentence
          */
-        private List<String> extractDomainModelTermsFromContextWindow(String[] tokens, String[] tags) {
-        	List<String> extractedTerms = new ArrayList<String>();
-        	
-        	for(int i=0; i <= tokens.length - this.maxLength; i++) {
-        		for(int j=i+this.minLength; j<= tokens.length; j++) {
-        			String term = join(tokens, i, j);
-        			if (!excludedTerms.contains(term) && this.candidateDomainModelTerms.contains(term)) {
-        				extractedTerms.add(term);
-        			}
-        		}
-        	}
-        	
-        	return extractedTerms;
+        private void findCandidates(String[] tokens) {
+            if (tokens == matchSentence) {
+                return;
+            }
+            int n = 0;
+            int state = candidateDomainModelTerms.root();
+            for (int e = 0; e < tokens.length; e++) {
+                state = candidateDomainModelTerms.next(state, tokens[e]);
+                for (int m = candidateDomainModelTerms.match(state); m >= 0; m = candidateDomainModelTerms.nextMatch(m)) {
+                    if (n == found.length) {
+                        found = Arrays.copyOf(found, n * 2);
+                        foundStarts = Arrays.copyOf(foundStarts, n * 2);
+                    }
+                    found[n] = m;
+                    foundStarts[n] = e - candidateDomainModelTerms.length(m) + 1;
+                    n++;
+                }
+            }
+            // Group the matches by their first token
+            if (matchOffsets.length < tokens.length + 1) {
+                matchOffsets = new int[tokens.length + 1];
+            }
+            if (matches.length < n) {
+                matches = new int[found.length];
+            }
+            Arrays.fill(matchOffsets, 0, tokens.length + 1, 0);
+            for (int k = 0; k < n; k++) {
+                matchOffsets[foundStarts[k] + 1]++;
+            }
+            for (int x = 0; x < tokens.length; x++) {
+                matchOffsets[x + 1] += matchOffsets[x];
+            }
+            for (int k = 0; k < n; k++) {
+                matches[matchOffsets[foundStarts[k]]++] = found[k];
+            }
+            for (int x = tokens.length; x > 0; x--) {
+                matchOffsets[x] = matchOffsets[x - 1];
+            }
+            matchOffsets[0] = 0;
+            matchSentence = tokens;
         }
         
         private static String join(String[] tokens, int i, int j) {
@@ -1,15 +1,19 @@
 package org.insightcentre.nlp.saffron.term.enrich;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import opennlp.tools.lemmatizer.Lemmatizer;
 import opennlp.tools.postag.POSTagger;
 import opennlp.tools.tokenize.Tokenizer;
 import org.insightcentre.nlp.saffron.data.Document;
 import org.insightcentre.nlp.saffron.data.connections.DocumentTerm;
+import org.insightcentre.nlp.saffron.term.AnnotatedCorpus;
 import org.insightcentre.nlp.saffron.term.FrequencyStats;
+import org.insightcentre.nlp.saffron.term.TokenAutomaton;
 import org.insightcentre.nlp.saffron.term.enrich.EnrichTerms.WordTrie;
 
 /**
@@ -25,11 +29,36 @@ public class EnrichTermTask implements Runnable {
     private final ThreadLocal<Tokenizer> tokenizer;
     private final FrequencyStats stats = new FrequencyStats();
     private final FrequencyStats summary;
-    private final WordTrie termStrings;
+    private final TokenAutomaton termStrings;
     private final ConcurrentLinkedQueue<DocumentTerm> finalDocTerms;
     private final HashMap<String, DocumentTerm> docTerms = new HashMap<>();
+    private final AnnotatedCorpus annotations;
 
     public EnrichTermTask(Document doc, ThreadLocal<POSTagger> tagger, ThreadLocal<Lemmatizer> lemmatizer, ThreadLocal<Tokenizer> tokenizer, FrequencyStats summary, WordTrie termStrings, ConcurrentLinkedQueue<DocumentTerm> docTerms) {
+        this(doc, tagger, lemmatizer, tokenizer, summary, termStrings, docTerms, null);
+    }
+
+    /**
+     * Create a task to enrich terms based on a single document
+     * 
+     * @param annotations If not null, the tokens and tags of the document are
+     * read from this corpus where possible
+     */
+    public EnrichTermTask(Document doc, ThreadLocal<POSTagger> tagger, ThreadLocal<Lemmatizer> lemmatizer, ThreadLocal<Tokenizer> tokenizer, FrequencyStats summary, WordTrie termStrings, ConcurrentLinkedQueue<DocumentTerm> docTerms,
+            AnnotatedCorpus annotations) {
+        this(doc, tagger, lemmatizer, tokenizer, summary, toAutomaton(termStrings), docTerms, annotations);
+    }
+
+    /**
+     * Create a task to enrich terms based on a single document
+     *
+     * @param termStrings The automaton matching the (lower-cased and
+     * tokenized) terms, which should be shared by all tasks
+     * @param annotations If not null, the tokens and tags of the document are
+     * read from this corpus where possible
+     */
+    public EnrichTermTask(Document doc, ThreadLocal<POSTagger> tagger, ThreadLocal<Lemmatizer> lemmatizer, ThreadLocal<Tokenizer> tokenizer, FrequencyStats summary, TokenAutomaton termStrings, ConcurrentLinkedQueue<DocumentTerm> docTerms,
+            AnnotatedCorpus annotations) {
         this.doc = doc;
         this.tagger = tagger;
         this.lemmatizer = lemmatizer;
@@ -37,40 +66,73 @@ public class EnrichTermTask implements Runnable {
         this.summary = summary;
         this.termStrings = termStrings;
         this.finalDocTerms = docTerms;
+        this.annotations = annotations;
     }
 
     @Override
     public void run() {
-        List<WordTrie> tries = new ArrayList<>();
+        // The states of the automaton after the last token. There is more than
+        // one if there is a lemmatizer, as a term may match either the token or
+        // its lemma at each position
+        int[] states = new int[]{termStrings.root()};
+        int nStates = 1;
+        int[] nextStates = new int[4];
+        int[] matches = new int[4];
         try {
-            String contents = doc.contents().toLowerCase();
-            for (String sentence : contents.split("\n")) {
-                String[] tokens;
-                try {
-                    tokens = tokenizer.get().tokenize(sentence);
-                } catch (Exception x) {
-                    System.err.println(sentence);
-                    throw x;
+            final Iterable<AnnotatedCorpus.Sentence> annotated = annotations == null ? null : annotations.get(doc.id);
+            final Iterable<AnnotatedCorpus.Sentence> sentences;
+            if (annotated != null) {
+                sentences = annotated;
+            } else if (tagger != null) {
+                sentences = AnnotatedCorpus.annotate(doc.contents().toLowerCase(), tokenizer.get(), tagger.get());
+            } else {
+                List<AnnotatedCorpus.Sentence> tokenized = new ArrayList<>();
+                for (String sentence : doc.contents().toLowerCase().split("\n")) {
+                    try {
+                        tokenized.add(new AnnotatedCorpus.Sentence(tokenizer.get().tokenize(sentence), null));
+                    } catch (Exception x) {
+                        System.err.println(sentence);
+                        throw x;
+                    }
                 }
+                sentences = tokenized;
+            }
+            for (AnnotatedCorpus.Sentence sentence : sentences) {
+                // The annotated corpus keeps the original case
+                final String[] tokens = annotated != null ? sentence.lowerCaseTokens() : sentence.tokens;
                 if (tokens.length > 0) {
-                    String[] tags = tagger == null ? null : tagger.get().tag(tokens);
-
-                    if (tags != null && tags.length != tokens.length) {
-                        throw new RuntimeException("Tagger did not return same number of tokens as tokenizer");
-                    }
+                    String[] tags = tagger == null ? null : sentence.tags;
                     String[] lemmas = lemmatizer == null ? tokens : lemmatizer.get().lemmatize(tokens, tags);
 
                     for (int i = 0; i < tokens.length; i++) {
-                        List<WordTrie> tries2 = updateTries(tries, tokens, i);
-                        if(lemmatizer != null) {
-                            tries2.addAll(updateTries(tries, lemmas, i));
+                        int nNext = 0;
+                        for (int k = 0; k < nStates; k++) {
+                            if (nNext + 2 > nextStates.length) {
+                                nextStates = Arrays.copyOf(nextStates, nextStates.length * 2);
+                            }
+                            nNext = addState(nextStates, nNext, termStrings.next(states[k], tokens[i]));
+                            if (lemmatizer != null) {
+                                nNext = addState(nextStates, nNext, termStrings.next(states[k], lemmas[i]));
+                            }
                         }
-                        for(WordTrie t : tries2) {
-                            if(t.present) {
-                                processTerm(t.word);
+                        int[] t = states;
+                        states = nextStates;
+                        nextStates = t;
+                        nStates = nNext;
+                        // Count each term ending here once, even if it is
+                        // matched by both the tokens and the lemmas
+                        int nMatches = 0;
+                        for (int k = 0; k < nStates; k++) {
+                            for (int m = termStrings.match(states[k]); m >= 0; m = termStrings.nextMatch(m)) {
+                                if (!contains(matches, nMatches, m)) {
+                                    if (nMatches == matches.length) {
+                                        matches = Arrays.copyOf(matches, nMatches * 2);
+                                    }
+                                    matches[nMatches++] = m;
+                                    processTerm(termStrings.term(m));
+                                }
                             }
                         }
-                        tries = tries2;
                     }
                 }
                 stats.tokens += tokens.length;
@@ -89,18 +151,38 @@ public class EnrichTermTask implements Runnable {
         } 
     }
 
-    private List<WordTrie> updateTries(final List<WordTrie> tries, final String[] tokens, final int i) {
-        List<WordTrie> tries2 = new ArrayList<>();
-        for(WordTrie trie : tries) {
-            WordTrie t = trie.get(tokens[i]);
-            if(t != null) {
-                tries2.add(t);
+    private static int addState(int[] states, int n, int state) {
+        if (!contains(states, n, state)) {
+            states[n++] = state;
+        }
+        return n;
+    }
+
+    private static boolean contains(int[] xs, int n, int x) {
+        for (int i = 0; i < n; i++) {
+            if (xs[i] == x) {
+                return true;
             }
         }
-        if(termStrings.containsKey(tokens[i])) {
-            tries2.add(termStrings.get(tokens[i]));
+        return false;
+    }
+
+    /* Convert a trie to an automaton, keeping the tokens of each term */
+    private static TokenAutomaton toAutomaton(WordTrie trie) {
+        List<String[]> terms = new ArrayList<>();
+        collectTerms(trie, new ArrayList<String>(), terms);
+        return new TokenAutomaton(terms);
+    }
+
+    private static void collectTerms(WordTrie trie, List<String> path, List<String[]> terms) {
+        if (trie.present && !path.isEmpty()) {
+            terms.add(path.toArray(new String[path.size()]));
+        }
+        for (Map.Entry<String, WordTrie> e : trie.entrySet()) {
+            path.add(e.getKey());
+            collectTerms(e.getValue(), path, terms);
+            path.remove(path.size() - 1);
         }
-        return tries2;
     }
 
     private void processTerm(String termCandidate) {
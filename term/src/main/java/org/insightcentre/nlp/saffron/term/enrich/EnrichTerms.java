@@ -40,7 +40,10 @@ import org.insightcentre.nlp.saffron.data.Status;
 import org.insightcentre.nlp.saffron.data.Term;
 import org.insightcentre.nlp.saffron.data.connections.DocumentTerm;
 import org.insightcentre.nlp.saffron.documentindex.CorpusTools;
+import org.insightcentre.nlp.saffron.term.AnnotatedCorpus;
+import org.insightcentre.nlp.saffron.term.CachingLemmatizer;
 import org.insightcentre.nlp.saffron.term.FrequencyStats;
+import org.insightcentre.nlp.saffron.term.TokenAutomaton;
 
 /**
  * This is used to create a Doc-Terms file from a taxonomy, such as those used
@@ -133,7 +136,7 @@ public class EnrichTerms {
             if (config.lemmatizerModel == null) {
                 lemmatizer = null;
             } else {
-                final Lemmatizer dictLemmatizer;
+                final DictionaryLemmatizer dictLemmatizer;
                 try {
                     dictLemmatizer = new DictionaryLemmatizer(config.lemmatizerModel.toFile());
                 } catch (IOException x) {
@@ -142,7 +145,7 @@ public class EnrichTerms {
                 lemmatizer = new ThreadLocal<Lemmatizer>() {
                     @Override
                     protected Lemmatizer initialValue() {
-                        return dictLemmatizer;
+                        return new CachingLemmatizer(dictLemmatizer);
                     }
                 };
             }
@@ -153,6 +156,17 @@ public class EnrichTerms {
 
     public static Result enrich(Set<String> termStrings, Corpus corpus, int nThreads,
             ThreadLocal<POSTagger> tagger, ThreadLocal<Lemmatizer> lemmatizer, ThreadLocal<Tokenizer> tokenizer) {
+        return enrich(termStrings, corpus, nThreads, tagger, lemmatizer, tokenizer, null);
+    }
+
+    /**
+     * Enrich the terms, reading the tokens and tags of the documents from an
+     * annotated corpus (created with the same tokenizer and tagger) where
+     * possible
+     */
+    public static Result enrich(Set<String> termStrings, Corpus corpus, int nThreads,
+            ThreadLocal<POSTagger> tagger, ThreadLocal<Lemmatizer> lemmatizer, ThreadLocal<Tokenizer> tokenizer,
+            AnnotatedCorpus annotations) {
         try {
             ExecutorService service = new ThreadPoolExecutor(nThreads, nThreads, 0,
                     TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(1000),
@@ -161,8 +175,10 @@ public class EnrichTerms {
             final FrequencyStats summary = new FrequencyStats();
             final ConcurrentLinkedQueue<DocumentTerm> dts = new ConcurrentLinkedQueue<>();
 
+            // All documents share one automaton of the terms
+            final TokenAutomaton automaton = TokenAutomaton.fromTerms(termStrings, tokenizer.get());
             for (Document d : corpus.getDocuments()) {
-                service.submit(new EnrichTermTask(d, tagger, lemmatizer, tokenizer, summary, makeTrie(termStrings, tokenizer), dts));
+                service.submit(new EnrichTermTask(d, tagger, lemmatizer, tokenizer, summary, automaton, dts, annotations));
             }
 
             service.shutdown();
@@ -310,15 +326,6 @@ public class EnrichTerms {
         }
     }
 
-    private static WordTrie makeTrie(Set<String> termStrings, ThreadLocal<Tokenizer> _tokenizer) {
-        Tokenizer tokenizer = _tokenizer.get();
-        WordTrie trie = new WordTrie("");
-        for (String termString : termStrings) {
-            trie.addTokenized(tokenizer.tokenize(termString.toLowerCase()));
-        }
-        return trie;
-    }
-
     public static class WordTrie extends AbstractMap<String, WordTrie> {
 
         final Map<String, WordTrie> trie;
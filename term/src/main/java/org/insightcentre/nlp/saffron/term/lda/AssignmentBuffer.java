@@ -26,6 +26,8 @@
  */
 package org.insightcentre.nlp.saffron.term.lda;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
@@ -85,11 +87,20 @@ public class AssignmentBuffer {
         pos = 0;
     }
 
+    /**
+     * The number of values (words and topics) in the buffer
+     *
+     * @return The number of ints in the buffer
+     */
+    public long size() {
+        return fileSize / 4;
+    }
+
     public static AssignmentBuffer interleavedFrom(File corpus) throws IOException {
-        final DataInputStream data = new DataInputStream(openInputAsMaybeZipped(corpus));
+        final DataInputStream data = new DataInputStream(new BufferedInputStream(openInputAsMaybeZipped(corpus), 1 << 16));
         final File tmpFile = File.createTempFile("assign", ".buf");
         tmpFile.deleteOnExit();
-        final DataOutputStream out = new DataOutputStream(new FileOutputStream(tmpFile));
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16));
         while(data.available() > 0) {
             try {
                 int i = data.readInt();
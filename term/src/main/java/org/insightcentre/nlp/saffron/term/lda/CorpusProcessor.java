@@ -2,6 +2,7 @@ package org.insightcentre.nlp.saffron.term.lda;
 
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
@@ -10,6 +11,7 @@ import java.io.RandomAccessFile;
 import opennlp.tools.tokenize.Tokenizer;
 import org.insightcentre.nlp.saffron.data.Corpus;
 import org.insightcentre.nlp.saffron.data.Document;
+import org.insightcentre.nlp.saffron.term.AnnotatedCorpus;
 
 /**
  * Converts a Saffron Corpus into an assignment buffer for the LDA algorithm
@@ -19,27 +21,36 @@ import org.insightcentre.nlp.saffron.data.Document;
 public class CorpusProcessor {
 
     public static Result convert(Corpus searcher, ThreadLocal<Tokenizer> tokenizer) throws IOException {
+        return convert(searcher, tokenizer, null);
+    }
+
+    /**
+     * Convert a corpus, reading the tokens from an annotated corpus where
+     * possible
+     *
+     * @param searcher The corpus
+     * @param tokenizer The tokenizer for documents that are not annotated
+     * @param annotations The annotated corpus (may be null)
+     * @return The assignment buffer and dictionary
+     * @throws IOException If the buffer could not be written
+     */
+    public static Result convert(Corpus searcher, ThreadLocal<Tokenizer> tokenizer,
+            AnnotatedCorpus annotations) throws IOException {
         final Object2IntMap<String> dictionary = new Object2IntOpenHashMap<>();
         final File tmpFile = File.createTempFile("assign", ".buf");
         tmpFile.deleteOnExit();
         int J = 0;
-        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmpFile))) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16))) {
             for (Document doc : searcher.getDocuments()) {
-
-                String contents = doc.contents();
-                for (String sentence : contents.split("\n")) {
-
-                    String[] tokens = tokenizer.get().tokenize(sentence.toLowerCase());
-                    for (String token : tokens) {
-                        final int i;
-                        if (dictionary.containsKey(token)) {
-                            i = dictionary.getInt(token);
-                        } else {
-                            i = dictionary.size();
-                            dictionary.put(token, i);
-                        }
-                        out.writeInt(i);
-                        out.writeInt(0);
+                final Iterable<AnnotatedCorpus.Sentence> sentences = annotations == null ? null : annotations.get(doc.id);
+                if (sentences != null) {
+                    for (AnnotatedCorpus.Sentence sentence : sentences) {
+                        write(out, dictionary, sentence.lowerCaseTokens());
+                    }
+                } else {
+                    String contents = doc.contents();
+                    for (String sentence : contents.split("\n")) {
+                        write(out, dictionary, tokenizer.get().tokenize(sentence.toLowerCase()));
                     }
                 }
                 out.writeInt(-1);
@@ -53,6 +64,20 @@ public class CorpusProcessor {
 
     }
 
+    private static void write(DataOutputStream out, Object2IntMap<String> dictionary, String[] tokens) throws IOException {
+        for (String token : tokens) {
+            final int i;
+            if (dictionary.containsKey(token)) {
+                i = dictionary.getInt(token);
+            } else {
+                i = dictionary.size();
+                dictionary.put(token, i);
+            }
+            out.writeInt(i);
+            out.writeInt(0);
+        }
+    }
+
     public static class Result {
 
         final public AssignmentBuffer buffer;
@@ -6,6 +6,7 @@ import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import java.io.IOException;
 import opennlp.tools.tokenize.Tokenizer;
 import org.insightcentre.nlp.saffron.data.Corpus;
+import org.insightcentre.nlp.saffron.term.AnnotatedCorpus;
 import org.insightcentre.nlp.saffron.term.FrequencyStats;
 
 /**
@@ -33,14 +34,108 @@ public class NovelTopicModel {
     }
     
    public static NovelTopicModel initialize(Corpus searcher, ThreadLocal<Tokenizer> tokenizer) throws IOException {
-       CorpusProcessor.Result r = CorpusProcessor.convert(searcher, tokenizer);
-       LDA lda = new LDA(r.buffer, K, r.docCount, r.dictionary.size(), alpha, beta);
+       return initialize(searcher, tokenizer, null);
+   }
+
+   /**
+    * Train the topic model on a corpus
+    * 
+    * @param searcher The corpus
+    * @param tokenizer The tokenizer
+    * @param annotations The tokenized corpus (if not null, documents are only
+    *   tokenized if they are not in this corpus)
+    * @return The trained model
+    * @throws IOException If the assignment buffer could not be written
+    */
+   public static NovelTopicModel initialize(Corpus searcher, ThreadLocal<Tokenizer> tokenizer,
+           AnnotatedCorpus annotations) throws IOException {
+       return initialize(searcher, tokenizer, annotations, Sampler.auto, 1);
+   }
+
+   /**
+    * The implementation of LDA used to train the model
+    */
+   public enum Sampler {
+       /** Collapsed Gibbs sampling on one thread, with the topic assignments
+        * on disk */
+       gibbs,
+       /** SparseLDA sampling on several threads, with the corpus in memory */
+       sparse,
+       /** SparseLDA if the corpus fits in memory, otherwise Gibbs sampling */
+       auto
+   }
+
+   /**
+    * Train the topic model on a corpus
+    * 
+    * @param searcher The corpus
+    * @param tokenizer The tokenizer
+    * @param annotations The tokenized corpus (if not null, documents are only
+    *   tokenized if they are not in this corpus)
+    * @param sampler The implementation of LDA
+    * @param nThreads The number of threads for the sparse sampler
+    * @return The trained model
+    * @throws IOException If the assignment buffer could not be written
+    */
+   public static NovelTopicModel initialize(Corpus searcher, ThreadLocal<Tokenizer> tokenizer,
+           AnnotatedCorpus annotations, Sampler sampler, int nThreads) throws IOException {
+       CorpusProcessor.Result r = CorpusProcessor.convert(searcher, tokenizer, annotations);
+       final int W = r.dictionary.size();
+       if(sampler == Sampler.auto) {
+           nThreads = threadsInMemory(SparseLDA.tokenCount(r.buffer, r.docCount), r.docCount, W, nThreads);
+       }
+       if(sampler == Sampler.sparse || (sampler == Sampler.auto && nThreads > 0)) {
+           try {
+               return trainSparse(r, W, Math.max(1, nThreads));
+           } catch(IllegalArgumentException x) {
+               if(sampler == Sampler.sparse) {
+                   throw x;
+               }
+           }
+       }
+       return trainGibbs(r, W);
+   }
+
+   /* The largest number of threads (up to nThreads) for which the sparse
+      sampler fits in the free memory, or 0 if it does not fit at all */
+   private static int threadsInMemory(long tokens, int J, int W, int nThreads) {
+       final Runtime rt = Runtime.getRuntime();
+       final long free = rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+       for(int t = Math.max(1, nThreads); t > 0; t--) {
+           if(SparseLDA.memoryRequired(tokens, J, W, K, t) < free / 4 * 3) {
+               return t;
+           }
+       }
+       return 0;
+   }
+
+   private static NovelTopicModel trainSparse(CorpusProcessor.Result r, int W, int nThreads) throws IOException {
+       SparseLDA lda = SparseLDA.read(r.buffer, r.docCount, K, W, alpha, beta, nThreads, 0);
        lda.train(iterations, verbose);
        if(verbose) {
             lda.printAssignment(reverseDictionary(r.dictionary));
        }
-       final double[][] P_wk = new double[r.dictionary.size()][K];
-       for(int w = 0; w < r.dictionary.size(); w++) {
+       final double[][] P_wk = new double[W][K];
+       for(int w = 0; w < W; w++) {
+           for(int k = 0; k < K; k++) {
+               P_wk[w][k] = ((double)lda.wordTopicCount(w, k) + alpha) / ((double)lda.topicCount(k) + K * alpha);
+           }
+       }
+       int minTopicFreq = Integer.MAX_VALUE;
+       for(int k = 0; k < K; k++) {
+           minTopicFreq = Math.min(minTopicFreq, lda.topicCount(k));
+       }
+       return new NovelTopicModel(P_wk, r.dictionary, (double)minTopicFreq + K * alpha);
+   }
+
+   private static NovelTopicModel trainGibbs(CorpusProcessor.Result r, int W) throws IOException {
+       LDA lda = new LDA(r.buffer, K, r.docCount, W, alpha, beta);
+       lda.train(iterations, verbose);
+       if(verbose) {
+            lda.printAssignment(reverseDictionary(r.dictionary));
+       }
+       final double[][] P_wk = new double[W][K];
+       for(int w = 0; w < W; w++) {
            for(int k = 0; k < K; k++) {
                P_wk[w][k] = ((double)lda.N_kw[k][w] + alpha) / ((double)lda.N_k[k] + K * alpha);
            }
@@ -50,7 +145,7 @@ public class NovelTopicModel {
            minTopicFreq = Math.min(minTopicFreq, lda.N_k[k]);
        }
        return new NovelTopicModel(P_wk, r.dictionary, (double)minTopicFreq + K * alpha);
-   } 
+   }
    
    public double novelTopicModel(String term, FrequencyStats stats) {
        String[] words = term.split(" ");
@@ -0,0 +1,494 @@
+package org.insightcentre.nlp.saffron.term.lda;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Latent Dirichlet Allocation by the SparseLDA sampler of Yao, Mimno and
+ * McCallum (2009), with the documents divided between several threads.
+ *
+ * The sampling distribution of a token is split into a smoothing bucket, a
+ * bucket over the topics of the document and a bucket over the topics of the
+ * word, which are either cached or sparse, so sampling a token costs much less
+ * than O(K). The topic counts of each word are kept in descending order with
+ * the count and topic packed into a single int.
+ *
+ * Each thread samples its own documents against a copy of the word-topic
+ * counts, and the counts are synchronized at the end of every iteration (as
+ * in approximate distributed LDA). All the tokens and their topic
+ * assignments are kept in memory, see
+ * {@link #memoryRequired(long, int, int, int, int)}.
+ *
+ * @author John McCrae
+ */
+public class SparseLDA {
+
+    /**
+     * Number of topics
+     */
+    private final int K;
+    /**
+     * Number of documents
+     */
+    private final int J;
+    /**
+     * Number of words in vocabulary
+     */
+    private final int W;
+    private final double alpha, beta, betaSum;
+    private final int topicBits, topicMask;
+    /**
+     * The word of each token
+     */
+    private final int[] words;
+    /**
+     * The topic of each token
+     */
+    private final int[] z;
+    /**
+     * The index of the first token of each document (and the number of tokens)
+     */
+    private final int[] docStarts;
+    /**
+     * Counts, by word and then topic
+     */
+    private final int[] N_wk;
+    private final int[] N_k;
+    private final Worker[] workers;
+    private final long seed;
+
+    /**
+     * Create a sampler
+     *
+     * @param words The word of each token, with the tokens of each document
+     * in order
+     * @param docStarts The index of the first token of each document, followed
+     * by the number of tokens
+     * @param K The number of topics
+     * @param W The number of words in the vocabulary
+     * @param alpha The document-topic prior
+     * @param beta The topic-word prior
+     * @param nThreads The number of threads to sample with
+     * @param seed The random seed
+     * @throws IllegalArgumentException If a word is too frequent for the
+     * packed counts
+     */
+    public SparseLDA(int[] words, int[] docStarts, int K, int W, double alpha, double beta,
+            int nThreads, long seed) {
+        this.K = K;
+        this.J = docStarts.length - 1;
+        this.W = W;
+        this.alpha = alpha;
+        this.beta = beta;
+        this.betaSum = W * beta;
+        this.topicBits = 32 - Integer.numberOfLeadingZeros(Math.max(K - 1, 1));
+        this.topicMask = (1 << topicBits) - 1;
+        this.words = words;
+        this.z = new int[words.length];
+        this.docStarts = docStarts;
+        this.N_wk = new int[W * K];
+        this.N_k = new int[K];
+        this.seed = seed;
+        final int[] freq = new int[W];
+        final int maxCount = (1 << (31 - topicBits)) - 1;
+        for (int w : words) {
+            if (++freq[w] > maxCount) {
+                throw new IllegalArgumentException("Word " + w + " occurs too often for " + K + " topics");
+            }
+        }
+        this.workers = partition(Math.max(1, Math.min(nThreads, J)));
+    }
+
+    /**
+     * Read the tokens of an assignment buffer into memory
+     *
+     * @param corpus The buffer
+     * @param J The number of documents
+     * @param K The number of topics
+     * @param W The number of words in the vocabulary
+     * @param alpha The document-topic prior
+     * @param beta The topic-word prior
+     * @param nThreads The number of threads to sample with
+     * @param seed The random seed
+     * @return The sampler
+     * @throws IOException If the buffer could not be read
+     * @throws IllegalArgumentException If the corpus is too large to be held
+     * in arrays
+     */
+    public static SparseLDA read(AssignmentBuffer corpus, int J, int K, int W, double alpha, double beta,
+            int nThreads, long seed) throws IOException {
+        final long tokens = tokenCount(corpus, J);
+        if (tokens > Integer.MAX_VALUE - 8 || (long) W * K > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Corpus is too large to sample in memory");
+        }
+        final int[] words = new int[(int) tokens];
+        final int[] docStarts = new int[J + 1];
+        corpus.reset();
+        int n = 0, j = 0;
+        while (corpus.hasNext()) {
+            final int w = corpus.getNext();
+            corpus.getNext();
+            if (w == -1) {
+                docStarts[++j] = n;
+            } else {
+                words[n++] = w;
+            }
+        }
+        corpus.reset();
+        return new SparseLDA(words, docStarts, K, W, alpha, beta, nThreads, seed);
+    }
+
+    /**
+     * The number of tokens in an assignment buffer
+     *
+     * @param corpus The buffer
+     * @param J The number of documents
+     * @return The number of tokens
+     */
+    public static long tokenCount(AssignmentBuffer corpus, int J) {
+        return corpus.size() / 2 - J;
+    }
+
+    /**
+     * Estimate the memory needed to sample a corpus
+     *
+     * @param tokens The number of tokens
+     * @param J The number of documents
+     * @param W The number of words in the vocabulary
+     * @param K The number of topics
+     * @param nThreads The number of threads
+     * @return The number of bytes needed
+     */
+    public static long memoryRequired(long tokens, int J, int W, int K, int nThreads) {
+        // words and topics of the tokens, the global counts and a copy of the
+        // counts for each thread
+        return 8L * tokens + 4L * (J + 1) + 4L * W * K * (nThreads + 1) + 4L * W;
+    }
+
+    /* Divide the documents into contiguous ranges with similar numbers of tokens */
+    private Worker[] partition(int nThreads) {
+        final Worker[] ws = new Worker[nThreads];
+        final long tokens = words.length;
+        int from = 0;
+        for (int t = 0; t < nThreads; t++) {
+            int to = from;
+            final long target = tokens * (t + 1) / nThreads;
+            while (to < J && (t == nThreads - 1 || docStarts[to + 1] <= target || to == from)) {
+                to++;
+            }
+            ws[t] = new Worker(from, to, new Random(seed * 31 + t));
+            from = to;
+        }
+        return ws;
+    }
+
+    public void train(int iterations, boolean verbose) {
+        if (verbose) {
+            System.err.println("Initializing");
+        }
+        initialize();
+        final ExecutorService service = workers.length > 1 ? Executors.newFixedThreadPool(workers.length) : null;
+        try {
+            for (int i = 0; i < iterations; i++) {
+                final long begin = System.currentTimeMillis();
+                iterate(service);
+                final long time = System.currentTimeMillis() - begin;
+                final long eta = time * (iterations - i - 1) / 1000;
+                if (verbose) {
+                    System.err.println("Iteration " + (i + 1) + " ETA " + String.format("%dh%02dm%02ds", eta / 3600, (eta % 3600) / 60, (eta % 60)));
+                }
+            }
+        } finally {
+            if (service != null) {
+                service.shutdown();
+            }
+        }
+    }
+
+    private void initialize() {
+        final Random random = new Random(seed);
+        for (int i = 0; i < words.length; i++) {
+            final int k = random.nextInt(K);
+            z[i] = k;
+            N_wk[words[i] * K + k]++;
+            N_k[k]++;
+        }
+    }
+
+    private void iterate(ExecutorService service) {
+        if (service == null) {
+            workers[0].call();
+        } else {
+            try {
+                final List<Future<Void>> futures = service.invokeAll(Arrays.asList(workers));
+                for (Future<Void> f : futures) {
+                    f.get();
+                }
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(x);
+            } catch (ExecutionException x) {
+                throw new RuntimeException(x.getCause());
+            }
+        }
+        // Synchronize the counts
+        for (Worker worker : workers) {
+            final int[] log = worker.changes.elements();
+            final int n = worker.changes.size();
+            for (int i = 0; i < n; i += 3) {
+                final int w = log[i], oldK = log[i + 1], k = log[i + 2];
+                N_wk[w * K + oldK]--;
+                N_k[oldK]--;
+                N_wk[w * K + k]++;
+                N_k[k]++;
+            }
+            worker.changes.clear();
+        }
+    }
+
+    /**
+     * The number of tokens of a word assigned to a topic
+     *
+     * @param w The word
+     * @param k The topic
+     * @return The count
+     */
+    public int wordTopicCount(int w, int k) {
+        return N_wk[w * K + k];
+    }
+
+    /**
+     * The number of tokens assigned to a topic
+     *
+     * @param k The topic
+     * @return The count
+     */
+    public int topicCount(int k) {
+        return N_k[k];
+    }
+
+    public void printAssignment(Int2ObjectMap<String> dictionary) {
+        System.out.println("Assignment:");
+        for (int j = 0; j < J; j++) {
+            for (int i = docStarts[j]; i < docStarts[j + 1]; i++) {
+                System.out.print(String.format("%s=%d ", dictionary.getOrDefault(words[i], "???"), z[i]));
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * Samples a range of documents. Only the worker reads or writes the topics
+     * of its documents and its copy of the counts.
+     */
+    private class Worker implements Callable<Void> {
+
+        private final int from, to;
+        private final Random random;
+        /* The packed (count, topic) pairs of each word, in descending order
+           and followed by zeros */
+        private final int[] wordTopics;
+        private final int[] topicCounts;
+        private final int[] docCounts;
+        private final int[] docTopics;
+        private final double[] cachedCoefficients;
+        private final double[] scores;
+        /* The word, old topic and new topic of each reassigned token */
+        private final IntArrayList changes = new IntArrayList();
+        private int nDocTopics;
+        private double smoothingOnlyMass, topicBetaMass;
+
+        Worker(int from, int to, Random random) {
+            this.from = from;
+            this.to = to;
+            this.random = random;
+            this.wordTopics = new int[W * K];
+            this.topicCounts = new int[K];
+            this.docCounts = new int[K];
+            this.docTopics = new int[K];
+            this.cachedCoefficients = new double[K];
+            this.scores = new double[K];
+        }
+
+        @Override
+        public Void call() {
+            copyCounts();
+            smoothingOnlyMass = 0.0;
+            for (int k = 0; k < K; k++) {
+                smoothingOnlyMass += alpha * beta / (betaSum + topicCounts[k]);
+            }
+            for (int j = from; j < to; j++) {
+                sampleDocument(j);
+            }
+            return null;
+        }
+
+        private void copyCounts() {
+            System.arraycopy(N_k, 0, topicCounts, 0, K);
+            for (int w = 0; w < W; w++) {
+                final int base = w * K;
+                int n = 0;
+                for (int k = 0; k < K; k++) {
+                    final int c = N_wk[base + k];
+                    if (c > 0) {
+                        final int e = (c << topicBits) | k;
+                        int p = base + n++;
+                        while (p > base && wordTopics[p - 1] < e) {
+                            wordTopics[p] = wordTopics[p - 1];
+                            p--;
+                        }
+                        wordTopics[p] = e;
+                    }
+                }
+                Arrays.fill(wordTopics, base + n, base + K, 0);
+            }
+        }
+
+        private void sampleDocument(int j) {
+            final int start = docStarts[j], end = docStarts[j + 1];
+            Arrays.fill(docCounts, 0);
+            for (int i = start; i < end; i++) {
+                docCounts[z[i]]++;
+            }
+            nDocTopics = 0;
+            topicBetaMass = 0.0;
+            for (int k = 0; k < K; k++) {
+                final double denom = betaSum + topicCounts[k];
+                if (docCounts[k] > 0) {
+                    docTopics[nDocTopics++] = k;
+                    topicBetaMass += beta * docCounts[k] / denom;
+                }
+                cachedCoefficients[k] = (alpha + docCounts[k]) / denom;
+            }
+            for (int i = start; i < end; i++) {
+                final int w = words[i];
+                final int oldK = z[i];
+                remove(w, oldK);
+                final int k = sample(w);
+                add(w, k);
+                if (k != oldK) {
+                    z[i] = k;
+                    changes.add(w);
+                    changes.add(oldK);
+                    changes.add(k);
+                }
+            }
+        }
+
+        private void remove(int w, int k) {
+            updateMasses(k, -1);
+            if (docCounts[k] == 0) {
+                for (int t = 0; t < nDocTopics; t++) {
+                    if (docTopics[t] == k) {
+                        docTopics[t] = docTopics[--nDocTopics];
+                        break;
+                    }
+                }
+            }
+            final int base = w * K;
+            int p = base;
+            while ((wordTopics[p] & topicMask) != k) {
+                p++;
+            }
+            final int c = (wordTopics[p] >>> topicBits) - 1;
+            if (c == 0) {
+                while (p + 1 < base + K && wordTopics[p + 1] != 0) {
+                    wordTopics[p] = wordTopics[p + 1];
+                    p++;
+                }
+                wordTopics[p] = 0;
+            } else {
+                final int e = (c << topicBits) | k;
+                while (p + 1 < base + K && wordTopics[p + 1] > e) {
+                    wordTopics[p] = wordTopics[p + 1];
+                    p++;
+                }
+                wordTopics[p] = e;
+            }
+        }
+
+        private void add(int w, int k) {
+            updateMasses(k, +1);
+            if (docCounts[k] == 1) {
+                docTopics[nDocTopics++] = k;
+            }
+            final int base = w * K;
+            int p = base;
+            while (wordTopics[p] != 0 && (wordTopics[p] & topicMask) != k) {
+                p++;
+            }
+            final int e = (((wordTopics[p] >>> topicBits) + 1) << topicBits) | k;
+            while (p > base && wordTopics[p - 1] < e) {
+                wordTopics[p] = wordTopics[p - 1];
+                p--;
+            }
+            wordTopics[p] = e;
+        }
+
+        /* Change the count of a topic in this document and the buckets that
+           depend on it */
+        private void updateMasses(int k, int delta) {
+            double denom = betaSum + topicCounts[k];
+            smoothingOnlyMass -= alpha * beta / denom;
+            topicBetaMass -= beta * docCounts[k] / denom;
+            docCounts[k] += delta;
+            topicCounts[k] += delta;
+            denom = betaSum + topicCounts[k];
+            smoothingOnlyMass += alpha * beta / denom;
+            topicBetaMass += beta * docCounts[k] / denom;
+            cachedCoefficients[k] = (alpha + docCounts[k]) / denom;
+        }
+
+        private int sample(int w) {
+            final int base = w * K;
+            double topicTermMass = 0.0;
+            int n = 0;
+            while (n < K && wordTopics[base + n] != 0) {
+                final int e = wordTopics[base + n];
+                scores[n] = cachedCoefficients[e & topicMask] * (e >>> topicBits);
+                topicTermMass += scores[n];
+                n++;
+            }
+            double u = random.nextDouble() * (smoothingOnlyMass + topicBetaMass + topicTermMass);
+            if (u < topicTermMass) {
+                int t = 0;
+                while (t < n - 1 && u >= scores[t]) {
+                    u -= scores[t++];
+                }
+                return wordTopics[base + t] & topicMask;
+            }
+            u -= topicTermMass;
+            if (u < topicBetaMass && nDocTopics > 0) {
+                u /= beta;
+                int t = 0;
+                for (; t < nDocTopics - 1; t++) {
+                    final int k = docTopics[t];
+                    u -= docCounts[k] / (betaSum + topicCounts[k]);
+                    if (u < 0) {
+                        break;
+                    }
+                }
+                return docTopics[t];
+            }
+            u = (u - topicBetaMass) / beta;
+            int k = 0;
+            for (; k < K - 1; k++) {
+                u -= alpha / (betaSum + topicCounts[k]);
+                if (u < 0) {
+                    break;
+                }
+            }
+            return k;
+        }
+    }
+}
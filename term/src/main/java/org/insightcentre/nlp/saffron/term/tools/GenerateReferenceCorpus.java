@@ -1,14 +1,17 @@
 package org.insightcentre.nlp.saffron.term.tools;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Collections;
+import java.util.zip.GZIPInputStream;
 
 import org.insightcentre.nlp.saffron.config.Configuration;
 import org.insightcentre.nlp.saffron.config.TermExtractionConfiguration;
 import org.insightcentre.nlp.saffron.data.CollectionCorpus;
 import org.insightcentre.nlp.saffron.data.Corpus;
 import org.insightcentre.nlp.saffron.term.FrequencyStats;
+import org.insightcentre.nlp.saffron.term.MappedReferenceStats;
 import org.insightcentre.nlp.saffron.term.TermExtraction;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -18,7 +21,10 @@ import joptsimple.OptionSet;
 
 /**
  * Converts a Saffron corpus into reference corpus to be used with 'Weirdness' and 'Relevance'
- * term extraction metrics
+ * term extraction metrics. If the output file ends in <code>.bin</code> the
+ * reference corpus is written in the binary format of {@link MappedReferenceStats},
+ * otherwise it is written as JSON. An existing JSON reference corpus may also
+ * be converted to the binary format.
  * 
  * @author Bianca Pereira
  *
@@ -32,6 +38,14 @@ public class GenerateReferenceCorpus {
 	        System.exit(-1);
 	    }
 	
+	private static void write(FrequencyStats stats, File output, ObjectMapper mapper) throws IOException {
+	    if (output.getName().endsWith(".bin")) {
+	        MappedReferenceStats.write(stats, output);
+	    } else {
+	        mapper.writerWithDefaultPrettyPrinter().writeValue(output, stats);
+	    }
+	}
+
 	public static void main(String[] args) {
 		
 		try { 
@@ -39,6 +53,7 @@ public class GenerateReferenceCorpus {
 	            {
 	                accepts("c", "The configuration to use").withRequiredArg().ofType(File.class);
 	                accepts("x", "The corpus to read (in Saffron format)").withRequiredArg().ofType(File.class);
+	                accepts("r", "An existing reference corpus (in JSON) to convert instead of a corpus").withRequiredArg().ofType(File.class);
 	                accepts("o", "The output file with the reference corpus").withRequiredArg().ofType(File.class);
 	            }
 	        };
@@ -53,6 +68,19 @@ public class GenerateReferenceCorpus {
 	
 	        ObjectMapper mapper = new ObjectMapper();
 	           
+	        if (os.valueOf("o") == null) {
+	            badOptions(p, "Output file is required");
+	            return;
+	        }
+	        final File output = (File) os.valueOf("o");
+	        if (os.valueOf("r") != null) {
+	            final File refFile = (File) os.valueOf("r");
+	            final FrequencyStats stats = refFile.getName().endsWith(".gz")
+	                    ? mapper.readValue(new GZIPInputStream(new FileInputStream(refFile)), FrequencyStats.class)
+	                    : mapper.readValue(refFile, FrequencyStats.class);
+	            write(stats, output, mapper);
+	            return;
+	        }
 	        if (os.valueOf("c") == null) {
 	            badOptions(p, "Configuration is required");
 	            return;
@@ -61,16 +89,12 @@ public class GenerateReferenceCorpus {
 	            badOptions(p, "Corpus is required");
 	            return;
 	        }
-	        if (os.valueOf("o") == null) {
-	            badOptions(p, "Output file is required");
-	            return;
-	        }
 	        
 	    	/*
 	    	 * 1 - Read Saffron corpus
 	    	 * 2 - Perform Term Extraction
 	    	 * 3 - Get only the FrequencyStats
-	    	 * 4 - Print it to a JSON file
+	    	 * 4 - Print it to a JSON (or binary) file
 	    	 */
 	        
 	        TermExtractionConfiguration config = mapper.readValue((File) os.valueOf("c"), Configuration.class).termExtraction;
@@ -81,7 +105,7 @@ public class GenerateReferenceCorpus {
 	        TermExtraction extractor = new TermExtraction(config);
 	        FrequencyStats stats = extractor.extractStats(corpus, null, null, Collections.EMPTY_SET).frequencyStats;
 	        
-	        mapper.writerWithDefaultPrettyPrinter().writeValue((File) os.valueOf("o"), stats);
+	        write(stats, output, mapper);
 	        
 	        
 		} catch (Exception x) {
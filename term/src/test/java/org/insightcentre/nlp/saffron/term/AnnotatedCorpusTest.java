@@ -0,0 +1,98 @@
+package org.insightcentre.nlp.saffron.term;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import opennlp.tools.postag.POSTagger;
+import opennlp.tools.tokenize.SimpleTokenizer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class AnnotatedCorpusTest {
+
+    public AnnotatedCorpusTest() {
+    }
+
+    private static POSTagger tagger() {
+        POSTagger tagger = mock(POSTagger.class);
+        when(tagger.tag(any(String[].class))).then(invocation -> {
+            String[] tokens = (String[]) invocation.getArguments()[0];
+            String[] tags = new String[tokens.length];
+            for (int i = 0; i < tokens.length; i++) {
+                tags[i] = Character.isUpperCase(tokens[i].charAt(0)) ? "NNP" : "NN";
+            }
+            return tags;
+        });
+        return tagger;
+    }
+
+    private static List<List<String>> flatten(Iterable<AnnotatedCorpus.Sentence> sentences) {
+        List<List<String>> result = new ArrayList<>();
+        for (AnnotatedCorpus.Sentence s : sentences) {
+            List<String> l = new ArrayList<>(Arrays.asList(s.tokens));
+            l.addAll(Arrays.asList(s.tags));
+            result.add(l);
+        }
+        return result;
+    }
+
+    /**
+     * Test that annotations written from many threads are read back
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        System.out.println("roundTrip");
+        final POSTagger tagger = tagger();
+        final List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            texts.add("This is Document " + i + "\n\nWith a second sentence of " + (i % 7) + " words");
+        }
+        try (AnnotatedCorpus corpus = AnnotatedCorpus.create()) {
+            ExecutorService service = Executors.newFixedThreadPool(4);
+            for (int i = 0; i < texts.size(); i++) {
+                final int j = i;
+                service.submit(() -> corpus.put("doc" + j,
+                        AnnotatedCorpus.annotate(texts.get(j), SimpleTokenizer.INSTANCE, tagger)));
+            }
+            service.shutdown();
+            service.awaitTermination(1, TimeUnit.MINUTES);
+            assertNull(corpus.get("doc0"));
+            corpus.seal();
+            assertTrue(corpus.isSealed());
+            assertEquals(200, corpus.size());
+            for (int i = 0; i < texts.size(); i++) {
+                List<List<String>> expected = flatten(AnnotatedCorpus.annotate(texts.get(i), SimpleTokenizer.INSTANCE, tagger));
+                assertEquals(expected, flatten(corpus.get("doc" + i)));
+                // Can be iterated more than once
+                assertEquals(expected, flatten(corpus.get("doc" + i)));
+            }
+            assertEquals(3, flatten(corpus.get("doc5")).size());
+            assertNull(corpus.get("doc200"));
+        }
+    }
+
+    /**
+     * Documents that are annotated twice are not read from the corpus
+     */
+    @Test
+    public void testDuplicate() throws Exception {
+        System.out.println("duplicate");
+        final POSTagger tagger = tagger();
+        try (AnnotatedCorpus corpus = AnnotatedCorpus.create()) {
+            corpus.put("doc", AnnotatedCorpus.annotate("first text", SimpleTokenizer.INSTANCE, tagger));
+            corpus.put("doc", AnnotatedCorpus.annotate("second text", SimpleTokenizer.INSTANCE, tagger));
+            corpus.put("other", AnnotatedCorpus.annotate("other text", SimpleTokenizer.INSTANCE, tagger));
+            corpus.seal();
+            assertNull(corpus.get("doc"));
+            assertNotNull(corpus.get("other"));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.insightcentre.nlp.saffron.term;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import opennlp.tools.lemmatizer.DictionaryLemmatizer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class CachingLemmatizerTest {
+
+    public CachingLemmatizerTest() {
+    }
+
+    private static DictionaryLemmatizer dictionary() throws Exception {
+        return new DictionaryLemmatizer(new ByteArrayInputStream(
+                "terms\tNNS\tterm\nleaves\tNNS\tleaf\nleaves\tVBZ\tleave\n".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Test that the cached lemmas are the same as the dictionary's
+     */
+    @Test
+    public void testLemmatize() throws Exception {
+        System.out.println("lemmatize");
+        DictionaryLemmatizer dict = dictionary();
+        CachingLemmatizer instance = new CachingLemmatizer(dict);
+        String[] toks = new String[]{"leaves", "terms", "leaves", "unknown", "terms"};
+        String[] tags = new String[]{"NNS", "NNS", "VBZ", "NN", "NNS"};
+        assertArrayEquals(dict.lemmatize(toks, tags), instance.lemmatize(toks, tags));
+        assertArrayEquals(dict.lemmatize(toks, tags), instance.lemmatize(toks, tags));
+        assertEquals("leaf", instance.lemmatize("leaves", "NNS"));
+        assertEquals("leave", instance.lemmatize("leaves", "VBZ"));
+        assertEquals("O", instance.lemmatize("unknown", "NN"));
+    }
+}
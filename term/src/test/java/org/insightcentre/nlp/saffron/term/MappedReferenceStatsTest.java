@@ -0,0 +1,78 @@
+package org.insightcentre.nlp.saffron.term;
+
+import java.io.File;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class MappedReferenceStatsTest {
+
+    public MappedReferenceStatsTest() {
+    }
+
+    private static FrequencyStats ref() {
+        FrequencyStats stats = new FrequencyStats();
+        for (int i = 0; i < 1000; i++) {
+            stats.termFrequency.put("term " + i, i + 1);
+            stats.docFrequency.put("term " + i, i / 2 + 1);
+        }
+        stats.termFrequency.put("café", 7);
+        stats.docFrequency.put("café", 3);
+        stats.termFrequency.put("日本語", 8);
+        stats.termFrequency.put("emoji 😀", 9);
+        stats.docFrequency.put("only df", 4);
+        stats.tokens = 123456789012L;
+        stats.documents = 5000;
+        return stats;
+    }
+
+    /**
+     * Test that a written corpus gives the same frequencies
+     */
+    @Test
+    public void testWriteOpen() throws Exception {
+        System.out.println("writeOpen");
+        FrequencyStats stats = ref();
+        File file = File.createTempFile("ref", ".bin");
+        file.deleteOnExit();
+        MappedReferenceStats.write(stats, file);
+        MappedReferenceStats instance = MappedReferenceStats.open(file);
+        assertEquals(1004, instance.size());
+        assertEquals(stats.tokens, instance.tokenCount());
+        assertEquals(stats.documents, instance.documentCount());
+        for (String term : stats.termFrequency.keySet()) {
+            assertEquals(term, stats.termFrequency.getInt(term), instance.termFrequency(term));
+            assertEquals(term, stats.docFrequency.getInt(term), instance.docFrequency(term));
+        }
+        assertEquals(4, instance.docFrequency("only df"));
+        assertEquals(0, instance.termFrequency("only df"));
+        assertEquals(0, instance.termFrequency("term 1000"));
+        assertEquals(0, instance.termFrequency("caf"));
+        assertEquals(0, instance.termFrequency("cafe"));
+        assertEquals(0, instance.termFrequency("emoji \uD83D"));
+        assertEquals(stats, instance.toFrequencyStats());
+    }
+
+    /**
+     * Test that the features are the same with a mapped reference corpus
+     */
+    @Test
+    public void testFeatures() throws Exception {
+        System.out.println("features");
+        FrequencyStats stats = new FrequencyStats();
+        stats.termFrequency.put("term 5", 3);
+        stats.docFrequency.put("term 5", 2);
+        stats.tokens = 100;
+        stats.documents = 3;
+        FrequencyStats ref = ref();
+        File file = File.createTempFile("ref", ".bin");
+        file.deleteOnExit();
+        MappedReferenceStats.write(ref, file);
+        MappedReferenceStats mapped = MappedReferenceStats.open(file);
+        assertEquals(Features.weirdness("term 5", stats, ref), Features.weirdness("term 5", stats, mapped), 0.0);
+        assertEquals(Features.relevance("term 5", stats, ref), Features.relevance("term 5", stats, mapped), 0.0);
+    }
+}
@@ -0,0 +1,83 @@
+package org.insightcentre.nlp.saffron.term;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class ShardedStatsTest {
+
+    public ShardedStatsTest() {
+    }
+
+    private static FrequencyStats docStats(int i) {
+        FrequencyStats stats = new FrequencyStats();
+        for (int j = 0; j <= i % 5; j++) {
+            stats.termFrequency.put("term" + (i + j) % 13, j + 1);
+            stats.docFrequency.put("term" + (i + j) % 13, 1);
+        }
+        stats.tokens = i;
+        stats.documents = 1;
+        return stats;
+    }
+
+    private static CasingStats docCasing(int i) {
+        CasingStats casing = new CasingStats();
+        casing.addCasing(i % 2 == 0 ? "Term" + i % 7 : "term" + i % 7);
+        return casing;
+    }
+
+    private static RelationshipStats docRelations(int i) {
+        RelationshipStats rels = new RelationshipStats();
+        rels.addRelation("dm" + i % 3, "term" + i % 11);
+        return rels;
+    }
+
+    /**
+     * Test that the combined shards equal adding each document to a summary
+     */
+    @Test
+    public void testAddTo() throws Exception {
+        System.out.println("addTo");
+        FrequencyStats expected = new FrequencyStats();
+        CasingStats expectedCasing = new CasingStats();
+        RelationshipStats expectedRelations = new RelationshipStats();
+        for (int i = 0; i < 1000; i++) {
+            expected.add(docStats(i));
+            expectedCasing.add(docCasing(i));
+            expectedRelations.add(docRelations(i));
+        }
+
+        final ShardedStats shards = new ShardedStats();
+        ExecutorService service = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 1000; i++) {
+            final int j = i;
+            service.submit(() -> {
+                ShardedStats.Shard shard = shards.local();
+                shard.frequency.add(docStats(j));
+                shard.casing.add(docCasing(j));
+                shard.relations.add(docRelations(j));
+            });
+        }
+        service.shutdown();
+        service.awaitTermination(1, TimeUnit.MINUTES);
+
+        FrequencyStats summary = new FrequencyStats();
+        CasingStats casing = new CasingStats();
+        RelationshipStats relations = new RelationshipStats();
+        shards.addTo(summary, casing, relations);
+        assertEquals(expected, summary);
+        assertEquals(expectedCasing, casing);
+        assertEquals(expectedRelations, relations);
+
+        // The shards are emptied
+        FrequencyStats empty = new FrequencyStats();
+        shards.addTo(empty, null, null);
+        assertEquals(new FrequencyStats(), empty);
+    }
+}
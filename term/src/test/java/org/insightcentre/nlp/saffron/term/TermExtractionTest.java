@@ -1,10 +1,13 @@
 package org.insightcentre.nlp.saffron.term;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 import opennlp.tools.postag.POSTagger;
 import opennlp.tools.tokenize.Tokenizer;
@@ -12,6 +15,8 @@ import opennlp.tools.util.Sequence;
 import opennlp.tools.util.Span;
 import org.insightcentre.nlp.saffron.DefaultSaffronListener;
 import org.insightcentre.nlp.saffron.config.TermExtractionConfiguration;
+import org.insightcentre.nlp.saffron.config.TermExtractionConfiguration.Feature;
+import org.insightcentre.nlp.saffron.data.CollectionCorpus;
 import org.insightcentre.nlp.saffron.data.Corpus;
 import org.insightcentre.nlp.saffron.data.Document;
 import org.insightcentre.nlp.saffron.data.Status;
@@ -230,6 +235,102 @@ public class TermExtractionTest {
         Result res = instance.extractTerms(searcher);
     }
 
+    /**
+     * Test that adding documents to a run gives the same terms as processing
+     * all the documents
+     */
+    @Test
+    public void testExtractTermsIncremental() throws Exception {
+        System.out.println("extractTermsIncremental");
+        final POSTagger tagger = new POSTagger() {
+            @Override
+            public String[] tag(String[] strings) {
+                String[] x = new String[strings.length];
+                for (int i = 0; i < strings.length; i++) {
+                    if ("test".equals(strings[i]) || "case".equals(strings[i])) {
+                        x[i] = "NN";
+                    } else if ("good".equals(strings[i])) {
+                        x[i] = "JJ";
+                    } else {
+                        x[i] = "DT";
+                    }
+                }
+                return x;
+            }
+
+            @Override
+            public String[] tag(String[] strings, Object[] os) {
+                throw new UnsupportedOperationException("Not supported yet.");
+            }
+
+            @Override
+            public Sequence[] topKSequences(String[] strings) {
+                throw new UnsupportedOperationException("Not supported yet.");
+            }
+
+            @Override
+            public Sequence[] topKSequences(String[] strings, Object[] os) {
+                throw new UnsupportedOperationException("Not supported yet.");
+            }
+        };
+        final Tokenizer _tokenizer = new Tokenizer() {
+            @Override
+            public String[] tokenize(String string) {
+                return string.split(" ");
+            }
+
+            @Override
+            public Span[] tokenizePos(String string) {
+                throw new UnsupportedOperationException("Not supported yet.");
+            }
+        };
+        final List<Document> documents = Arrays.asList(
+                mkDoc("this is a test"),
+                mkDoc("this is also a good test case"),
+                mkDoc("this is a good test"),
+                mkDoc("a good test is also a test case"),
+                mkDoc("a test case is a good test"));
+        final TermExtraction instance = new TermExtraction(10, new ThreadLocal<POSTagger>() {
+            @Override
+            protected POSTagger initialValue() {
+                return tagger;
+            }
+
+        }, new ThreadLocal<Tokenizer>() {
+            @Override
+            protected Tokenizer initialValue() {
+                return _tokenizer;
+            }
+        });
+        final Result expected = instance.extractTerms(new CollectionCorpus(documents));
+        assertFalse(expected.terms.isEmpty());
+
+        final RawTermStats raw = new RawTermStats();
+        instance.extractTermsIncremental(new CollectionCorpus(documents.subList(0, 2)),
+                new HashSet<>(), new HashSet<>(), new DefaultSaffronListener(), raw);
+        assertEquals(2, raw.documents.size());
+        final File file = File.createTempFile("raw", ".json.gz");
+        file.deleteOnExit();
+        raw.write(file);
+        final RawTermStats raw2 = RawTermStats.read(file);
+        assertEquals(raw.frequencyStats, raw2.frequencyStats);
+        assertEquals(raw.casing, raw2.casing);
+        // The corpus may also contain the documents that have been processed
+        final Result result = instance.extractTermsIncremental(new CollectionCorpus(documents),
+                new HashSet<>(), new HashSet<>(), new DefaultSaffronListener(), raw2);
+        assertEquals(5, raw2.documents.size());
+        assertEquals(expected.terms, result.terms);
+        for (Term t : expected.terms) {
+            for (Term t2 : result.terms) {
+                if (t.getString().equals(t2.getString())) {
+                    assertEquals(t.getScore(), t2.getScore(), 1e-9);
+                    assertEquals(t.getOccurrences(), t2.getOccurrences());
+                }
+            }
+        }
+        assertEquals(new HashSet<>(expected.docTerms), new HashSet<>(result.docTerms));
+    }
+
         /**
      * Test of extractTerms method, of class TermExtraction.
      */
@@ -703,4 +804,179 @@ public class TermExtractionTest {
         }
     }
 
+    /**
+     * Test that scoring the terms in parallel gives the same scores as
+     * scoring each term in turn
+     */
+    @Test
+    public void testScoreByFeats() throws Exception {
+        System.out.println("scoreByFeats");
+        final Random r = new Random(1);
+        final String[] words = {"a", "b", "c", "d", "e", "f", "g"};
+        final FrequencyStats stats = new FrequencyStats();
+        final FrequencyStats refStats = new FrequencyStats();
+        final List<String> terms = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            final StringBuilder sb = new StringBuilder(words[r.nextInt(words.length)]);
+            for (int j = r.nextInt(3); j > 0; j--) {
+                sb.append(" ").append(words[r.nextInt(words.length)]);
+            }
+            final String term = sb.toString();
+            if (!stats.termFrequency.containsKey(term)) {
+                terms.add(term);
+                final int df = 1 + r.nextInt(10);
+                stats.docFrequency.put(term, df);
+                stats.termFrequency.put(term, df + r.nextInt(100));
+                refStats.termFrequency.put(term, r.nextInt(100));
+                refStats.docFrequency.put(term, r.nextInt(10));
+            }
+        }
+        stats.tokens = 10000;
+        stats.documents = 20;
+        refStats.tokens = 10000;
+        refStats.documents = 20;
+        final Lazy<ReferenceStats> ref = new Lazy<ReferenceStats>() {
+            @Override
+            protected ReferenceStats init() {
+                return refStats;
+            }
+        };
+        final Lazy<InclusionStats> incl = new Lazy<InclusionStats>() {
+            @Override
+            protected InclusionStats init() {
+                return new InclusionStats(stats.termFrequency);
+            }
+        };
+        final Set<String> whiteList = new HashSet<>(terms.subList(0, 10));
+        final List<Feature> feats = Arrays.asList(Feature.weirdness, Feature.termFreq,
+                Feature.avgTermFreq, Feature.basic, Feature.comboBasic, Feature.cValue,
+                Feature.relevance, Feature.residualIdf, Feature.totalTfIdf);
+        final TermExtraction instance = new TermExtraction(4, null, null);
+        final double[][] scores = instance.scoreByFeats(terms, feats, stats, ref, incl,
+                null, null, whiteList, null, new DefaultSaffronListener());
+        assertEquals(feats.size(), scores.length);
+        for (int f = 0; f < feats.size(); f++) {
+            assertEquals(terms.size(), scores[f].length);
+            for (int i = 0; i < terms.size(); i++) {
+                final double expected = whiteList.contains(terms.get(i)) ? Double.POSITIVE_INFINITY
+                        : Features.calcFeature(feats.get(f), terms.get(i), stats, ref, incl,
+                                null, null, null, new DefaultSaffronListener());
+                assertEquals(expected, scores[f][i], 0.0);
+            }
+        }
+    }
+
+    /* The ranking of the terms by a stable sort by group and then score */
+    private static List<Integer> sortByScore(List<Integer> order, final byte[] group, final double[] scores) {
+        final List<Integer> sorted = new ArrayList<>(order);
+        sorted.sort(new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i, Integer j) {
+                if (group[i] != group[j]) {
+                    return group[i] < group[j] ? -1 : +1;
+                }
+                return -Double.compare(scores[i], scores[j]);
+            }
+        });
+        return sorted;
+    }
+
+    /* Random scores with many ties and some NaNs */
+    private static double[] randomScores(Random r, int n) {
+        final double[] scores = new double[n];
+        for (int i = 0; i < n; i++) {
+            final int x = r.nextInt(12);
+            scores[i] = x == 0 ? Double.NaN : x == 1 ? Double.POSITIVE_INFINITY : x / 4;
+        }
+        return scores;
+    }
+
+    private static byte[] randomGroups(Random r, int n) {
+        final byte[] group = new byte[n];
+        for (int i = 0; i < n; i++) {
+            group[i] = (byte) r.nextInt(3);
+        }
+        return group;
+    }
+
+    private static int[] shuffled(Random r, int n) {
+        final List<Integer> l = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            l.add(i);
+        }
+        Collections.shuffle(l, r);
+        final int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = l.get(i);
+        }
+        return order;
+    }
+
+    /**
+     * Test that voting gives the same votes and ranking as re-sorting the
+     * list of terms by each feature
+     */
+    @Test
+    public void testVote() {
+        System.out.println("vote");
+        final Random r = new Random(2);
+        for (int trial = 0; trial < 50; trial++) {
+            final int n = 1 + r.nextInt(200);
+            final byte[] group = randomGroups(r, n);
+            final double[][] scores = new double[1 + r.nextInt(4)][];
+            for (int f = 0; f < scores.length; f++) {
+                scores[f] = randomScores(r, n);
+            }
+            final int[] order = shuffled(r, n);
+            List<Integer> terms = new ArrayList<>();
+            for (int i : order) {
+                terms.add(i);
+            }
+            final double[] expected = new double[n];
+            for (double[] column : scores) {
+                terms = sortByScore(terms, group, column);
+                for (int k = 0; k < n; k++) {
+                    expected[terms.get(k)] += 1.0 / (k + 1);
+                }
+            }
+            final double[] votes = TermExtraction.vote(group, scores, order);
+            assertArrayEquals(expected, votes, 0.0);
+            for (int k = 0; k < n; k++) {
+                assertEquals((int) terms.get(k), order[k]);
+            }
+        }
+    }
+
+    /**
+     * Test that ranking the top k gives the same terms as a stable sort
+     * followed by taking the first k
+     */
+    @Test
+    public void testRankTop() {
+        System.out.println("rankTop");
+        final Random r = new Random(3);
+        for (int trial = 0; trial < 200; trial++) {
+            final int n = 1 + r.nextInt(100);
+            final byte[] group = randomGroups(r, n);
+            final double[] scores = randomScores(r, n);
+            final int[] order = shuffled(r, n);
+            final List<Integer> initial = new ArrayList<>();
+            for (int i : order) {
+                initial.add(i);
+            }
+            final List<Integer> sorted = sortByScore(initial, group, scores);
+            for (int k : new int[]{0, 1, r.nextInt(n + 1), n - 1, n, n + 5}) {
+                if (k < 0) {
+                    continue;
+                }
+                final List<Integer> expected = sorted.subList(0, Math.min(k, n));
+                final int[] top = TermExtraction.rankTop(group, scores, order, k);
+                assertEquals(expected.size(), top.length);
+                for (int j = 0; j < top.length; j++) {
+                    assertEquals((int) expected.get(j), top[j]);
+                }
+            }
+        }
+    }
+
 }
@@ -0,0 +1,70 @@
+package org.insightcentre.nlp.saffron.term;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class TokenAutomatonTest {
+
+    public TokenAutomatonTest() {
+    }
+
+    /**
+     * Test that the automaton finds the same terms as checking every n-gram
+     */
+    @Test
+    public void testMatch() {
+        System.out.println("match");
+        List<String[]> terms = Arrays.asList(
+                new String[]{"a"},
+                new String[]{"a", "b"},
+                new String[]{"b", "c"},
+                new String[]{"a", "b", "c", "d"},
+                new String[]{"c", "a", "b"},
+                new String[]{"b", "b", "b"});
+        Set<String> termStrings = new HashSet<>();
+        for (String[] t : terms) {
+            termStrings.add(String.join(" ", t));
+        }
+        TokenAutomaton instance = new TokenAutomaton(terms);
+        assertEquals(6, instance.size());
+        assertEquals(4, instance.maxLength());
+
+        Random random = new Random(0);
+        String[] vocab = new String[]{"a", "b", "c", "d", "e"};
+        for (int trial = 0; trial < 100; trial++) {
+            String[] tokens = new String[20];
+            for (int i = 0; i < tokens.length; i++) {
+                tokens[i] = vocab[random.nextInt(vocab.length)];
+            }
+            List<String> expected = new ArrayList<>();
+            for (int j = 0; j < tokens.length; j++) {
+                for (int i = 0; i <= j; i++) {
+                    String ngram = String.join(" ", Arrays.copyOfRange(tokens, i, j + 1));
+                    if (termStrings.contains(ngram)) {
+                        expected.add(i + ":" + ngram);
+                    }
+                }
+            }
+            List<String> result = new ArrayList<>();
+            int state = instance.root();
+            for (int j = 0; j < tokens.length; j++) {
+                state = instance.next(state, tokens[j]);
+                // Longest first, so the same order as above
+                for (int m = instance.match(state); m >= 0; m = instance.nextMatch(m)) {
+                    result.add((j - instance.length(m) + 1) + ":" + instance.term(m));
+                }
+            }
+            assertEquals(expected, result);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.insightcentre.nlp.saffron.term;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class TokenValidatorTest {
+
+    public TokenValidatorTest() {
+    }
+
+    private static boolean regexValid(String term) {
+        return !term.toLowerCase().equals("steel") && term.matches(".*\\p{Alpha}.*")
+                && (term.matches("\\p{Alpha}.*") || term.matches(".*\\p{Alpha}"))
+                && term.length() > 1
+                && !term.startsWith("http://") && !term.startsWith("https://");
+    }
+
+    /**
+     * Test that the validator agrees with the regular expressions
+     */
+    @Test
+    public void testIsValid() {
+        System.out.println("isValid");
+        TokenValidator instance = new TokenValidator(new HashSet<>(Arrays.asList("steel")));
+        for (String token : new String[]{"a", "ab", "1a", "a1", "11", "1a1", "Steel", "steel",
+            "steels", "http://x.org", "https://x.org", "httpx", "a\nb", "ab\r", "été",
+            "éa", "-", "e-mail", ""}) {
+            assertEquals(token, regexValid(token), instance.isValid(token));
+            assertEquals(token, regexValid(token), instance.isValid(token, token.toLowerCase()));
+        }
+    }
+}
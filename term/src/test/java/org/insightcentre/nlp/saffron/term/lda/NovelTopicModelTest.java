@@ -142,4 +142,38 @@ public class NovelTopicModelTest {
         assertEquals(expResult, result, 3.0);
     }
 
+    /**
+     * Test that both samplers give a similar score
+     */
+    @Test
+    public void testSamplers() throws IOException {
+        System.out.println("samplers");
+        Corpus searcher = new Corpus() {
+            @Override
+            public Iterable<Document> getDocuments() {
+                return Arrays.asList(new Document[]{
+                    mkDoc("this is a test"),
+                    mkDoc("this is also a test"),
+                    mkDoc("this is a good test"),
+                    mkDoc("a good test is also a test")
+                });
+            }
+
+            @Override
+            public int size() {
+                return 4;
+            }
+        };
+        ThreadLocal<Tokenizer> tokenizer = new ThreadLocal<Tokenizer>() {
+            @Override
+            protected Tokenizer initialValue() {
+                return WhitespaceTokenizer.INSTANCE;
+            }
+        };
+        for (NovelTopicModel.Sampler sampler : NovelTopicModel.Sampler.values()) {
+            NovelTopicModel instance = NovelTopicModel.initialize(searcher, tokenizer, null, sampler, 2);
+            assertEquals(4.0, instance.novelTopicModel("this test", stats()), 3.0);
+        }
+    }
+
 }
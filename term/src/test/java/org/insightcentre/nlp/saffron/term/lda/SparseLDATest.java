@@ -0,0 +1,105 @@
+package org.insightcentre.nlp.saffron.term.lda;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class SparseLDATest {
+
+    public SparseLDATest() {
+    }
+
+    private static final int J = 200, W = 40, DOC_LENGTH = 30;
+
+    /* Documents about one of two topics, with words 0-19 or 20-39 */
+    private static int[] words(int[] docStarts) {
+        final Random random = new Random(1);
+        final int[] words = new int[J * DOC_LENGTH];
+        for (int j = 0; j < J; j++) {
+            docStarts[j] = j * DOC_LENGTH;
+            for (int i = 0; i < DOC_LENGTH; i++) {
+                words[j * DOC_LENGTH + i] = (j % 2) * (W / 2) + random.nextInt(W / 2);
+            }
+        }
+        docStarts[J] = J * DOC_LENGTH;
+        return words;
+    }
+
+    private static SparseLDA train(int K, int nThreads) {
+        final int[] docStarts = new int[J + 1];
+        final int[] words = words(docStarts);
+        final SparseLDA lda = new SparseLDA(words, docStarts, K, W, 0.1, 0.1, nThreads, 0);
+        lda.train(50, false);
+        return lda;
+    }
+
+    /**
+     * Test that the counts agree with the corpus
+     */
+    @Test
+    public void testCounts() {
+        System.out.println("counts");
+        final int[] docStarts = new int[J + 1];
+        final int[] words = words(docStarts);
+        final int[] freq = new int[W];
+        for (int w : words) {
+            freq[w]++;
+        }
+        for (int nThreads : new int[]{1, 4}) {
+            final SparseLDA lda = train(5, nThreads);
+            int total = 0;
+            for (int k = 0; k < 5; k++) {
+                assertTrue(lda.topicCount(k) >= 0);
+                total += lda.topicCount(k);
+            }
+            assertEquals(words.length, total);
+            for (int w = 0; w < W; w++) {
+                int sum = 0;
+                for (int k = 0; k < 5; k++) {
+                    assertTrue(lda.wordTopicCount(w, k) >= 0);
+                    sum += lda.wordTopicCount(w, k);
+                }
+                assertEquals(freq[w], sum);
+            }
+        }
+    }
+
+    /**
+     * Test that the topics separate the two halves of the vocabulary
+     */
+    @Test
+    public void testTopics() {
+        System.out.println("topics");
+        for (int nThreads : new int[]{1, 3}) {
+            final SparseLDA lda = train(2, nThreads);
+            final int k = lda.wordTopicCount(0, 0) > lda.wordTopicCount(0, 1) ? 0 : 1;
+            int correct = 0;
+            for (int w = 0; w < W; w++) {
+                final int topic = w < W / 2 ? k : 1 - k;
+                if (lda.wordTopicCount(w, topic) > lda.wordTopicCount(w, 1 - topic)) {
+                    correct++;
+                }
+            }
+            assertEquals(W, correct);
+        }
+    }
+
+    /**
+     * Test that a fixed seed and number of threads give the same model
+     */
+    @Test
+    public void testDeterministic() {
+        System.out.println("deterministic");
+        final SparseLDA lda1 = train(5, 3);
+        final SparseLDA lda2 = train(5, 3);
+        for (int w = 0; w < W; w++) {
+            for (int k = 0; k < 5; k++) {
+                assertEquals(lda1.wordTopicCount(w, k), lda2.wordTopicCount(w, k));
+            }
+        }
+    }
+}
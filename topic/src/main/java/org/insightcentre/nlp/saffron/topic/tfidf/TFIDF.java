@@ -1,7 +1,7 @@
 package org.insightcentre.nlp.saffron.topic.tfidf;
 
-import it.unimi.dsi.fastutil.objects.Object2DoubleMap;
-import it.unimi.dsi.fastutil.objects.Object2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import java.util.HashSet;
 import java.util.List;
 import org.insightcentre.nlp.saffron.data.connections.DocumentTerm;
@@ -16,16 +16,18 @@ public class TFIDF {
      * @param docTerms The list of values to add TF-IDF scores to
      */
     public static void addTfidf(List<DocumentTerm> docTerms) {
-        Object2DoubleMap<String> termDf = new Object2DoubleOpenHashMap<>();
-        HashSet<String> docNames = new HashSet<>();
+        // The document frequencies are counted directly from the list, as a
+        // copy of the links into a table would double their memory
+        final Object2IntMap<String> termDf = new Object2IntOpenHashMap<>();
+        final HashSet<String> docNames = new HashSet<>();
         for(DocumentTerm dt : docTerms) {
             // We assume there are no duplicates in the DT list 
-            termDf.put(dt.getTermString(), termDf.getDouble(dt.getTermString()) + 1.0);
+            termDf.put(dt.getTermString(), termDf.getInt(dt.getTermString()) + 1);
             docNames.add(dt.getDocumentId());
         }
-        double n = docNames.size();
+        final double n = docNames.size();
         for(DocumentTerm dt : docTerms) {
-            dt.setTfIdf((double) dt.getOccurrences() * Math.log(n / termDf.getDouble(dt.getTermString())));
+            dt.setTfIdf((double) dt.getOccurrences() * Math.log(n / termDf.getInt(dt.getTermString())));
         }
     }
 }
@@ -0,0 +1,346 @@
+package org.insightcentre.nlp.saffron.topic.topicsim;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.insightcentre.nlp.saffron.data.connections.DocumentTerm;
+import org.insightcentre.nlp.saffron.data.connections.TermTerm;
+
+/**
+ * A sparse engine for the cosine similarity of terms by their document
+ * occurrences.
+ *
+ * Terms and documents are interned to dense ints and the term vectors are
+ * stored in a compressed sparse row layout together with their (squared)
+ * norms. Only pairs of terms that share at least one document are scored,
+ * using an inverted index from documents to terms, and a bounded top-N heap
+ * is kept for each term. Terms are processed in parallel on a fork-join pool.
+ *
+ * The result is the same as the exhaustive comparison for any non-negative
+ * threshold, as terms without a shared document have a similarity of zero.
+ *
+ * @author John McCrae &lt;john@mccr.ae&gt;
+ */
+public class SparseTermSimilarity {
+
+    /**
+     * The number of terms processed by a single task before splitting
+     */
+    private static final int LEAF_SIZE = 256;
+
+    private final String[] terms;
+    // Term -> document (CSR)
+    private final int[] termPtr;
+    private final int[] termDocs;
+    private final double[] termVals;
+    // Document -> term (CSR)
+    private final int[] docPtr;
+    private final int[] docTerms;
+    private final double[] docVals;
+    // Squared norms of each term vector
+    private final double[] norms2;
+
+    private SparseTermSimilarity(String[] terms, int nDocs, int[] termPtr, int[] termDocs, double[] termVals) {
+        this.terms = terms;
+        this.termPtr = termPtr;
+        this.termDocs = termDocs;
+        this.termVals = termVals;
+        this.norms2 = new double[terms.length];
+        for (int t = 0; t < terms.length; t++) {
+            double aa = 0.0;
+            for (int j = termPtr[t]; j < termPtr[t + 1]; j++) {
+                aa += termVals[j] * termVals[j];
+            }
+            norms2[t] = aa;
+        }
+        // Transpose into the inverted index
+        this.docPtr = new int[nDocs + 1];
+        for (int j = 0; j < termDocs.length; j++) {
+            docPtr[termDocs[j] + 1]++;
+        }
+        for (int d = 0; d < nDocs; d++) {
+            docPtr[d + 1] += docPtr[d];
+        }
+        this.docTerms = new int[termDocs.length];
+        this.docVals = new double[termDocs.length];
+        final int[] fill = Arrays.copyOf(docPtr, nDocs);
+        for (int t = 0; t < terms.length; t++) {
+            for (int j = termPtr[t]; j < termPtr[t + 1]; j++) {
+                int k = fill[termDocs[j]]++;
+                docTerms[k] = t;
+                docVals[k] = termVals[j];
+            }
+        }
+    }
+
+    /**
+     * Build the similarity index from a set of document-term links. If the
+     * same term occurs twice for the same document, the last value is used.
+     *
+     * @param documentTerms The document terms
+     * @return The index
+     */
+    public static SparseTermSimilarity build(Collection<DocumentTerm> documentTerms) {
+        // Intern terms in lexicographic order, so that the term ids may be used
+        // to break ties in the same way as a string comparison
+        Object2IntMap<String> termIds = new Object2IntOpenHashMap<>();
+        termIds.defaultReturnValue(-1);
+        for (DocumentTerm dt : documentTerms) {
+            termIds.put(dt.getTermString(), 0);
+        }
+        String[] terms = termIds.keySet().toArray(new String[termIds.size()]);
+        Arrays.sort(terms);
+        for (int i = 0; i < terms.length; i++) {
+            termIds.put(terms[i], i);
+        }
+        Object2IntMap<String> docIds = new Object2IntOpenHashMap<>();
+        docIds.defaultReturnValue(-1);
+
+        final int n = documentTerms.size();
+        final int[] rowOf = new int[n];
+        final int[] docOf = new int[n];
+        final int[] valOf = new int[n];
+        final int[] counts = new int[terms.length + 1];
+        int i = 0;
+        for (DocumentTerm dt : documentTerms) {
+            int t = termIds.getInt(dt.getTermString());
+            int d = docIds.getInt(dt.getDocumentId());
+            if (d < 0) {
+                d = docIds.size();
+                docIds.put(dt.getDocumentId(), d);
+            }
+            rowOf[i] = t;
+            docOf[i] = d;
+            valOf[i] = dt.getOccurrences();
+            counts[t + 1]++;
+            i++;
+        }
+        for (int t = 0; t < terms.length; t++) {
+            counts[t + 1] += counts[t];
+        }
+        // Stable bucket sort of the entries by term
+        final int[] order = new int[n];
+        final int[] fill = Arrays.copyOf(counts, terms.length);
+        for (i = 0; i < n; i++) {
+            order[fill[rowOf[i]]++] = i;
+        }
+        // Sort each row by document, dropping duplicates (last one wins)
+        final int[] termPtr = new int[terms.length + 1];
+        final IntArrayList docsList = new IntArrayList(n);
+        final double[] valsBuf = new double[n];
+        int nnz = 0;
+        for (int t = 0; t < terms.length; t++) {
+            int from = counts[t], to = counts[t + 1];
+            long[] keys = new long[to - from];
+            for (int j = from; j < to; j++) {
+                keys[j - from] = ((long) docOf[order[j]] << 32) | order[j];
+            }
+            Arrays.sort(keys);
+            for (int j = 0; j < keys.length; j++) {
+                int d = (int) (keys[j] >>> 32);
+                if (j + 1 < keys.length && (int) (keys[j + 1] >>> 32) == d) {
+                    continue;
+                }
+                docsList.add(d);
+                valsBuf[nnz++] = valOf[(int) keys[j]];
+            }
+            termPtr[t + 1] = nnz;
+        }
+        return new SparseTermSimilarity(terms, docIds.size(), termPtr,
+                docsList.toIntArray(), Arrays.copyOf(valsBuf, nnz));
+    }
+
+    /**
+     * The number of terms in this index
+     *
+     * @return The number of distinct terms
+     */
+    public int size() {
+        return terms.length;
+    }
+
+    /**
+     * Calculate the most similar terms for every term in the index.
+     *
+     * @param threshold The minimum similarity (exclusive), must be non-negative
+     * @param topN The maximum number of similar terms per term
+     * @param pool The pool to execute the computation on
+     * @return The list of similar terms, grouped by the first term and in
+     * ascending order of similarity within each group
+     */
+    public List<TermTerm> topN(double threshold, int topN, ForkJoinPool pool) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Sparse term similarity requires a non-negative threshold");
+        }
+        @SuppressWarnings("unchecked")
+        final List<TermTerm>[] results = new List[terms.length];
+        pool.invoke(new TopNTask(0, terms.length, threshold, topN, results));
+        final List<TermTerm> termTerms = new ArrayList<>();
+        for (List<TermTerm> r : results) {
+            termTerms.addAll(r);
+        }
+        return termTerms;
+    }
+
+    private class TopNTask extends RecursiveAction {
+
+        private final int from, to;
+        private final double threshold;
+        private final int topN;
+        private final List<TermTerm>[] results;
+
+        TopNTask(int from, int to, double threshold, int topN, List<TermTerm>[] results) {
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.topN = topN;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_SIZE) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new TopNTask(from, mid, threshold, topN, results),
+                        new TopNTask(mid, to, threshold, topN, results));
+            } else {
+                final double[] dots = new double[terms.length];
+                final int[] touched = new int[terms.length];
+                final int[] seen = new int[terms.length];
+                final Heap heap = new Heap(topN);
+                for (int t1 = from; t1 < to; t1++) {
+                    results[t1] = similarTo(t1, dots, touched, seen, heap, threshold);
+                }
+            }
+        }
+    }
+
+    private List<TermTerm> similarTo(int t1, double[] dots, int[] touched, int[] seen, Heap heap, double threshold) {
+        // seen[t2] == t1 + 1 marks t2 as sharing a document with t1
+        int nTouched = 0;
+        for (int j = termPtr[t1]; j < termPtr[t1 + 1]; j++) {
+            final int d = termDocs[j];
+            final double a = termVals[j];
+            for (int k = docPtr[d]; k < docPtr[d + 1]; k++) {
+                final int t2 = docTerms[k];
+                if (t2 != t1) {
+                    if (seen[t2] != t1 + 1) {
+                        seen[t2] = t1 + 1;
+                        dots[t2] = 0.0;
+                        touched[nTouched++] = t2;
+                    }
+                    dots[t2] += a * docVals[k];
+                }
+            }
+        }
+        heap.clear();
+        final double aa = norms2[t1];
+        for (int i = 0; i < nTouched; i++) {
+            final int t2 = touched[i];
+            final double ab = dots[t2];
+            final double bb = norms2[t2];
+            if (aa == 0 || bb == 0) {
+                continue;
+            }
+            final double s = ab / Math.sqrt(aa * bb);
+            if (s > threshold) {
+                heap.offer(t2, s);
+            }
+        }
+        return heap.drain(terms[t1], terms);
+    }
+
+    /**
+     * A bounded min-heap of term ids ordered by score and then by id (which is
+     * the lexicographic order of the term strings).
+     */
+    private static class Heap {
+
+        private final int capacity;
+        private final int[] ids;
+        private final double[] scores;
+        private int size;
+
+        Heap(int capacity) {
+            this.capacity = capacity;
+            this.ids = new int[capacity];
+            this.scores = new double[capacity];
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        private boolean less(int i, int j) {
+            int c = Double.compare(scores[i], scores[j]);
+            return c < 0 || (c == 0 && ids[i] < ids[j]);
+        }
+
+        private void swap(int i, int j) {
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+            double s = scores[i];
+            scores[i] = scores[j];
+            scores[j] = s;
+        }
+
+        void offer(int id, double score) {
+            if (capacity == 0) {
+                return;
+            }
+            if (size < capacity) {
+                ids[size] = id;
+                scores[size] = score;
+                int i = size++;
+                while (i > 0 && less(i, (i - 1) / 2)) {
+                    swap(i, (i - 1) / 2);
+                    i = (i - 1) / 2;
+                }
+            } else {
+                int c = Double.compare(score, scores[0]);
+                if (c < 0 || (c == 0 && id < ids[0])) {
+                    return;
+                }
+                ids[0] = id;
+                scores[0] = score;
+                siftDown(0);
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int l = 2 * i + 1, r = l + 1, m = i;
+                if (l < size && less(l, m)) {
+                    m = l;
+                }
+                if (r < size && less(r, m)) {
+                    m = r;
+                }
+                if (m == i) {
+                    return;
+                }
+                swap(i, m);
+                i = m;
+            }
+        }
+
+        List<TermTerm> drain(String t1, String[] terms) {
+            final TermTerm[] out = new TermTerm[size];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = new TermTerm(t1, terms[ids[0]], scores[0]);
+                ids[0] = ids[size - 1];
+                scores[0] = scores[size - 1];
+                size--;
+                siftDown(0);
+            }
+            return Arrays.asList(out);
+        }
+    }
+}
@@ -7,6 +7,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
 
 import org.insightcentre.nlp.saffron.DefaultSaffronListener;
 import org.insightcentre.nlp.saffron.SaffronListener;
@@ -41,6 +42,23 @@ public class TermSimilarity {
     }
     
     public List<TermTerm> termSimilarity(List<DocumentTerm> documentTerms, SaffronListener log) {
+        if (threshold >= 0) {
+            // Terms that do not share a document have similarity 0 and can
+            // never pass the threshold, so only co-occurring pairs are scored
+            return SparseTermSimilarity.build(documentTerms).topN(threshold, topN, ForkJoinPool.commonPool());
+        }
+        return exhaustiveTermSimilarity(documentTerms);
+    }
+
+    /**
+     * Compare every term with every other term. This is only needed if the
+     * threshold is negative, so that terms without any shared document are
+     * also returned.
+     *
+     * @param documentTerms The document terms
+     * @return The top N similar terms for each term
+     */
+    List<TermTerm> exhaustiveTermSimilarity(List<DocumentTerm> documentTerms) {
         List<TermTerm> termTerms = new ArrayList<>();
         Map<String, Object2IntMap<String>> vectors = new HashMap<>();
         for (DocumentTerm dt : documentTerms) {
@@ -0,0 +1,81 @@
+package org.insightcentre.nlp.saffron.topic.topicsim;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.insightcentre.nlp.saffron.config.TermSimilarityConfiguration;
+import org.insightcentre.nlp.saffron.data.connections.DocumentTerm;
+import org.insightcentre.nlp.saffron.data.connections.TermTerm;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author John McCrae
+ */
+public class TermSimilarityTest {
+
+    public TermSimilarityTest() {
+    }
+
+    private static final Comparator<TermTerm> ORDER = new Comparator<TermTerm>() {
+        @Override
+        public int compare(TermTerm o1, TermTerm o2) {
+            int i = o1.getTerm1().compareTo(o2.getTerm1());
+            if (i == 0) {
+                return o1.getTerm2().compareTo(o2.getTerm2());
+            }
+            return i;
+        }
+    };
+
+    /**
+     * Test of termSimilarity method, of class TermSimilarity.
+     */
+    @Test
+    public void testTermSimilarity() {
+        System.out.println("termSimilarity");
+        List<DocumentTerm> docTerms = new ArrayList<>();
+        docTerms.add(new DocumentTerm("doc1", "term a", 2, null, null, null));
+        docTerms.add(new DocumentTerm("doc1", "term b", 1, null, null, null));
+        docTerms.add(new DocumentTerm("doc2", "term b", 1, null, null, null));
+        docTerms.add(new DocumentTerm("doc2", "term c", 3, null, null, null));
+        docTerms.add(new DocumentTerm("doc3", "term d", 3, null, null, null));
+        TermSimilarity instance = new TermSimilarity(new TermSimilarityConfiguration());
+        List<TermTerm> result = instance.termSimilarity(docTerms);
+        assertEquals(4, result.size());
+        for (TermTerm tt : result) {
+            assertNotEquals("term d", tt.getTerm1());
+            assertNotEquals("term d", tt.getTerm2());
+        }
+    }
+
+    /**
+     * The sparse engine should agree with the exhaustive comparison
+     */
+    @Test
+    public void testSparseMatchesExhaustive() {
+        System.out.println("sparseMatchesExhaustive");
+        Random r = new Random(42);
+        List<DocumentTerm> docTerms = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            docTerms.add(new DocumentTerm("doc" + r.nextInt(100), "term " + r.nextInt(300),
+                    1 + r.nextInt(5), null, null, null));
+        }
+        TermSimilarityConfiguration config = new TermSimilarityConfiguration();
+        config.topN = 5;
+        TermSimilarity instance = new TermSimilarity(config);
+        List<TermTerm> expected = instance.exhaustiveTermSimilarity(docTerms);
+        List<TermTerm> result = instance.termSimilarity(docTerms);
+        Collections.sort(expected, ORDER);
+        Collections.sort(result, ORDER);
+        assertEquals(expected.size(), result.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTerm1(), result.get(i).getTerm1());
+            assertEquals(expected.get(i).getTerm2(), result.get(i).getTerm2());
+            assertEquals(expected.get(i).getSimilarity(), result.get(i).getSimilarity(), 1e-9);
+        }
+    }
+}
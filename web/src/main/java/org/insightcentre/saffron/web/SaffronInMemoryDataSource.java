@@ -35,6 +35,7 @@ import com.fasterxml.jackson.databind.type.TypeFactory;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
 import org.insightcentre.nlp.saffron.documentindex.CorpusTools;
+import org.insightcentre.nlp.saffron.documentindex.MaterializedCorpus;
 import org.json.JSONObject;
 
 /**
@@ -67,6 +68,8 @@ public class SaffronInMemoryDataSource implements SaffronDataSource {
         private HashMap<String, List<AuthorTerm>> authorByTerm, termByAuthor;
         private List<String> termsSorted;
         private HashMap<String, Document> corpus;
+        /* If set, the documents are read from this segment instead of corpus */
+        private MaterializedCorpus segment;
         private HashMap<String, List<Document>> corpusByAuthor;
         private HashMap<String, Author> authors;
         private HashMap<String, IntList> taxoMap;
@@ -355,6 +358,7 @@ public class SaffronInMemoryDataSource implements SaffronDataSource {
             this.corpus = new HashMap<>();
             this.corpusByAuthor = new HashMap<>();
             this.authors = new HashMap<>();
+            this.segment = null;
             for (Document d : corpus.getDocuments()) {
                 this.corpus.put(d.id, d);
                 for (Author a : d.getAuthors()) {
@@ -367,6 +371,10 @@ public class SaffronInMemoryDataSource implements SaffronDataSource {
                     }
                 }
             }
+            if (corpus instanceof MaterializedCorpus && ((MaterializedCorpus) corpus).isComplete()) {
+                this.segment = (MaterializedCorpus) corpus;
+                this.corpus.clear();
+            }
             //this.searcher = corpus;
         }
 
@@ -388,10 +396,16 @@ public class SaffronInMemoryDataSource implements SaffronDataSource {
         }
 
         public Document getDoc(String docId) {
+            if (segment != null) {
+                return segment.getDocument(docId);
+            }
             return corpus.get(docId);
         }
 
-        public Collection<Document> getDocuments() {
+        public Iterable<Document> getDocuments() {
+            if (segment != null) {
+                return segment.getDocuments();
+            }
             return corpus.values();
         }
 
@@ -584,13 +598,16 @@ public class SaffronInMemoryDataSource implements SaffronDataSource {
         saffron.setTerms((List<Term>) mapper.readValue(termsFile,
                 tf.constructCollectionType(List.class, Term.class)));
 
+        File segmentFile = new File(saffonPath, "corpus.seg");
         File indexFile = new File(saffonPath, "corpus.json");
-        if (!indexFile.exists()) {
+        if (segmentFile.exists()) {
+            saffron.setCorpus(MaterializedCorpus.open(segmentFile));
+        } else if (!indexFile.exists()) {
             throw new FileNotFoundException("Could not find index");
+        } else {
+            saffron.setCorpus(CorpusTools.readFile(indexFile));
         }
 
-        saffron.setCorpus(CorpusTools.readFile(indexFile));
-
         this.data.put(name, saffron);
     }
 